@@ -1,42 +1,112 @@
 package plia.core;
 
-import java.util.Vector;
+import java.util.Arrays;
 
 import plia.core.scene.animation.Animation;
 
 public final class AnimationPlayer
 {
-	private Vector<Animation> queues = new Vector<Animation>();
-	
+	// animations to update this frame, in enqueue order, with their slot in the set
+	private Animation[] queue = new Animation[64];
+	private int[] queueSlots = new int[64];
+	private int count;
+
+	// open addressing identity set of the queued animations, emptied slot by slot after the update
+	private Animation[] keys = new Animation[128];
+
 	private AnimationPlayer()
 	{
 		// TODO Auto-generated constructor stub
 	}
-	
+
 	public void enqueue(Animation animation)
 	{
-		if(!queues.contains(animation))
+		if(count * 2 >= keys.length)
+		{
+			rehash();
+		}
+
+		int mask = keys.length - 1;
+		int slot = hash(animation) & mask;
+
+		while(keys[slot] != null)
+		{
+			if(keys[slot] == animation)
+			{
+				return;
+			}
+
+			slot = (slot + 1) & mask;
+		}
+
+		keys[slot] = animation;
+
+		if(count == queue.length)
 		{
-			queues.add(animation);
+			queue = Arrays.copyOf(queue, count * 2);
+			queueSlots = Arrays.copyOf(queueSlots, count * 2);
 		}
+
+		queue[count] = animation;
+		queueSlots[count] = slot;
+		count++;
 	}
-	
+
+	private void rehash()
+	{
+		keys = new Animation[keys.length * 2];
+
+		int mask = keys.length - 1;
+
+		for (int i = 0; i < count; i++)
+		{
+			int slot = hash(queue[i]) & mask;
+
+			while(keys[slot] != null)
+			{
+				slot = (slot + 1) & mask;
+			}
+
+			keys[slot] = queue[i];
+			queueSlots[i] = slot;
+		}
+	}
+
+	private static int hash(Animation animation)
+	{
+		int h = System.identityHashCode(animation);
+		return h ^ (h >>> 16);
+	}
+
 	public void update()
 	{
-		for (int i = 0; i < queues.size(); i++)
+		Animation[] animations = queue;
+
+		for (int i = 0; i < count; i++)
 		{
-			queues.get(i).update();
+			animations[i].update();
+
+			keys[queueSlots[i]] = null;
+			animations[i] = null;
 		}
-		
-		queues.clear();
+
+		count = 0;
 	}
-	
+
 	public void destroy()
 	{
-		queues.clear();
+		Arrays.fill(queue, 0, count, null);
+		Arrays.fill(keys, null);
+		count = 0;
 		instance = null;
 	}
-	
+
+	// animations queued for the next update
+	public int getQueuedCount()
+	{
+		return count;
+	}
+
 	private static AnimationPlayer instance;
 	public static AnimationPlayer getInstance()
 	{
@@ -44,7 +114,7 @@ public final class AnimationPlayer
 		{
 			instance = new AnimationPlayer();
 		}
-		
+
 		return instance;
 	}
 }
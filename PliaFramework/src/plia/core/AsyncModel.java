@@ -0,0 +1,66 @@
+package plia.core;
+
+import plia.core.event.OnModelLoadListener;
+import plia.core.scene.Group;
+
+// Result of GameObjectManager.loadModelAsync. It is completed on the render thread,
+// poll it from update() or pass an OnModelLoadListener; never wait for it on the GL thread.
+public class AsyncModel
+{
+	private final String path;
+	private final OnModelLoadListener listener;
+	private final GameObjectManager.PrefabLoad prefabLoad;
+	
+	private Group model;
+	private boolean isDone = false;
+	
+	AsyncModel(String path, OnModelLoadListener listener, GameObjectManager.PrefabLoad prefabLoad)
+	{
+		this.path = path;
+		this.listener = listener;
+		this.prefabLoad = prefabLoad;
+	}
+	
+	public String getPath()
+	{
+		return path;
+	}
+	
+	public boolean isDone()
+	{
+		return isDone;
+	}
+	
+	public boolean isFailed()
+	{
+		return isDone && model == null;
+	}
+	
+	// null until isDone()
+	public Group getModel()
+	{
+		return model;
+	}
+	
+	// 0 - 1
+	public float getProgress()
+	{
+		if(isDone)
+		{
+			return 1;
+		}
+		
+		return prefabLoad.getProgress();
+	}
+	
+	void complete(Group model)
+	{
+		this.model = model;
+		this.isDone = true;
+		
+		if(listener != null)
+		{
+			listener.onModelLoad(path, model);
+		}
+	}
+}
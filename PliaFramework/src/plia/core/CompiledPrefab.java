@@ -0,0 +1,611 @@
+package plia.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+import plia.core.scene.animation.Animation;
+import plia.core.scene.animation.PaletteTracks;
+import plia.core.scene.geometry.Geometry;
+import plia.core.scene.geometry.Mesh;
+import plia.core.scene.geometry.SkinnedMesh;
+import plia.core.scene.shading.Color3;
+import plia.core.scene.shading.Material;
+import plia.core.scene.shading.Shader;
+import plia.core.scene.shading.Texture2D;
+import plia.math.Matrix4;
+
+// Flat, little-endian dump of a ScenePrefab (meshes, skin, matrix palettes, materials).
+// The whole file is read with one bulk read into a direct buffer and the meshes use views on it,
+// so nothing is parsed or rebuilt at load time. Written offline by plia.tools.PrefabCompiler.
+//
+//	header		: magic, version, file length
+//	scene		: root name, axis rotation, animation (start, total, frame rate)
+//	materials	: base color, light absorb, diffuse texture file name
+//	nodes		: name, material, mesh type, bounds, counts, then vertices | normals | uv, indices,
+//				  bone weights, bone indices, matrix palette, palette tracks (float or quantised keys)
+public final class CompiledPrefab
+{
+	public static final String EXTENSION = ".prefab";
+
+	private static final int MAGIC = 0x41494C50; // "PLIA"
+	private static final int VERSION = 3;
+
+	private CompiledPrefab()
+	{
+
+	}
+
+	//
+	// Read
+	//
+
+	public static ScenePrefab read(InputStream inputStream, boolean loadTextures) throws IOException
+	{
+		try
+		{
+			ReadableByteChannel channel = Channels.newChannel(inputStream);
+
+			ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+			readFully(channel, header);
+
+			if(header.getInt(0) != MAGIC || header.getInt(4) != VERSION)
+			{
+				throw new IOException("Not a compiled prefab (version "+VERSION+")");
+			}
+
+			ByteBuffer data = ByteBuffer.allocateDirect(header.getInt(8)).order(ByteOrder.LITTLE_ENDIAN);
+			header.position(0);
+			data.put(header);
+			readFully(channel, data);
+			data.position(0);
+
+			return read(data, loadTextures);
+		}
+		finally
+		{
+			inputStream.close();
+		}
+	}
+
+	private static void readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException
+	{
+		while(buffer.hasRemaining())
+		{
+			if(channel.read(buffer) < 0)
+			{
+				throw new IOException("Unexpected end of compiled prefab");
+			}
+		}
+	}
+
+	// 'data' must stay untouched afterwards, meshes keep views on it
+	public static ScenePrefab read(ByteBuffer data, boolean loadTextures) throws IOException
+	{
+		data.order(ByteOrder.LITTLE_ENDIAN);
+
+		if(data.getInt() != MAGIC || data.getInt() != VERSION)
+		{
+			throw new IOException("Not a compiled prefab (version "+VERSION+")");
+		}
+		data.getInt();
+
+		ScenePrefab scenePrefab = new ScenePrefab();
+		scenePrefab.setRootName(getString(data));
+
+		float[] axisRotation = new float[16];
+		data.asFloatBuffer().get(axisRotation);
+		data.position(data.position() + 64);
+		scenePrefab.setAxisRotation(new Matrix4(axisRotation));
+
+		boolean hasAnimation = data.getInt() == 1;
+		int start = data.getInt();
+		int total = data.getInt();
+		int frameRate = data.getInt();
+
+		if(hasAnimation)
+		{
+			Animation animation = new Animation(start, total);
+			animation.setFrameRate(frameRate);
+			scenePrefab.setAnimation(animation);
+		}
+
+		// Materials
+		int materialCount = data.getInt();
+		Material[] materials = new Material[materialCount];
+		String[] textureFileNames = new String[materialCount];
+
+		for (int i = 0; i < materialCount; i++)
+		{
+			materials[i] = new Material();
+			materials[i].setShader(Shader.DIFFUSE);
+			materials[i].setBaseColor(data.getFloat(), data.getFloat(), data.getFloat());
+			materials[i].setLightAbsorbMultipler(data.getFloat());
+
+			textureFileNames[i] = getString(data);
+
+			if(loadTextures && textureFileNames[i] != null)
+			{
+				Texture2D texture2d = GameObjectManager.loadTexture2DWithFileName(textureFileNames[i]);
+
+				if(texture2d != null)
+				{
+					materials[i].setBaseTexture(texture2d);
+				}
+			}
+		}
+
+		scenePrefab.setMaterials(materials);
+		scenePrefab.setTextureFileNames(textureFileNames);
+
+		// Nodes
+		int nodeCount = data.getInt();
+		NodePrefab[] nodePrefabs = new NodePrefab[nodeCount];
+
+		for (int i = 0; i < nodeCount; i++)
+		{
+			NodePrefab nodePrefab = new NodePrefab();
+			nodePrefab.setName(getString(data));
+
+			int materialIndex = data.getInt();
+			nodePrefab.setMaterial(materialIndex < 0 ? scenePrefab.getDefaultMaterial() : materials[materialIndex]);
+			nodePrefab.setHasAnimation(data.getInt() == 1);
+
+			int type = data.getInt();
+
+			float minX = data.getFloat(), minY = data.getFloat(), minZ = data.getFloat();
+			float maxX = data.getFloat(), maxY = data.getFloat(), maxZ = data.getFloat();
+
+			int vertexLength = data.getInt();
+			int normalsOffset = data.getInt();
+			int uvOffset = data.getInt();
+			int indexCount = data.getInt();
+			int boneLength = data.getInt();
+			int paletteFrames = data.getInt();
+			int paletteLength = data.getInt();
+			int paletteIndexOffset = data.getInt();
+			int trackFrames = data.getInt();
+			int trackNodes = data.getInt();
+			int trackKeys = data.getInt();
+			int trackValues = data.getInt();
+			int trackPacked = data.getInt();
+
+			FloatBuffer vertexBuffer = floats(data, vertexLength);
+			IntBuffer indexBuffer = ints(data, indexCount);
+
+			Mesh mesh;
+
+			if(type == Geometry.SKINNED_MESH)
+			{
+				FloatBuffer boneWeightBuffer = floats(data, boneLength);
+				ShortBuffer boneIndexBuffer = shorts(data, boneLength);
+
+				mesh = new SkinnedMesh(vertexBuffer, normalsOffset, uvOffset, indexBuffer, boneWeightBuffer, boneIndexBuffer);
+			}
+			else
+			{
+				mesh = new Mesh(vertexBuffer, normalsOffset, uvOffset, indexBuffer);
+			}
+
+			mesh.getMin().set(minX, minY, minZ);
+			mesh.getMax().set(maxX, maxY, maxZ);
+
+			if(paletteFrames > 0)
+			{
+				FloatBuffer palette = data.asFloatBuffer();
+				float[][] matrixPalette = new float[paletteFrames][paletteLength];
+
+				for (int j = 0; j < paletteFrames; j++)
+				{
+					palette.get(matrixPalette[j]);
+				}
+				data.position(data.position() + (paletteFrames * paletteLength * 4));
+
+				mesh.setMatrixPalette(matrixPalette);
+				mesh.setMatrixPaletteIndexOffset(paletteIndexOffset);
+			}
+
+			if(trackFrames > 0)
+			{
+				int[] parents = getInts(data, trackNodes);
+				int[] slots = getInts(data, trackNodes);
+				float[] bindPoses = getFloats(data, paletteLength);
+				int[] keyStarts = getInts(data, trackNodes * 3);
+				int[] keyCounts = getInts(data, trackNodes * 3);
+				int[] valueStarts = getInts(data, trackNodes * 3);
+
+				short[] keyFrames = new short[trackKeys];
+				data.asShortBuffer().get(keyFrames);
+				data.position(data.position() + align(trackKeys * 2));
+
+				if(trackPacked > 0)
+				{
+					short[] packedValues = new short[trackPacked];
+					data.asShortBuffer().get(packedValues);
+					data.position(data.position() + align(trackPacked * 2));
+
+					float[] ranges = getFloats(data, trackNodes * 3 * 6);
+
+					mesh.setPaletteTracks(new PaletteTracks(trackFrames, parents, slots, bindPoses, keyStarts, keyCounts, valueStarts, keyFrames, packedValues, ranges));
+				}
+				else
+				{
+					float[] keyValues = getFloats(data, trackValues);
+
+					mesh.setPaletteTracks(new PaletteTracks(trackFrames, parents, slots, bindPoses, keyStarts, keyCounts, valueStarts, keyFrames, keyValues));
+				}
+				mesh.setMatrixPaletteIndexOffset(paletteIndexOffset);
+			}
+
+			nodePrefab.setMesh(mesh);
+			nodePrefabs[i] = nodePrefab;
+		}
+
+		scenePrefab.setNodePrefabs(nodePrefabs);
+
+		return scenePrefab;
+	}
+
+	// GL reads the buffers in native order, every android abi is little-endian so this is a view
+	private static ByteBuffer slice(ByteBuffer data, int length)
+	{
+		int position = data.position();
+
+		ByteBuffer view = data.slice();
+		view.limit(length);
+		data.position(position + align(length));
+
+		if(ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN)
+		{
+			return view.order(ByteOrder.LITTLE_ENDIAN);
+		}
+
+		ByteBuffer copy = ByteBuffer.allocateDirect(length).order(ByteOrder.nativeOrder());
+		view.order(ByteOrder.LITTLE_ENDIAN);
+		for (int i = 0; i < length; i += 4)
+		{
+			copy.putInt(view.getInt());
+		}
+		copy.position(0);
+
+		return copy;
+	}
+
+	private static FloatBuffer floats(ByteBuffer data, int count)
+	{
+		return slice(data, count * 4).asFloatBuffer();
+	}
+
+	private static IntBuffer ints(ByteBuffer data, int count)
+	{
+		return slice(data, count * 4).asIntBuffer();
+	}
+
+	private static ShortBuffer shorts(ByteBuffer data, int count)
+	{
+		int position = data.position();
+
+		ByteBuffer view = data.slice();
+		view.limit(count * 2);
+		data.position(position + align(count * 2));
+
+		if(ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN)
+		{
+			return view.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+		}
+
+		ShortBuffer copy = ByteBuffer.allocateDirect(count * 2).order(ByteOrder.nativeOrder()).asShortBuffer();
+		copy.put(view.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer()).position(0);
+
+		return copy;
+	}
+
+	private static int[] getInts(ByteBuffer data, int count)
+	{
+		int[] ints = new int[count];
+		data.asIntBuffer().get(ints);
+		data.position(data.position() + count * 4);
+		return ints;
+	}
+
+	private static float[] getFloats(ByteBuffer data, int count)
+	{
+		float[] floats = new float[count];
+		data.asFloatBuffer().get(floats);
+		data.position(data.position() + count * 4);
+		return floats;
+	}
+
+	private static String getString(ByteBuffer data) throws UnsupportedEncodingException
+	{
+		int length = data.getInt();
+
+		if(length < 0)
+		{
+			return null;
+		}
+
+		byte[] bytes = new byte[length];
+		data.get(bytes);
+		data.position(data.position() + (align(length) - length));
+
+		return new String(bytes, "UTF-8");
+	}
+
+	private static int align(int length)
+	{
+		return (length + 3) & ~3;
+	}
+
+	//
+	// Write
+	//
+
+	public static void write(ScenePrefab scenePrefab, OutputStream outputStream) throws IOException
+	{
+		Material[] materials = scenePrefab.getMaterials();
+		String[] textureFileNames = scenePrefab.getTextureFileNames();
+		NodePrefab[] nodePrefabs = scenePrefab.getNodePrefabs();
+
+		byte[] rootName = bytes(scenePrefab.getRootName());
+		byte[][] textures = new byte[materials.length][];
+		byte[][] names = new byte[nodePrefabs.length][];
+
+		// Size
+		int length = 12 + string(rootName) + 64 + 16 + 4;
+
+		for (int i = 0; i < materials.length; i++)
+		{
+			String textureFileName = (textureFileNames != null) ? textureFileNames[i] : null;
+
+			if(textureFileName == null && materials[i].getBaseTexture() != null)
+			{
+				textureFileName = materials[i].getBaseTexture().getName();
+			}
+
+			textures[i] = bytes(textureFileName);
+			length += 16 + string(textures[i]);
+		}
+
+		length += 4;
+
+		for (int i = 0; i < nodePrefabs.length; i++)
+		{
+			Mesh mesh = nodePrefabs[i].getMesh();
+			names[i] = bytes(nodePrefabs[i].getName());
+
+			length += string(names[i]) + 12 + 24 + 52;
+			length += mesh.getVertexBuffer().capacity() * 4;
+			length += mesh.getIndexBuffer().capacity() * 4;
+
+			if(mesh instanceof SkinnedMesh)
+			{
+				SkinnedMesh skinnedMesh = (SkinnedMesh) mesh;
+				length += skinnedMesh.getBoneWeightBuffer().capacity() * 4;
+				length += align(skinnedMesh.getBoneIndexBuffer().capacity() * 2);
+			}
+
+			float[][] matrixPalette = mesh.getMatrixPalette();
+			if(matrixPalette != null && matrixPalette.length > 0)
+			{
+				length += matrixPalette.length * matrixPalette[0].length * 4;
+			}
+
+			PaletteTracks paletteTracks = mesh.getPaletteTracks();
+			if(paletteTracks != null)
+			{
+				length += paletteTracks.getNodeCount() * 4 * 11 + paletteTracks.getPaletteLength() * 4;
+				length += align(paletteTracks.getKeyFrames().length * 2);
+
+				if(paletteTracks.isQuantized())
+				{
+					length += align(paletteTracks.getPackedValues().length * 2) + paletteTracks.getRanges().length * 4;
+				}
+				else
+				{
+					length += paletteTracks.getKeyValues().length * 4;
+				}
+			}
+		}
+
+		ByteBuffer data = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+
+		// Header
+		data.putInt(MAGIC);
+		data.putInt(VERSION);
+		data.putInt(length);
+
+		// Scene
+		putString(data, rootName);
+
+		float[] axisRotation = new float[16];
+		scenePrefab.getAxisRotation().copyTo(axisRotation);
+		for (int i = 0; i < 16; i++)
+		{
+			data.putFloat(axisRotation[i]);
+		}
+
+		Animation animation = scenePrefab.getAnimation();
+		if(animation != null)
+		{
+			data.putInt(1);
+			data.putInt(animation.getStartFrame());
+			data.putInt(animation.getTotalFrame());
+			data.putInt(animation.getFrameRate());
+		}
+		else
+		{
+			data.putInt(0).putInt(0).putInt(0).putInt(0);
+		}
+
+		// Materials
+		data.putInt(materials.length);
+
+		for (int i = 0; i < materials.length; i++)
+		{
+			Color3 baseColor = materials[i].getBaseColor();
+			data.putFloat(baseColor.r);
+			data.putFloat(baseColor.g);
+			data.putFloat(baseColor.b);
+			data.putFloat(materials[i].getLightAbsorbMultipler());
+
+			putString(data, textures[i]);
+		}
+
+		// Nodes
+		data.putInt(nodePrefabs.length);
+
+		for (int i = 0; i < nodePrefabs.length; i++)
+		{
+			NodePrefab nodePrefab = nodePrefabs[i];
+			Mesh mesh = nodePrefab.getMesh();
+
+			int materialIndex = -1;
+			for (int j = 0; j < materials.length; j++)
+			{
+				if(materials[j] == nodePrefab.getMaterial())
+				{
+					materialIndex = j;
+				}
+			}
+
+			putString(data, names[i]);
+			data.putInt(materialIndex);
+			data.putInt(nodePrefab.hasAnimation() ? 1 : 0);
+			data.putInt(mesh.getType());
+
+			data.putFloat(mesh.getMin().x).putFloat(mesh.getMin().y).putFloat(mesh.getMin().z);
+			data.putFloat(mesh.getMax().x).putFloat(mesh.getMax().y).putFloat(mesh.getMax().z);
+
+			FloatBuffer vertexBuffer = mesh.getVertexBuffer();
+			IntBuffer indexBuffer = mesh.getIndexBuffer();
+
+			FloatBuffer boneWeightBuffer = null;
+			ShortBuffer boneIndexBuffer = null;
+
+			if(mesh instanceof SkinnedMesh)
+			{
+				boneWeightBuffer = ((SkinnedMesh) mesh).getBoneWeightBuffer();
+				boneIndexBuffer = ((SkinnedMesh) mesh).getBoneIndexBuffer();
+			}
+
+			float[][] matrixPalette = mesh.getMatrixPalette();
+			int paletteFrames = (matrixPalette != null) ? matrixPalette.length : 0;
+			int paletteLength = (paletteFrames > 0) ? matrixPalette[0].length : 0;
+
+			PaletteTracks paletteTracks = mesh.getPaletteTracks();
+			if(paletteTracks != null)
+			{
+				paletteLength = paletteTracks.getPaletteLength();
+			}
+
+			data.putInt(vertexBuffer.capacity());
+			data.putInt(mesh.NORMALS_OFFSET);
+			data.putInt(mesh.UV_OFFSET);
+			data.putInt(indexBuffer.capacity());
+			data.putInt((boneWeightBuffer != null) ? boneWeightBuffer.capacity() : 0);
+			data.putInt(paletteFrames);
+			data.putInt(paletteLength);
+			data.putInt(mesh.getMatrixPaletteIndexOffset());
+			data.putInt((paletteTracks != null) ? paletteTracks.getFrameCount() : 0);
+			data.putInt((paletteTracks != null) ? paletteTracks.getNodeCount() : 0);
+			data.putInt((paletteTracks != null) ? paletteTracks.getKeyFrames().length : 0);
+			data.putInt((paletteTracks != null && !paletteTracks.isQuantized()) ? paletteTracks.getKeyValues().length : 0);
+			data.putInt((paletteTracks != null && paletteTracks.isQuantized()) ? paletteTracks.getPackedValues().length : 0);
+
+			data.asFloatBuffer().put((FloatBuffer) vertexBuffer.duplicate().clear());
+			data.position(data.position() + vertexBuffer.capacity() * 4);
+
+			data.asIntBuffer().put((IntBuffer) indexBuffer.duplicate().clear());
+			data.position(data.position() + indexBuffer.capacity() * 4);
+
+			if(boneWeightBuffer != null)
+			{
+				data.asFloatBuffer().put((FloatBuffer) boneWeightBuffer.duplicate().clear());
+				data.position(data.position() + boneWeightBuffer.capacity() * 4);
+
+				data.asShortBuffer().put((ShortBuffer) boneIndexBuffer.duplicate().clear());
+				data.position(data.position() + align(boneIndexBuffer.capacity() * 2));
+			}
+
+			for (int j = 0; j < paletteFrames; j++)
+			{
+				data.asFloatBuffer().put(matrixPalette[j]);
+				data.position(data.position() + paletteLength * 4);
+			}
+
+			if(paletteTracks != null)
+			{
+				putInts(data, paletteTracks.getParents());
+				putInts(data, paletteTracks.getSlots());
+				putFloats(data, paletteTracks.getBindPoses());
+				putInts(data, paletteTracks.getKeyStarts());
+				putInts(data, paletteTracks.getKeyCounts());
+				putInts(data, paletteTracks.getValueStarts());
+
+				short[] keyFrames = paletteTracks.getKeyFrames();
+				data.asShortBuffer().put(keyFrames);
+				data.position(data.position() + align(keyFrames.length * 2));
+
+				if(paletteTracks.isQuantized())
+				{
+					short[] packedValues = paletteTracks.getPackedValues();
+					data.asShortBuffer().put(packedValues);
+					data.position(data.position() + align(packedValues.length * 2));
+
+					putFloats(data, paletteTracks.getRanges());
+				}
+				else
+				{
+					putFloats(data, paletteTracks.getKeyValues());
+				}
+			}
+		}
+
+		outputStream.write(data.array(), 0, length);
+		outputStream.flush();
+	}
+
+	private static void putInts(ByteBuffer data, int[] ints)
+	{
+		data.asIntBuffer().put(ints);
+		data.position(data.position() + ints.length * 4);
+	}
+
+	private static void putFloats(ByteBuffer data, float[] floats)
+	{
+		data.asFloatBuffer().put(floats);
+		data.position(data.position() + floats.length * 4);
+	}
+
+	private static byte[] bytes(String s) throws UnsupportedEncodingException
+	{
+		return (s == null) ? null : s.getBytes("UTF-8");
+	}
+
+	private static int string(byte[] bytes)
+	{
+		return 4 + ((bytes == null) ? 0 : align(bytes.length));
+	}
+
+	private static void putString(ByteBuffer data, byte[] bytes)
+	{
+		if(bytes == null)
+		{
+			data.putInt(-1);
+			return;
+		}
+
+		data.putInt(bytes.length);
+		data.put(bytes);
+		data.position(data.position() + (align(bytes.length) - bytes.length));
+	}
+}
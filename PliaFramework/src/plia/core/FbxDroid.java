@@ -2,12 +2,20 @@ package plia.core;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 
 import plia.core.scene.animation.Animation;
+import plia.core.scene.animation.PaletteTracks;
 import plia.core.scene.geometry.Mesh;
 import plia.core.scene.geometry.SkinnedMesh;
+import plia.core.scene.geometry.VertexCacheOptimizer;
 import plia.core.scene.shading.Material;
 import plia.core.scene.shading.Shader;
 import plia.core.scene.shading.Texture2D;
@@ -29,13 +37,49 @@ import android.util.Log;
 
 public class FbxDroid
 {
+	private static boolean optimizeVertexCache = true;
+	private static boolean keyframePalette = true;
+	private static boolean quantizePalette = true;
+	private static boolean parallelPalette = true;
+	
+	// below this many frames per worker the palette is baked on the calling thread
+	private static final int MIN_BAKE_FRAMES = 64;
+	private static final int THREADS = Runtime.getRuntime().availableProcessors();
+	private static ExecutorService bakePool;
+	
+	// Reorders triangles for the post-transform vertex cache at import, see VertexCacheOptimizer
+	public static void setOptimizeVertexCache(boolean enabled)
+	{
+		optimizeVertexCache = enabled;
+	}
+	
+	// Keeps animations as sparse TRS keys evaluated on demand (PaletteTracks) instead of a baked palette per frame
+	public static void setKeyframePalette(boolean enabled)
+	{
+		keyframePalette = enabled;
+	}
+	
+	// Stores the keys of the palette tracks on 16 bits, see PaletteTracks.quantize
+	public static void setQuantizePalette(boolean enabled)
+	{
+		quantizePalette = enabled;
+	}
+	
+	// Bakes the frames of a matrix palette on one worker per core when keyframe palettes are off
+	public static void setParallelPalette(boolean enabled)
+	{
+		parallelPalette = enabled;
+	}
+	
 	public static ScenePrefab importScene(String fbx, Context context)
 	{
-		ScenePrefab scenePrefab = new ScenePrefab();
-		
+		return importScene(fbx, context, true);
+	}
+	
+	public static ScenePrefab importScene(String fbx, Context context, boolean loadTextures)
+	{
 		try
 		{
-
 			String filename = fbx.substring(0, fbx.length() - 4);
 			int indexOfSlash = filename.lastIndexOf("/");
 			if(indexOfSlash > -1)
@@ -43,12 +87,6 @@ public class FbxDroid
 				filename = filename.substring(indexOfSlash+1, filename.length());
 			}
 			
-			
-			
-			Log.e("=================", "=====================");
-			Log.e("Fbx Data", " ");
-			Log.e("", "Root Name      : "+filename);
-			
 //			long start = System.nanoTime();
 			
 			FbxScene scene = FbxImporter.importScene(context.getAssets().open(fbx));
@@ -56,75 +94,105 @@ public class FbxDroid
 //			float end = (System.nanoTime() - start)/ 1000000f;
 //			Log.e("Load Time", end+" ms");
 			
-			int fps = scene.globalSetting().getTimeMode().getFrameRate();
-			
-			float[] preRotation = { 1,0,0,0,	0,1,0,0,	0,0,1,0,	0,0,0,1 };
-			
-			Vector3 forward = new Vector3();
-			Vector3 up = new Vector3();
-			Vector3 right = new Vector3();
-			
-			int frontAxisSign = scene.globalSetting().getFrontAxisSign();
-			
-			switch(scene.globalSetting().getFrontAxis())
-			{
-				case 0 : forward.x = frontAxisSign; break;
-				case 1 : forward.y = frontAxisSign; break;
-				case 2 : forward.z = frontAxisSign; break;
-			}
-			
-			int upAxisSign = scene.globalSetting().getUpAxisSign();
-			
-			switch(scene.globalSetting().getUpAxis())
-			{
-				case 0 : up.x = upAxisSign; break;
-				case 1 : up.y = upAxisSign; break;
-				case 2 : up.z = upAxisSign; break;
-			}
-			
-			Vector3.cross(right, forward, up);
-			
-			preRotation[0] = right.x;
-			preRotation[1] = right.y;
-			preRotation[2] = right.z;
-			
-			preRotation[4] = forward.x;
-			preRotation[5] = forward.y;
-			preRotation[6] = forward.z;
-			
-			preRotation[8] = up.x;
-			preRotation[9] = up.y;
-			preRotation[10] = up.z;
-			
-			Matrix4 axisRotation = new Matrix4(preRotation);
-			
-			scenePrefab.setRootName(filename);
-			scenePrefab.setAxisRotation(axisRotation);
-			
-			boolean hasAnimation = false;
-			
+			return importScene(scene, filename, loadTextures);
+		}
+		catch (IOException e)
+		{
+			Log.e("Error", e.getMessage());
+		}
+		
+		return null;
+	}
+	
+	// Without a running GameObjectManager (e.g. the offline prefab compiler) textures are only
+	// recorded by file name in ScenePrefab.getTextureFileNames().
+	public static ScenePrefab importScene(FbxScene scene, String filename, boolean loadTextures)
+	{
+		if(scene == null)
+		{
+			return null;
+		}
+		
+		ScenePrefab scenePrefab = new ScenePrefab();
+		
+		Log.e("=================", "=====================");
+		Log.e("Fbx Data", " ");
+		Log.e("", "Root Name      : "+filename);
+		
+		int fps = scene.globalSetting().getTimeMode().getFrameRate();
+		
+		float[] preRotation = { 1,0,0,0,	0,1,0,0,	0,0,1,0,	0,0,0,1 };
+		
+		Vector3 forward = new Vector3();
+		Vector3 up = new Vector3();
+		Vector3 right = new Vector3();
+		
+		int frontAxisSign = scene.globalSetting().getFrontAxisSign();
+		
+		switch(scene.globalSetting().getFrontAxis())
+		{
+			case 0 : forward.x = frontAxisSign; break;
+			case 1 : forward.y = frontAxisSign; break;
+			case 2 : forward.z = frontAxisSign; break;
+		}
+		
+		int upAxisSign = scene.globalSetting().getUpAxisSign();
+		
+		switch(scene.globalSetting().getUpAxis())
+		{
+			case 0 : up.x = upAxisSign; break;
+			case 1 : up.y = upAxisSign; break;
+			case 2 : up.z = upAxisSign; break;
+		}
+		
+		Vector3.cross(right, forward, up);
+		
+		preRotation[0] = right.x;
+		preRotation[1] = right.y;
+		preRotation[2] = right.z;
+		
+		preRotation[4] = forward.x;
+		preRotation[5] = forward.y;
+		preRotation[6] = forward.z;
+		
+		preRotation[8] = up.x;
+		preRotation[9] = up.y;
+		preRotation[10] = up.z;
+		
+		Matrix4 axisRotation = new Matrix4(preRotation);
+		
+		scenePrefab.setRootName(filename);
+		scenePrefab.setAxisRotation(axisRotation);
+		
+		boolean hasAnimation = false;
+		
 //			Log.e("Rotation : "+filename, Matrix.toString(preRotation));
+		
+		int materialCount = scene.getMaterialCount();
+		Material[] materials = new Material[materialCount];
+		String[] textureFileNames = new String[materialCount];
+		scenePrefab.setMaterials(materials);
+		scenePrefab.setTextureFileNames(textureFileNames);
+		
+		for (int i = 0; i < materialCount; i++)
+		{
+			FbxSurfaceMaterial surfaceMaterial = scene.getMaterial(i);
+			materials[i] = new Material();
+			materials[i].setShader(Shader.DIFFUSE);
 			
-			int materialCount = scene.getMaterialCount();
-			Material[] materials = new Material[materialCount];
-			scenePrefab.setMaterials(materials);
-			
-			for (int i = 0; i < materialCount; i++)
+			if(surfaceMaterial instanceof FbxSurfaceLambert)
 			{
-				FbxSurfaceMaterial surfaceMaterial = scene.getMaterial(i);
-				materials[i] = new Material();
-				materials[i].setShader(Shader.DIFFUSE);
-				
-				if(surfaceMaterial instanceof FbxSurfaceLambert)
-				{
-					Vector3 diffuse = ((FbxSurfaceLambert) surfaceMaterial).getDiffuse();
-					materials[i].setBaseColor(diffuse.x, diffuse.y, diffuse.z);
+				Vector3 diffuse = ((FbxSurfaceLambert) surfaceMaterial).getDiffuse();
+				materials[i].setBaseColor(diffuse.x, diffuse.y, diffuse.z);
 
-					FbxTexture texture = ((FbxSurfaceLambert) surfaceMaterial).getDiffuseTexture();
-					if(texture instanceof FbxFileTexture)
+				FbxTexture texture = ((FbxSurfaceLambert) surfaceMaterial).getDiffuseTexture();
+				if(texture instanceof FbxFileTexture)
+				{
+					String textureFileName = ((FbxFileTexture) texture).getFileName();
+					textureFileNames[i] = textureFileName;
+					
+					if(loadTextures)
 					{
-						String textureFileName = ((FbxFileTexture) texture).getFileName();
-						
 						Texture2D texture2d = GameObjectManager.loadTexture2DWithFileName(textureFileName);
 						
 						if(texture2d != null)
@@ -134,70 +202,71 @@ public class FbxDroid
 					}
 				}
 			}
+		}
+		
+		int geometryCount = scene.getGeometryCount();
+		if(geometryCount > 0)
+		{
+			Log.e("", "Geometry Count : "+geometryCount);
+			Log.e("=================", "=====================");
 			
-			int geometryCount = scene.getGeometryCount();
-			if(geometryCount > 0)
+			
+			scenePrefab.setNodePrefabs(new NodePrefab[geometryCount]);
+			
+			FbxDroid[] datas = new FbxDroid[geometryCount];
+			for (int i = 0; i < geometryCount; i++)
 			{
-				Log.e("", "Geometry Count : "+geometryCount);
-				Log.e("=================", "=====================");
-				
+				datas[i] = new FbxDroid(scene, scenePrefab, (FbxMesh) scene.getGeometry(i));
+				scenePrefab.getNodePrefabs()[i] = datas[i].nodePrefab;
+
+				if(datas[i].hasAnimation)
+				{
+					hasAnimation = true;
+				}
 				
-				scenePrefab.setNodePrefabs(new NodePrefab[geometryCount]);
+				Log.e("Geometry No. : "+i, "Name           : "+scene.getGeometry(i).getNode(0).getName());
+				Log.e("Mesh"			 , " ");
+				Log.e(""				 , "Vertices       : "+datas[i].vertices.length+" (welded from "+(datas[i].unweldedVertexCount * 3)+")");
+				Log.e(""				 , "Normals        : "+datas[i].normals.length);
+				Log.e(""				 , "UV             : "+datas[i].uv.length);
+				Log.e(""				 , "Indices        : "+datas[i].indices.length);
 				
-				FbxDroid[] datas = new FbxDroid[geometryCount];
-				for (int i = 0; i < geometryCount; i++)
+				if(optimizeVertexCache)
 				{
-					datas[i] = new FbxDroid(scene, scenePrefab, (FbxMesh) scene.getGeometry(i));
-					scenePrefab.getNodePrefabs()[i] = datas[i].nodePrefab;
-
-					if(datas[i].hasAnimation)
-					{
-						hasAnimation = true;
-					}
-					
-					Log.e("Geometry No. : "+i, "Name           : "+scene.getGeometry(i).getNode(0).getName());
-					Log.e("Mesh"			 , " ");
-					Log.e(""				 , "Vertices       : "+datas[i].vertices.length);
-					Log.e(""				 , "Normals        : "+datas[i].normals.length);
-					Log.e(""				 , "UV             : "+datas[i].uv.length);
-					Log.e(""				 , "Indices        : "+datas[i].indices.length);
-					
-					if(datas[i].isSkinnedMesh)
-					{
-						Log.e("Skinned Mesh", " ");
-						Log.e("", "Bone Weights   : "+datas[i].boneWeights.length);
-						Log.e("", "Bone Indices   : "+datas[i].boneIndices.length);
-					}
-					
-					if(datas[i].hasAnimation)
-					{
-						Log.e("Animation", "  ");
-						Log.e("", "First Keyframe : "+datas[i].startFrame);
-						Log.e("", "Last Keyframe  : "+datas[i].endFrame);
-						Log.e("", "Total Keyframe : "+datas[i].totalFrame);
-					}
-					Log.e("=================", "=====================");
+					Log.e(""			 , "ACMR           : "+datas[i].acmr+" -> "+datas[i].optimizedAcmr);
 				}
 				
-				
-				if(hasAnimation)
+				if(datas[i].isSkinnedMesh)
 				{
-					Animation animation = new Animation(0, 100);
-					animation.setFrameRate(fps);
-
-					scenePrefab.setAnimation(animation);
+					Log.e("Skinned Mesh", " ");
+					Log.e("", "Bone Weights   : "+datas[i].boneWeights.length);
+					Log.e("", "Bone Indices   : "+datas[i].boneIndices.length);
 				}
 				
-				return scenePrefab;
+				if(datas[i].hasAnimation)
+				{
+					Log.e("Animation", "  ");
+					Log.e("", "First Keyframe : "+datas[i].startFrame);
+					Log.e("", "Last Keyframe  : "+datas[i].endFrame);
+					Log.e("", "Total Keyframe : "+datas[i].totalFrame);
+				}
+				Log.e("=================", "=====================");
 			}
-			else
+			
+			
+			if(hasAnimation)
 			{
-				Log.e("=================", "=====================");
+				Animation animation = new Animation(0, 100);
+				animation.setFrameRate(fps);
+
+				scenePrefab.setAnimation(animation);
 			}
+			
+			return scenePrefab;
 		}
-		catch (IOException e)
+		else
 		{
-			Log.e("Error", e.getMessage());
+			Log.e("=================", "=====================");
 		}
 		
 		return null;
@@ -218,6 +287,9 @@ public class FbxDroid
 	private float[] normals;
 	private float[] uv;
 	private int[] indices;
+	private int unweldedVertexCount;
+	private float acmr;
+	private float optimizedAcmr;
 	
 	private Mesh meshObject;
 	
@@ -230,6 +302,7 @@ public class FbxDroid
 	private int endFrame;
 	private int totalFrame;
 	private float[][] matrixPalette;
+	private PaletteTracks paletteTracks;
 	
 	// Transform Default
 	private Vector3 defaultTranslation = new Vector3();
@@ -456,57 +529,28 @@ public class FbxDroid
 					endFrame = (totalFrame + startFrame) - 1;
 					hasAnimation = true;
 
-					matrixPalette = new float[totalFrame][16];
-					for (int frame = startFrame; frame < endFrame+1; frame++)
+					if(keyframePalette && totalFrame <= PaletteTracks.MAX_FRAMES)
 					{
-						int i = frame - startFrame;
-
-						if((n.getAnimCurveNodeT() == null))
-						{
-							T[0] = 0;
-							T[1] = 0;
-							T[2] = 0;
-						}
-						else
-						{
-							n.getAnimCurveNodeT().getValue(T, frame);
-						}
+						paletteTracks = new PaletteTracks(totalFrame, new int[] { -1 }, new int[] { 0 }, new float[] { 1,0,0,0, 0,1,0,0, 0,0,1,0, 0,0,0,1 });
+						setTracks(0, n);
+						paletteTracks.trimToSize();
 						
-						if((n.getAnimCurveNodeR() == null))
-						{
-							R[0] = 0;
-							R[1] = 0;
-							R[2] = 0;
-						}
-						else
+						if(quantizePalette)
 						{
-							n.getAnimCurveNodeR().getValue(R, frame);
+							paletteTracks.quantize(PaletteTracks.QUANTIZE_ERROR);
 						}
-						
-						if((n.getAnimCurveNodeS() == null))
-						{
-							S[0] = 1;
-							S[1] = 1;
-							S[2] = 1;
-						}
-						else
-						{
-							n.getAnimCurveNodeS().getValue(S, frame);
-						}
-						
-						Matrix4.createTranslation(translation, T[0], T[1], T[2]);
-						Matrix4.createRotationX(rx, R[0]);
-						Matrix4.createRotationY(ry, R[1]);
-						Matrix4.createRotationZ(rz, R[2]);
-						
-						Matrix4.multiply(rzy, rz, ry);
-						Matrix4.multiply(rotation, rzy, rx);
-						Matrix4.createScale(scaling, S[0], S[1], S[2]);
-
-						Matrix4.multiply(TR, translation, rotation);
-						Matrix4.multiply(TRS, TR, scaling);
-
-						TRS.copyTo(matrixPalette[i]);
+					}
+					else
+					{
+						matrixPalette = new float[totalFrame][16];
+					}
+					
+					Baker baker = new Baker();
+					
+					for (int frame = startFrame; frame < endFrame+1 && matrixPalette != null; frame++)
+					{
+						baker.setTRS(n, frame);
+						baker.TRS.copyTo(matrixPalette[frame - startFrame]);
 					}
 				}
 			}
@@ -519,16 +563,23 @@ public class FbxDroid
 		}
 		
 		
+		weldVertices();
+		
+		if(optimizeVertexCache)
+		{
+			optimizeVertexCache();
+		}
+		
 		// Create Mesh
 		if(isSkinnedMesh)
 		{
-			meshObject = new SkinnedMesh(vertices, normals, uv, indices, boneWeights, boneIndices);
+			meshObject = new SkinnedMesh(vertices, normals, uv, this.indices, boneWeights, boneIndices);
 //			meshObject.setBuffer(2, boneBuffers[0]);
 //			meshObject.setBuffer(3, boneBuffers[1]);
 		}
 		else
 		{
-			meshObject = new Mesh(vertices, normals, uv, indices);
+			meshObject = new Mesh(vertices, normals, uv, this.indices);
 		}
 		
 //		meshObject.setBuffer(0, meshBuffers[0]);
@@ -537,6 +588,7 @@ public class FbxDroid
 		if(hasAnimation)
 		{
 			meshObject.setMatrixPalette(getMatrixPalette());
+			meshObject.setPaletteTracks(paletteTracks);
 			meshObject.setMatrixPaletteIndexOffset(getStartFrame());
 		}
 		
@@ -550,6 +602,197 @@ public class FbxDroid
 		nodePrefab.setHasAnimation(hasAnimation);
 	}
 	
+	// Merges vertices whose position, normal, uv and bone data are bit-identical, drops the ones no
+	// index refers to and rebuilds the index buffer. Vertices are renumbered in order of first use.
+	private void weldVertices()
+	{
+		int vertexCount = vertices.length / 3;
+		unweldedVertexCount = vertexCount;
+		
+		int tableSize = Integer.highestOneBit(Math.max(vertexCount, 1) * 2) << 1;
+		int mask = tableSize - 1;
+		
+		int[] table = new int[tableSize];
+		Arrays.fill(table, -1);
+		
+		int[] remap = new int[vertexCount];
+		Arrays.fill(remap, -1);
+		
+		int[] kept = new int[vertexCount];
+		int weldedCount = 0;
+		
+		for (int i = 0; i < indices.length; i++)
+		{
+			int v = indices[i];
+			
+			if(remap[v] < 0)
+			{
+				int slot = hashVertex(v) & mask;
+				
+				while(table[slot] > -1 && !equalVertex(table[slot], v))
+				{
+					slot = (slot + 1) & mask;
+				}
+				
+				if(table[slot] < 0)
+				{
+					table[slot] = v;
+					kept[weldedCount] = v;
+					remap[v] = weldedCount++;
+				}
+				else
+				{
+					remap[v] = remap[table[slot]];
+				}
+			}
+			
+			indices[i] = remap[v];
+		}
+		
+		if(weldedCount == vertexCount && isIdentity(kept, weldedCount))
+		{
+			return;
+		}
+		
+		keepVertices(kept, weldedCount);
+	}
+	
+	// Triangles in post-transform cache order, then the vertices again in order of first use
+	private void optimizeVertexCache()
+	{
+		acmr = VertexCacheOptimizer.getACMR(indices);
+		
+		int vertexCount = vertices.length / 3;
+		indices = VertexCacheOptimizer.optimize(indices, vertexCount);
+		
+		optimizedAcmr = VertexCacheOptimizer.getACMR(indices);
+		
+		int[] remap = new int[vertexCount];
+		Arrays.fill(remap, -1);
+		
+		int[] kept = new int[vertexCount];
+		int count = 0;
+		
+		for (int i = 0; i < indices.length; i++)
+		{
+			int v = indices[i];
+			
+			if(remap[v] < 0)
+			{
+				kept[count] = v;
+				remap[v] = count++;
+			}
+			
+			indices[i] = remap[v];
+		}
+		
+		keepVertices(kept, count);
+	}
+	
+	// Vertex i of the new arrays is vertex kept[i] of the old ones
+	private void keepVertices(int[] kept, int count)
+	{
+		float[] keptVertices = new float[count * 3];
+		float[] keptNormals = new float[count * 3];
+		float[] keptUV = new float[count * 2];
+		
+		for (int i = 0; i < count; i++)
+		{
+			int v = kept[i];
+			System.arraycopy(vertices, v * 3, keptVertices, i * 3, 3);
+			System.arraycopy(normals, v * 3, keptNormals, i * 3, 3);
+			System.arraycopy(uv, v * 2, keptUV, i * 2, 2);
+		}
+		
+		vertices = keptVertices;
+		normals = keptNormals;
+		uv = keptUV;
+		
+		if(isSkinnedMesh)
+		{
+			float[] keptBoneWeights = new float[count * 4];
+			short[] keptBoneIndices = new short[count * 4];
+			
+			for (int i = 0; i < count; i++)
+			{
+				int v = kept[i];
+				System.arraycopy(boneWeights, v * 4, keptBoneWeights, i * 4, 4);
+				System.arraycopy(boneIndices, v * 4, keptBoneIndices, i * 4, 4);
+			}
+			
+			boneWeights = keptBoneWeights;
+			boneIndices = keptBoneIndices;
+		}
+	}
+	
+	private static boolean isIdentity(int[] kept, int count)
+	{
+		for (int i = 0; i < count; i++)
+		{
+			if(kept[i] != i)
+			{
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	private int hashVertex(int v)
+	{
+		int h = 17;
+		
+		for (int i = v * 3; i < v * 3 + 3; i++)
+		{
+			h = h * 31 + Float.floatToIntBits(vertices[i]);
+			h = h * 31 + Float.floatToIntBits(normals[i]);
+		}
+		
+		h = h * 31 + Float.floatToIntBits(uv[v * 2]);
+		h = h * 31 + Float.floatToIntBits(uv[v * 2 + 1]);
+		
+		// spread the bits, the low ones pick the slot
+		h ^= (h >>> 16);
+		h *= 0x85EBCA6B;
+		h ^= (h >>> 13);
+		
+		return h;
+	}
+	
+	private boolean equalVertex(int a, int b)
+	{
+		for (int i = 0; i < 3; i++)
+		{
+			if(Float.floatToIntBits(vertices[a * 3 + i]) != Float.floatToIntBits(vertices[b * 3 + i]) ||
+					Float.floatToIntBits(normals[a * 3 + i]) != Float.floatToIntBits(normals[b * 3 + i]))
+			{
+				return false;
+			}
+		}
+		
+		for (int i = 0; i < 2; i++)
+		{
+			if(Float.floatToIntBits(uv[a * 2 + i]) != Float.floatToIntBits(uv[b * 2 + i]))
+			{
+				return false;
+			}
+		}
+		
+		if(isSkinnedMesh)
+		{
+			for (int i = 0; i < 4; i++)
+			{
+				if(boneIndices[a * 4 + i] != boneIndices[b * 4 + i] ||
+						Float.floatToIntBits(boneWeights[a * 4 + i]) != Float.floatToIntBits(boneWeights[b * 4 + i]))
+				{
+					return false;
+				}
+			}
+		}
+		
+		return true;
+	}
+	
 	private void loadSkin()
 	{
 		for (int d = 0; d < mesh.getDeformerCount(); d++)
@@ -721,26 +964,161 @@ public class FbxDroid
 		clustersArr = new FbxCluster[clusters.size()];
 		clusters.toArray(clustersArr);
 
-		if(hasAnimation && totalFrame > 0)
+		if(hasAnimation && totalFrame > 0 && keyframePalette && totalFrame <= PaletteTracks.MAX_FRAMES)
+		{
+			createPaletteTracks();
+		}
+		else if(hasAnimation && totalFrame > 0)
 		{
 			matrixPalette = new float[totalFrame][];
-
-			for (int frame = startFrame; frame < endFrame+1; frame++)
-			{
-				int i = frame - startFrame;
-				matrixPalette[i] = new float[clusters.size() * 16];
-				for (int j = 0; j < rootnode.size(); j++)
-				{
-					FbxNode node = rootnode.get(j);
-					recursive(frame, node, new Matrix4());
-				}
-			}
+			bakeMatrixPalette();
 		}
 		
 		// Gen Bone Buffer
 //		boneBuffers = genBonesBuffer(boneWeights, boneIndices);
 	}
 	
+	// Same hierarchy walk as recursive(), flattened parent first and cut to the nodes leading to a cluster
+	private void createPaletteTracks()
+	{
+		ArrayList<FbxNode> nodes = new ArrayList<FbxNode>();
+		ArrayList<Integer> parents = new ArrayList<Integer>();
+		
+		for (int j = 0; j < rootnode.size(); j++)
+		{
+			flatten(rootnode.get(j), -1, nodes, parents);
+		}
+		
+		int count = nodes.size();
+		boolean[] isUsed = new boolean[count];
+		for (int j = count-1; j >= 0; j--)
+		{
+			isUsed[j] |= map.get(nodes.get(j)) != null;
+			
+			if(isUsed[j] && parents.get(j) >= 0)
+			{
+				isUsed[parents.get(j)] = true;
+			}
+		}
+		
+		int[] remap = new int[count];
+		int usedCount = 0;
+		for (int j = 0; j < count; j++)
+		{
+			remap[j] = isUsed[j] ? usedCount++ : -1;
+		}
+		
+		int[] nodeParents = new int[usedCount];
+		int[] nodeSlots = new int[usedCount];
+		for (int j = 0; j < count; j++)
+		{
+			if(isUsed[j])
+			{
+				int parent = parents.get(j);
+				Integer slot = map.get(nodes.get(j));
+				
+				nodeParents[remap[j]] = (parent < 0) ? -1 : remap[parent];
+				nodeSlots[remap[j]] = (slot == null) ? -1 : slot;
+			}
+		}
+		
+		float[] bindPoses = new float[clustersArr.length * 16];
+		for (int j = 0; j < clustersArr.length; j++)
+		{
+			float[] transform = clustersArr[j].getTransform();
+			
+			if(transform != null)
+			{
+				System.arraycopy(transform, 0, bindPoses, j * 16, 16);
+			}
+			else
+			{
+				bindPoses[j*16] = bindPoses[j*16+5] = bindPoses[j*16+10] = bindPoses[j*16+15] = 1;
+			}
+		}
+		
+		paletteTracks = new PaletteTracks(totalFrame, nodeParents, nodeSlots, bindPoses);
+		
+		for (int j = 0; j < count; j++)
+		{
+			if(isUsed[j])
+			{
+				setTracks(remap[j], nodes.get(j));
+			}
+		}
+		
+		paletteTracks.trimToSize();
+		
+		if(quantizePalette)
+		{
+			paletteTracks.quantize(PaletteTracks.QUANTIZE_ERROR);
+		}
+	}
+	
+	private static void flatten(FbxNode node, int parent, ArrayList<FbxNode> nodes, ArrayList<Integer> parents)
+	{
+		int index = nodes.size();
+		nodes.add(node);
+		parents.add(parent);
+		
+		for (int j = 0; j < node.getChildCount(); j++)
+		{
+			flatten(node.getChild(j), index, nodes, parents);
+		}
+	}
+	
+	// Samples the node's curves over the animation, a missing curve keeps the identity
+	private void setTracks(int trackNode, FbxNode node)
+	{
+		FbxAnimCurveNode curveT = node.getAnimCurveNodeT();
+		FbxAnimCurveNode curveR = node.getAnimCurveNodeR();
+		FbxAnimCurveNode curveS = node.getAnimCurveNodeS();
+		
+		if(curveT != null)
+		{
+			float[] samples = new float[totalFrame * 3];
+			curveT.getValues(samples, startFrame, totalFrame);
+			paletteTracks.setTrack(trackNode, PaletteTracks.TRANSLATION, samples);
+		}
+		
+		if(curveR != null)
+		{
+			float[] degrees = new float[totalFrame * 3];
+			curveR.getValues(degrees, startFrame, totalFrame);
+			
+			float[] samples = new float[totalFrame * 4];
+			for (int i = 0; i < totalFrame; i++)
+			{
+				eulerToQuaternion(degrees, i * 3, samples, i * 4);
+			}
+			paletteTracks.setTrack(trackNode, PaletteTracks.ROTATION, samples);
+		}
+		
+		if(curveS != null)
+		{
+			float[] samples = new float[totalFrame * 3];
+			curveS.getValues(samples, startFrame, totalFrame);
+			paletteTracks.setTrack(trackNode, PaletteTracks.SCALE, samples);
+		}
+	}
+	
+	// Rz * Ry * Rx of Matrix4.createRotationX/Y/Z as a quaternion (x, y, z, w)
+	private static void eulerToQuaternion(float[] degrees, int degreesOffset, float[] q, int offset)
+	{
+		double hx = degrees[degreesOffset] * 0.0174533f * 0.5;
+		double hy = degrees[degreesOffset+1] * 0.0174533f * 0.5;
+		double hz = degrees[degreesOffset+2] * 0.0174533f * 0.5;
+		
+		double cx = Math.cos(hx), sx = Math.sin(hx);
+		double cy = Math.cos(hy), sy = Math.sin(hy);
+		double cz = Math.cos(hz), sz = Math.sin(hz);
+		
+		q[offset] = (float) (cz*cy*sx - sz*cx*sy);
+		q[offset+1] = (float) (cz*cx*sy + sz*cy*sx);
+		q[offset+2] = (float) (sz*cx*cy - cz*sx*sy);
+		q[offset+3] = (float) (cz*cx*cy + sz*sx*sy);
+	}
+	
 	private FbxNode findRootBone(FbxNode node)
 	{
 		FbxNode parent = node.getParent();
@@ -753,85 +1131,195 @@ public class FbxDroid
 		return node;
 	}
 	
-	private static Matrix4 AbsoluteTransform = new Matrix4();
-//	private static Matrix4 Transform = new Matrix4();
-	private static Matrix4 TRS = new Matrix4();
-	private static float[] T = new float[3];
-	private static float[] R = new float[3];
-	private static float[] S = new float[3];
-	
-	private static Matrix4 rx = new Matrix4();
-	private static Matrix4 ry = new Matrix4();
-	private static Matrix4 rz = new Matrix4();
-	private static Matrix4 rzy = new Matrix4();
-	
-	private static Matrix4 translation = new Matrix4();
-	private static Matrix4 rotation = new Matrix4();
-	private static Matrix4 scaling = new Matrix4();
-	
-	private static Matrix4 TR = new Matrix4();
-	private static Matrix4 clusterTransform = new Matrix4();
-	private static float[] temp = new float[16];
+	// Bakes the frames [from, to) of the matrix palette
+	private void bakeMatrixPalette(int from, int to)
+	{
+		Baker baker = new Baker();
+		
+		for (int frame = from; frame < to; frame++)
+		{
+			matrixPalette[frame - startFrame] = new float[clustersArr.length * 16];
+			for (int j = 0; j < rootnode.size(); j++)
+			{
+				FbxNode node = rootnode.get(j);
+				recursive(baker, frame, node, baker.identity, 0);
+			}
+		}
+	}
 	
-	private void recursive(int frame, FbxNode node, Matrix4 parentWorld)
+	// Splits the frames in one contiguous run per worker, the calling thread takes the first one
+	private void bakeMatrixPalette()
 	{
-		Integer i = map.get(node);
-
-		if((node.getAnimCurveNodeT() == null))
+		int workers = Math.min(THREADS, totalFrame / MIN_BAKE_FRAMES);
+		
+		if(!parallelPalette || workers < 2)
 		{
-			translation.setIdentity();
+			bakeMatrixPalette(startFrame, endFrame+1);
+			return;
 		}
-		else
+		
+		ExecutorService executor = getBakePool();
+		
+		Future<?>[] futures = new Future<?>[workers];
+		for (int k = 1; k < workers; k++)
 		{
-			node.getAnimCurveNodeT().getValue(T, frame);
-			translation.setTranslation(T[0], T[1], T[2]);
+			final int from = startFrame + (int) ((long) totalFrame * k / workers);
+			final int to = startFrame + (int) ((long) totalFrame * (k+1) / workers);
+			
+			futures[k] = executor.submit(new Runnable()
+			{
+				public void run()
+				{
+					bakeMatrixPalette(from, to);
+				}
+			});
 		}
 		
-		if((node.getAnimCurveNodeR() == null))
+		bakeMatrixPalette(startFrame, startFrame + totalFrame / workers);
+		
+		try
 		{
-			rotation.setIdentity();
+			for (int k = 1; k < workers; k++)
+			{
+				futures[k].get();
+			}
 		}
-		else
+		catch (InterruptedException e)
 		{
-			node.getAnimCurveNodeR().getValue(R, frame);
-			Matrix4.createRotationX(rx, R[0]);
-			Matrix4.createRotationY(ry, R[1]);
-			Matrix4.createRotationZ(rz, R[2]);
-			
-			Matrix4.multiply(rzy, rz, ry);
-			Matrix4.multiply(rotation, rzy, rx);
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("palette baking interrupted");
+		}
+		catch (ExecutionException e)
+		{
+			throw new RuntimeException("palette baking failed : " + e.getCause());
+		}
+	}
+	
+	private static synchronized ExecutorService getBakePool()
+	{
+		if(bakePool == null)
+		{
+			bakePool = Executors.newFixedThreadPool(THREADS, new ThreadFactory()
+			{
+				private int id = 0;
+				
+				public synchronized Thread newThread(Runnable r)
+				{
+					Thread thread = new Thread(r, "PaletteBaker-" + (id++));
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
 		}
 		
-		if((node.getAnimCurveNodeS() == null))
+		return bakePool;
+	}
+	
+	// Scratch state of one baking thread, with a world matrix per depth of the hierarchy
+	private static final class Baker
+	{
+		private final Matrix4 identity = new Matrix4();
+		private final Matrix4 TRS = new Matrix4();
+		private final float[] T = new float[3];
+		private final float[] R = new float[3];
+		private final float[] S = new float[3];
+		
+		private final Matrix4 rx = new Matrix4();
+		private final Matrix4 ry = new Matrix4();
+		private final Matrix4 rz = new Matrix4();
+		private final Matrix4 rzy = new Matrix4();
+		
+		private final Matrix4 translation = new Matrix4();
+		private final Matrix4 rotation = new Matrix4();
+		private final Matrix4 scaling = new Matrix4();
+		
+		private final Matrix4 TR = new Matrix4();
+		private final Matrix4 clusterTransform = new Matrix4();
+		private final Matrix4 transform = new Matrix4();
+		private final float[] temp = new float[16];
+		
+		private Matrix4[] worlds = new Matrix4[0];
+		
+		private Matrix4 getWorld(int depth)
 		{
-			scaling.setIdentity();
+			if(depth >= worlds.length)
+			{
+				Matrix4[] grown = Arrays.copyOf(worlds, depth + 8);
+				for (int i = worlds.length; i < grown.length; i++)
+				{
+					grown[i] = new Matrix4();
+				}
+				worlds = grown;
+			}
+			
+			return worlds[depth];
 		}
-		else
+		
+		// Local transform of the node at frame into TRS
+		private void setTRS(FbxNode node, int frame)
 		{
-			node.getAnimCurveNodeS().getValue(S, frame);
-			Matrix4.createScale(scaling, S[0], S[1], S[2]);
+			if((node.getAnimCurveNodeT() == null))
+			{
+				translation.setIdentity();
+			}
+			else
+			{
+				node.getAnimCurveNodeT().getValue(T, frame);
+				translation.setTranslation(T[0], T[1], T[2]);
+			}
+			
+			if((node.getAnimCurveNodeR() == null))
+			{
+				rotation.setIdentity();
+			}
+			else
+			{
+				node.getAnimCurveNodeR().getValue(R, frame);
+				Matrix4.createRotationX(rx, R[0]);
+				Matrix4.createRotationY(ry, R[1]);
+				Matrix4.createRotationZ(rz, R[2]);
+				
+				Matrix4.multiply(rzy, rz, ry);
+				Matrix4.multiply(rotation, rzy, rx);
+			}
+			
+			if((node.getAnimCurveNodeS() == null))
+			{
+				scaling.setIdentity();
+			}
+			else
+			{
+				node.getAnimCurveNodeS().getValue(S, frame);
+				Matrix4.createScale(scaling, S[0], S[1], S[2]);
+			}
+			
+			Matrix4.multiply(TR, translation, rotation);
+			Matrix4.multiply(TRS, TR, scaling);
 		}
-
-		Matrix4.multiply(TR, translation, rotation);
-		Matrix4.multiply(TRS, TR, scaling);
+	}
+	
+	private void recursive(Baker baker, int frame, FbxNode node, Matrix4 parentWorld, int depth)
+	{
+		Integer i = map.get(node);
+		
+		baker.setTRS(node, frame);
+		
+		Matrix4 absoluteTransform = baker.getWorld(depth);
+		Matrix4.multiply(absoluteTransform, parentWorld, baker.TRS);
 		
-//		Matrix4.createTRS_ZYX(TRS, T[0], T[1], T[2], R[0], R[1], R[2], S[0], S[1], S[2]);
-		Matrix4.multiply(AbsoluteTransform, parentWorld, TRS);
-
 		if(i != null)
 		{
-			clusterTransform.set(clustersArr[i].getTransform());
+			baker.clusterTransform.set(clustersArr[i].getTransform());
 			
-			Matrix4 Transform = new Matrix4();
-			Matrix4.multiply(Transform, AbsoluteTransform, clusterTransform);
+			Matrix4.multiply(baker.transform, absoluteTransform, baker.clusterTransform);
 			
-			Transform.copyTo(temp);
-			System.arraycopy(temp, 0, matrixPalette[(frame - startFrame)], i * 16, 16);
+			baker.transform.copyTo(baker.temp);
+			System.arraycopy(baker.temp, 0, matrixPalette[(frame - startFrame)], i * 16, 16);
 		}
 		
 		for (int j = 0; j < node.getChildCount(); j++)
 		{
-			recursive(frame, node.getChild(j), new Matrix4(AbsoluteTransform));
+			recursive(baker, frame, node.getChild(j), absoluteTransform, depth+1);
 		}
 	}
 	
@@ -875,6 +1363,11 @@ public class FbxDroid
 		return matrixPalette;
 	}
 	
+	public PaletteTracks getPaletteTracks()
+	{
+		return paletteTracks;
+	}
+	
 	public int getNormalOffset()
 	{
 		return vertices.length * 4;
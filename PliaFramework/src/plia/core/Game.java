@@ -3,6 +3,7 @@ package plia.core;
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
+import plia.core.event.OnModelLoadListener;
 import plia.core.event.TouchEvent;
 import plia.core.scene.Button;
 import plia.core.scene.Camera;
@@ -192,6 +193,8 @@ public abstract class Game extends Activity implements IFramework
 			
 			this.touchEventManager.destroy();
 			this.animationPlayer.destroy();
+			SkinningCache.getInstance().destroy();
+			RenderState.getInstance().destroy();
 			
 			this.animationPlayer = null;
 			this.gameObjectManager = null;
@@ -259,6 +262,8 @@ public abstract class Game extends Activity implements IFramework
 					GLES20.glClearColor(0.3f, 0.6f, 0.9f, 1);
 					GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
 					
+					RenderState.getInstance().nextFrame();
+					
 					update();
 					
 					draw();
@@ -282,7 +287,9 @@ public abstract class Game extends Activity implements IFramework
 
 		public void onSurfaceCreated(GL10 gl, EGLConfig config)
 		{
-
+			// new context, nothing set through the cache is there anymore
+			RenderState.getInstance().invalidate();
+			Scene.onSurfaceCreated();
 		}
 		
 	}
@@ -346,6 +353,11 @@ public abstract class Game extends Activity implements IFramework
 		return GameObjectManager.loadModel(fbx_path);
 	}
 	
+	public static final AsyncModel modelAsync(String fbx_path, OnModelLoadListener listener)
+	{
+		return GameObjectManager.loadModelAsync(fbx_path, listener);
+	}
+	
 	public static final Terrain terrain(String heightmapSrc, int maxHeight, int scale)
 	{
 		return GameObjectManager.createTerrain(heightmapSrc, maxHeight, scale);
@@ -582,6 +594,12 @@ public abstract class Game extends Activity implements IFramework
 		return GameObjectManager.loadTexture2D(path);
 	}
 	
+	// sprites of these images drawn from shared 1024x1024 pages
+	public static final Texture2D[] atlas(String... paths)
+	{
+		return GameObjectManager.packTextures(1024, paths);
+	}
+	
 	public static final Texture2D text(String text, float textSize, int textColor)
 	{
 		return GameObjectManager.createText(text, textSize, textColor);
@@ -8,7 +8,12 @@ import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import android.content.Context;
 import android.graphics.Bitmap;
@@ -22,6 +27,7 @@ import android.opengl.GLUtils;
 import android.opengl.Matrix;
 import android.util.Log;
 //import plia.framework.scene.obj3d.shading.Color4;
+import plia.core.event.OnModelLoadListener;
 import plia.core.scene.Button;
 import plia.core.scene.DisplacementTerrain;
 import plia.core.scene.Group;
@@ -30,11 +36,15 @@ import plia.core.scene.Sprite;
 import plia.core.scene.StaticTerrain;
 import plia.core.scene.Terrain;
 import plia.core.scene.animation.Animation;
+import plia.core.scene.geometry.Mesh;
 import plia.core.scene.geometry.Plane;
 import plia.core.scene.geometry.Quad;
+import plia.core.scene.geometry.SkinnedMesh;
+import plia.core.scene.shading.Material;
 import plia.core.scene.shading.Shader;
 import plia.core.scene.shading.ShaderProgram;
 import plia.core.scene.shading.Texture2D;
+import plia.core.scene.shading.TextureAtlasPacker;
 
 public class GameObjectManager
 {
@@ -45,6 +55,13 @@ public class GameObjectManager
 	private HashMap<String, Bitmap> bitmapList = new HashMap<String, Bitmap>();
 	private HashMap<String, ScenePrefab> scenePrefabs = new HashMap<String, ScenePrefab>();
 	
+	// loadModelAsync, only touched on the render thread
+	private HashMap<String, PrefabLoad> prefabLoads = new HashMap<String, PrefabLoad>();
+	private ArrayList<PrefabLoad> pendingLoads = new ArrayList<PrefabLoad>();
+	private ArrayList<AsyncModel> asyncModels = new ArrayList<AsyncModel>();
+	
+	private static ExecutorService loaderPool;
+	
 	private ArrayList<Terrain> terrains = new ArrayList<Terrain>();
 	
 	private ArrayList<Terrain> getNormalQueue = new ArrayList<Terrain>();
@@ -55,6 +72,8 @@ public class GameObjectManager
 	
 	private int[] terrainBuffers = new int[2];
 	
+	private int atlasCount = 0;
+	
 	private boolean isInitialized = false;
 	
 	private boolean isUpdateState = false;
@@ -116,7 +135,7 @@ public class GameObjectManager
 			GLES20.glGenTextures(1, tex, 0);
 			
 			// generate color texture
-			GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, tex[0]);
+			RenderState.getInstance().bindTexture(GLES20.GL_TEXTURE_2D, tex[0]);
 
 			// parameters
 			GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
@@ -127,7 +146,7 @@ public class GameObjectManager
 			GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
 			GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
 			
-			GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+			RenderState.getInstance().bindTexture(GLES20.GL_TEXTURE_2D, 0);
 			
 			if(texturesList.containsKey(key))
 			{
@@ -156,7 +175,7 @@ public class GameObjectManager
 			GLES20.glGenTextures(1, tex, 0);
 			
 			// generate color texture
-			GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, tex[0]);
+			RenderState.getInstance().bindTexture(GLES20.GL_TEXTURE_2D, tex[0]);
 
 			// parameters
 			GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
@@ -167,10 +186,15 @@ public class GameObjectManager
 			GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
 			GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
 			
-			GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+			RenderState.getInstance().bindTexture(GLES20.GL_TEXTURE_2D, 0);
 			
 			texture.setTextureBuffer(tex[0]);
 		}
+		
+		if(!pendingLoads.isEmpty())
+		{
+			updatePrefabLoads();
+		}
 	}
 	
 	public void destroy()
@@ -194,6 +218,10 @@ public class GameObjectManager
 		}
 		
 		scenePrefabs.clear();
+		
+		prefabLoads.clear();
+		pendingLoads.clear();
+		asyncModels.clear();
 
 //		for (Bitmap bitmap : bitmapList.values())
 //		{
@@ -272,15 +300,27 @@ public class GameObjectManager
 	}
 	
 	public static Texture2D loadTexture2DWithFileName(String filename)
+	{
+		String path = instance.findAssetFileName(filename);
+		
+		if(path != null)
+		{
+			return loadTexture2D(path);
+		}
+		
+		return null;
+	}
+	
+	private String findAssetFileName(String filename)
 	{
 		if(filename != null && !filename.isEmpty())
 		{
-			for (int j = 0; j < instance.assetFileNames.size(); j++)
+			for (int j = 0; j < assetFileNames.size(); j++)
 			{
-				String path = instance.assetFileNames.get(j);
+				String path = assetFileNames.get(j);
 				if(path.contains(filename))
 				{
-					return loadTexture2D(path);
+					return path;
 				}
 			}
 		}
@@ -317,19 +357,31 @@ public class GameObjectManager
 //			
 //			GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
 			
-			String fileName = file;
+			return instance.createTexture2D(file, bitmap);
+		} 
+		catch (IOException e)
+		{
+			Log.e("Error", e.getMessage());
+		}
+		
+		return null;
+	}
+	
+	private Texture2D createTexture2D(String file, Bitmap bitmap)
+	{
+		String fileName = file;
 
-			int indexOfSlash = file.lastIndexOf("\\");
-			
-			if(indexOfSlash > -1)
-			{
-				fileName = file.substring(indexOfSlash+1);
-			}
-			
-			int[] pixels = new int[bitmap.getWidth() * bitmap.getHeight()];
+		int indexOfSlash = file.lastIndexOf("\\");
+		
+		if(indexOfSlash > -1)
+		{
+			fileName = file.substring(indexOfSlash+1);
+		}
+		
+		int[] pixels = new int[bitmap.getWidth() * bitmap.getHeight()];
 //			Color4[] colors = new Color4[bitmap.getWidth() * bitmap.getHeight()];
-			
-			bitmap.getPixels(pixels, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
+		
+		bitmap.getPixels(pixels, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
 
 //			for (int i = 0; i < pixels.length; i++)
 //			{
@@ -339,19 +391,152 @@ public class GameObjectManager
 //				float a = Color.alpha(pixels[i]) / 255f;
 //				colors[i] = new Color4(r, g, b, a);
 //			}
+		
+		Texture2D texture = new Texture2D(fileName, -1, pixels, bitmap.getWidth(), bitmap.getHeight());
+		texturesList.put(file, texture);
+		bitmapList.put(file, bitmap);
+		
+		return texture;
+	}
+	
+	// Packs loaded images (loadTexture2D) into atlas pages of at most size x size, sprites reading
+	// the same page are drawn together. The images keep their own texture for the models using them,
+	// an image bigger than a page is left out.
+	public static Texture2D[] packTextures(int size, String... files)
+	{
+		ArrayList<Texture2D> textures = new ArrayList<Texture2D>();
+		
+		for (int i = 0; i < files.length; i++)
+		{
+			Texture2D texture = loadTexture2D(files[i]);
 			
-			Texture2D texture = new Texture2D(fileName, -1, pixels, bitmap.getWidth(), bitmap.getHeight());
-			instance.texturesList.put(file, texture);
-			instance.bitmapList.put(file, bitmap);
+			if(texture == null || textures.contains(texture))
+			{
+				continue;
+			}
 			
-			return texture;
-		} 
-		catch (IOException e)
+			if(texture.getWidth() + 2 > size || texture.getHeight() + 2 > size)
+			{
+				Log.e("Atlas", files[i]+" does not fit in "+size+"x"+size);
+				continue;
+			}
+			
+			textures.add(texture);
+		}
+		
+		// tallest first packs tighter
+		Collections.sort(textures, new Comparator<Texture2D>()
 		{
-			Log.e("Error", e.getMessage());
+			public int compare(Texture2D a, Texture2D b)
+			{
+				if(a.getHeight() != b.getHeight())
+				{
+					return b.getHeight() - a.getHeight();
+				}
+				return b.getWidth() - a.getWidth();
+			}
+		});
+		
+		ArrayList<Texture2D> pages = new ArrayList<Texture2D>();
+		TextureAtlasPacker packer = new TextureAtlasPacker(size, size);
+		
+		int[] positions = new int[textures.size() * 2];
+		
+		while(!textures.isEmpty())
+		{
+			packer.reset();
+			
+			ArrayList<Texture2D> placed = new ArrayList<Texture2D>();
+			ArrayList<Texture2D> left = new ArrayList<Texture2D>();
+			
+			// a texel of border around each image, so filtering never reads a neighbour
+			for (int i = 0; i < textures.size(); i++)
+			{
+				Texture2D texture = textures.get(i);
+				
+				if(packer.insert(texture.getWidth() + 2, texture.getHeight() + 2))
+				{
+					positions[placed.size() * 2] = packer.getX();
+					positions[placed.size() * 2 + 1] = packer.getY();
+					placed.add(texture);
+				}
+				else
+				{
+					left.add(texture);
+				}
+			}
+			
+			pages.add(instance.createAtlasPage(packer, placed, positions));
+			textures = left;
 		}
 		
-		return null;
+		return pages.toArray(new Texture2D[pages.size()]);
+	}
+	
+	private Texture2D createAtlasPage(TextureAtlasPacker packer, ArrayList<Texture2D> textures, int[] positions)
+	{
+		// power of two around what was used
+		int width = 1;
+		while(width < packer.getUsedWidth())
+		{
+			width <<= 1;
+		}
+		
+		int height = 1;
+		while(height < packer.getUsedHeight())
+		{
+			height <<= 1;
+		}
+		
+		int[] pixels = new int[width * height];
+		
+		for (int i = 0; i < textures.size(); i++)
+		{
+			Texture2D texture = textures.get(i);
+			int[] src = texture.getPixels();
+			int w = texture.getWidth();
+			int h = texture.getHeight();
+			int x = positions[i * 2];
+			int y = positions[i * 2 + 1];
+			
+			// rows -1 and h repeat the edge rows, columns -1 and w the edge columns
+			for (int row = -1; row <= h; row++)
+			{
+				int s = Math.min(Math.max(row, 0), h - 1) * w;
+				int d = (y + 1 + row) * width + x + 1;
+				
+				System.arraycopy(src, s, pixels, d, w);
+				pixels[d - 1] = src[s];
+				pixels[d + w] = src[s + w - 1];
+			}
+		}
+		
+		String key = "atlas"+(atlasCount++);
+		
+		Bitmap bitmap = Bitmap.createBitmap(pixels, width, height, Config.ARGB_8888);
+		Texture2D page = new Texture2D(key, -1, pixels, width, height);
+		
+		// uploaded with the other bitmaps in resume, now when already running
+		texturesList.put(key, page);
+		bitmapList.put(key, bitmap);
+		
+		if(isUpdateState)
+		{
+			page.setTextureBuffer(createTextureBuffer(bitmap));
+		}
+		
+		for (int i = 0; i < textures.size(); i++)
+		{
+			Texture2D texture = textures.get(i);
+			float x = positions[i * 2] + 1;
+			float y = positions[i * 2 + 1] + 1;
+			
+			texture.setAtlas(page, x / width, y / height, (x + texture.getWidth()) / width, (y + texture.getHeight()) / height);
+		}
+		
+		Log.e("Atlas", key+" "+width+"x"+height+", "+textures.size()+" images, "+(int)(packer.getOccupancy() * 100)+"% of "+packer.getWidth()+"x"+packer.getHeight());
+		
+		return page;
 	}
 	
 	public static Terrain createTerrain(String heightmapSrc, int maxHeight, int scale)
@@ -411,7 +596,7 @@ public class GameObjectManager
 			GLES20.glGenTextures(1, tex, 0);
 			
 			// generate color texture
-			GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, tex[0]);
+			RenderState.getInstance().bindTexture(GLES20.GL_TEXTURE_2D, tex[0]);
 
 			// parameters
 			GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
@@ -422,7 +607,7 @@ public class GameObjectManager
 			GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
 			GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
 			
-			GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+			RenderState.getInstance().bindTexture(GLES20.GL_TEXTURE_2D, 0);
 			
 			texture.setTextureBuffer(tex[0]);
 	    }
@@ -439,7 +624,12 @@ public class GameObjectManager
 	{
 		if(!instance.scenePrefabs.containsKey(fbx_path))
 		{
-			ScenePrefab scenePrefab = FbxDroid.importScene(fbx_path, instance.context);
+			ScenePrefab scenePrefab = instance.loadCompiledPrefab(fbx_path, true);
+			
+			if(scenePrefab == null)
+			{
+				scenePrefab = FbxDroid.importScene(fbx_path, instance.context);
+			}
 			
 			if(scenePrefab != null)
 			{
@@ -448,8 +638,275 @@ public class GameObjectManager
 		}
 		//
 		
-		ScenePrefab scenePrefab = instance.scenePrefabs.get(fbx_path);
+		return instantiate(instance.scenePrefabs.get(fbx_path));
+	}
+	
+	public static AsyncModel loadModelAsync(String fbx_path)
+	{
+		return loadModelAsync(fbx_path, null);
+	}
+	
+	// Parsing, mesh / skin processing and texture decoding run on the loader threads,
+	// the GPU upload and the listener run on the render thread in update().
+	// Requests for the same file share one load and one ScenePrefab.
+	public static AsyncModel loadModelAsync(String fbx_path, OnModelLoadListener listener)
+	{
+		PrefabLoad prefabLoad = instance.prefabLoads.get(fbx_path);
+		
+		if(prefabLoad == null)
+		{
+			prefabLoad = instance.new PrefabLoad(fbx_path);
+			instance.prefabLoads.put(fbx_path, prefabLoad);
+			instance.pendingLoads.add(prefabLoad);
+			
+			if(instance.scenePrefabs.containsKey(fbx_path))
+			{
+				prefabLoad.isDone = true;
+			}
+			else
+			{
+				getLoaderPool().execute(prefabLoad);
+			}
+		}
+		
+		AsyncModel asyncModel = new AsyncModel(fbx_path, listener, prefabLoad);
+		prefabLoad.requests.add(asyncModel);
+		instance.asyncModels.add(asyncModel);
 		
+		return asyncModel;
+	}
+	
+	// Of every loadModelAsync request since the last time nothing was loading, 1 when idle
+	public static float getLoadingProgress()
+	{
+		int size = instance.asyncModels.size();
+		
+		if(size == 0)
+		{
+			return 1;
+		}
+		
+		float progress = 0;
+		for (int i = 0; i < size; i++)
+		{
+			progress += instance.asyncModels.get(i).getProgress();
+		}
+		
+		return progress / size;
+	}
+	
+	public static boolean isLoading()
+	{
+		return !instance.pendingLoads.isEmpty();
+	}
+	
+	private void updatePrefabLoads()
+	{
+		for (int i = 0; i < pendingLoads.size(); )
+		{
+			PrefabLoad prefabLoad = pendingLoads.get(i);
+			
+			if(!prefabLoad.isDone)
+			{
+				i++;
+				continue;
+			}
+			
+			pendingLoads.remove(i);
+			prefabLoads.remove(prefabLoad.path);
+			
+			// a loadModel call may have finished the same file first
+			ScenePrefab scenePrefab = scenePrefabs.get(prefabLoad.path);
+			
+			if(scenePrefab == null && prefabLoad.scenePrefab != null)
+			{
+				scenePrefab = prefabLoad.scenePrefab;
+				attachTextures(scenePrefab, prefabLoad.bitmaps);
+				scenePrefab.resume();
+				
+				scenePrefabs.put(prefabLoad.path, scenePrefab);
+			}
+			
+			prefabLoad.scenePrefab = null;
+			prefabLoad.bitmaps = null;
+			prefabLoad.stage = PrefabLoad.STAGES;
+			
+			for (int j = 0; j < prefabLoad.requests.size(); j++)
+			{
+				prefabLoad.requests.get(j).complete((scenePrefab != null) ? instantiate(scenePrefab) : null);
+			}
+		}
+		
+		if(pendingLoads.isEmpty())
+		{
+			asyncModels.clear();
+		}
+	}
+	
+	private void attachTextures(ScenePrefab scenePrefab, Bitmap[] bitmaps)
+	{
+		String[] textureFileNames = scenePrefab.getTextureFileNames();
+		Material[] materials = scenePrefab.getMaterials();
+		
+		for (int i = 0; i < textureFileNames.length; i++)
+		{
+			String path = findAssetFileName(textureFileNames[i]);
+			
+			if(path == null)
+			{
+				continue;
+			}
+			
+			Texture2D texture2d = texturesList.get(path);
+			
+			if(texture2d == null && bitmaps[i] != null)
+			{
+				texture2d = createTexture2D(path, bitmaps[i]);
+				texture2d.setTextureBuffer(createTextureBuffer(bitmaps[i]));
+			}
+			
+			if(texture2d != null)
+			{
+				materials[i].setBaseTexture(texture2d);
+			}
+		}
+	}
+	
+	private static int createTextureBuffer(Bitmap bitmap)
+	{
+		int[] tex = new int[1];
+		
+		GLES20.glGenTextures(1, tex, 0);
+		
+		RenderState.getInstance().bindTexture(GLES20.GL_TEXTURE_2D, tex[0]);
+
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+
+		GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
+		GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
+		
+		RenderState.getInstance().bindTexture(GLES20.GL_TEXTURE_2D, 0);
+		
+		return tex[0];
+	}
+	
+	// Keeps one core for the render thread
+	private static synchronized ExecutorService getLoaderPool()
+	{
+		if(loaderPool == null)
+		{
+			int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+			
+			loaderPool = Executors.newFixedThreadPool(threads, new ThreadFactory()
+			{
+				private int id = 0;
+				
+				public synchronized Thread newThread(Runnable r)
+				{
+					Thread thread = new Thread(r, "ModelLoader-" + (id++));
+					thread.setDaemon(true);
+					thread.setPriority(Thread.NORM_PRIORITY - 1);
+					return thread;
+				}
+			});
+		}
+		
+		return loaderPool;
+	}
+	
+	// One file in flight on a loader thread, shared by every AsyncModel asking for it
+	final class PrefabLoad implements Runnable
+	{
+		static final int STAGES = 4;
+		
+		private final String path;
+		private final ArrayList<AsyncModel> requests = new ArrayList<AsyncModel>();
+		
+		// written by the loader thread, read on the render thread once isDone is set
+		private ScenePrefab scenePrefab;
+		private Bitmap[] bitmaps;
+		
+		private volatile int stage = 0;
+		private volatile boolean isDone = false;
+		
+		PrefabLoad(String path)
+		{
+			this.path = path;
+		}
+		
+		float getProgress()
+		{
+			return stage / (float) STAGES;
+		}
+		
+		public void run()
+		{
+			try
+			{
+				stage = 1;
+				
+				ScenePrefab prefab = loadCompiledPrefab(path, false);
+				
+				if(prefab == null)
+				{
+					prefab = FbxDroid.importScene(path, context, false);
+				}
+				
+				if(prefab != null)
+				{
+					stage = 2;
+					
+					// direct buffers are filled here, resume() only has to upload them
+					NodePrefab[] nodePrefabs = prefab.getNodePrefabs();
+					for (int i = 0; i < nodePrefabs.length; i++)
+					{
+						Mesh mesh = nodePrefabs[i].getMesh();
+						mesh.getVertexBuffer();
+						mesh.getIndexBuffer();
+						
+						if(mesh instanceof SkinnedMesh)
+						{
+							((SkinnedMesh) mesh).getBoneWeightBuffer();
+							((SkinnedMesh) mesh).getBoneIndexBuffer();
+						}
+					}
+					
+					stage = 3;
+					
+					String[] textureFileNames = prefab.getTextureFileNames();
+					Bitmap[] decoded = new Bitmap[textureFileNames.length];
+					
+					for (int i = 0; i < textureFileNames.length; i++)
+					{
+						String file = findAssetFileName(textureFileNames[i]);
+						
+						if(file != null)
+						{
+							decoded[i] = BitmapFactory.decodeStream(context.getAssets().open(file));
+						}
+					}
+					
+					bitmaps = decoded;
+					scenePrefab = prefab;
+				}
+			}
+			catch (Exception e)
+			{
+				Log.e("Error", path + " : " + e);
+				scenePrefab = null;
+			}
+			finally
+			{
+				isDone = true;
+			}
+		}
+	}
+	
+	private static Group instantiate(ScenePrefab scenePrefab)
+	{
 		ArrayList<Model> models = new ArrayList<Model>();
 		Animation animation = scenePrefab.getAnimation();
 		
@@ -494,6 +951,34 @@ public class GameObjectManager
 		return object3d;
 	}
 	
+	// "model/hero.FBX" -> "model/hero.prefab" when it was compiled offline
+	private ScenePrefab loadCompiledPrefab(String path, boolean loadTextures)
+	{
+		String prefabPath = path;
+		
+		if(!path.endsWith(CompiledPrefab.EXTENSION))
+		{
+			int indexOfDot = path.lastIndexOf(".");
+			prefabPath = ((indexOfDot > -1) ? path.substring(0, indexOfDot) : path) + CompiledPrefab.EXTENSION;
+		}
+		
+		if(!assetFileNames.contains(prefabPath))
+		{
+			return null;
+		}
+		
+		try
+		{
+			return CompiledPrefab.read(context.getAssets().open(prefabPath), loadTextures);
+		}
+		catch (IOException e)
+		{
+			Log.e("Error", e.getMessage());
+		}
+		
+		return null;
+	}
+	
 	public static Sprite createSprite()
 	{
 		return new Sprite();
@@ -537,13 +1022,13 @@ public class GameObjectManager
 
 		glGenBuffers(instance.terrainBuffers.length, instance.terrainBuffers, 0);
 		
-		glBindBuffer(GL_ARRAY_BUFFER, instance.terrainBuffers[0]);
+		RenderState.getInstance().bindBuffer(GL_ARRAY_BUFFER, instance.terrainBuffers[0]);
 		glBufferData(GL_ARRAY_BUFFER, fb.capacity() * 4, fb, GL_STATIC_DRAW);
-		glBindBuffer(GL_ARRAY_BUFFER, 0);
+		RenderState.getInstance().bindBuffer(GL_ARRAY_BUFFER, 0);
 		
-		glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, instance.terrainBuffers[1]);
+		RenderState.getInstance().bindBuffer(GL_ELEMENT_ARRAY_BUFFER, instance.terrainBuffers[1]);
 		glBufferData(GL_ELEMENT_ARRAY_BUFFER, ib.capacity() * 4, ib, GL_STATIC_DRAW);
-		glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, 0);
+		RenderState.getInstance().bindBuffer(GL_ELEMENT_ARRAY_BUFFER, 0);
 		
 		Terrain.setTerrainBuffer(instance.terrainBuffers);
 	}
@@ -695,7 +1180,7 @@ public class GameObjectManager
 		glGenTextures(1, renderTextureBuffer, 0);
 
 		// generate color texture
-		glBindTexture(GL_TEXTURE_2D, renderTextureBuffer[0]);
+		RenderState.getInstance().bindTexture(GL_TEXTURE_2D, renderTextureBuffer[0]);
 
 		// parameters
 		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
@@ -740,7 +1225,8 @@ public class GameObjectManager
 		ShaderProgram sprogram = Shader.AMBIENT.getProgram(7);
 		int program = sprogram.getProgramID();
 		
-		glUseProgram(program);
+		RenderState renderState = RenderState.getInstance();
+		renderState.useProgram(program);
 		glUniform1f(glGetUniformLocation(program, "gH"), 0);
 		
 		int vertex_handle = glGetAttribLocation(program, "vertex");
@@ -749,25 +1235,23 @@ public class GameObjectManager
 		int heightmap_handle = glGetUniformLocation(program, "heightmap");
 		int terrainData_handle = glGetUniformLocation(program, "terrainData");
 		
-		glActiveTexture(GL_TEXTURE0);
-		glBindTexture(GL_TEXTURE_2D, terrain.getHeightmap().getTextureBuffer());
+		renderState.activeTexture(GL_TEXTURE0);
+		renderState.bindTexture(GL_TEXTURE_2D, terrain.getHeightmap().getTextureBuffer());
 		glUniform1i(heightmap_handle, 0);
 		
 		glUniform3f(terrainData_handle, height, segment, scale);
 
 		glUniformMatrix4fv(mvp_handle, 1, false, mvp, 0);
 		
-		glBindBuffer(GL_ARRAY_BUFFER, instance.terrainBuffers[0]);
-		glEnableVertexAttribArray(vertex_handle);
+		renderState.bindBuffer(GL_ARRAY_BUFFER, instance.terrainBuffers[0]);
 		glVertexAttribPointer(vertex_handle, 2, GL_FLOAT, false, 0, 0);
+		renderState.setVertexAttribArrays(RenderState.attrib(vertex_handle));
 
-		glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, instance.terrainBuffers[1]);
+		renderState.bindBuffer(GL_ELEMENT_ARRAY_BUFFER, instance.terrainBuffers[1]);
 		glDrawElements(GL_TRIANGLES, Plane.getInstance().getIndicesCount(), GL_UNSIGNED_INT, 0);
 		
-		glBindBuffer(GL_ARRAY_BUFFER, 0);
-		glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, 0);
-		
-		glDisableVertexAttribArray(vertex_handle);
+		renderState.bindBuffer(GL_ARRAY_BUFFER, 0);
+		renderState.bindBuffer(GL_ELEMENT_ARRAY_BUFFER, 0);
 		
 		// Unbind Normal
 		glBindFramebuffer(GL_FRAMEBUFFER, 0);
@@ -781,7 +1265,7 @@ public class GameObjectManager
 		glReadPixels(0, 0, segment, segment, GL_RGBA, GL_UNSIGNED_BYTE, normalmapTextureBuffer);
 		// Unbind Normal
 		glBindFramebuffer(GL_FRAMEBUFFER, 0);
-		glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+		renderState.bindTexture(GLES20.GL_TEXTURE_2D, 0);
 		
 		int[] pixels = new int[normalmapTextureBuffer.capacity()];
 		for (int i = 0; i < normalmapTextureBuffer.capacity(); i++)
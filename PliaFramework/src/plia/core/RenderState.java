@@ -0,0 +1,315 @@
+package plia.core;
+
+import android.opengl.GLES20;
+
+// Last GL state set through the framework : program, array / element buffers, 2D texture per unit,
+// enabled vertex attribute arrays, blend / depth test / cull face switches, cull face and blend function.
+// Calls that would not change it are skipped. GL calls made around it must be followed by invalidate().
+public final class RenderState
+{
+	public static final int MAX_TEXTURE_UNITS = 8;
+
+	// unknown value, the next call is always issued
+	private static final int UNKNOWN = Integer.MIN_VALUE;
+
+	private int program;
+	private int arrayBuffer;
+	private int elementArrayBuffer;
+	private int activeTexture;
+	private final int[] textures = new int[MAX_TEXTURE_UNITS];
+	private int attribArrays;
+	private int attribArraysKnown;
+
+	// 0 disabled, 1 enabled
+	private int blend;
+	private int depthTest;
+	private int cullFace;
+
+	private int cullFaceMode;
+	private int blendSrc;
+	private int blendDst;
+
+	// Stats
+	private int issuedCount;
+	private int skippedCount;
+	private int lastIssuedCount;
+	private int lastSkippedCount;
+
+	private RenderState()
+	{
+		invalidate();
+	}
+
+	// Forgets everything, after a new context or GL calls made around the cache
+	public void invalidate()
+	{
+		program = UNKNOWN;
+		arrayBuffer = UNKNOWN;
+		elementArrayBuffer = UNKNOWN;
+		activeTexture = UNKNOWN;
+
+		for (int i = 0; i < MAX_TEXTURE_UNITS; i++)
+		{
+			textures[i] = UNKNOWN;
+		}
+
+		attribArrays = 0;
+		attribArraysKnown = 0;
+
+		blend = UNKNOWN;
+		depthTest = UNKNOWN;
+		cullFace = UNKNOWN;
+
+		cullFaceMode = UNKNOWN;
+		blendSrc = UNKNOWN;
+		blendDst = UNKNOWN;
+	}
+
+	// Rolls the counters over, called once per frame before drawing
+	public void nextFrame()
+	{
+		lastIssuedCount = issuedCount;
+		lastSkippedCount = skippedCount;
+		issuedCount = 0;
+		skippedCount = 0;
+	}
+
+	public void useProgram(int program)
+	{
+		if(this.program == program)
+		{
+			skippedCount++;
+			return;
+		}
+
+		this.program = program;
+		GLES20.glUseProgram(program);
+		issuedCount++;
+	}
+
+	public void bindBuffer(int target, int buffer)
+	{
+		if(target == GLES20.GL_ARRAY_BUFFER)
+		{
+			if(arrayBuffer == buffer)
+			{
+				skippedCount++;
+				return;
+			}
+
+			arrayBuffer = buffer;
+		}
+		else if(target == GLES20.GL_ELEMENT_ARRAY_BUFFER)
+		{
+			if(elementArrayBuffer == buffer)
+			{
+				skippedCount++;
+				return;
+			}
+
+			elementArrayBuffer = buffer;
+		}
+
+		GLES20.glBindBuffer(target, buffer);
+		issuedCount++;
+	}
+
+	// glDeleteBuffers, GL unbinds a deleted buffer so the cached binding is reset with it
+	public void deleteBuffers(int n, int[] buffers, int offset)
+	{
+		for (int i = offset; i < offset + n; i++)
+		{
+			if(arrayBuffer == buffers[i])
+			{
+				arrayBuffer = 0;
+			}
+
+			if(elementArrayBuffer == buffers[i])
+			{
+				elementArrayBuffer = 0;
+			}
+		}
+
+		GLES20.glDeleteBuffers(n, buffers, offset);
+	}
+
+	// GL_TEXTURE0 + unit
+	public void activeTexture(int texture)
+	{
+		if(activeTexture == texture)
+		{
+			skippedCount++;
+			return;
+		}
+
+		activeTexture = texture;
+		GLES20.glActiveTexture(texture);
+		issuedCount++;
+	}
+
+	public void bindTexture(int target, int texture)
+	{
+		int unit = (activeTexture == UNKNOWN) ? -1 : activeTexture - GLES20.GL_TEXTURE0;
+
+		if(target == GLES20.GL_TEXTURE_2D && unit >= 0 && unit < MAX_TEXTURE_UNITS)
+		{
+			if(textures[unit] == texture)
+			{
+				skippedCount++;
+				return;
+			}
+
+			textures[unit] = texture;
+		}
+
+		GLES20.glBindTexture(target, texture);
+		issuedCount++;
+	}
+
+	// Enables exactly the vertex attribute arrays of the mask (bit n = location n, see attrib()) and disables the others
+	public void setVertexAttribArrays(int mask)
+	{
+		int changed = (attribArrays ^ mask) | ~attribArraysKnown;
+		int used = mask | attribArrays;
+
+		for (int location = 0; location < 32; location++)
+		{
+			int bit = 1 << location;
+
+			if((changed & bit) == 0)
+			{
+				if((mask & bit) != 0)
+				{
+					skippedCount++;
+				}
+
+				continue;
+			}
+
+			// unknown and not wanted : only the locations we used before could be on
+			if((used & bit) == 0)
+			{
+				continue;
+			}
+
+			if((mask & bit) != 0)
+			{
+				GLES20.glEnableVertexAttribArray(location);
+			}
+			else
+			{
+				GLES20.glDisableVertexAttribArray(location);
+			}
+
+			issuedCount++;
+		}
+
+		attribArrays = mask;
+		attribArraysKnown = used | attribArraysKnown;
+	}
+
+	// Mask bit of an attribute location, 0 for a location the program does not have (-1)
+	public static int attrib(int location)
+	{
+		return (location >= 0 && location < 32) ? 1 << location : 0;
+	}
+
+	public void enable(int cap)
+	{
+		setCapability(cap, 1);
+	}
+
+	public void disable(int cap)
+	{
+		setCapability(cap, 0);
+	}
+
+	private void setCapability(int cap, int value)
+	{
+		int current;
+
+		switch (cap)
+		{
+			case GLES20.GL_BLEND: current = blend; blend = value; break;
+			case GLES20.GL_DEPTH_TEST: current = depthTest; depthTest = value; break;
+			case GLES20.GL_CULL_FACE: current = cullFace; cullFace = value; break;
+			default: current = UNKNOWN; break;
+		}
+
+		if(current == value)
+		{
+			skippedCount++;
+			return;
+		}
+
+		if(value == 1)
+		{
+			GLES20.glEnable(cap);
+		}
+		else
+		{
+			GLES20.glDisable(cap);
+		}
+
+		issuedCount++;
+	}
+
+	public void cullFace(int mode)
+	{
+		if(cullFaceMode == mode)
+		{
+			skippedCount++;
+			return;
+		}
+
+		cullFaceMode = mode;
+		GLES20.glCullFace(mode);
+		issuedCount++;
+	}
+
+	public void blendFunc(int src, int dst)
+	{
+		if(blendSrc == src && blendDst == dst)
+		{
+			skippedCount++;
+			return;
+		}
+
+		blendSrc = src;
+		blendDst = dst;
+		GLES20.glBlendFunc(src, dst);
+		issuedCount++;
+	}
+
+	//
+	// Stats
+	//
+
+	// state changes sent to GL during the last frame
+	public int getIssuedCount()
+	{
+		return lastIssuedCount;
+	}
+
+	// state changes dropped during the last frame, GL already had them
+	public int getSkippedCount()
+	{
+		return lastSkippedCount;
+	}
+
+	public void destroy()
+	{
+		instance = null;
+	}
+
+	private static RenderState instance;
+	public static RenderState getInstance()
+	{
+		if(instance == null)
+		{
+			instance = new RenderState();
+		}
+
+		return instance;
+	}
+}
@@ -14,6 +14,7 @@ public class ScenePrefab
 	
 	private NodePrefab[] nodePrefabs;
 	private Material[] materials;
+	private String[] textureFileNames;
 	
 	private Material defaultMaterial = new Material();
 	
@@ -72,6 +73,17 @@ public class ScenePrefab
 		this.materials = materials;
 	}
 	
+	// Diffuse texture file of each material, null when it has none
+	public String[] getTextureFileNames()
+	{
+		return textureFileNames;
+	}
+	
+	public void setTextureFileNames(String[] textureFileNames)
+	{
+		this.textureFileNames = textureFileNames;
+	}
+	
 	public Material getDefaultMaterial()
 	{
 		return defaultMaterial;
@@ -99,6 +111,7 @@ public class ScenePrefab
 		
 		nodePrefabs = null;
 		materials = null;
+		textureFileNames = null;
 		
 		defaultMaterial = null;
 	}
@@ -0,0 +1,232 @@
+package plia.core;
+
+import plia.core.scene.animation.Animation;
+import plia.core.scene.geometry.Mesh;
+
+// Per frame cache of evaluated matrix palettes, keyed by (mesh, clip frames, clip weights) : instances of a
+// model in the same animation state share one evaluation, and the upload of a palette is skipped when the
+// program it goes to already holds it.
+public final class SkinningCache
+{
+	// animation states remembered per frame, the ones past it are evaluated without caching
+	public static final int CAPACITY = 64;
+
+	private static final int TABLE_SIZE = CAPACITY * 2;
+	private static final int MAX_PROGRAMS = 8;
+
+	private boolean enabled = true;
+
+	// open addressing table, an entry is valid for the frame it was stamped with
+	private final Mesh[] meshes = new Mesh[TABLE_SIZE];
+	private final int[] layerCounts = new int[TABLE_SIZE];
+	private final float[] frames = new float[TABLE_SIZE * Animation.MAX_LAYERS];
+	private final float[] weights = new float[TABLE_SIZE * Animation.MAX_LAYERS];
+	private final float[][] palettes = new float[TABLE_SIZE][];
+	private final long[] ids = new long[TABLE_SIZE];
+	private final int[] stamps = new int[TABLE_SIZE];
+	private int entryCount;
+	private int frameStamp = 1;
+
+	private long nextId = 1;
+	private long lastId;
+
+	// palette each program received last in this frame
+	private final int[] programs = new int[MAX_PROGRAMS];
+	private final long[] programPalettes = new long[MAX_PROGRAMS];
+	private int programCount;
+
+	private final float[] layerFrames = new float[Animation.MAX_LAYERS];
+	private final float[] layerWeights = new float[Animation.MAX_LAYERS];
+
+	// Stats
+	private int hitCount;
+	private int missCount;
+	private int uploadCount;
+	private int skippedUploadCount;
+
+	private SkinningCache()
+	{
+
+	}
+
+	// Forgets every palette, called once per frame before drawing
+	public void nextFrame()
+	{
+		frameStamp++;
+		entryCount = 0;
+		programCount = 0;
+	}
+
+	public float[] getPalette(Mesh mesh, Animation animation)
+	{
+		int count = animation.getLayers(layerFrames, layerWeights);
+
+		if(!enabled || entryCount >= CAPACITY)
+		{
+			missCount++;
+			lastId = nextId++;
+			return mesh.getMatrixPalette(layerFrames, layerWeights, count);
+		}
+
+		int hash = System.identityHashCode(mesh) * 31 + count;
+		for (int i = 0; i < count; i++)
+		{
+			hash = hash * 31 + Float.floatToIntBits(layerFrames[i]);
+			hash = hash * 31 + Float.floatToIntBits(layerWeights[i]);
+		}
+
+		int slot = (hash ^ (hash >>> 16)) & (TABLE_SIZE - 1);
+
+		while(stamps[slot] == frameStamp)
+		{
+			if(equalEntry(slot, mesh, count))
+			{
+				hitCount++;
+				lastId = ids[slot];
+				return palettes[slot];
+			}
+
+			slot = (slot + 1) & (TABLE_SIZE - 1);
+		}
+
+		missCount++;
+
+		float[] palette = mesh.getMatrixPalette(layerFrames, layerWeights, count);
+
+		if(palettes[slot] == null || palettes[slot].length != palette.length)
+		{
+			palettes[slot] = new float[palette.length];
+		}
+		System.arraycopy(palette, 0, palettes[slot], 0, palette.length);
+
+		meshes[slot] = mesh;
+		layerCounts[slot] = count;
+		System.arraycopy(layerFrames, 0, frames, slot * Animation.MAX_LAYERS, count);
+		System.arraycopy(layerWeights, 0, weights, slot * Animation.MAX_LAYERS, count);
+		stamps[slot] = frameStamp;
+		ids[slot] = lastId = nextId++;
+		entryCount++;
+
+		return palettes[slot];
+	}
+
+	private boolean equalEntry(int slot, Mesh mesh, int count)
+	{
+		if(meshes[slot] != mesh || layerCounts[slot] != count)
+		{
+			return false;
+		}
+
+		int offset = slot * Animation.MAX_LAYERS;
+		for (int i = 0; i < count; i++)
+		{
+			if(frames[offset + i] != layerFrames[i] || weights[offset + i] != layerWeights[i])
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	// Whether the palette returned by the last getPalette still has to be sent to the program, remembers it was
+	public boolean shouldUpload(int program)
+	{
+		for (int i = 0; i < programCount; i++)
+		{
+			if(programs[i] == program)
+			{
+				if(programPalettes[i] == lastId)
+				{
+					skippedUploadCount++;
+					return false;
+				}
+
+				programPalettes[i] = lastId;
+				uploadCount++;
+				return true;
+			}
+		}
+
+		if(programCount < MAX_PROGRAMS)
+		{
+			programs[programCount] = program;
+			programPalettes[programCount] = lastId;
+			programCount++;
+		}
+
+		uploadCount++;
+		return true;
+	}
+
+	public void setEnabled(boolean enabled)
+	{
+		this.enabled = enabled;
+	}
+
+	public boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	//
+	// Stats
+	//
+
+	public int getHitCount()
+	{
+		return hitCount;
+	}
+
+	public int getMissCount()
+	{
+		return missCount;
+	}
+
+	// hits / lookups, 0 before the first lookup
+	public float getHitRate()
+	{
+		int lookups = hitCount + missCount;
+		return (lookups == 0) ? 0 : hitCount / (float) lookups;
+	}
+
+	public int getUploadCount()
+	{
+		return uploadCount;
+	}
+
+	public int getSkippedUploadCount()
+	{
+		return skippedUploadCount;
+	}
+
+	public void resetStats()
+	{
+		hitCount = 0;
+		missCount = 0;
+		uploadCount = 0;
+		skippedUploadCount = 0;
+	}
+
+	public void destroy()
+	{
+		for (int i = 0; i < TABLE_SIZE; i++)
+		{
+			meshes[i] = null;
+			palettes[i] = null;
+		}
+
+		instance = null;
+	}
+
+	private static SkinningCache instance;
+	public static SkinningCache getInstance()
+	{
+		if(instance == null)
+		{
+			instance = new SkinningCache();
+		}
+
+		return instance;
+	}
+}
@@ -8,6 +8,7 @@ import android.opengl.GLES20;
 
 //import plia.framework.math.Matrix3;
 import plia.core.Game;
+import plia.core.RenderState;
 import plia.core.scene.Collider;
 import plia.core.scene.CurveCollider;
 import plia.core.scene.PlaneCollider;
@@ -44,7 +45,8 @@ public final class Debug
 	{
 		if(Game.enabledDebug)
 		{
-			GLES20.glEnable(GLES20.GL_DEPTH_TEST);
+			RenderState renderState = RenderState.getInstance();
+			renderState.enable(GLES20.GL_DEPTH_TEST);
 			
 			ShaderProgram sprogram = Shader.AMBIENT.getProgram(0);
 			int program = sprogram.getProgramID();
@@ -60,23 +62,22 @@ public final class Debug
 			instance.debugLine.clear();
 			instance.debugLine.put(debugLineVerticesTemp).position(0);
 			
-			GLES20.glUseProgram(program);
+			renderState.useProgram(program);
 			
-			int vh = GLES20.glGetAttribLocation(program, "vertex");
+			int vh = sprogram.get(ShaderProgram.VERTEX_ATTRIBUTE);
 			
-			GLES20.glEnableVertexAttribArray(vh);
+			renderState.bindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
 			GLES20.glVertexAttribPointer(vh, 3, GLES20.GL_FLOAT, false, 0, instance.debugLine);
+			renderState.setVertexAttribArrays(RenderState.attrib(vh));
 			
-			GLES20.glUniform4f(GLES20.glGetUniformLocation(program, "color"), color.r, color.g, color.b, 1);
+			GLES20.glUniform4f(sprogram.get(ShaderProgram.COLOR), color.r, color.g, color.b, 1);
 			
 			float[] mvp = new float[16];
 			Scene.getModelViewProjectionMatrix().copyTo(mvp);
-			GLES20.glUniformMatrix4fv(GLES20.glGetUniformLocation(program, "modelViewProjectionMatrix"), 1, false, mvp, 0);
+			GLES20.glUniformMatrix4fv(sprogram.get(ShaderProgram.MODELVIEW_PROJECTION_MATRIX), 1, false, mvp, 0);
 			
 			GLES20.glLineWidth(1);
 			GLES20.glDrawArrays(GLES20.GL_LINES, 0, 2);
-			
-			GLES20.glDisableVertexAttribArray(vh);
 		}
 	}
 
@@ -170,21 +171,27 @@ public final class Debug
 //		drawLine(new Vector3(eye.x, eye.y, eye.z - 10), pos, new Color3(1, 0, 0));
 		
 		// Draw Wire-Sphere
-		GLES20.glEnable(GLES20.GL_DEPTH_TEST);
+		RenderState renderState = RenderState.getInstance();
+		renderState.enable(GLES20.GL_DEPTH_TEST);
 				
-		int wsphere_program = Shader.AMBIENT.getProgram(5).getProgramID();
-		GLES20.glUseProgram(wsphere_program);
+		ShaderProgram wsphere_shaderProgram = Shader.AMBIENT.getProgram(5);
+		int wsphere_program = wsphere_shaderProgram.getProgramID();
+		renderState.useProgram(wsphere_program);
+		
+		int wsphere_vertex_handle = wsphere_shaderProgram.get(ShaderProgram.VERTEX_ATTRIBUTE);
+		int wsphere_color_handle = wsphere_shaderProgram.get(ShaderProgram.COLOR);
+		int wsphere_mv_handle = wsphere_shaderProgram.get(ShaderProgram.MODELVIEW_MATRIX);
+		int wsphere_p_handle = wsphere_shaderProgram.get(ShaderProgram.PROJECTION_MATRIX);
+		int wsphere_eye = wsphere_shaderProgram.get(ShaderProgram.EYE);
+		int wsphere_position = wsphere_shaderProgram.get(ShaderProgram.POSITION);
+		int wsphere_radius = wsphere_shaderProgram.get(ShaderProgram.RADIUS);
 		
-		int wsphere_vertex_handle = GLES20.glGetAttribLocation(wsphere_program, "vertex");
-		int wsphere_color_handle = GLES20.glGetUniformLocation(wsphere_program, "color");
-		int wsphere_mv_handle = GLES20.glGetUniformLocation(wsphere_program, "modelViewMatrix");
-		int wsphere_p_handle = GLES20.glGetUniformLocation(wsphere_program, "projectionMatrix");
-		int wsphere_eye = GLES20.glGetUniformLocation(wsphere_program, "eye");
-		int wsphere_position = GLES20.glGetUniformLocation(wsphere_program, "position");
-		int wsphere_radius = GLES20.glGetUniformLocation(wsphere_program, "radius");
+		// client side arrays
+		renderState.bindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+		renderState.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
 		
-		GLES20.glEnableVertexAttribArray(wsphere_vertex_handle);
 		GLES20.glVertexAttribPointer(wsphere_vertex_handle, 3, GLES20.GL_FLOAT, false, 0, DebugLineSphere.getVB());
+		renderState.setVertexAttribArrays(RenderState.attrib(wsphere_vertex_handle));
 
 		GLES20.glUniform1f(wsphere_radius, radius);
 		GLES20.glUniform3f(wsphere_eye, eye.x, eye.y, eye.z);
@@ -198,21 +205,20 @@ public final class Debug
 		GLES20.glDrawArrays(GLES20.GL_LINE_LOOP, 0, 64);
 		GLES20.glDrawArrays(GLES20.GL_LINE_LOOP, 64, 64);
 		GLES20.glDrawArrays(GLES20.GL_LINE_LOOP, 128, 64);
-
-		GLES20.glDisableVertexAttribArray(wsphere_vertex_handle);
 		
 		
 		//
-		int esphere_program = Shader.AMBIENT.getProgram(6).getProgramID();
-		GLES20.glUseProgram(esphere_program);
+		ShaderProgram esphere_shaderProgram = Shader.AMBIENT.getProgram(6);
+		int esphere_program = esphere_shaderProgram.getProgramID();
+		renderState.useProgram(esphere_program);
 		
-		int esphere_vertex_handle = GLES20.glGetAttribLocation(esphere_program, "vertex");
-		int esphere_color_handle = GLES20.glGetUniformLocation(esphere_program, "color");
-		int esphere_mv_handle = GLES20.glGetUniformLocation(esphere_program, "modelViewMatrix");
-		int esphere_p_handle = GLES20.glGetUniformLocation(esphere_program, "projectionMatrix");
-		int esphere_eye = GLES20.glGetUniformLocation(esphere_program, "eye");
-		int esphere_position = GLES20.glGetUniformLocation(esphere_program, "position");
-		int esphere_radius = GLES20.glGetUniformLocation(esphere_program, "radius");
+		int esphere_vertex_handle = esphere_shaderProgram.get(ShaderProgram.VERTEX_ATTRIBUTE);
+		int esphere_color_handle = esphere_shaderProgram.get(ShaderProgram.COLOR);
+		int esphere_mv_handle = esphere_shaderProgram.get(ShaderProgram.MODELVIEW_MATRIX);
+		int esphere_p_handle = esphere_shaderProgram.get(ShaderProgram.PROJECTION_MATRIX);
+		int esphere_eye = esphere_shaderProgram.get(ShaderProgram.EYE);
+		int esphere_position = esphere_shaderProgram.get(ShaderProgram.POSITION);
+		int esphere_radius = esphere_shaderProgram.get(ShaderProgram.RADIUS);
 		
 		// Draw Edge-Sphere
 //		GLES20.glEnable(GLES20.GL_DEPTH_TEST);
@@ -229,13 +235,11 @@ public final class Debug
 		GLES20.glUniformMatrix4fv(esphere_mv_handle, 1, false, mv, 0);
 		GLES20.glUniformMatrix4fv(esphere_p_handle, 1, false, p, 0);
 
-		GLES20.glEnableVertexAttribArray(esphere_vertex_handle);
 		GLES20.glVertexAttribPointer(esphere_vertex_handle, 3, GLES20.GL_FLOAT, false, 0, DebugMeshSphere.getVB());
+		renderState.setVertexAttribArrays(RenderState.attrib(esphere_vertex_handle));
 
 		GLES20.glDrawElements(GLES20.GL_TRIANGLES, DebugMeshSphere.getInstance().getIndicesCount(), GLES20.GL_UNSIGNED_INT, DebugMeshSphere.getIB());
 
-		GLES20.glDisableVertexAttribArray(esphere_vertex_handle);
-
 //		GLES20.glDisable(GLES20.GL_BLEND);
 //		GLES20.glEnable(GLES20.GL_DEPTH_TEST);
 	}
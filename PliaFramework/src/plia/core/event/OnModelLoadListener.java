@@ -0,0 +1,9 @@
+package plia.core.event;
+
+import plia.core.scene.Group;
+
+public interface OnModelLoadListener
+{
+	// Called on the render thread, model is null when the file could not be loaded
+	void onModelLoad(String path, Group model);
+}
@@ -0,0 +1,1013 @@
+package plia.core.scene;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import plia.math.Matrix4;
+
+// Dynamic AABB tree of the scene groups, for frustum culling, ray picking and nearest queries.
+// Leaves keep their box fattened : a move inside it only updates the leaf, a move outside it refits the boxes
+// up to the root. Once refits have made the tree twice as loose as its inserts left it, it is rebuilt top down.
+// The scene fills it from Group.onUpdateHierarchy, groups not updated during a scene update are removed.
+//
+// Boxes are (minX, minY, minZ, maxX, maxY, maxZ), frustum planes (a, b, c, d) * 6 with normals pointing inside.
+public final class BoundingVolumeTree
+{
+	// bounds of a group
+	public static final int NONE = 0;
+	public static final int BOX = 1;
+	// drawn whatever the frustum (lights, palette animated meshes), not part of ray / nearest queries
+	public static final int UNBOUNDED = 2;
+
+	private static final int NULL = -1;
+
+	// leaf box margin, relative to its largest extent
+	private static final float FAT_RATIO = 0.1f;
+	private static final float REBUILD_RATIO = 2;
+
+	// nodes, a leaf has no children
+	private float[] boxes = new float[64 * 6];
+	private float[] leafBoxes = new float[64 * 6];
+	private int[] parents = new int[64];
+	private int[] children1 = new int[64];
+	private int[] children2 = new int[64];
+	private Group[] groups = new Group[64];
+	private int[] types = new int[64];
+	private int[] stamps = new int[64];
+	private int[] leafSlots = new int[64];
+	private int nodeCount;
+	private int freeList = NULL;
+	private int root = NULL;
+
+	// every leaf, in and out of the tree
+	private int[] leaves = new int[64];
+	private int leafCount;
+	private int boxCount;
+
+	// sum of the internal node areas, and what inserts alone would have left
+	private float area;
+	private float insertedArea;
+
+	// inserts since the last rebuild, and the boxes it built
+	private int insertCount;
+	private int builtCount;
+
+	private int[] stack = new int[128];
+	private int[] buildItems = new int[64];
+
+	private int frame;
+
+	// static groups inserted, moved or removed, see getStaticChanges()
+	private int staticChanges;
+
+	private static BoundingVolumeTree updating;
+
+	//
+	// Scene update
+	//
+
+	// Groups updated until endUpdate() are tracked by this tree
+	public void beginUpdate()
+	{
+		frame++;
+		updating = this;
+	}
+
+	// Removes the groups the update did not reach (removed, inactive), then rebuilds a loose tree
+	public void endUpdate()
+	{
+		updating = null;
+
+		for (int i = 0; i < leafCount; i++)
+		{
+			int leaf = leaves[i];
+
+			if(stamps[leaf] != frame)
+			{
+				if(groups[leaf].batched)
+				{
+					staticChanges++;
+				}
+
+				remove(groups[leaf]);
+				i--;
+			}
+		}
+
+		optimize();
+	}
+
+	static BoundingVolumeTree getUpdating()
+	{
+		return updating;
+	}
+
+	// Called for every active group in the scene update, changed : its world matrix was recomputed
+	void track(Group group, boolean changed)
+	{
+		int type = group.getBoundsType();
+
+		if((changed || group.tree != this) && (group.batched || (type == BOX && group.isStaticInHierarchy())))
+		{
+			staticChanges++;
+		}
+
+		if(group.tree != this)
+		{
+			if(group.tree != null)
+			{
+				group.tree.remove(group);
+			}
+
+			if(type == NONE)
+			{
+				return;
+			}
+
+			insert(group, type, null);
+		}
+		else if(type != types[group.proxy])
+		{
+			remove(group);
+
+			if(type == NONE)
+			{
+				return;
+			}
+
+			insert(group, type, null);
+		}
+		else if(changed && type == BOX)
+		{
+			int leaf = group.proxy;
+			group.getWorldBounds(leafBoxes, leaf * 6);
+			move(leaf);
+		}
+
+		stamps[group.proxy] = frame;
+	}
+
+	//
+	// Leaves
+	//
+
+	// box : the world box of a BOX group, null to ask the group
+	private void insert(Group group, int type, float[] box)
+	{
+		int leaf = allocateNode();
+		groups[leaf] = group;
+		types[leaf] = type;
+		stamps[leaf] = frame;
+
+		if(leafCount == leaves.length)
+		{
+			leaves = Arrays.copyOf(leaves, leafCount * 2);
+		}
+		leafSlots[leaf] = leafCount;
+		leaves[leafCount++] = leaf;
+
+		group.tree = this;
+		group.proxy = leaf;
+
+		if(type == BOX)
+		{
+			if(box != null)
+			{
+				System.arraycopy(box, 0, leafBoxes, leaf * 6, 6);
+			}
+			else
+			{
+				group.getWorldBounds(leafBoxes, leaf * 6);
+			}
+
+			fatten(leaf);
+
+			float before = area;
+			insertLeaf(leaf);
+			insertedArea += area - before;
+			boxCount++;
+			insertCount++;
+		}
+	}
+
+	public void remove(Group group)
+	{
+		if(group.tree != this)
+		{
+			return;
+		}
+
+		int leaf = group.proxy;
+
+		if(types[leaf] == BOX)
+		{
+			float before = area;
+			removeLeaf(leaf);
+			insertedArea += area - before;
+			boxCount--;
+		}
+
+		int slot = leafSlots[leaf];
+		int last = leaves[--leafCount];
+		leaves[slot] = last;
+		leafSlots[last] = slot;
+
+		group.tree = null;
+		group.proxy = NULL;
+
+		freeNode(leaf);
+	}
+
+	// The leaf box was written, refits when it left the fat box
+	private void move(int leaf)
+	{
+		int o = leaf * 6;
+
+		if(leafBoxes[o] >= boxes[o] && leafBoxes[o + 1] >= boxes[o + 1] && leafBoxes[o + 2] >= boxes[o + 2] &&
+		   leafBoxes[o + 3] <= boxes[o + 3] && leafBoxes[o + 4] <= boxes[o + 4] && leafBoxes[o + 5] <= boxes[o + 5])
+		{
+			return;
+		}
+
+		fatten(leaf);
+		refit(parents[leaf]);
+	}
+
+	private void fatten(int leaf)
+	{
+		int o = leaf * 6;
+		float[] b = leafBoxes;
+
+		float margin = Math.max(b[o + 3] - b[o], Math.max(b[o + 4] - b[o + 1], b[o + 5] - b[o + 2])) * FAT_RATIO;
+
+		boxes[o] = b[o] - margin;
+		boxes[o + 1] = b[o + 1] - margin;
+		boxes[o + 2] = b[o + 2] - margin;
+		boxes[o + 3] = b[o + 3] + margin;
+		boxes[o + 4] = b[o + 4] + margin;
+		boxes[o + 5] = b[o + 5] + margin;
+	}
+
+	// Moves a group to a new world box, on a tree not filled by a scene update
+	public void move(Group group, float[] box)
+	{
+		if(group.tree == this && types[group.proxy] == BOX)
+		{
+			System.arraycopy(box, 0, leafBoxes, group.proxy * 6, 6);
+			move(group.proxy);
+		}
+	}
+
+	// Adds a group with a world box, or UNBOUNDED without one, on a tree not filled by a scene update
+	public void insert(Group group, float[] box)
+	{
+		if(group.tree != null)
+		{
+			group.tree.remove(group);
+		}
+
+		insert(group, (box != null) ? BOX : UNBOUNDED, box);
+	}
+
+	public void clear()
+	{
+		for (int i = 0; i < leafCount; i++)
+		{
+			Group group = groups[leaves[i]];
+			group.tree = null;
+			group.proxy = NULL;
+		}
+
+		Arrays.fill(groups, null);
+		nodeCount = 0;
+		freeList = NULL;
+		root = NULL;
+		leafCount = 0;
+		boxCount = 0;
+		area = 0;
+		insertedArea = 0;
+		insertCount = 0;
+		builtCount = 0;
+	}
+
+	//
+	// Tree
+	//
+
+	private int allocateNode()
+	{
+		int node;
+
+		if(freeList != NULL)
+		{
+			node = freeList;
+			freeList = children1[node];
+		}
+		else
+		{
+			if(nodeCount == parents.length)
+			{
+				int capacity = nodeCount * 2;
+				boxes = Arrays.copyOf(boxes, capacity * 6);
+				leafBoxes = Arrays.copyOf(leafBoxes, capacity * 6);
+				parents = Arrays.copyOf(parents, capacity);
+				children1 = Arrays.copyOf(children1, capacity);
+				children2 = Arrays.copyOf(children2, capacity);
+				groups = Arrays.copyOf(groups, capacity);
+				types = Arrays.copyOf(types, capacity);
+				stamps = Arrays.copyOf(stamps, capacity);
+				leafSlots = Arrays.copyOf(leafSlots, capacity);
+			}
+
+			node = nodeCount++;
+		}
+
+		parents[node] = NULL;
+		children1[node] = NULL;
+		children2[node] = NULL;
+
+		return node;
+	}
+
+	private void freeNode(int node)
+	{
+		groups[node] = null;
+		children1[node] = freeList;
+		freeList = node;
+	}
+
+	private void freeInternal(int node)
+	{
+		area -= area(node);
+		freeNode(node);
+	}
+
+	private boolean isLeaf(int node)
+	{
+		return children1[node] == NULL;
+	}
+
+	// Box2D style : walks down to the sibling with the lowest surface area cost
+	private void insertLeaf(int leaf)
+	{
+		if(root == NULL)
+		{
+			root = leaf;
+			parents[leaf] = NULL;
+			return;
+		}
+
+		int index = root;
+
+		while(!isLeaf(index))
+		{
+			int child1 = children1[index];
+			int child2 = children2[index];
+
+			float nodeArea = area(index);
+			float combinedArea = unionArea(index, leaf);
+
+			float cost = 2 * combinedArea;
+			float inheritance = 2 * (combinedArea - nodeArea);
+
+			float cost1 = unionArea(child1, leaf) + inheritance;
+			if(!isLeaf(child1))
+			{
+				cost1 -= area(child1);
+			}
+
+			float cost2 = unionArea(child2, leaf) + inheritance;
+			if(!isLeaf(child2))
+			{
+				cost2 -= area(child2);
+			}
+
+			if(cost < cost1 && cost < cost2)
+			{
+				break;
+			}
+
+			index = (cost1 < cost2) ? child1 : child2;
+		}
+
+		int sibling = index;
+		int oldParent = parents[sibling];
+		int newParent = allocateNode();
+
+		parents[newParent] = oldParent;
+		children1[newParent] = sibling;
+		children2[newParent] = leaf;
+		parents[sibling] = newParent;
+		parents[leaf] = newParent;
+
+		if(oldParent == NULL)
+		{
+			root = newParent;
+		}
+		else if(children1[oldParent] == sibling)
+		{
+			children1[oldParent] = newParent;
+		}
+		else
+		{
+			children2[oldParent] = newParent;
+		}
+
+		setUnion(newParent, true);
+		refit(oldParent);
+	}
+
+	private void removeLeaf(int leaf)
+	{
+		if(leaf == root)
+		{
+			root = NULL;
+			return;
+		}
+
+		int parent = parents[leaf];
+		int grandParent = parents[parent];
+		int sibling = (children1[parent] == leaf) ? children2[parent] : children1[parent];
+
+		if(grandParent == NULL)
+		{
+			root = sibling;
+			parents[sibling] = NULL;
+			freeInternal(parent);
+			return;
+		}
+
+		if(children1[grandParent] == parent)
+		{
+			children1[grandParent] = sibling;
+		}
+		else
+		{
+			children2[grandParent] = sibling;
+		}
+
+		parents[sibling] = grandParent;
+		freeInternal(parent);
+		refit(grandParent);
+	}
+
+	// Recomputes the boxes from node up, stops at the first one that did not change
+	private void refit(int node)
+	{
+		while(node != NULL)
+		{
+			if(!setUnion(node, false))
+			{
+				break;
+			}
+
+			node = parents[node];
+		}
+	}
+
+	// box of an internal node = union of its children, returns whether it changed
+	private boolean setUnion(int node, boolean created)
+	{
+		float[] b = boxes;
+		int o = node * 6;
+		int c1 = children1[node] * 6;
+		int c2 = children2[node] * 6;
+
+		float x0 = Math.min(b[c1], b[c2]);
+		float y0 = Math.min(b[c1 + 1], b[c2 + 1]);
+		float z0 = Math.min(b[c1 + 2], b[c2 + 2]);
+		float x1 = Math.max(b[c1 + 3], b[c2 + 3]);
+		float y1 = Math.max(b[c1 + 4], b[c2 + 4]);
+		float z1 = Math.max(b[c1 + 5], b[c2 + 5]);
+
+		if(!created && b[o] == x0 && b[o + 1] == y0 && b[o + 2] == z0 && b[o + 3] == x1 && b[o + 4] == y1 && b[o + 5] == z1)
+		{
+			return false;
+		}
+
+		float oldArea = created ? 0 : area(node);
+
+		b[o] = x0;
+		b[o + 1] = y0;
+		b[o + 2] = z0;
+		b[o + 3] = x1;
+		b[o + 4] = y1;
+		b[o + 5] = z1;
+
+		area += area(node) - oldArea;
+
+		return true;
+	}
+
+	// half the surface area
+	private float area(int node)
+	{
+		int o = node * 6;
+		float dx = boxes[o + 3] - boxes[o];
+		float dy = boxes[o + 4] - boxes[o + 1];
+		float dz = boxes[o + 5] - boxes[o + 2];
+
+		return dx * dy + dy * dz + dz * dx;
+	}
+
+	private float unionArea(int a, int b)
+	{
+		int oa = a * 6;
+		int ob = b * 6;
+		float[] x = boxes;
+
+		float dx = Math.max(x[oa + 3], x[ob + 3]) - Math.min(x[oa], x[ob]);
+		float dy = Math.max(x[oa + 4], x[ob + 4]) - Math.min(x[oa + 1], x[ob + 1]);
+		float dz = Math.max(x[oa + 5], x[ob + 5]) - Math.min(x[oa + 2], x[ob + 2]);
+
+		return dx * dy + dy * dz + dz * dx;
+	}
+
+	// Rebuilds the tree when moves made it REBUILD_RATIO times looser than its inserts did, or when it has
+	// more inserted boxes than built ones (one by one inserts are not balanced)
+	public void optimize()
+	{
+		if(boxCount > 2 && (area > insertedArea * REBUILD_RATIO || insertCount > builtCount))
+		{
+			rebuild();
+		}
+	}
+
+	// Top down median split on the longest axis of the leaf centers
+	public void rebuild()
+	{
+		if(buildItems.length < boxCount)
+		{
+			buildItems = new int[parents.length];
+		}
+
+		int count = 0;
+		for (int i = 0; i < leafCount; i++)
+		{
+			int leaf = leaves[i];
+
+			if(types[leaf] == BOX)
+			{
+				buildItems[count++] = leaf;
+				fatten(leaf);
+			}
+		}
+
+		freeInternals(root);
+
+		area = 0;
+		root = (count > 0) ? build(0, count) : NULL;
+
+		if(root != NULL)
+		{
+			parents[root] = NULL;
+		}
+
+		insertedArea = area;
+		insertCount = 0;
+		builtCount = count;
+	}
+
+	private void freeInternals(int node)
+	{
+		if(node == NULL)
+		{
+			return;
+		}
+
+		int top = 0;
+		push(top++, node);
+
+		while(top > 0)
+		{
+			int n = stack[--top];
+
+			if(!isLeaf(n))
+			{
+				push(top++, children1[n]);
+				push(top++, children2[n]);
+				freeNode(n);
+			}
+		}
+	}
+
+	private int build(int start, int end)
+	{
+		if(end - start == 1)
+		{
+			return buildItems[start];
+		}
+
+		float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+		float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+
+		for (int i = start; i < end; i++)
+		{
+			int o = buildItems[i] * 6;
+			float x = boxes[o] + boxes[o + 3];
+			float y = boxes[o + 1] + boxes[o + 4];
+			float z = boxes[o + 2] + boxes[o + 5];
+
+			minX = Math.min(minX, x); maxX = Math.max(maxX, x);
+			minY = Math.min(minY, y); maxY = Math.max(maxY, y);
+			minZ = Math.min(minZ, z); maxZ = Math.max(maxZ, z);
+		}
+
+		int axis = 0;
+		if(maxY - minY > maxX - minX)
+		{
+			axis = 1;
+		}
+		if(maxZ - minZ > Math.max(maxX - minX, maxY - minY))
+		{
+			axis = 2;
+		}
+
+		int mid = (start + end) >>> 1;
+		select(start, end - 1, mid, axis);
+
+		int left = build(start, mid);
+		int right = build(mid, end);
+
+		int node = allocateNode();
+		children1[node] = left;
+		children2[node] = right;
+		parents[left] = node;
+		parents[right] = node;
+		setUnion(node, true);
+
+		return node;
+	}
+
+	private float center(int leaf, int axis)
+	{
+		int o = leaf * 6 + axis;
+		return boxes[o] + boxes[o + 3];
+	}
+
+	// quickselect of the buildItems by center on axis, k ends in its sorted position
+	private void select(int lo, int hi, int k, int axis)
+	{
+		int[] items = buildItems;
+
+		while(lo < hi)
+		{
+			float pivot = center(items[(lo + hi) >>> 1], axis);
+			int i = lo;
+			int j = hi;
+
+			while(i <= j)
+			{
+				while(center(items[i], axis) < pivot) i++;
+				while(center(items[j], axis) > pivot) j--;
+
+				if(i <= j)
+				{
+					int t = items[i];
+					items[i] = items[j];
+					items[j] = t;
+					i++;
+					j--;
+				}
+			}
+
+			if(k <= j)
+			{
+				hi = j;
+			}
+			else if(k >= i)
+			{
+				lo = i;
+			}
+			else
+			{
+				return;
+			}
+		}
+	}
+
+	private void push(int top, int value)
+	{
+		if(top == stack.length)
+		{
+			stack = Arrays.copyOf(stack, top * 2);
+		}
+
+		stack[top] = value;
+	}
+
+	//
+	// Queries
+	//
+
+	// Adds the groups whose box touches the frustum and every UNBOUNDED group, returns how many BOX groups were added
+	public int query(float[] planes, ArrayList<Group> result)
+	{
+		for (int i = 0; i < leafCount; i++)
+		{
+			int leaf = leaves[i];
+
+			if(types[leaf] == UNBOUNDED)
+			{
+				result.add(groups[leaf]);
+			}
+		}
+
+		if(root == NULL)
+		{
+			return 0;
+		}
+
+		int found = 0;
+		int top = 0;
+		push(top++, root);
+		push(top++, 0x3F);
+
+		while(top > 0)
+		{
+			int mask = stack[--top];
+			int node = stack[--top];
+
+			boolean leaf = isLeaf(node);
+			float[] b = leaf ? leafBoxes : boxes;
+			int o = node * 6;
+			int inside = mask;
+			boolean outside = false;
+
+			for (int p = 0; p < 6; p++)
+			{
+				if((mask & (1 << p)) == 0)
+				{
+					continue;
+				}
+
+				int q = p * 4;
+				float a = planes[q], bb = planes[q + 1], c = planes[q + 2], d = planes[q + 3];
+
+				// farthest and nearest corners along the plane normal
+				float far = a * (a > 0 ? b[o + 3] : b[o]) + bb * (bb > 0 ? b[o + 4] : b[o + 1]) + c * (c > 0 ? b[o + 5] : b[o + 2]) + d;
+				if(far < 0)
+				{
+					outside = true;
+					break;
+				}
+
+				float near = a * (a > 0 ? b[o] : b[o + 3]) + bb * (bb > 0 ? b[o + 1] : b[o + 4]) + c * (c > 0 ? b[o + 2] : b[o + 5]) + d;
+				if(near >= 0)
+				{
+					inside &= ~(1 << p);
+				}
+			}
+
+			if(outside)
+			{
+				continue;
+			}
+
+			if(leaf)
+			{
+				result.add(groups[node]);
+				found++;
+			}
+			else if(inside == 0)
+			{
+				found += addSubtree(node, top, result);
+			}
+			else
+			{
+				push(top++, children1[node]);
+				push(top++, inside);
+				push(top++, children2[node]);
+				push(top++, inside);
+			}
+		}
+
+		return found;
+	}
+
+	// every leaf below node, with the stack above base
+	private int addSubtree(int node, int base, ArrayList<Group> result)
+	{
+		int found = 0;
+		int top = base;
+		push(top++, node);
+
+		while(top > base)
+		{
+			int n = stack[--top];
+
+			if(isLeaf(n))
+			{
+				result.add(groups[n]);
+				found++;
+			}
+			else
+			{
+				push(top++, children1[n]);
+				push(top++, children2[n]);
+			}
+		}
+
+		return found;
+	}
+
+	// Nearest group whose box the ray enters within maxDistance, null if none. (dx, dy, dz) does not need to be normalized,
+	// distances are in its length
+	public Group raycast(float ox, float oy, float oz, float dx, float dy, float dz, float maxDistance)
+	{
+		if(root == NULL)
+		{
+			return null;
+		}
+
+		float ix = 1f / dx;
+		float iy = 1f / dy;
+		float iz = 1f / dz;
+
+		float best = maxDistance;
+		Group hit = null;
+
+		int top = 0;
+		push(top++, root);
+
+		while(top > 0)
+		{
+			int node = stack[--top];
+			boolean leaf = isLeaf(node);
+
+			float t = intersect(leaf ? leafBoxes : boxes, node * 6, ox, oy, oz, ix, iy, iz);
+
+			if(t < 0 || t >= best)
+			{
+				continue;
+			}
+
+			if(leaf)
+			{
+				best = t;
+				hit = groups[node];
+			}
+			else
+			{
+				int c1 = children1[node];
+				int c2 = children2[node];
+				float t1 = intersect(isLeaf(c1) ? leafBoxes : boxes, c1 * 6, ox, oy, oz, ix, iy, iz);
+				float t2 = intersect(isLeaf(c2) ? leafBoxes : boxes, c2 * 6, ox, oy, oz, ix, iy, iz);
+
+				// nearer child on top
+				if(t1 <= t2)
+				{
+					push(top++, c2);
+					push(top++, c1);
+				}
+				else
+				{
+					push(top++, c1);
+					push(top++, c2);
+				}
+			}
+		}
+
+		return hit;
+	}
+
+	// slab test : entry distance, 0 from inside, -1 when missed
+	private static float intersect(float[] b, int o, float ox, float oy, float oz, float ix, float iy, float iz)
+	{
+		float tx0 = (b[o] - ox) * ix, tx1 = (b[o + 3] - ox) * ix;
+		float ty0 = (b[o + 1] - oy) * iy, ty1 = (b[o + 4] - oy) * iy;
+		float tz0 = (b[o + 2] - oz) * iz, tz1 = (b[o + 5] - oz) * iz;
+
+		float tmin = Math.max(Math.max(Math.min(tx0, tx1), Math.min(ty0, ty1)), Math.max(Math.min(tz0, tz1), 0));
+		float tmax = Math.min(Math.min(Math.max(tx0, tx1), Math.max(ty0, ty1)), Math.max(tz0, tz1));
+
+		// NaN from a 0 direction on the slab plane is treated as a miss
+		return (tmin <= tmax) ? tmin : -1;
+	}
+
+	// Group whose box is the nearest to the point within maxDistance, null if none
+	public Group nearest(float x, float y, float z, float maxDistance)
+	{
+		if(root == NULL)
+		{
+			return null;
+		}
+
+		float best = maxDistance * maxDistance;
+		Group found = null;
+
+		int top = 0;
+		push(top++, root);
+
+		while(top > 0)
+		{
+			int node = stack[--top];
+			boolean leaf = isLeaf(node);
+
+			float d = distanceSq(leaf ? leafBoxes : boxes, node * 6, x, y, z);
+
+			if(d >= best)
+			{
+				continue;
+			}
+
+			if(leaf)
+			{
+				best = d;
+				found = groups[node];
+			}
+			else
+			{
+				int c1 = children1[node];
+				int c2 = children2[node];
+
+				if(distanceSq(boxes, c1 * 6, x, y, z) <= distanceSq(boxes, c2 * 6, x, y, z))
+				{
+					push(top++, c2);
+					push(top++, c1);
+				}
+				else
+				{
+					push(top++, c1);
+					push(top++, c2);
+				}
+			}
+		}
+
+		return found;
+	}
+
+	private static float distanceSq(float[] b, int o, float x, float y, float z)
+	{
+		float dx = Math.max(Math.max(b[o] - x, x - b[o + 3]), 0);
+		float dy = Math.max(Math.max(b[o + 1] - y, y - b[o + 4]), 0);
+		float dz = Math.max(Math.max(b[o + 2] - z, z - b[o + 5]), 0);
+
+		return dx * dx + dy * dy + dz * dz;
+	}
+
+	//
+	// Frustum
+	//
+
+	// Planes of the clip space box : row 4 +- row 1, 2, 3 of the matrix
+	public static void extractPlanes(Matrix4 m, float[] planes)
+	{
+		setPlane(planes, 0, m.m14 + m.m11, m.m24 + m.m21, m.m34 + m.m31, m.m44 + m.m41);
+		setPlane(planes, 1, m.m14 - m.m11, m.m24 - m.m21, m.m34 - m.m31, m.m44 - m.m41);
+		setPlane(planes, 2, m.m14 + m.m12, m.m24 + m.m22, m.m34 + m.m32, m.m44 + m.m42);
+		setPlane(planes, 3, m.m14 - m.m12, m.m24 - m.m22, m.m34 - m.m32, m.m44 - m.m42);
+		setPlane(planes, 4, m.m14 + m.m13, m.m24 + m.m23, m.m34 + m.m33, m.m44 + m.m43);
+		setPlane(planes, 5, m.m14 - m.m13, m.m24 - m.m23, m.m34 - m.m33, m.m44 - m.m43);
+	}
+
+	private static void setPlane(float[] planes, int plane, float a, float b, float c, float d)
+	{
+		float length = (float) Math.sqrt(a*a + b*b + c*c);
+		int indx = plane * 4;
+
+		planes[indx] = a / length;
+		planes[indx + 1] = b / length;
+		planes[indx + 2] = c / length;
+		planes[indx + 3] = d / length;
+	}
+
+	// Whether a box touches the frustum
+	public static boolean isVisible(float[] planes, float[] box, int offset)
+	{
+		int o = offset;
+
+		for (int q = 0; q < 24; q += 4)
+		{
+			float a = planes[q], b = planes[q + 1], c = planes[q + 2];
+
+			if(a * (a > 0 ? box[o + 3] : box[o]) + b * (b > 0 ? box[o + 4] : box[o + 1]) + c * (c > 0 ? box[o + 5] : box[o + 2]) + planes[q + 3] < 0)
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	//
+	// Stats
+	//
+
+	// tracked groups, with and without box
+	// Count of the static groups that entered, moved or left the scene, the static batches are rebuilt when it changes
+	public int getStaticChanges()
+	{
+		return staticChanges;
+	}
+
+	public int getLeafCount()
+	{
+		return leafCount;
+	}
+
+	public int getBoxCount()
+	{
+		return boxCount;
+	}
+}
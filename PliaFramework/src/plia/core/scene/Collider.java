@@ -34,9 +34,10 @@ public class Collider extends Group
 		}
 		super.onUpdateHierarchy(parentHasChanged);
 		
-		for (Collider collider : colliders)
+		// indexed, an iterator would be allocated every update
+		for (int i = 0; i < colliders.size(); i++)
 		{
-			overlapTesting(collider);
+			overlapTesting(colliders.get(i));
 		}
 	}
 	
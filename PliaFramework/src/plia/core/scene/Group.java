@@ -19,6 +19,16 @@ public class Group extends Node<Group>
 	protected boolean hasChanged = true;
 	
 	Collider collider = null;
+	
+	// leaf of the scene BoundingVolumeTree
+	BoundingVolumeTree tree = null;
+	int proxy = -1;
+	
+	private boolean isStatic = false;
+	private static int staticVersion = 0;
+	
+	// merged into a static batch of the scene, not drawn by itself
+	boolean batched = false;
 
 	public Group()
 	{
@@ -42,6 +52,7 @@ public class Group extends Node<Group>
 		group.world = this.world.clone();
 		group.invParent = this.invParent.clone();
 		group.axisRotation = this.axisRotation.clone();
+		group.isStatic = this.isStatic;
 		
 		if(this.collider != null)
 		{
@@ -117,7 +128,9 @@ public class Group extends Node<Group>
 				AnimationPlayer.getInstance().enqueue(animation);
 			}
 			
-			if(this.hasChanged || parentHasChanged)
+			boolean changed = this.hasChanged || parentHasChanged;
+			
+			if(changed)
 			{
 				if(parent != null)
 				{
@@ -136,6 +149,12 @@ public class Group extends Node<Group>
 				parentHasChanged = true;
 			}
 			
+			BoundingVolumeTree tree = BoundingVolumeTree.getUpdating();
+			if(tree != null)
+			{
+				tree.track(this, changed);
+			}
+			
 			for (int i = 0; i < childCount; i++)
 			{
 				Group child = (Group) children[i];
@@ -143,6 +162,23 @@ public class Group extends Node<Group>
 			}
 		}
 	}
+	
+	// Tracks the group and its children again with their current world matrix, for edits made after the
+	// scene update. Nothing is updated, hasChanged is left for the next update.
+	void retrack(BoundingVolumeTree tree, boolean parentHasChanged)
+	{
+		if(isActive())
+		{
+			boolean changed = this.hasChanged || parentHasChanged;
+			
+			tree.track(this, changed);
+			
+			for (int i = 0; i < childCount; i++)
+			{
+				((Group) children[i]).retrack(tree, changed);
+			}
+		}
+	}
 
 	
 	// Node
@@ -211,6 +247,42 @@ public class Group extends Node<Group>
 		return b;
 	}
 	
+	// A static group and everything under it stays where it is : its models are merged by material into
+	// a few pre-transformed meshes (see StaticBatcher), moving one of them rebuilds the batches
+	public void setStatic(boolean isStatic)
+	{
+		if(this.isStatic != isStatic)
+		{
+			this.isStatic = isStatic;
+			staticVersion++;
+		}
+	}
+	
+	public boolean isStatic()
+	{
+		return isStatic;
+	}
+	
+	// static itself or under a static group
+	final boolean isStaticInHierarchy()
+	{
+		for (Group group = this; group != null; group = group.parent)
+		{
+			if(group.isStatic)
+			{
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	// changes each time a group is made static or not
+	static int getStaticVersion()
+	{
+		return staticVersion;
+	}
+	
 	public Matrix4 getAxisRotation()
 	{
 		return axisRotation;
@@ -219,6 +291,26 @@ public class Group extends Node<Group>
 	public void setAxisRotation(Matrix4 axisRotation)
 	{
 		this.axisRotation = axisRotation;
+		setChanged();
+	}
+	
+	// hasChanged, counted as a scene graph edit
+	protected final void setChanged()
+	{
+		this.hasChanged = true;
+		countEdit();
+	}
+	
+	// BoundingVolumeTree.NONE, BOX or UNBOUNDED, a plain group is not indexed
+	protected int getBoundsType()
+	{
+		return BoundingVolumeTree.NONE;
+	}
+	
+	// World space box (minX, minY, minZ, maxX, maxY, maxZ) of a BOX group
+	protected void getWorldBounds(float[] bounds, int offset)
+	{
+		
 	}
 
 	public Matrix4 getWorldMatrix()
@@ -264,80 +356,80 @@ public class Group extends Node<Group>
 	public void setPosition(Vector3 position)
 	{
 		getWorldMatrix().setTranslation(position);
-		this.hasChanged = true;
+		setChanged();
 	}
 	
 	public void setPosition(float x, float y, float z)
 	{
 		getWorldMatrix().setTranslation(x, y, z);
-		this.hasChanged = true;
+		setChanged();
 	}
 	
 	public void setScale(Vector3 scale)
 	{
 		this.localScaling.set(scale);
-		this.hasChanged = true;
+		setChanged();
 	}
 	
 	public void setScale(float x, float y, float z)
 	{
 		this.localScaling.set(x, y, z);
-		this.hasChanged = true;
+		setChanged();
 	}
 	
 	public void setEulerAngles(Vector3 eulerAngles)
 	{
 		getWorldMatrix().setEulerAngles(eulerAngles.x, eulerAngles.y, eulerAngles.z);
-		this.hasChanged = true;
+		setChanged();
 	}
 	
 	public void setEulerAngles(float x, float y, float z)
 	{
 		getWorldMatrix().setEulerAngles(x, y, z);
-		this.hasChanged = true;
+		setChanged();
 	}
 	
 	public void setRight(Vector3 right)
 	{
 		getWorldMatrix().setRight(right);
-		this.hasChanged = true;
+		setChanged();
 	}
 	
 	public void setRight(float x, float y, float z)
 	{
 		getWorldMatrix().setRight(x, y, z);
-		this.hasChanged = true;
+		setChanged();
 	}
 	
 	public void setForward(Vector3 forward)
 	{
 		getWorldMatrix().setForward(forward);
-		this.hasChanged = true;
+		setChanged();
 	}
 	
 	public void setForward(float x, float y, float z)
 	{
 		getWorldMatrix().setForward(x, y, z);
-		this.hasChanged = true;
+		setChanged();
 	}
 	
 	public void setUp(Vector3 up)
 	{
 		getWorldMatrix().setUp(up);
-		this.hasChanged = true;
+		setChanged();
 	}
 	
 	public void setUp(float x, float y, float z)
 	{
 		getWorldMatrix().setUp(x, y, z);
-		this.hasChanged = true;
+		setChanged();
 	}
 	
 	public void setLookAt(Vector3 target)
 	{
 		Vector3 forward = Vector3.subtract(target, getPosition());
 
-		this.hasChanged = true;
+		setChanged();
 		
 		forward = forward.getNormalized();
 
@@ -347,7 +439,7 @@ public class Group extends Node<Group>
 	public void setLookAt(Group target)
 	{
 		getWorldMatrix().setForward(Vector3.subtract(target.getPosition(), getPosition()));
-		this.hasChanged = true;
+		setChanged();
 	}
 	
 	public void translate(float x, float y, float z)
@@ -372,7 +464,7 @@ public class Group extends Node<Group>
 		world.m43 += (x * world.m13) + (y * world.m23) + (z * world.m33);
 		
 
-		this.hasChanged = true;
+		setChanged();
 	}
 	
 	public void translate(float x, float y, float z, boolean relativeWorld)
@@ -407,7 +499,7 @@ public class Group extends Node<Group>
 			world.m43 += (x * world.m13) + (y * world.m23) + (z * world.m33);
 		}
 		
-		this.hasChanged = true;
+		setChanged();
 	}
 	
 	public void rotate(float x, float y, float z)
@@ -431,7 +523,7 @@ public class Group extends Node<Group>
 		Matrix3 nWorld = Matrix3.multiply(w3, rot);
 
 		getWorldMatrix().set(nWorld);
-		this.hasChanged = true;
+		setChanged();
 	}
 	
 	public void rotate(float x, float y, float z, boolean relativeWorld)
@@ -465,6 +557,6 @@ public class Group extends Node<Group>
 			getWorldMatrix().set(nWorld);
 		}
 		
-		this.hasChanged = true;
+		setChanged();
 	}
 }
@@ -0,0 +1,116 @@
+package plia.core.scene;
+
+import java.util.Arrays;
+
+import plia.core.scene.geometry.Geometry;
+import plia.core.scene.geometry.Mesh;
+import plia.core.scene.shading.Material;
+import plia.core.scene.shading.Shader;
+import plia.core.scene.shading.Texture2D;
+
+// Pseudo instancing, GLES2 has no instanced draw : up to Shader.MAX_INSTANCES opaque models sharing a mesh
+// and a material are drawn at once from copies of the mesh (Mesh.createInstanceBuffers), each copy placed by
+// its own instanceMatrix. Takes a run of the sorted RenderQueue, whose models already share program,
+// texture and mesh buffer, and hands it back as batches of the same mesh and material, front to back.
+final class InstanceBatcher
+{
+	private Model[] run = new Model[64];
+	private int runStart;
+	private int runCount;
+	
+	private final Model[] batch = new Model[Shader.MAX_INSTANCES];
+	private final float[] matrices = new float[Shader.MAX_INSTANCES * 16];
+	
+	// Takes the models [start, end) of the queue
+	public void begin(RenderQueue queue, int start, int end)
+	{
+		runCount = end - start;
+		runStart = 0;
+		
+		if(runCount > run.length)
+		{
+			run = new Model[Math.max(runCount, run.length * 2)];
+		}
+		
+		for (int i = 0; i < runCount; i++)
+		{
+			run[i] = queue.get(start + i);
+		}
+	}
+	
+	// Fills the next batch, returns its model count, 0 once the run is over.
+	// A model that cannot be instanced comes back alone.
+	public int next()
+	{
+		while(runStart < runCount && run[runStart] == null)
+		{
+			runStart++;
+		}
+		
+		if(runStart == runCount)
+		{
+			Arrays.fill(batch, null);
+			return 0;
+		}
+		
+		Model first = run[runStart];
+		run[runStart++] = null;
+		
+		batch[0] = first;
+		int count = 1;
+		
+		if(!isInstanceable(first))
+		{
+			return 1;
+		}
+		
+		Geometry mesh = first.getGeometry();
+		Material material = first.getMaterial();
+		int capacity = getCapacity((Mesh) mesh);
+		
+		for (int i = runStart; i < runCount && count < capacity; i++)
+		{
+			Model model = run[i];
+			
+			if(model != null && model.getGeometry() == mesh && model.getMaterial() == material && !model.hasAnimation())
+			{
+				batch[count++] = model;
+				run[i] = null;
+			}
+		}
+		
+		return count;
+	}
+	
+	public Model get(int i)
+	{
+		return batch[i];
+	}
+	
+	// instanceMatrix uniform of the batch, 16 floats per model
+	public float[] getMatrices()
+	{
+		return matrices;
+	}
+	
+	// Copies of the mesh drawn at once, capped by its vertex count
+	public static int getCapacity(Mesh mesh)
+	{
+		return Math.min(Shader.MAX_INSTANCES, mesh.getMaxInstanceCopies());
+	}
+	
+	// Static opaque meshes : skinned or animated models and alpha (sorted back to front) are drawn one by one
+	public static boolean isInstanceable(Model model)
+	{
+		Geometry geometry = model.getGeometry();
+		
+		if(geometry.getType() != Geometry.MESH || model.hasAnimation())
+		{
+			return false;
+		}
+		
+		Texture2D texture = model.getMaterial().getBaseTexture();
+		
+		return (texture == null || !texture.isEnabledAlpha()) && getCapacity((Mesh) geometry) > 1;
+	}
+}
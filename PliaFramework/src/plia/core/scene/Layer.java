@@ -17,6 +17,7 @@ public final class Layer<T extends Node> extends GameObject
 	public void setActive(boolean active)
 	{
 		super.setActive(active);
+		Node.countEdit();
 		
 		for (int i = 0; i < childCount; i++)
 		{
@@ -82,6 +83,7 @@ public final class Layer<T extends Node> extends GameObject
 			}
 			
 			children[childCount++] = child;
+			Node.countEdit();
 			return true;
 		}
 		return false;
@@ -112,6 +114,7 @@ public final class Layer<T extends Node> extends GameObject
 			
 			children = arr;
 			childCount--;
+			Node.countEdit();
 
 			return true;
 		}
@@ -133,6 +133,13 @@ public class Light extends Group
 		this.intensity = intensity;
 	}
 	
+	// every light reaches the shaders, culled or not
+	@Override
+	protected int getBoundsType()
+	{
+		return BoundingVolumeTree.UNBOUNDED;
+	}
+	
 	public static final int DIRECTIONAL_LIGHT 	= 0;
 	public static final int POINT_LIGHT 		= 1;
 }
@@ -19,4 +19,11 @@ public class MeshTerrain extends Terrain
 	{
 		return terrainModel;
 	}
+	
+	// its models are culled one by one
+	@Override
+	protected int getBoundsType()
+	{
+		return BoundingVolumeTree.UNBOUNDED;
+	}
 }
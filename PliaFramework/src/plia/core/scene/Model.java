@@ -3,6 +3,8 @@ package plia.core.scene;
 import plia.core.GameObject;
 import plia.core.scene.geometry.Geometry;
 import plia.core.scene.shading.Material;
+import plia.math.Matrix4;
+import plia.math.Vector3;
 
 
 public class Model extends Group
@@ -10,6 +12,15 @@ public class Model extends Group
 	private Geometry geometry;
 	private Material material;
 	
+	// Skinned meshes leave their bind pose bounds, their box gets this much bigger around the bind pose center.
+	// Limit : a pose reaching further than 1.5x the bind pose extents (a long reach, a root motion baked
+	// into the bones) can be culled while on screen. They stay BOX leaves, not UNBOUNDED, so that
+	// characters off screen are not skinned and drawn.
+	private static final float SKINNED_BOUNDS_SCALE = 1.5f;
+	
+	private static final Matrix4 tempBoundsWorld = new Matrix4();
+	private static final Matrix4 tempBoundsMatrix = new Matrix4();
+	
 	public Model()
 	{
 		setName("Model");
@@ -46,6 +57,81 @@ public class Model extends Group
 	public void setGeometry(Geometry geometry)
 	{
 		this.geometry = geometry;
+		setChanged();
+	}
+	
+	@Override
+	protected int getBoundsType()
+	{
+		if(geometry == null)
+		{
+			return BoundingVolumeTree.NONE;
+		}
+		
+		// the palette of an animated rigid mesh moves it anywhere,
+		// a skinned mesh keeps a box SKINNED_BOUNDS_SCALE times its bind pose one
+		if(geometry.getType() == Geometry.MESH && hasAnimation)
+		{
+			return BoundingVolumeTree.UNBOUNDED;
+		}
+		
+		return BoundingVolumeTree.BOX;
+	}
+	
+	// Mesh min / max moved by the world * scale * axis rotation matrix the scene draws it with
+	@Override
+	protected void getWorldBounds(float[] bounds, int offset)
+	{
+		Vector3 min = geometry.getMin();
+		Vector3 max = geometry.getMax();
+		
+		float cx = (min.x + max.x) * 0.5f;
+		float cy = (min.y + max.y) * 0.5f;
+		float cz = (min.z + max.z) * 0.5f;
+		
+		float ex = max.x - cx;
+		float ey = max.y - cy;
+		float ez = max.z - cz;
+		
+		if(geometry.getType() == Geometry.SKINNED_MESH)
+		{
+			ex *= SKINNED_BOUNDS_SCALE;
+			ey *= SKINNED_BOUNDS_SCALE;
+			ez *= SKINNED_BOUNDS_SCALE;
+		}
+		
+		Vector3 scale = localScaling;
+		Matrix4 world = tempBoundsWorld;
+		world.set(getWorldMatrix());
+		world.m11 *= scale.x;
+		world.m12 *= scale.y;
+		world.m13 *= scale.z;
+		
+		world.m21 *= scale.x;
+		world.m22 *= scale.y;
+		world.m23 *= scale.z;
+		
+		world.m31 *= scale.x;
+		world.m32 *= scale.y;
+		world.m33 *= scale.z;
+		
+		Matrix4 m = Matrix4.multiply(tempBoundsMatrix, world, getAxisRotation());
+		
+		float x = m.m11 * cx + m.m21 * cy + m.m31 * cz + m.m41;
+		float y = m.m12 * cx + m.m22 * cy + m.m32 * cz + m.m42;
+		float z = m.m13 * cx + m.m23 * cy + m.m33 * cz + m.m43;
+		
+		// extents of the rotated box
+		float wx = Math.abs(m.m11) * ex + Math.abs(m.m21) * ey + Math.abs(m.m31) * ez;
+		float wy = Math.abs(m.m12) * ex + Math.abs(m.m22) * ey + Math.abs(m.m32) * ez;
+		float wz = Math.abs(m.m13) * ex + Math.abs(m.m23) * ey + Math.abs(m.m33) * ez;
+		
+		bounds[offset] = x - wx;
+		bounds[offset + 1] = y - wy;
+		bounds[offset + 2] = z - wz;
+		bounds[offset + 3] = x + wx;
+		bounds[offset + 4] = y + wy;
+		bounds[offset + 5] = z + wz;
 	}
 	
 	public Material getMaterial()
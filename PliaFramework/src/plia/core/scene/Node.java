@@ -12,6 +12,10 @@ class Node<T extends Node> extends GameObject
 	protected boolean hasAnimation = false;
 	protected Animation animation;
 	
+	// scene graph edits (transforms, children, activation, animation), Scene.drawScene
+	// tracks the groups again when some were made after Scene.update
+	private static int editCount = 0;
+	
 	protected Node()
 	{
 		// TODO Auto-generated constructor stub
@@ -58,6 +62,7 @@ class Node<T extends Node> extends GameObject
 	public void setActive(boolean active)
 	{
 		super.setActive(active);
+		editCount++;
 		
 		for (int i = 0; i < childCount; i++)
 		{
@@ -110,6 +115,7 @@ class Node<T extends Node> extends GameObject
 			}
 			
 			children[childCount++] = child;
+			editCount++;
 			return true;
 		}
 		return false;
@@ -140,6 +146,7 @@ class Node<T extends Node> extends GameObject
 			
 			children = arr;
 			childCount--;
+			editCount++;
 
 			return true;
 		}
@@ -167,10 +174,22 @@ class Node<T extends Node> extends GameObject
 	{
 		this.animation = animation;
 		this.hasAnimation = (animation != null);
+		editCount++;
 	}
 	
 	public void setHasAnimation(boolean hasAnimation)
 	{
 		this.hasAnimation = hasAnimation;
+		editCount++;
+	}
+	
+	static void countEdit()
+	{
+		editCount++;
+	}
+	
+	static int getEditCount()
+	{
+		return editCount;
 	}
 }
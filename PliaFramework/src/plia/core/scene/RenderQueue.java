@@ -0,0 +1,158 @@
+package plia.core.scene;
+
+import java.util.Arrays;
+
+// Models of a frame with their 64 bit sort keys, sorted by an LSD radix sort on the unsigned keys.
+//
+// opaque : 0 | program (7) | texture (16) | mesh buffer (16) | depth (24), state first then front to back
+// alpha  : 1 | inverted depth (24) | program (7) | texture (16) | mesh buffer (16), back to front
+final class RenderQueue
+{
+	public static final int DEPTH_BITS = 24;
+	public static final int MAX_DEPTH = (1 << DEPTH_BITS) - 1;
+
+	private static final long ALPHA = 1L << 63;
+
+	private Model[] models = new Model[64];
+	private long[] keys = new long[64];
+	private int[] order = new int[64];
+	private int count;
+
+	// sort scratch
+	private long[] tempKeys = new long[64];
+	private int[] tempOrder = new int[64];
+	private final int[] buckets = new int[256];
+
+	public void add(Model model, long key)
+	{
+		if(count == models.length)
+		{
+			int capacity = count * 2;
+			models = Arrays.copyOf(models, capacity);
+			keys = Arrays.copyOf(keys, capacity);
+			order = new int[capacity];
+			tempKeys = new long[capacity];
+			tempOrder = new int[capacity];
+		}
+
+		models[count] = model;
+		keys[count] = key;
+		count++;
+	}
+
+	public void sort()
+	{
+		for (int i = 0; i < count; i++)
+		{
+			order[i] = i;
+		}
+
+		if(count < 2)
+		{
+			return;
+		}
+
+		long[] srcKeys = keys;
+		int[] srcOrder = order;
+		long[] dstKeys = tempKeys;
+		int[] dstOrder = tempOrder;
+
+		for (int shift = 0; shift < 64; shift += 8)
+		{
+			int[] buckets = this.buckets;
+			Arrays.fill(buckets, 0);
+
+			for (int i = 0; i < count; i++)
+			{
+				buckets[(int) (srcKeys[i] >>> shift) & 0xFF]++;
+			}
+
+			// every key has the same byte here
+			if(buckets[(int) (srcKeys[0] >>> shift) & 0xFF] == count)
+			{
+				continue;
+			}
+
+			int offset = 0;
+			for (int i = 0; i < 256; i++)
+			{
+				int c = buckets[i];
+				buckets[i] = offset;
+				offset += c;
+			}
+
+			for (int i = 0; i < count; i++)
+			{
+				long key = srcKeys[i];
+				int dst = buckets[(int) (key >>> shift) & 0xFF]++;
+				dstKeys[dst] = key;
+				dstOrder[dst] = srcOrder[i];
+			}
+
+			long[] k = srcKeys;
+			srcKeys = dstKeys;
+			dstKeys = k;
+
+			int[] o = srcOrder;
+			srcOrder = dstOrder;
+			dstOrder = o;
+		}
+
+		keys = srcKeys;
+		order = srcOrder;
+		tempKeys = dstKeys;
+		tempOrder = dstOrder;
+	}
+
+	public int size()
+	{
+		return count;
+	}
+
+	// i th model in key order, after sort()
+	public Model get(int i)
+	{
+		return models[order[i]];
+	}
+
+	// End of the run of models from i on sharing its program, texture and mesh buffer, after sort().
+	// Alpha models are kept in depth order, their runs are one model long.
+	public int getStateEnd(int i)
+	{
+		long key = keys[i];
+		
+		if((key & ALPHA) != 0)
+		{
+			return i + 1;
+		}
+		
+		long state = key >>> DEPTH_BITS;
+		int end = i + 1;
+		
+		while(end < count && (keys[end] >>> DEPTH_BITS) == state)
+		{
+			end++;
+		}
+		
+		return end;
+	}
+	
+	public void clear()
+	{
+		Arrays.fill(models, 0, count, null);
+		count = 0;
+	}
+
+	// program : 0 - 127, texture and buffer ids are kept on their low 16 bits, depth : 0 - MAX_DEPTH
+	public static long createKey(boolean alpha, int program, int texture, int buffer, int depth)
+	{
+		long state = ((long) (program & 0x7F) << 32) | ((long) (texture & 0xFFFF) << 16) | (buffer & 0xFFFF);
+
+		if(alpha)
+		{
+			return ALPHA | ((long) (MAX_DEPTH - depth) << 39) | state;
+		}
+
+		return (state << DEPTH_BITS) | depth;
+	}
+}
@@ -1,20 +1,22 @@
 package plia.core.scene;
 
-import java.nio.FloatBuffer;
 import java.util.ArrayList;
 
 import android.opengl.GLES20;
 import android.util.Log;
 
+import plia.core.AsyncModel;
 import plia.core.GameObject;
 import plia.core.GameObjectManager;
+import plia.core.RenderState;
 import plia.core.Screen;
+import plia.core.SkinningCache;
+import plia.core.event.OnModelLoadListener;
 import plia.core.scene.animation.Animation;
 import plia.core.scene.geometry.Dome;
 import plia.core.scene.geometry.Geometry;
 import plia.core.scene.geometry.Mesh;
 import plia.core.scene.geometry.Plane;
-import plia.core.scene.geometry.Quad;
 import plia.core.scene.shading.Color3;
 import plia.core.scene.shading.Color4;
 import plia.core.scene.shading.Material;
@@ -63,10 +65,14 @@ public class Scene extends GameObject
 		{
 			if(isActive())
 			{
+				boundingVolumeTree.beginUpdate();
 				for (int i = 0; i < childCount; i++)
 				{
 					children[i].update();
 				}
+				boundingVolumeTree.endUpdate();
+				trackedEdits = Node.getEditCount();
+				
 				onUpdate();
 			}
 		}
@@ -83,6 +89,8 @@ public class Scene extends GameObject
 		models.clear();
 		terrains.clear();
 		lights.clear();
+		boundingVolumeTree.clear();
+		staticBatcher.clear();
 		
 		sprites = null;
 		models = null;
@@ -140,6 +148,7 @@ public class Scene extends GameObject
 			}
 			
 			children[childCount++] = layer;
+			Node.countEdit();
 			return true;
 		}
 		return false;
@@ -162,6 +171,7 @@ public class Scene extends GameObject
 			
 			children = arr;
 			childCount--;
+			Node.countEdit();
 
 			return true;
 		}
@@ -202,20 +212,60 @@ public class Scene extends GameObject
 
 	private static final Matrix4 tempPalette = new Matrix4();
 	
+	// draw scratch, nothing is allocated per draw
+	private static final Matrix4 tempWorldMatrix = new Matrix4();
+	private static final Matrix4 tempModelMatrix = new Matrix4();
+	private static final Matrix4 tempModelViewMatrix = new Matrix4();
+	private static final Matrix3 tempNormalMatrix = new Matrix3();
+	private static final float[] tempMatrix4 = new float[16];
+	private static final float[] tempMatrix3 = new float[9];
+	
+	// culling : frustum planes (a, b, c, d) * 6 in world space, extracted from modelViewProjectionMatrix
+	private static final float[] frustum = new float[24];
+	private static final float[] tempBounds = new float[6];
+	
 	private static final Vector3 target = new Vector3();
 //	private static final Vector4 lightPos4 = new Vector4();
 	private static final Vector4 lightPosTemp = new Vector4();
 
 	private ArrayList<Sprite> sprites = new ArrayList<Sprite>();
 	private ArrayList<Model> models = new ArrayList<Model>();
+	private final RenderQueue renderQueue = new RenderQueue();
+	private final InstanceBatcher instanceBatcher = new InstanceBatcher();
+	private final StaticBatcher staticBatcher = new StaticBatcher();
+	private final SpriteBatcher spriteBatcher = new SpriteBatcher();
+	private int builtStaticVersion = -1;
+	private int builtContext = -1;
+	private static boolean instancing = true;
+	
+	// Node.getEditCount() when the tree was last filled
+	private int trackedEdits = -1;
 	private ArrayList<Terrain> terrains = new ArrayList<Terrain>();
 	private ArrayList<Light> lights = new ArrayList<Light>();
 	
+	// models, terrains and lights of the layers, filled during update()
+	private final BoundingVolumeTree boundingVolumeTree = new BoundingVolumeTree();
+	private final ArrayList<Group> visibleGroups = new ArrayList<Group>();
+	
+	// Stats of the last drawScene
+	private int culledCount;
+	private int drawnCount;
+	private int instancedCount;
+	private int spriteDrawCount;
+	
 	public static void allocate()
 	{
 		
 	}
 	
+	// GL context the buffers made by scenes belong to
+	private static int context = 0;
+	
+	public static void onSurfaceCreated()
+	{
+		context++;
+	}
+	
 	public static void onSurfaceChanged()
 	{
 		ratio = (float)Screen.getWidth() / Screen.getHeight();
@@ -242,11 +292,42 @@ public class Scene extends GameObject
 		return modelViewProjectionMatrix;
 	}
 
+	// Groups added, moved, removed or (de)activated after update (Scene.onUpdate, Game.onUpdate)
+	// are tracked again, they are drawn from this frame. Their children's world matrices
+	// and the colliders still wait for the next update.
+	private void retrack()
+	{
+		boundingVolumeTree.beginUpdate();
+		for (int i = 0; i < childCount; i++)
+		{
+			Layer layer = children[i];
+			
+			if(layer.isActive())
+			{
+				for (int j = 0; j < layer.getChildCount(); j++)
+				{
+					Node child = layer.getChild(j);
+					if(child instanceof Group)
+					{
+						((Group) child).retrack(boundingVolumeTree, false);
+					}
+				}
+			}
+		}
+		boundingVolumeTree.endUpdate();
+		trackedEdits = Node.getEditCount();
+	}
+	
 	// Draw State
 	public void drawScene()
 	{
 		if(isInited)
 		{
+			if(Node.getEditCount() != trackedEdits)
+			{
+				retrack();
+			}
+			
 //			Log.e("Camera", mainCamera.getRange()+"");
 			
 			if(hasChangedProjection)
@@ -265,17 +346,14 @@ public class Scene extends GameObject
 			}
 			if(hasChangedModelView)
 			{
+				// eye is the translation, forward and up the second and third rows
 				Matrix4 world = mainCamera.getWorldMatrix();
-				Vector3 eye = world.getTranslation();
-				Vector3 forward = world.getForward();
-				
-				target.x = eye.x + (forward.x * 10);
-				target.y = eye.y + (forward.y * 10);
-				target.z = eye.z + (forward.z * 10);
 				
-				Vector3 up = world.getUp();
+				target.x = world.m41 + (world.m21 * 10);
+				target.y = world.m42 + (world.m22 * 10);
+				target.z = world.m43 + (world.m23 * 10);
 				
-				Matrix4.createLookAt(modelViewMatrix, eye, target, up);
+				Matrix4.createLookAt(modelViewMatrix, world.m41, world.m42, world.m43, target.x, target.y, target.z, world.m31, world.m32, world.m33);
 				
 //				Log.e("Camera", "Create ModelView");
 				hasChangedModelView = false;
@@ -283,14 +361,78 @@ public class Scene extends GameObject
 			
 			Matrix4.multiply(modelViewProjectionMatrix, projectionMatrix, modelViewMatrix);
 			
+			BoundingVolumeTree.extractPlanes(modelViewProjectionMatrix, frustum);
+			
 			for (int i = 0; i < getLayerCount(); i++)
 			{
 				recursiveLayer(getLayer(i));
 			}
 			
-			GLES20.glEnable(GLES20.GL_DEPTH_TEST);
-			GLES20.glEnable(GLES20.GL_CULL_FACE);
-			GLES20.glCullFace(GLES20.GL_BACK);
+			// batches of a lost context are built again
+			if(builtContext != context)
+			{
+				staticBatcher.discard();
+				builtStaticVersion = -1;
+				builtContext = context;
+			}
+			
+			// static models entered, moved or left since the batches were built
+			int staticVersion = Group.getStaticVersion() + boundingVolumeTree.getStaticChanges();
+			if(staticVersion != builtStaticVersion)
+			{
+				staticBatcher.build(this);
+				builtStaticVersion = staticVersion;
+			}
+			
+			int visibleCount = boundingVolumeTree.query(frustum, visibleGroups);
+			int meshTerrainCount = 0;
+			for (int i = 0; i < visibleGroups.size(); i++)
+			{
+				Group group = visibleGroups.get(i);
+				
+				if(group instanceof Model)
+				{
+					// drawn by its static batch
+					if(!group.batched)
+					{
+						models.add((Model) group);
+					}
+				}
+				else if(group instanceof Terrain)
+				{
+					terrains.add((Terrain) group);
+					
+					if(group instanceof MeshTerrain)
+					{
+						meshTerrainCount++;
+					}
+				}
+				else if(group instanceof Light)
+				{
+					lights.add((Light) group);
+				}
+			}
+			visibleGroups.clear();
+			
+			for (int i = 0; i < staticBatcher.getBatchCount(); i++)
+			{
+				Model batch = staticBatcher.getBatch(i);
+				
+				if(isVisible(batch))
+				{
+					models.add(batch);
+				}
+			}
+			
+			// a mesh terrain is counted by its models, culled one by one in drawTerrains
+			culledCount = boundingVolumeTree.getBoxCount() - visibleCount;
+			drawnCount = models.size() + terrains.size() - meshTerrainCount;
+			
+			RenderState renderState = RenderState.getInstance();
+			
+			renderState.enable(GLES20.GL_DEPTH_TEST);
+			renderState.enable(GLES20.GL_CULL_FACE);
+			renderState.cullFace(GLES20.GL_BACK);
 			if(mainCamera.getSky() != null)
 			{
 				drawSky(mainCamera.getSky());
@@ -299,29 +441,73 @@ public class Scene extends GameObject
 			
 //			GLES20.glDisable(GLES20.GL_CULL_FACE);
 
-			GLES20.glCullFace(GLES20.GL_FRONT);
+			renderState.cullFace(GLES20.GL_FRONT);
 			drawTerrains();
 
 
 			
-			GLES20.glCullFace(GLES20.GL_BACK);
+			renderState.cullFace(GLES20.GL_BACK);
+			SkinningCache.getInstance().nextFrame();
+			
+			// grouped by program, texture and mesh, opaque front to back then alpha back to front
 			for (int i = 0; i < models.size(); i++)
 			{
-				drawModel(models.get(i));
-				GLES20.glDisable(GLES20.GL_BLEND);
+				Model model = models.get(i);
+				renderQueue.add(model, getSortKey(model));
 			}
+			renderQueue.sort();
+			
+			instancedCount = 0;
+			for (int i = 0; i < renderQueue.size();)
+			{
+				int end = instancing ? renderQueue.getStateEnd(i) : i + 1;
+				
+				if(end - i == 1)
+				{
+					drawModel(renderQueue.get(i++));
+					continue;
+				}
+				
+				// same program, texture and mesh : batches of the same material in one draw
+				instanceBatcher.begin(renderQueue, i, end);
+				
+				int count;
+				while((count = instanceBatcher.next()) > 0)
+				{
+					if(count == 1)
+					{
+						drawModel(instanceBatcher.get(0));
+					}
+					else
+					{
+						drawInstances(instanceBatcher, count);
+						instancedCount += count;
+					}
+				}
+				
+				i = end;
+			}
+			renderQueue.clear();
 
-			GLES20.glDisable(GLES20.GL_DEPTH_TEST);
-			GLES20.glEnable(GLES20.GL_BLEND);
-			GLES20.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+			renderState.disable(GLES20.GL_DEPTH_TEST);
+			renderState.enable(GLES20.GL_BLEND);
+			renderState.blendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
 
-			for (int i = 0; i < sprites.size(); i++)
+			// in list order, one draw per run of sprites on the same texture
+			spriteDrawCount = 0;
+			if(!sprites.isEmpty())
 			{
-				drawSprites(sprites.get(i));
+				spriteBatcher.begin(orthogonalMVP);
+				for (int i = 0; i < sprites.size(); i++)
+				{
+					spriteBatcher.add(sprites.get(i));
+				}
+				spriteBatcher.end();
+				spriteDrawCount = spriteBatcher.getDrawCount();
 			}
 			
-			GLES20.glDisable(GLES20.GL_BLEND);
-			GLES20.glEnable(GLES20.GL_DEPTH_TEST);
+			renderState.disable(GLES20.GL_BLEND);
+			renderState.enable(GLES20.GL_DEPTH_TEST);
 
 			sprites.clear();
 			models.clear();
@@ -344,40 +530,38 @@ public class Scene extends GameObject
 		
 		int program = shaderProgram.getProgramID();
 		
-		GLES20.glUseProgram(program);
+		RenderState renderState = RenderState.getInstance();
+		renderState.useProgram(program);
 		
-		int vh = GLES20.glGetAttribLocation(program, "vertex");
-		int uvh = GLES20.glGetAttribLocation(program, "uv");
+		int vh = shaderProgram.get(ShaderProgram.VERTEX_ATTRIBUTE);
+		int uvh = shaderProgram.get(ShaderProgram.UV_ATTRIBUTE);
 		
 		float sc = mainCamera.getRange() / 2.1f;
 		
-		Vector3 pos = mainCamera.getWorldMatrix().getTranslation();
-		Matrix4 tm = new Matrix4();
-		tm.setTranslation(pos.x, pos.y, 0);
+		Matrix4 camera = mainCamera.getWorldMatrix();
+		Matrix4 tm = tempWorldMatrix;
+		tm.setIdentity();
+		tm.setTranslation(camera.m41, camera.m42, 0);
 		tm.m11 = sc;
 		tm.m22 = sc;
 		tm.m33 = sc;
 		
-		float[] mvpm = new float[16];
-		Matrix4.multiply(modelViewProjectionMatrix, tm).copyTo(mvpm);
-		GLES20.glUniformMatrix4fv(GLES20.glGetUniformLocation(program, "modelViewProjectionMatrix"), 1, false, mvpm, 0);
+		Matrix4.multiply(tempModelViewMatrix, modelViewProjectionMatrix, tm).copyTo(tempMatrix4);
+		GLES20.glUniformMatrix4fv(shaderProgram.get(ShaderProgram.MODELVIEW_PROJECTION_MATRIX), 1, false, tempMatrix4, 0);
 		
-		GLES20.glEnableVertexAttribArray(vh);
-		GLES20.glVertexAttribPointer(vh, 3, GLES20.GL_FLOAT, false, 0, Dome.getVB());
+		// client side arrays
+		renderState.bindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+		renderState.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
 		
-		GLES20.glEnableVertexAttribArray(uvh);
+		GLES20.glVertexAttribPointer(vh, 3, GLES20.GL_FLOAT, false, 0, Dome.getVB());
 		GLES20.glVertexAttribPointer(uvh, 2, GLES20.GL_FLOAT, false, 0, Dome.getUVB());
+		renderState.setVertexAttribArrays(RenderState.attrib(vh) | RenderState.attrib(uvh));
 		
-		GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, skyDome.getTexture().getTextureBuffer());
-		GLES20.glUniform1i(GLES20.glGetUniformLocation(program, "baseTexture"), 0);
+		renderState.activeTexture(GLES20.GL_TEXTURE0);
+		renderState.bindTexture(GLES20.GL_TEXTURE_2D, skyDome.getTexture().getTextureBuffer());
+		GLES20.glUniform1i(shaderProgram.get(ShaderProgram.BASE_TEXTURE), 0);
 		
 		GLES20.glDrawElements(GLES20.GL_TRIANGLES, Dome.getIB().capacity(), GLES20.GL_UNSIGNED_INT, Dome.getIB());
-
-		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
-		
-		GLES20.glDisableVertexAttribArray(vh);
-		GLES20.glDisableVertexAttribArray(uvh);
 	}
 	
 //	private void drawSky()
@@ -449,85 +633,41 @@ public class Scene extends GameObject
 //		GLES20.glDisableVertexAttribArray(mh);
 //	}
 	
-	private void drawSprites(Sprite view)
+	private static int getProgramIndex(int geometryType, boolean hasTexture)
 	{
-//		GLES20.glEnable(GLES20.GL_BLEND);
-//		GLES20.glBlendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
-		
-		Texture2D tex = view.getImageSrc();
+		int programIndx = 0;
+		int textureOffset = hasTexture ? 2 : 0;
 		
-		if(tex != null && view.isActive())
+		switch (geometryType)
 		{
-			ShaderProgram shaderProgram = Shader.AMBIENT.getProgram(11);
-			
-			int program = shaderProgram.getProgramID();
-	
-			Vector2 position = view.getPosition();
-			Vector2 scale = view.getScale();
-			Matrix4 transformM = new Matrix4();
-			transformM.setTranslation(position.x, position.y, 0);
-			transformM.m11 = scale.x;
-			transformM.m22 = scale.y;
-	
-			Matrix4 mvp = Matrix4.multiply(orthogonalMVP, transformM);
-			
-			GLES20.glUseProgram(program);
-			
-			int vh = GLES20.glGetAttribLocation(program, "vertex");
-			int uvh = GLES20.glGetAttribLocation(program, "uv");
-			
-			float[] mvpm = new float[16];
-			mvp.copyTo(mvpm);
-			GLES20.glUniformMatrix4fv(GLES20.glGetUniformLocation(program, "modelViewProjectionMatrix"), 1, false, mvpm, 0);
-			
-			GLES20.glEnableVertexAttribArray(vh);
-			GLES20.glVertexAttribPointer(vh, 2, GLES20.GL_FLOAT, false, 0, Quad.getVertexBuffer());
-	
-			if(view.hasAnimation())
-			{
-				float[] srcRect = new float[8];
-				float frame = view.getAnimation().getCurrentFrame();
-				float width = 1f / view.getAnimation().getTotalFrame();
-				
-				float x = frame * width;
-				float xw = x + width;
-	
-				srcRect[0] = x;
-				srcRect[1] = 0;
-				
-				srcRect[2] = x;
-				srcRect[3] = 1;
-				
-				srcRect[4] = xw;
-				srcRect[5] = 1;
-				
-				srcRect[6] = xw;
-				srcRect[7] = 0;
-				
-				FloatBuffer sb = Quad.getSpriteUVBuffer();
-				sb.clear();
-				sb.put(srcRect).position(0);
-				
-				GLES20.glEnableVertexAttribArray(uvh);
-				GLES20.glVertexAttribPointer(uvh, 2, GLES20.GL_FLOAT, false, 0, sb);
-			}
-			else
-			{
-				GLES20.glEnableVertexAttribArray(uvh);
-				GLES20.glVertexAttribPointer(uvh, 2, GLES20.GL_FLOAT, false, 0, Quad.getUVBuffer());
-			}
-	
-			GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-			GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, tex.getTextureBuffer());
-			GLES20.glUniform1i(GLES20.glGetUniformLocation(program, "baseTexture"), 0);
-			GLES20.glUniform1f(GLES20.glGetUniformLocation(program, "lightAbsorbMultiplier"), 1);
-			
-			GLES20.glDrawElements(GLES20.GL_TRIANGLES, 6, GLES20.GL_UNSIGNED_BYTE, Quad.getIndicesBuffer());
-			
-			GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+			case Geometry.MESH: programIndx = textureOffset; break;
+			case Geometry.SKINNED_MESH: programIndx = 1 + textureOffset; break;
+			default: break;
 		}
 		
+		return programIndx;
+	}
+	
+	private long getSortKey(Model model)
+	{
+		Material material = model.getMaterial();
+		Texture2D texture = material.getBaseTexture();
+		
+		int programIndx = getProgramIndex(model.getGeometry().getType(), texture != null);
+		int program = (material.getShader() == Shader.DIFFUSE) ? 16 + programIndx : programIndx;
 		
+		int textureBuffer = (texture != null) ? texture.getTextureBuffer() : 0;
+		int buffer = ((Mesh) model.getGeometry()).getBuffer(0);
+		
+		// view space depth of the pivot
+		Matrix4 world = model.getWorldMatrix();
+		Matrix4 mv = modelViewMatrix;
+		float z = -(mv.m13 * world.m41 + mv.m23 * world.m42 + mv.m33 * world.m43 + mv.m43);
+		
+		int depth = (int) (z / mainCamera.getRange() * RenderQueue.MAX_DEPTH);
+		depth = Math.max(0, Math.min(depth, RenderQueue.MAX_DEPTH));
+		
+		return RenderQueue.createKey(texture != null && texture.isEnabledAlpha(), program, textureBuffer, buffer, depth);
 	}
 	
 	private void drawModel(Model model)
@@ -543,25 +683,24 @@ public class Scene extends GameObject
 		
 		Texture2D texture = material.getBaseTexture();
 		
-		if(texture != null)
+		RenderState renderState = RenderState.getInstance();
+		
+		if(texture != null && texture.isEnabledAlpha())
 		{
-			hasTexture = 2;
-			
-			if(texture.isEnabledAlpha())
-			{
-				GLES20.glEnable(GLES20.GL_BLEND);
-				GLES20.glBlendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
-			}
+			renderState.enable(GLES20.GL_BLEND);
+			renderState.blendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+		}
+		else
+		{
+			renderState.disable(GLES20.GL_BLEND);
 		}
 		
-		int programIndx = 0;
-		
-		switch (geometryType)
+		if(texture != null)
 		{
-			case Geometry.MESH: programIndx = hasTexture; break;
-			case Geometry.SKINNED_MESH: programIndx = 1 + hasTexture; break;
-			default: break;
+			hasTexture = 2;
 		}
+		
+		int programIndx = getProgramIndex(geometryType, hasTexture == 2);
 //		Log.e(model.getName(), programIndx+"");
 		
 		ShaderProgram program = shader.getProgram(programIndx);
@@ -572,42 +711,18 @@ public class Scene extends GameObject
 		if(hasAnimation)
 		{
 			Animation animation = model.getAnimation();
-			int frame = animation.getCurrentFrame() - mesh.getMatrixPaletteIndexOffset();
-			
-			float[][] matrixPaletteAll = mesh.getMatrixPalette();
-			
-			if(frame >= matrixPaletteAll.length)
-			{
-				frame = matrixPaletteAll.length - 1;
-			}
-			else if(frame < 0)
-			{
-				frame = 0;
-			}
-			
-			matrixPalette = matrixPaletteAll[frame];
+			matrixPalette = SkinningCache.getInstance().getPalette(mesh, animation);
 		}
 		
-		Matrix4 tmm = new Matrix4();
-		Matrix3 nm = new Matrix3();
-		
-		Vector3 scale = model.getScale();
-		Matrix4 world = model.getWorldMatrix().clone();
-		world.m11 *= scale.x;
-		world.m12 *= scale.y;
-		world.m13 *= scale.z;
-		
-		world.m21 *= scale.x;
-		world.m22 *= scale.y;
-		world.m23 *= scale.z;
+		Matrix4 tmm = tempModelMatrix;
+		Matrix3 nm = tempNormalMatrix;
 		
-		world.m31 *= scale.x;
-		world.m32 *= scale.y;
-		world.m33 *= scale.z;
+		Matrix4 world = tempWorldMatrix;
+		getScaledWorldMatrix(model, world);
 
 		if(geometryType == Geometry.MESH && hasAnimation)
 		{
-			Matrix4 tmv = new Matrix4();
+			Matrix4 tmv = tempModelViewMatrix;
 			
 			tempPalette.set(matrixPalette);
 			Matrix4.multiply(tmv, world, tempPalette);
@@ -624,17 +739,13 @@ public class Scene extends GameObject
 
 
 		int prg = program.getProgramID();
-		GLES20.glUseProgram(prg);
+		renderState.useProgram(prg);
 
 		boolean isDiffuse = (shader == Shader.DIFFUSE);
 		
 		if(isDiffuse)
 		{
-			// Lights
-			ArrayList<Light> ls = new ArrayList<Light>();
-			ls.addAll(lights);
-			
-			setLightUniform(prg, ls);
+			setLightUniform(program, lights);
 			
 //			float[] tm = new float[16];
 //			projectionMatrix.copyTo(tm);
@@ -644,17 +755,17 @@ public class Scene extends GameObject
 //			modelViewMatrix.copyTo(tm1);
 //			GLES20.glUniformMatrix4fv(GLES20.glGetUniformLocation(prg, "modelViewMatrix"), 1, false, tm1, 0);
 			
-			float[] tm1 = new float[16];
+			float[] tm1 = tempMatrix4;
 			modelViewProjectionMatrix.copyTo(tm1);
-			GLES20.glUniformMatrix4fv(GLES20.glGetUniformLocation(prg, "modelViewProjectionMatrix"), 1, false, tm1, 0);
+			GLES20.glUniformMatrix4fv(program.get(ShaderProgram.MODELVIEW_PROJECTION_MATRIX), 1, false, tm1, 0);
 			
-			float[] tm2 = new float[9];
+			float[] tm2 = tempMatrix3;
 			nm.copyTo(tm2);
-			GLES20.glUniformMatrix3fv(GLES20.glGetUniformLocation(prg, "normalMatrix"), 1, false, tm2, 0);
+			GLES20.glUniformMatrix3fv(program.get(ShaderProgram.NORMAL_MATRIX), 1, false, tm2, 0);
 			
-			float[] tm3 = new float[16];
+			float[] tm3 = tempMatrix4;
 			tmm.copyTo(tm3);
-			GLES20.glUniformMatrix4fv(GLES20.glGetUniformLocation(prg, "worldMatrix"), 1, false, tm3, 0);
+			GLES20.glUniformMatrix4fv(program.get(ShaderProgram.WORLD_MATRIX), 1, false, tm3, 0);
 		}
 		else
 		{
@@ -664,11 +775,11 @@ public class Scene extends GameObject
 //			GLES20.glUniformMatrix4fv(GLES20.glGetUniformLocation(prg, "modelViewProjectionMatrix"), 1, false, tm, 0);
 			
 			
-			Matrix4 wmvp = Matrix4.multiply(modelViewProjectionMatrix, tmm);
+			Matrix4 wmvp = Matrix4.multiply(tempModelViewMatrix, modelViewProjectionMatrix, tmm);
 			
-			float[] tm1 = new float[16];
+			float[] tm1 = tempMatrix4;
 			wmvp.copyTo(tm1);
-			GLES20.glUniformMatrix4fv(GLES20.glGetUniformLocation(prg, "modelViewProjectionMatrix"), 1, false, tm1, 0);
+			GLES20.glUniformMatrix4fv(program.get(ShaderProgram.MODELVIEW_PROJECTION_MATRIX), 1, false, tm1, 0);
 		}
 		
 		
@@ -678,22 +789,25 @@ public class Scene extends GameObject
 //		program.setUniform(ShaderProgram.MODELVIEW_MATRIX, tempTransformMatrix);
 //		program.setUniform(ShaderProgram.NORMAL_MATRIX, tempNormalMatrix);
 
-		int vh = GLES20.glGetAttribLocation(prg, "vertex");
-		int nh = GLES20.glGetAttribLocation(prg, "normal");
-		int uvh = GLES20.glGetAttribLocation(prg, "uv");
+		int vh = program.get(ShaderProgram.VERTEX_ATTRIBUTE);
+		int nh = program.get(ShaderProgram.NORMAL_ATTRIBUTE);
+		int uvh = program.get(ShaderProgram.UV_ATTRIBUTE);
 		
-		int bwh = GLES20.glGetAttribLocation(prg, "boneWeights");
-		int bih = GLES20.glGetAttribLocation(prg, "boneIndices");
-		int bch = GLES20.glGetAttribLocation(prg, "boneCount");
+		int bwh = program.get(ShaderProgram.BONE_WEIGHTS_ATTRIBUTE);
+		int bih = program.get(ShaderProgram.BONE_INDEXES_ATTRIBUTE);
+		int bch = program.get(ShaderProgram.BONE_COUNT);
 
-		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mesh.getBuffer(0));
-		GLES20.glEnableVertexAttribArray(vh);
-		GLES20.glVertexAttribPointer(vh, 3, GLES20.GL_FLOAT, false, 0, 0);
+		int stride = mesh.getStride();
+		
+		renderState.bindBuffer(GLES20.GL_ARRAY_BUFFER, mesh.getBuffer(0));
+		GLES20.glVertexAttribPointer(vh, 3, GLES20.GL_FLOAT, false, stride, 0);
+		
+		int attribs = RenderState.attrib(vh);
 		
 		if(isDiffuse)
 		{
-			GLES20.glEnableVertexAttribArray(nh);
-			GLES20.glVertexAttribPointer(nh, 3, GLES20.GL_FLOAT, false, 0, mesh.NORMALS_OFFSET);
+			attribs |= RenderState.attrib(nh);
+			GLES20.glVertexAttribPointer(nh, 3, mesh.getNormalType(), mesh.getNormalType() != GLES20.GL_FLOAT, stride, mesh.getNormalOffset());
 		}
 		
 //		program.setAttribPointer(ShaderProgram.VERTEX_ATTRIBUTE, 3, 0, 0, mesh.getBuffer(0), VariableType.FLOAT);
@@ -701,12 +815,12 @@ public class Scene extends GameObject
 
 		if(hasTexture == 2)
 		{
-			GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-			GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture.getTextureBuffer());
-			GLES20.glUniform1i(GLES20.glGetUniformLocation(prg, "diffuseMap"), 0);
+			renderState.activeTexture(GLES20.GL_TEXTURE0);
+			renderState.bindTexture(GLES20.GL_TEXTURE_2D, texture.getTextureBuffer());
+			GLES20.glUniform1i(program.get(ShaderProgram.DIFFUSE_MAP), 0);
 			
-			GLES20.glEnableVertexAttribArray(uvh);
-			GLES20.glVertexAttribPointer(uvh, 2, GLES20.GL_FLOAT, false, 0, mesh.UV_OFFSET);
+			attribs |= RenderState.attrib(uvh);
+			GLES20.glVertexAttribPointer(uvh, 2, mesh.getUVType(), false, stride, mesh.getUVOffset());
 			
 //			program.setAttribPointer(ShaderProgram.UV_ATTRIBUTE, 2, 0, mesh.UV_OFFSET, mesh.getBuffer(0), VariableType.FLOAT);
 //			program.setUniformDiffuseMap(ShaderProgram.DIFFUSE_MAP, texture.getTextureBuffer());
@@ -714,22 +828,29 @@ public class Scene extends GameObject
 		else
 		{
 			Color3 baseColor3 = model.getMaterial().getBaseColor();
-			GLES20.glUniform4f(GLES20.glGetUniformLocation(prg, "color"), baseColor3.r, baseColor3.g, baseColor3.b, 1);
+			GLES20.glUniform4f(program.get(ShaderProgram.COLOR), baseColor3.r, baseColor3.g, baseColor3.b, 1);
 			
 //			program.setUniformColor(model.getMaterial().getBaseColor());
 		}
 		
-		GLES20.glUniform1f(GLES20.glGetUniformLocation(prg, "lightAbsorbMultiplier"), model.getMaterial().getLightAbsorbMultipler());
+		GLES20.glUniform1f(program.get(ShaderProgram.LIGHT_ABSORB_MULTIPLIER), model.getMaterial().getLightAbsorbMultipler());
 		
 		if(geometryType == Geometry.SKINNED_MESH && hasAnimation)
 		{
-			GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mesh.getBuffer(2));
-			GLES20.glEnableVertexAttribArray(bwh);
-			GLES20.glVertexAttribPointer(bwh, 4, GLES20.GL_FLOAT, false, 0, 0);
+			// interleaved : still in buffer 0
+			if(!mesh.isInterleaved())
+			{
+				renderState.bindBuffer(GLES20.GL_ARRAY_BUFFER, mesh.getBuffer(2));
+			}
+			attribs |= RenderState.attrib(bwh);
+			GLES20.glVertexAttribPointer(bwh, 4, GLES20.GL_FLOAT, false, stride, mesh.getBoneWeightOffset());
 			
-			GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mesh.getBuffer(3));
-			GLES20.glEnableVertexAttribArray(bih);
-			GLES20.glVertexAttribPointer(bih, 4, GLES20.GL_SHORT, false, 0, 0);
+			if(!mesh.isInterleaved())
+			{
+				renderState.bindBuffer(GLES20.GL_ARRAY_BUFFER, mesh.getBuffer(3));
+			}
+			attribs |= RenderState.attrib(bih);
+			GLES20.glVertexAttribPointer(bih, 4, GLES20.GL_SHORT, false, stride, mesh.getBoneIndexOffset());
 
 			GLES20.glVertexAttrib1f(bch, 4);
 			
@@ -737,30 +858,131 @@ public class Scene extends GameObject
 //			program.setAttribPointer(ShaderProgram.BONE_INDEXES_ATTRIBUTE, 4, 0, 0, mesh.getBuffer(3), VariableType.SHORT);
 //			program.setAttrib(ShaderProgram.BONE_COUNT, 4);
 			
-			if(matrixPalette != null)
+			// instances in the same pose drawn in a row keep the palette already in the program
+			if(matrixPalette != null && SkinningCache.getInstance().shouldUpload(prg))
 			{
-				int mp = GLES20.glGetUniformLocation(prg, "matrixPalette");
+				int mp = program.get(ShaderProgram.MATRIX_PALETTE);
 				GLES20.glUniformMatrix4fv(mp, matrixPalette.length / 16, false, matrixPalette, 0);
 				
 //				program.setUniformMatrix4(ShaderProgram.MATRIX_PALETTE, matrixPalette);
 			}
 		}
 		
-		GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mesh.getBuffer(1));
-		GLES20.glDrawElements(GLES20.GL_TRIANGLES, mesh.INDICES_COUNT, GLES20.GL_UNSIGNED_INT, 0);
+		// the arrays of the previous draw not used here get disabled
+		renderState.setVertexAttribArrays(attribs);
 		
-		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
-		GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+		renderState.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mesh.getBuffer(1));
+		GLES20.glDrawElements(GLES20.GL_TRIANGLES, mesh.INDICES_COUNT, mesh.INDICES_TYPE, 0);
 		
-		GLES20.glDisableVertexAttribArray(vh);
-		GLES20.glDisableVertexAttribArray(nh);
-		GLES20.glDisableVertexAttribArray(uvh);
-		GLES20.glDisableVertexAttribArray(bwh);
-		GLES20.glDisableVertexAttribArray(bih);
+//		program.drawTriangleElements(mesh.getBuffer(1), mesh.INDICES_COUNT);
+	}
+	
+	// world matrix of the model with its local scaling
+	static void getScaledWorldMatrix(Model model, Matrix4 world)
+	{
+		Vector3 scale = model.localScaling;
+		world.set(model.getWorldMatrix());
+		world.m11 *= scale.x;
+		world.m12 *= scale.y;
+		world.m13 *= scale.z;
 		
-		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+		world.m21 *= scale.x;
+		world.m22 *= scale.y;
+		world.m23 *= scale.z;
 		
-//		program.drawTriangleElements(mesh.getBuffer(1), mesh.INDICES_COUNT);
+		world.m31 *= scale.x;
+		world.m32 *= scale.y;
+		world.m33 *= scale.z;
+	}
+	
+	// count models of the same static mesh and material in one draw, see InstanceBatcher
+	private void drawInstances(InstanceBatcher batcher, int count)
+	{
+		Model first = batcher.get(0);
+		Mesh mesh = (Mesh) first.getGeometry();
+		Material material = first.getMaterial();
+		Shader shader = material.getShader();
+		Texture2D texture = material.getBaseTexture();
+		
+		if(mesh.getInstanceCopies() == 0)
+		{
+			mesh.createInstanceBuffers(InstanceBatcher.getCapacity(mesh));
+		}
+		
+		ShaderProgram program = shader.getProgram((texture != null) ? Shader.INSTANCED_MESH_WITH_TEXTURE : Shader.INSTANCED_MESH);
+		
+		RenderState renderState = RenderState.getInstance();
+		renderState.disable(GLES20.GL_BLEND);
+		renderState.useProgram(program.getProgramID());
+		
+		float[] matrices = batcher.getMatrices();
+		Matrix4 world = tempWorldMatrix;
+		Matrix4 tmm = tempModelMatrix;
+		float[] tm = tempMatrix4;
+		
+		for (int i = 0; i < count; i++)
+		{
+			Model model = batcher.get(i);
+			getScaledWorldMatrix(model, world);
+			Matrix4.multiply(tmm, world, model.getAxisRotation());
+			
+			tmm.copyTo(tm);
+			System.arraycopy(tm, 0, matrices, i * 16, 16);
+		}
+		
+		boolean isDiffuse = (shader == Shader.DIFFUSE);
+		if(isDiffuse)
+		{
+			setLightUniform(program, lights);
+		}
+		
+		modelViewProjectionMatrix.copyTo(tm);
+		GLES20.glUniformMatrix4fv(program.get(ShaderProgram.MODELVIEW_PROJECTION_MATRIX), 1, false, tm, 0);
+		GLES20.glUniformMatrix4fv(program.get(ShaderProgram.INSTANCE_MATRIX), count, false, matrices, 0);
+		
+		int vh = program.get(ShaderProgram.VERTEX_ATTRIBUTE);
+		int nh = program.get(ShaderProgram.NORMAL_ATTRIBUTE);
+		int uvh = program.get(ShaderProgram.UV_ATTRIBUTE);
+		int ih = program.get(ShaderProgram.INSTANCE_INDEX_ATTRIBUTE);
+		
+		int stride = mesh.getStride();
+		
+		// copies of buffer 0, same layout
+		renderState.bindBuffer(GLES20.GL_ARRAY_BUFFER, mesh.getBuffer(4));
+		GLES20.glVertexAttribPointer(vh, 3, GLES20.GL_FLOAT, false, stride, 0);
+		
+		int attribs = RenderState.attrib(vh) | RenderState.attrib(ih);
+		
+		if(isDiffuse)
+		{
+			attribs |= RenderState.attrib(nh);
+			GLES20.glVertexAttribPointer(nh, 3, mesh.getNormalType(), mesh.getNormalType() != GLES20.GL_FLOAT, stride, mesh.getNormalOffset());
+		}
+		
+		if(texture != null)
+		{
+			renderState.activeTexture(GLES20.GL_TEXTURE0);
+			renderState.bindTexture(GLES20.GL_TEXTURE_2D, texture.getTextureBuffer());
+			GLES20.glUniform1i(program.get(isDiffuse ? ShaderProgram.DIFFUSE_MAP : ShaderProgram.BASE_TEXTURE), 0);
+			
+			attribs |= RenderState.attrib(uvh);
+			GLES20.glVertexAttribPointer(uvh, 2, mesh.getUVType(), false, stride, mesh.getUVOffset());
+		}
+		else
+		{
+			Color3 baseColor3 = material.getBaseColor();
+			GLES20.glUniform4f(program.get(ShaderProgram.COLOR), baseColor3.r, baseColor3.g, baseColor3.b, 1);
+		}
+		
+		GLES20.glUniform1f(program.get(ShaderProgram.LIGHT_ABSORB_MULTIPLIER), material.getLightAbsorbMultipler());
+		
+		renderState.bindBuffer(GLES20.GL_ARRAY_BUFFER, mesh.getBuffer(6));
+		GLES20.glVertexAttribPointer(ih, 1, GLES20.GL_FLOAT, false, 0, 0);
+		
+		renderState.setVertexAttribArrays(attribs);
+		
+		renderState.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mesh.getBuffer(5));
+		GLES20.glDrawElements(GLES20.GL_TRIANGLES, mesh.INDICES_COUNT * count, GLES20.GL_UNSIGNED_SHORT, 0);
 	}
 	
 	private void drawTerrains()
@@ -791,91 +1013,82 @@ public class Scene extends GameObject
 	
 	private void drawStaticTerrain(StaticTerrain terrain)
 	{
-		Matrix4 tmm = new Matrix4();
-		tmm.setTranslation(terrain.getWorldMatrix().getTranslation());
+		Matrix4 terrainWorld = terrain.getWorldMatrix();
+		Matrix4 tmm = tempModelMatrix;
+		tmm.setIdentity();
+		tmm.setTranslation(terrainWorld.m41, terrainWorld.m42, terrainWorld.m43);
 		
-		Matrix3 nm = new Matrix3();
+		Matrix3 nm = tempNormalMatrix;
 		Matrix3.createNormalMatrix(nm, tmm);
 		
-		// Lights
-		ArrayList<Light> ls = new ArrayList<Light>();
-		ls.addAll(lights);
-		
 		ShaderProgram shaderProgram = Shader.DIFFUSE.getProgram(6);
 		
 		int program = shaderProgram.getProgramID();
 
-		GLES20.glUseProgram(program);
+		RenderState renderState = RenderState.getInstance();
+		renderState.useProgram(program);
 		
-		setLightUniform(program, ls);
+		setLightUniform(shaderProgram, lights);
 		
-		float[] tm1 = new float[16];
+		float[] tm1 = tempMatrix4;
 		modelViewProjectionMatrix.copyTo(tm1);
-		GLES20.glUniformMatrix4fv(GLES20.glGetUniformLocation(program, "modelViewProjectionMatrix"), 1, false, tm1, 0);
+		GLES20.glUniformMatrix4fv(shaderProgram.get(ShaderProgram.MODELVIEW_PROJECTION_MATRIX), 1, false, tm1, 0);
 		
-		float[] tm2 = new float[9];
+		float[] tm2 = tempMatrix3;
 		nm.copyTo(tm2);
-		GLES20.glUniformMatrix3fv(GLES20.glGetUniformLocation(program, "normalMatrix"), 1, false, tm2, 0);
+		GLES20.glUniformMatrix3fv(shaderProgram.get(ShaderProgram.NORMAL_MATRIX), 1, false, tm2, 0);
 		
-		float[] tm3 = new float[16];
+		float[] tm3 = tempMatrix4;
 		tmm.copyTo(tm3);
-		GLES20.glUniformMatrix4fv(GLES20.glGetUniformLocation(program, "worldMatrix"), 1, false, tm3, 0);
+		GLES20.glUniformMatrix4fv(shaderProgram.get(ShaderProgram.WORLD_MATRIX), 1, false, tm3, 0);
 
-		GLES20.glUniform1f(GLES20.glGetUniformLocation(program, "lightAbsorbMultiplier"), 1);
+		GLES20.glUniform1f(shaderProgram.get(ShaderProgram.LIGHT_ABSORB_MULTIPLIER), 1);
 		
 		Texture2D diffuseMap = terrain.getBaseTexture();
 		
 		if(diffuseMap != null)
 		{
-			GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-			GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, terrain.getBaseTexture().getTextureBuffer());
-			GLES20.glUniform1i(GLES20.glGetUniformLocation(program, "diffuseMap"), 0);
+			renderState.activeTexture(GLES20.GL_TEXTURE0);
+			renderState.bindTexture(GLES20.GL_TEXTURE_2D, terrain.getBaseTexture().getTextureBuffer());
+			GLES20.glUniform1i(shaderProgram.get(ShaderProgram.DIFFUSE_MAP), 0);
 		}
 		
-		GLES20.glActiveTexture(GLES20.GL_TEXTURE1);
-		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, terrain.getNormalmap().getTextureBuffer());
-		GLES20.glUniform1i(GLES20.glGetUniformLocation(program, "normalMap"), 1);
+		renderState.activeTexture(GLES20.GL_TEXTURE1);
+		renderState.bindTexture(GLES20.GL_TEXTURE_2D, terrain.getNormalmap().getTextureBuffer());
+		GLES20.glUniform1i(shaderProgram.get(ShaderProgram.NORMAL_MAP), 1);
 
-		GLES20.glUniform3f(GLES20.glGetUniformLocation(program, "terrainData"), terrain.getTerrainMaxHeight(), Plane.getInstance().getSegment(), terrain.getTerrainScale());
+		GLES20.glUniform3f(shaderProgram.get(ShaderProgram.TERRAIN_DATA), terrain.getTerrainMaxHeight(), Plane.getInstance().getSegment(), terrain.getTerrainScale());
 		
 		Mesh mesh = terrain.getMesh();
 		
-		int vh = GLES20.glGetAttribLocation(program, "vertex");
-		
-		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mesh.getBuffer(0));
-		GLES20.glEnableVertexAttribArray(vh);
-		GLES20.glVertexAttribPointer(vh, 3, GLES20.GL_FLOAT, false, 0, 0);
-		
-		GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mesh.getBuffer(1));
-		GLES20.glDrawElements(GLES20.GL_TRIANGLES, mesh.INDICES_COUNT, GLES20.GL_UNSIGNED_INT, 0);
+		int vh = shaderProgram.get(ShaderProgram.VERTEX_ATTRIBUTE);
 		
-		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
-		GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+		renderState.bindBuffer(GLES20.GL_ARRAY_BUFFER, mesh.getBuffer(0));
+		GLES20.glVertexAttribPointer(vh, 3, GLES20.GL_FLOAT, false, mesh.getStride(), 0);
+		renderState.setVertexAttribArrays(RenderState.attrib(vh));
 		
-		GLES20.glDisableVertexAttribArray(vh);
-		
-		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+		renderState.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mesh.getBuffer(1));
+		GLES20.glDrawElements(GLES20.GL_TRIANGLES, mesh.INDICES_COUNT, mesh.INDICES_TYPE, 0);
 	}
 	
 	private void drawDisplacementTerrain(DisplacementTerrain terrain)
 	{
-		Matrix4 tmm = new Matrix4();
-		tmm.setTranslation(terrain.getWorldMatrix().getTranslation());
+		Matrix4 terrainWorld = terrain.getWorldMatrix();
+		Matrix4 tmm = tempModelMatrix;
+		tmm.setIdentity();
+		tmm.setTranslation(terrainWorld.m41, terrainWorld.m42, terrainWorld.m43);
 		
-		Matrix3 nm = new Matrix3();
+		Matrix3 nm = tempNormalMatrix;
 		Matrix3.createNormalMatrix(nm, tmm);
 
-		// Lights
-		ArrayList<Light> ls = new ArrayList<Light>();
-		ls.addAll(lights);
-		
 		ShaderProgram shaderProgram = Shader.DIFFUSE.getProgram(5);
 		
 		int program = shaderProgram.getProgramID();
 
-		GLES20.glUseProgram(program);
+		RenderState renderState = RenderState.getInstance();
+		renderState.useProgram(program);
 		
-		setLightUniform(program, ls);
+		setLightUniform(shaderProgram, lights);
 		
 //		float[] tm = new float[16];
 //		projectionMatrix.copyTo(tm);
@@ -885,99 +1098,99 @@ public class Scene extends GameObject
 //		modelViewMatrix.copyTo(tm1);
 //		GLES20.glUniformMatrix4fv(GLES20.glGetUniformLocation(program, "modelViewMatrix"), 1, false, tm1, 0);
 
-		float[] tm1 = new float[16];
+		float[] tm1 = tempMatrix4;
 		modelViewProjectionMatrix.copyTo(tm1);
-		GLES20.glUniformMatrix4fv(GLES20.glGetUniformLocation(program, "modelViewProjectionMatrix"), 1, false, tm1, 0);
+		GLES20.glUniformMatrix4fv(shaderProgram.get(ShaderProgram.MODELVIEW_PROJECTION_MATRIX), 1, false, tm1, 0);
 		
-		float[] tm2 = new float[9];
+		float[] tm2 = tempMatrix3;
 		nm.copyTo(tm2);
-		GLES20.glUniformMatrix3fv(GLES20.glGetUniformLocation(program, "normalMatrix"), 1, false, tm2, 0);
+		GLES20.glUniformMatrix3fv(shaderProgram.get(ShaderProgram.NORMAL_MATRIX), 1, false, tm2, 0);
 		
-		float[] tm3 = new float[16];
+		float[] tm3 = tempMatrix4;
 		tmm.copyTo(tm3);
-		GLES20.glUniformMatrix4fv(GLES20.glGetUniformLocation(program, "worldMatrix"), 1, false, tm3, 0);
+		GLES20.glUniformMatrix4fv(shaderProgram.get(ShaderProgram.WORLD_MATRIX), 1, false, tm3, 0);
 
-		GLES20.glUniform1f(GLES20.glGetUniformLocation(program, "lightAbsorbMultiplier"), 1);
+		GLES20.glUniform1f(shaderProgram.get(ShaderProgram.LIGHT_ABSORB_MULTIPLIER), 1);
 		
 		Texture2D diffuseMap = terrain.getBaseTexture();
 		
 		if(diffuseMap != null)
 		{
-			GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-			GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, terrain.getBaseTexture().getTextureBuffer());
-			GLES20.glUniform1i(GLES20.glGetUniformLocation(program, "diffuseMap"), 0);
+			renderState.activeTexture(GLES20.GL_TEXTURE0);
+			renderState.bindTexture(GLES20.GL_TEXTURE_2D, terrain.getBaseTexture().getTextureBuffer());
+			GLES20.glUniform1i(shaderProgram.get(ShaderProgram.DIFFUSE_MAP), 0);
 		}
 		
-		GLES20.glActiveTexture(GLES20.GL_TEXTURE1);
-		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, terrain.getNormalmap().getTextureBuffer());
-		GLES20.glUniform1i(GLES20.glGetUniformLocation(program, "normalMap"), 1);
+		renderState.activeTexture(GLES20.GL_TEXTURE1);
+		renderState.bindTexture(GLES20.GL_TEXTURE_2D, terrain.getNormalmap().getTextureBuffer());
+		GLES20.glUniform1i(shaderProgram.get(ShaderProgram.NORMAL_MAP), 1);
 		
-		GLES20.glActiveTexture(GLES20.GL_TEXTURE2);
-		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, terrain.getHeightmap().getTextureBuffer());
-		GLES20.glUniform1i(GLES20.glGetUniformLocation(program, "heightMap"), 2);
+		renderState.activeTexture(GLES20.GL_TEXTURE2);
+		renderState.bindTexture(GLES20.GL_TEXTURE_2D, terrain.getHeightmap().getTextureBuffer());
+		GLES20.glUniform1i(shaderProgram.get(ShaderProgram.HEIGHT_MAP), 2);
 
-		GLES20.glUniform3f(GLES20.glGetUniformLocation(program, "terrainData"), terrain.getTerrainMaxHeight(), Plane.getInstance().getSegment(), terrain.getTerrainScale());
+		GLES20.glUniform3f(shaderProgram.get(ShaderProgram.TERRAIN_DATA), terrain.getTerrainMaxHeight(), Plane.getInstance().getSegment(), terrain.getTerrainScale());
 		
-		int vh = GLES20.glGetAttribLocation(program, "vertex");
+		int vh = shaderProgram.get(ShaderProgram.VERTEX_ATTRIBUTE);
 
-		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, Terrain.getTerrainBuffer(0));
-		GLES20.glEnableVertexAttribArray(vh);
+		renderState.bindBuffer(GLES20.GL_ARRAY_BUFFER, Terrain.getTerrainBuffer(0));
 		GLES20.glVertexAttribPointer(vh, 2, GLES20.GL_FLOAT, false, 0, 0);
+		renderState.setVertexAttribArrays(RenderState.attrib(vh));
 		
-		GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, Terrain.getTerrainBuffer(1));
+		renderState.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, Terrain.getTerrainBuffer(1));
 		GLES20.glDrawElements(GLES20.GL_TRIANGLES, Plane.getInstance().getIndicesCount(), GLES20.GL_UNSIGNED_INT, 0);
-		
-		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
-		GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
-		
-		GLES20.glDisableVertexAttribArray(vh);
-		
-		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
 	}
 	
-	private void setLightUniform(int program, ArrayList<Light> lights)
+	private void setLightUniform(ShaderProgram program, ArrayList<Light> lights)
 	{
 		int lightCount = lights.size();
 		
-		if(lightCount == 0)
+		// no light in the scene : lit by the default one
+		boolean useDefault = lightCount == 0;
+		if(useDefault)
 		{
-			lights.add(defaultLight);
 			lightCount = 1;
 		}
 		
-		GLES20.glUniform1f(GLES20.glGetUniformLocation(program, "lightCount"), lightCount);
+		if(lightCount > ShaderProgram.MAX_LIGHTS)
+		{
+			lightCount = ShaderProgram.MAX_LIGHTS;
+		}
+		
+		GLES20.glUniform1f(program.get(ShaderProgram.LIGHT_COUNT), lightCount);
 
 //		program.use();
 //		program.setUniform(ShaderProgram.LIGHT_COUNT, lightCount);
 		
 		for (int i = 0; i < lightCount; i++)
 		{
-			Light light = lights.get(i);
+			Light light = useDefault ? defaultLight : lights.get(i);
 			Matrix4 world = light.getWorldMatrix();
 			int lt = light.getLightType();
 			if(lt == Light.DIRECTIONAL_LIGHT)
 			{
-				Vector3 forward = world.getForward();
-				lightPosTemp.set(-forward.x, -forward.y, -forward.z, 0);
+				// forward axis
+				lightPosTemp.set(-world.m21, -world.m22, -world.m23, 0);
 			}
 			else
 			{
-				lightPosTemp.set(world.getTranslation(), 1);
+				lightPosTemp.set(world.m41, world.m42, world.m43, 1);
 			}
 			
 //			Matrix4.multiply(lightPos4, modelViewMatrix, lightPosTemp);
-			GLES20.glUniform4f(GLES20.glGetUniformLocation(program, "lightPosition["+i+"]"), lightPosTemp.x, lightPosTemp.y, lightPosTemp.z, lt);
+			GLES20.glUniform4f(program.get(ShaderProgram.LIGHT_POSITION_0 + i), lightPosTemp.x, lightPosTemp.y, lightPosTemp.z, lt);
 			
 			Color3 color = light.getColor();
-			GLES20.glUniform4f(GLES20.glGetUniformLocation(program, "lightColor["+i+"]"), color.r, color.g, color.b, 1);
+			GLES20.glUniform4f(program.get(ShaderProgram.LIGHT_COLOR_0 + i), color.r, color.g, color.b, 1);
 			
-			GLES20.glUniform1f(GLES20.glGetUniformLocation(program, "lightRange["+i+"]"), light.getRange());
-			GLES20.glUniform1f(GLES20.glGetUniformLocation(program, "lightIntensity["+i+"]"), light.getIntensity());
+			GLES20.glUniform1f(program.get(ShaderProgram.LIGHT_RANGE_0 + i), light.getRange());
+			GLES20.glUniform1f(program.get(ShaderProgram.LIGHT_INTENSITY_0 + i), light.getIntensity());
 			
 //			program.setUniformLight(i, lightPos4, light.getColor(), light.getRange(), light.getIntensity());
 		}
 	}
 	
+	// groups come from the bounding volume tree
 	private void recursiveLayer(Layer layer)
 	{
 		if(layer.isActive())
@@ -985,11 +1198,7 @@ public class Scene extends GameObject
 			for (int i = 0; i < layer.getChildCount(); i++)
 			{
 				Node child = layer.getChild(i);
-				if(child instanceof Group)
-				{
-					recursiveGroup((Group) child);
-				}
-				else if(child instanceof View)
+				if(child instanceof View)
 				{
 					recursiveView((View) child);
 				}
@@ -1003,7 +1212,8 @@ public class Scene extends GameObject
 		{
 			if(view instanceof Sprite)
 			{
-				if(((Sprite) view).getImageSrc() != null && ((Sprite) view).getImageSrc().getTextureBuffer() > -1)
+				Texture2D image = ((Sprite) view).getImageSrc();
+				if(image != null && SpriteBatcher.getPage(image).getTextureBuffer() > -1)
 				{
 					sprites.add((Sprite) view);
 				}
@@ -1024,11 +1234,27 @@ public class Scene extends GameObject
 		{
 			if(obj instanceof Model)
 			{
-				models.add((Model) obj);
+				if(isVisible(obj))
+				{
+					models.add((Model) obj);
+					drawnCount++;
+				}
+				else
+				{
+					culledCount++;
+				}
 			}
 			else if(obj instanceof Terrain)
 			{
-				terrains.add((Terrain) obj);
+				if(isVisible(obj))
+				{
+					terrains.add((Terrain) obj);
+					drawnCount++;
+				}
+				else
+				{
+					culledCount++;
+				}
 			}
 			else if(obj instanceof Light)
 			{
@@ -1043,6 +1269,67 @@ public class Scene extends GameObject
 		}
 	}
 
+	private static boolean isVisible(Group group)
+	{
+		if(group.getBoundsType() != BoundingVolumeTree.BOX)
+		{
+			return true;
+		}
+		
+		group.getWorldBounds(tempBounds, 0);
+		return BoundingVolumeTree.isVisible(frustum, tempBounds, 0);
+	}
+	
+	public BoundingVolumeTree getBoundingVolumeTree()
+	{
+		return boundingVolumeTree;
+	}
+	
+	// models and terrains culled / kept by the last drawScene
+	public int getCulledCount()
+	{
+		return culledCount;
+	}
+	
+	public int getDrawnCount()
+	{
+		return drawnCount;
+	}
+	
+	// merged meshes of the static models, and the models they draw
+	public int getStaticBatchCount()
+	{
+		return staticBatcher.getBatchCount();
+	}
+	
+	public int getStaticModelCount()
+	{
+		return staticBatcher.getSourceCount();
+	}
+	
+	// draws of the sprites in the last drawScene
+	public int getSpriteDrawCount()
+	{
+		return spriteDrawCount;
+	}
+	
+	// models of the last drawScene drawn in pseudo instanced batches
+	public int getInstancedCount()
+	{
+		return instancedCount;
+	}
+	
+	// Batches of models sharing a static mesh and a material in one draw, on by default
+	public static void setInstancing(boolean instancing)
+	{
+		Scene.instancing = instancing;
+	}
+	
+	public static boolean isInstancing()
+	{
+		return instancing;
+	}
+
 	//
 	///
 	public static final Group model(String fbx_path)
@@ -1050,6 +1337,11 @@ public class Scene extends GameObject
 		return GameObjectManager.loadModel(fbx_path);
 	}
 	
+	public static final AsyncModel modelAsync(String fbx_path, OnModelLoadListener listener)
+	{
+		return GameObjectManager.loadModelAsync(fbx_path, listener);
+	}
+	
 	public static final Terrain terrain(String heightmapSrc, int maxHeight, int scale)
 	{
 		return GameObjectManager.createTerrain(heightmapSrc, maxHeight, scale);
@@ -1286,6 +1578,12 @@ public class Scene extends GameObject
 		return GameObjectManager.loadTexture2D(path);
 	}
 	
+	// sprites of these images drawn from shared 1024x1024 pages
+	public static final Texture2D[] atlas(String... paths)
+	{
+		return GameObjectManager.packTextures(1024, paths);
+	}
+	
 	public static final PlaneCollider collider(float upX, float upY, float upZ, float scaleX, float scaleY, float posX, float posY, float posZ)
 	{
 		PlaneCollider boundingPlane = new PlaneCollider();
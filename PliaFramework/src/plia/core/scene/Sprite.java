@@ -85,6 +85,16 @@ public class Sprite extends View
 		return new Vector2(scale.x, scale.y);
 	}
 	
+	public float getScaleX()
+	{
+		return scale.x;
+	}
+	
+	public float getScaleY()
+	{
+		return scale.y;
+	}
+	
 	public void setScale(float x, float y)
 	{
 		this.scale.x = x;
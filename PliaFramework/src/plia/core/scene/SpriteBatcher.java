@@ -0,0 +1,165 @@
+package plia.core.scene;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+import android.opengl.GLES20;
+
+import plia.core.RenderState;
+import plia.core.scene.shading.Shader;
+import plia.core.scene.shading.ShaderProgram;
+import plia.core.scene.shading.Texture2D;
+import plia.math.Matrix4;
+
+// Sprites written as screen space quads into one client side vertex array, drawn once per run of sprites
+// reading the same texture. Images packed with GameObjectManager.packTextures read their atlas page,
+// so a HUD of packed images is one draw whatever its sprite count.
+final class SpriteBatcher
+{
+	// quads per draw, their indices stay unsigned shorts
+	private static final int MAX_SPRITES = 1024;
+
+	// 4 vertices of (x, y, u, v) per quad
+	private final float[] quads = new float[MAX_SPRITES * 16];
+	private final FloatBuffer vertexBuffer;
+	private final FloatBuffer uvBuffer;
+	private final ShortBuffer indexBuffer;
+
+	private final float[] matrix = new float[16];
+
+	private int texture = -1;
+	private int count;
+	private int drawCount;
+
+	public SpriteBatcher()
+	{
+		ByteBuffer bytes = ByteBuffer.allocateDirect(quads.length * 4).order(ByteOrder.nativeOrder());
+		vertexBuffer = bytes.asFloatBuffer();
+		bytes.position(8);
+		uvBuffer = bytes.slice().order(ByteOrder.nativeOrder()).asFloatBuffer();
+
+		// same triangles as Quad : 0,1,2  0,2,3
+		short[] indices = new short[MAX_SPRITES * 6];
+		for (int i = 0; i < MAX_SPRITES; i++)
+		{
+			int v = i * 4;
+			int o = i * 6;
+			indices[o] = (short) v;
+			indices[o + 1] = (short) (v + 1);
+			indices[o + 2] = (short) (v + 2);
+			indices[o + 3] = (short) v;
+			indices[o + 4] = (short) (v + 2);
+			indices[o + 5] = (short) (v + 3);
+		}
+
+		indexBuffer = ByteBuffer.allocateDirect(indices.length * 2).order(ByteOrder.nativeOrder()).asShortBuffer();
+		indexBuffer.put(indices).position(0);
+	}
+
+	// Sets the sprite program up once for the pass
+	public void begin(Matrix4 projection)
+	{
+		ShaderProgram shaderProgram = Shader.AMBIENT.getProgram(11);
+
+		RenderState renderState = RenderState.getInstance();
+		renderState.useProgram(shaderProgram.getProgramID());
+
+		projection.copyTo(matrix);
+		GLES20.glUniformMatrix4fv(shaderProgram.get(ShaderProgram.MODELVIEW_PROJECTION_MATRIX), 1, false, matrix, 0);
+		GLES20.glUniform1i(shaderProgram.get(ShaderProgram.BASE_TEXTURE), 0);
+		GLES20.glUniform1f(shaderProgram.get(ShaderProgram.LIGHT_ABSORB_MULTIPLIER), 1);
+
+		int vh = shaderProgram.get(ShaderProgram.VERTEX_ATTRIBUTE);
+		int uvh = shaderProgram.get(ShaderProgram.UV_ATTRIBUTE);
+
+		// client side arrays, read at each draw
+		renderState.bindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+		renderState.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+
+		GLES20.glVertexAttribPointer(vh, 2, GLES20.GL_FLOAT, false, 16, vertexBuffer);
+		GLES20.glVertexAttribPointer(uvh, 2, GLES20.GL_FLOAT, false, 16, uvBuffer);
+		renderState.setVertexAttribArrays(RenderState.attrib(vh) | RenderState.attrib(uvh));
+
+		renderState.activeTexture(GLES20.GL_TEXTURE0);
+
+		texture = -1;
+		count = 0;
+		drawCount = 0;
+	}
+
+	public void add(Sprite sprite)
+	{
+		Texture2D image = sprite.getImageSrc();
+		Texture2D page = getPage(image);
+
+		if(page.getTextureBuffer() != texture || count == MAX_SPRITES)
+		{
+			flush();
+			texture = page.getTextureBuffer();
+		}
+
+		float u0 = image.getU0();
+		float v0 = image.getV0();
+		float u1 = image.getU1();
+		float v1 = image.getV1();
+
+		// one frame of a horizontal strip
+		if(sprite.hasAnimation())
+		{
+			float width = (u1 - u0) / sprite.getAnimation().getTotalFrame();
+			u0 += sprite.getAnimation().getCurrentFrame() * width;
+			u1 = u0 + width;
+		}
+
+		float x = sprite.getX();
+		float y = sprite.getY();
+		float xw = x + sprite.getScaleX();
+		float yh = y + sprite.getScaleY();
+
+		// Quad corners : (0,0) (0,1) (1,1) (1,0)
+		float[] q = quads;
+		int o = count * 16;
+
+		q[o] = x;			q[o + 1] = y;		q[o + 2] = u0;		q[o + 3] = v0;
+		q[o + 4] = x;		q[o + 5] = yh;		q[o + 6] = u0;		q[o + 7] = v1;
+		q[o + 8] = xw;		q[o + 9] = yh;		q[o + 10] = u1;		q[o + 11] = v1;
+		q[o + 12] = xw;		q[o + 13] = y;		q[o + 14] = u1;		q[o + 15] = v0;
+
+		count++;
+	}
+
+	public void end()
+	{
+		flush();
+	}
+
+	private void flush()
+	{
+		if(count == 0)
+		{
+			return;
+		}
+
+		vertexBuffer.put(quads, 0, count * 16).position(0);
+
+		RenderState.getInstance().bindTexture(GLES20.GL_TEXTURE_2D, texture);
+		GLES20.glDrawElements(GLES20.GL_TRIANGLES, count * 6, GLES20.GL_UNSIGNED_SHORT, indexBuffer);
+
+		drawCount++;
+		count = 0;
+	}
+
+	// draws of the last pass
+	public int getDrawCount()
+	{
+		return drawCount;
+	}
+
+	// texture the image is read from
+	static Texture2D getPage(Texture2D image)
+	{
+		return (image.getAtlas() != null) ? image.getAtlas() : image;
+	}
+}
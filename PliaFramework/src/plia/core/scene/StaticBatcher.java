@@ -0,0 +1,309 @@
+package plia.core.scene;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import plia.core.RenderState;
+import plia.core.scene.geometry.Geometry;
+import plia.core.scene.geometry.Mesh;
+import plia.core.scene.shading.Material;
+import plia.math.Matrix3;
+import plia.math.Matrix4;
+
+// Models under a static group (Group.setStatic) merged by material into meshes already in world space,
+// drawn as plain models with an identity world matrix. A batch holds at most 65536 vertices so its indices
+// stay unsigned shorts. The scene builds it again when a static model enters, moves or leaves.
+@SuppressWarnings("rawtypes")
+final class StaticBatcher
+{
+	private static final int MAX_VERTICES = 0x10000;
+
+	// merged meshes, and the models they replace
+	private final ArrayList<Model> batches = new ArrayList<Model>();
+	private final ArrayList<Model> sources = new ArrayList<Model>();
+	private final ArrayList<Material> materials = new ArrayList<Material>();
+
+	// batch being filled
+	private float[] vertices = new float[1024 * 3];
+	private float[] normals = new float[1024 * 3];
+	private float[] uv = new float[1024 * 2];
+	private int[] indices = new int[1024 * 3];
+	private int vertexCount;
+	private int indexCount;
+
+	private final Matrix4 world = new Matrix4();
+	private final Matrix4 model = new Matrix4();
+	private final Matrix3 normalMatrix = new Matrix3();
+
+	// Merges the static models of the active layers, the previous batches are released
+	public void build(Scene scene)
+	{
+		clear();
+
+		for (int i = 0; i < scene.getLayerCount(); i++)
+		{
+			Layer layer = scene.getLayer(i);
+
+			if(layer.isActive())
+			{
+				for (int j = 0; j < layer.getChildCount(); j++)
+				{
+					Node child = layer.getChild(j);
+
+					if(child instanceof Group)
+					{
+						collect((Group) child, false);
+					}
+				}
+			}
+		}
+
+		// one pass per material, in the order they were met
+		for (int i = 0; i < materials.size(); i++)
+		{
+			Material material = materials.get(i);
+
+			for (int j = 0; j < sources.size(); j++)
+			{
+				Model source = sources.get(j);
+
+				if(source.getMaterial() == material)
+				{
+					if(vertexCount + ((Mesh) source.getGeometry()).getVertexCount() > MAX_VERTICES)
+					{
+						flush(material);
+					}
+
+					append(source);
+				}
+			}
+
+			flush(material);
+		}
+	}
+
+	private void collect(Group group, boolean isStatic)
+	{
+		if(!group.isActive())
+		{
+			return;
+		}
+
+		isStatic |= group.isStatic();
+
+		if(isStatic && group instanceof Model && isBatchable((Model) group))
+		{
+			Model model = (Model) group;
+			model.batched = true;
+			sources.add(model);
+
+			if(!materials.contains(model.getMaterial()))
+			{
+				materials.add(model.getMaterial());
+			}
+		}
+
+		for (int i = 0; i < group.getChildCount(); i++)
+		{
+			collect(group.getChild(i), isStatic);
+		}
+	}
+
+	// Still meshes that fit in a batch
+	private static boolean isBatchable(Model model)
+	{
+		Geometry geometry = model.getGeometry();
+
+		if(geometry == null || geometry.getType() != Geometry.MESH || model.hasAnimation() || model.getMaterial() == null)
+		{
+			return false;
+		}
+
+		return ((Mesh) geometry).getVertexCount() <= MAX_VERTICES;
+	}
+
+	// Source vertices (vertices | normals | uv) moved to world space
+	private void append(Model source)
+	{
+		Mesh mesh = (Mesh) source.getGeometry();
+		FloatBuffer fb = mesh.getVertexBuffer();
+		IntBuffer ib = mesh.getIndexBuffer();
+
+		int count = mesh.getVertexCount();
+		int n = mesh.NORMALS_OFFSET / 4;
+		int u = mesh.UV_OFFSET / 4;
+
+		ensureCapacity(vertexCount + count, indexCount + mesh.INDICES_COUNT);
+
+		Scene.getScaledWorldMatrix(source, world);
+		Matrix4.multiply(model, world, source.getAxisRotation());
+		Matrix3.createNormalMatrix(normalMatrix, model);
+
+		Matrix4 m = model;
+		Matrix3 nm = normalMatrix;
+
+		for (int v = 0; v < count; v++)
+		{
+			int src = v * 3;
+			int dst = (vertexCount + v) * 3;
+
+			float x = fb.get(src);
+			float y = fb.get(src + 1);
+			float z = fb.get(src + 2);
+
+			vertices[dst] = m.m11 * x + m.m21 * y + m.m31 * z + m.m41;
+			vertices[dst + 1] = m.m12 * x + m.m22 * y + m.m32 * z + m.m42;
+			vertices[dst + 2] = m.m13 * x + m.m23 * y + m.m33 * z + m.m43;
+
+			if(n > 0)
+			{
+				x = fb.get(n + src);
+				y = fb.get(n + src + 1);
+				z = fb.get(n + src + 2);
+
+				float nx = nm.m11 * x + nm.m21 * y + nm.m31 * z;
+				float ny = nm.m12 * x + nm.m22 * y + nm.m32 * z;
+				float nz = nm.m13 * x + nm.m23 * y + nm.m33 * z;
+
+				// the scale is baked in, the shaders expect unit normals
+				float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+				if(length > 0)
+				{
+					nx /= length;
+					ny /= length;
+					nz /= length;
+				}
+
+				normals[dst] = nx;
+				normals[dst + 1] = ny;
+				normals[dst + 2] = nz;
+			}
+			else
+			{
+				normals[dst] = 0;
+				normals[dst + 1] = 0;
+				normals[dst + 2] = 1;
+			}
+
+			int uvDst = (vertexCount + v) * 2;
+			if(u > 0)
+			{
+				uv[uvDst] = fb.get(u + v * 2);
+				uv[uvDst + 1] = fb.get(u + v * 2 + 1);
+			}
+			else
+			{
+				uv[uvDst] = 0;
+				uv[uvDst + 1] = 0;
+			}
+		}
+
+		for (int i = 0; i < mesh.INDICES_COUNT; i++)
+		{
+			indices[indexCount + i] = ib.get(i) + vertexCount;
+		}
+
+		vertexCount += count;
+		indexCount += mesh.INDICES_COUNT;
+	}
+
+	// Uploads the batch being filled as a model of the material
+	private void flush(Material material)
+	{
+		if(indexCount == 0)
+		{
+			vertexCount = 0;
+			return;
+		}
+
+		Mesh mesh = new Mesh(Arrays.copyOf(vertices, vertexCount * 3), Arrays.copyOf(normals, vertexCount * 3), Arrays.copyOf(uv, vertexCount * 2), Arrays.copyOf(indices, indexCount));
+
+		float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+		float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+		for (int i = 0; i < vertexCount * 3; i += 3)
+		{
+			minX = Math.min(minX, vertices[i]);
+			minY = Math.min(minY, vertices[i + 1]);
+			minZ = Math.min(minZ, vertices[i + 2]);
+			maxX = Math.max(maxX, vertices[i]);
+			maxY = Math.max(maxY, vertices[i + 1]);
+			maxZ = Math.max(maxZ, vertices[i + 2]);
+		}
+		mesh.getMin().set(minX, minY, minZ);
+		mesh.getMax().set(maxX, maxY, maxZ);
+		mesh.resume();
+
+		Model batch = new Model("StaticBatch");
+		batch.setGeometry(mesh);
+		batch.setMaterial(material);
+		batches.add(batch);
+
+		vertexCount = 0;
+		indexCount = 0;
+	}
+
+	private void ensureCapacity(int vertexCapacity, int indexCapacity)
+	{
+		if(vertexCapacity * 3 > vertices.length)
+		{
+			int capacity = Math.max(vertexCapacity, vertices.length / 3 * 2);
+			vertices = Arrays.copyOf(vertices, capacity * 3);
+			normals = Arrays.copyOf(normals, capacity * 3);
+			uv = Arrays.copyOf(uv, capacity * 2);
+		}
+
+		if(indexCapacity > indices.length)
+		{
+			indices = Arrays.copyOf(indices, Math.max(indexCapacity, indices.length * 2));
+		}
+	}
+
+	public int getBatchCount()
+	{
+		return batches.size();
+	}
+
+	public Model getBatch(int index)
+	{
+		return batches.get(index);
+	}
+
+	// models merged in the batches
+	public int getSourceCount()
+	{
+		return sources.size();
+	}
+
+	// Releases the batches, their models are drawn by themselves again
+	public void clear()
+	{
+		int[] ids = new int[2];
+		for (int i = 0; i < batches.size(); i++)
+		{
+			Geometry mesh = batches.get(i).getGeometry();
+			ids[0] = mesh.getBuffer(0);
+			ids[1] = mesh.getBuffer(1);
+			RenderState.getInstance().deleteBuffers(2, ids, 0);
+		}
+
+		discard();
+	}
+
+	// Same without deleting the buffers, after a context loss they went with the old context
+	// and their ids may already name buffers of the new one
+	public void discard()
+	{
+		for (int i = 0; i < sources.size(); i++)
+		{
+			sources.get(i).batched = false;
+		}
+
+		batches.clear();
+		sources.clear();
+		materials.clear();
+		vertexCount = 0;
+		indexCount = 0;
+	}
+}
@@ -3,6 +3,7 @@ package plia.core.scene;
 import java.util.ArrayList;
 
 import plia.core.scene.shading.Texture2D;
+import plia.math.Matrix4;
 
 public class Terrain extends Group
 {
@@ -42,11 +43,33 @@ public class Terrain extends Group
 	public void setTerrainScale(int scale)
 	{
 		this.scale = scale;
+		setChanged();
 	}
 	
 	public void setTerrainMaxHeight(int height)
 	{
 		this.height = height;
+		setChanged();
+	}
+	
+	@Override
+	protected int getBoundsType()
+	{
+		return BoundingVolumeTree.BOX;
+	}
+	
+	// scale * scale * maxHeight from the terrain position, how the terrain shaders lay it out
+	@Override
+	protected void getWorldBounds(float[] bounds, int offset)
+	{
+		Matrix4 world = getWorldMatrix();
+		
+		bounds[offset] = world.m41;
+		bounds[offset + 1] = world.m42;
+		bounds[offset + 2] = world.m43;
+		bounds[offset + 3] = world.m41 + scale;
+		bounds[offset + 4] = world.m42 + scale;
+		bounds[offset + 5] = world.m43 + height;
 	}
 	
 	public int getTerrainScale()
@@ -24,9 +24,10 @@ public final class TerrainCollider extends Collider
 		// TODO Auto-generated method stub
 		super.onUpdateHierarchy(parentHasChanged);
 		
-		for (Collider bounds : terrain.attached)
+		// indexed, an iterator would be allocated every update
+		for (int i = 0; i < terrain.attached.size(); i++)
 		{
-			glueObject(bounds);
+			glueObject(terrain.attached.get(i));
 			
 //			if(terrain instanceof StaticTerrain)
 //			{
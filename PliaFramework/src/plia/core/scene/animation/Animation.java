@@ -21,6 +21,22 @@ public class Animation
 	private HashMap<String, AnimationClip> animationClips = new HashMap<String, AnimationClip>();
 	
 	private boolean playing = false;
+	private boolean interpolated = false;
+	
+	// Blending : the current clip plus up to MAX_LAYERS - 1 other clips, each with its own frame and weight.
+	// Weights move towards their target at a fixed rate (cross-fades), faded out layers are dropped.
+	public static final int MAX_LAYERS = 4;
+	
+	private float weight = 1;
+	private float targetWeight = 1;
+	private float fadeRate;
+	
+	private int layerCount;
+	private final AnimationClip[] layerClips = new AnimationClip[MAX_LAYERS - 1];
+	private final float[] layerFrames = new float[MAX_LAYERS - 1];
+	private final float[] layerWeights = new float[MAX_LAYERS - 1];
+	private final float[] layerTargetWeights = new float[MAX_LAYERS - 1];
+	private final float[] layerFadeRates = new float[MAX_LAYERS - 1];
 	
 	public Animation(int start, int total)
 	{
@@ -52,6 +68,17 @@ public class Animation
 		animation.animationClips = animationClips;
 		
 		animation.playing = playing;
+		animation.interpolated = interpolated;
+		
+		animation.weight = weight;
+		animation.targetWeight = targetWeight;
+		animation.fadeRate = fadeRate;
+		animation.layerCount = layerCount;
+		System.arraycopy(layerClips, 0, animation.layerClips, 0, layerCount);
+		System.arraycopy(layerFrames, 0, animation.layerFrames, 0, layerCount);
+		System.arraycopy(layerWeights, 0, animation.layerWeights, 0, layerCount);
+		System.arraycopy(layerTargetWeights, 0, animation.layerTargetWeights, 0, layerCount);
+		System.arraycopy(layerFadeRates, 0, animation.layerFadeRates, 0, layerCount);
 		
 		return animation;
 	}
@@ -77,6 +104,109 @@ public class Animation
 				currentFrame += step * playbackSpeed;
 			}
 		}
+		
+		if(layerCount > 0 || weight != targetWeight)
+		{
+			updateLayers();
+		}
+	}
+	
+	private void updateLayers()
+	{
+		float elapsed = GameTime.getElapsedGameTime().getMilliseconds();
+		
+		weight = fade(weight, targetWeight, fadeRate * elapsed);
+		
+		for (int i = 0; i < layerCount; i++)
+		{
+			AnimationClip clip = layerClips[i];
+			
+			if(playing)
+			{
+				if(layerFrames[i] >= clip.getEnd())
+				{
+					// a clip played once holds its last frame while it fades
+					if(clip.getPlaybackMode() == PlaybackMode.LOOP)
+					{
+						layerFrames[i] = clip.getStart();
+					}
+				}
+				else
+				{
+					layerFrames[i] += (elapsed / interval) * playbackSpeed;
+				}
+			}
+			
+			layerWeights[i] = fade(layerWeights[i], layerTargetWeights[i], layerFadeRates[i] * elapsed);
+			
+			if(layerWeights[i] <= 0 && layerTargetWeights[i] <= 0)
+			{
+				removeLayer(i--);
+			}
+		}
+	}
+	
+	private static float fade(float weight, float target, float delta)
+	{
+		if(weight < target)
+		{
+			return Math.min(weight + delta, target);
+		}
+		
+		return Math.max(weight - delta, target);
+	}
+	
+	private void removeLayer(int index)
+	{
+		layerCount--;
+		
+		layerClips[index] = layerClips[layerCount];
+		layerFrames[index] = layerFrames[layerCount];
+		layerWeights[index] = layerWeights[layerCount];
+		layerTargetWeights[index] = layerTargetWeights[layerCount];
+		layerFadeRates[index] = layerFadeRates[layerCount];
+		
+		layerClips[layerCount] = null;
+	}
+	
+	private int findLayer(AnimationClip clip)
+	{
+		for (int i = 0; i < layerCount; i++)
+		{
+			if(layerClips[i] == clip)
+			{
+				return i;
+			}
+		}
+		
+		return -1;
+	}
+	
+	// Room for one more layer, the faintest one goes when all are taken
+	private int addLayer(AnimationClip clip, float frame, float weight)
+	{
+		if(layerCount == layerClips.length)
+		{
+			int faintest = 0;
+			for (int i = 1; i < layerCount; i++)
+			{
+				if(layerWeights[i] < layerWeights[faintest])
+				{
+					faintest = i;
+				}
+			}
+			removeLayer(faintest);
+		}
+		
+		int index = layerCount++;
+		
+		layerClips[index] = clip;
+		layerFrames[index] = frame;
+		layerWeights[index] = weight;
+		layerTargetWeights[index] = weight;
+		layerFadeRates[index] = 0;
+		
+		return index;
 	}
 	
 
@@ -129,6 +259,24 @@ public class Animation
 	{
 		return (int) currentFrame;
 	}
+	
+	// Current frame with its fraction, kept inside the clip so the last frame never blends into the next clip
+	public float getCurrentFramePosition()
+	{
+		return Math.min(currentFrame, currentAnimationClip.getEnd());
+	}
+	
+	// Draws the palette of the exact time between two frames instead of the last whole frame,
+	// smooth at any frame rate and playback speed
+	public void setInterpolated(boolean interpolated)
+	{
+		this.interpolated = interpolated;
+	}
+	
+	public boolean isInterpolated()
+	{
+		return interpolated;
+	}
 
 	public AnimationClip getAnimationClip(String clipName)
 	{
@@ -160,8 +308,169 @@ public class Animation
 			currentAnimationClip = animationClips.get(clipName);
 			currentFrame = currentAnimationClip.getStart();
 			playing = true;
+			
+			clearLayers();
 		}
 	}
+	
+	// Makes clipName the current clip, its weight goes from 0 (or where it already is) to 1
+	// in duration milliseconds while every other playing clip fades out
+	public void crossFade(String clipName, int duration)
+	{
+		AnimationClip clip = animationClips.get(clipName);
+		
+		if(clip == null)
+		{
+			return;
+		}
+		
+		if(duration <= 0)
+		{
+			play(clipName);
+			return;
+		}
+		
+		if(clip != currentAnimationClip)
+		{
+			int index = findLayer(clip);
+			
+			float frame = clip.getStart();
+			float clipWeight = 0;
+			
+			if(index > -1)
+			{
+				frame = layerFrames[index];
+				clipWeight = layerWeights[index];
+				removeLayer(index);
+			}
+			
+			if(weight > 0)
+			{
+				addLayer(currentAnimationClip, currentFrame, weight);
+			}
+			
+			currentAnimationClip = clip;
+			currentFrame = frame;
+			weight = clipWeight;
+		}
+		
+		for (int i = 0; i < layerCount; i++)
+		{
+			layerTargetWeights[i] = 0;
+			layerFadeRates[i] = layerWeights[i] / duration;
+		}
+		
+		targetWeight = 1;
+		fadeRate = (1 - weight) / duration;
+		playing = true;
+	}
+	
+	// Blend tree weight of a clip : the current one or another playing along, started when it is not yet.
+	// Weights are relative, the palette is the weighted mean of all the playing clips.
+	public void setWeight(String clipName, float weight)
+	{
+		AnimationClip clip = animationClips.get(clipName);
+		
+		if(clip == null)
+		{
+			return;
+		}
+		
+		weight = Math.max(weight, 0);
+		
+		if(clip == currentAnimationClip)
+		{
+			this.weight = weight;
+			this.targetWeight = weight;
+			this.fadeRate = 0;
+			return;
+		}
+		
+		int index = findLayer(clip);
+		
+		if(index > -1)
+		{
+			if(weight > 0)
+			{
+				layerWeights[index] = weight;
+				layerTargetWeights[index] = weight;
+				layerFadeRates[index] = 0;
+			}
+			else
+			{
+				removeLayer(index);
+			}
+		}
+		else if(weight > 0)
+		{
+			addLayer(clip, clip.getStart(), weight);
+		}
+	}
+	
+	public float getWeight(String clipName)
+	{
+		AnimationClip clip = animationClips.get(clipName);
+		
+		if(clip == currentAnimationClip)
+		{
+			return weight;
+		}
+		
+		int index = findLayer(clip);
+		
+		return (index > -1) ? layerWeights[index] : 0;
+	}
+	
+	private void clearLayers()
+	{
+		for (int i = 0; i < layerCount; i++)
+		{
+			layerClips[i] = null;
+		}
+		
+		layerCount = 0;
+		weight = 1;
+		targetWeight = 1;
+		fadeRate = 0;
+	}
+	
+	// Clips blended into the palette, 1 when only the current clip plays
+	public int getLayerCount()
+	{
+		return layerCount + 1;
+	}
+	
+	// Frames (with their fraction when interpolated) and normalized weights of the blended clips,
+	// the current clip first. Returns the layer count.
+	public int getLayers(float[] frames, float[] weights)
+	{
+		frames[0] = interpolated ? getCurrentFramePosition() : getCurrentFrame();
+		weights[0] = weight;
+		
+		float total = weight;
+		
+		for (int i = 0; i < layerCount; i++)
+		{
+			float frame = Math.min(layerFrames[i], layerClips[i].getEnd());
+			
+			frames[i + 1] = interpolated ? frame : (int) frame;
+			weights[i + 1] = layerWeights[i];
+			
+			total += layerWeights[i];
+		}
+		
+		if(total <= 0)
+		{
+			weights[0] = total = 1;
+		}
+		
+		for (int i = 0; i <= layerCount; i++)
+		{
+			weights[i] /= total;
+		}
+		
+		return layerCount + 1;
+	}
 
 	public void stop()
 	{
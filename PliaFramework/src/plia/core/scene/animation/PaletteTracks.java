@@ -0,0 +1,856 @@
+package plia.core.scene.animation;
+
+import java.util.Arrays;
+
+import plia.math.Quaternion;
+
+// Keyframe-sparse storage of a matrix palette : per node translation, rotation (quaternion) and scale keys,
+// the palette of a frame is rebuilt on demand instead of keeping float[frames][bones * 16].
+//
+// Nodes are in parent first order, palette slot i = world(node) * bindPose(i), world(node) = world(parent) * T * R * S.
+// Frames between two keys are interpolated (lerp, slerp for rotations), keys are only kept where that
+// interpolation drifts from the sampled curve by more than the tolerance. Any time in between two frames
+// can be evaluated the same way, for smooth playback of low rate animations.
+//
+// Once built the keys can be quantised to 3 shorts each : rotations as the smallest three components of the
+// quaternion (the index of the dropped one in the low bits of the first two), translations and scales
+// relative to the bounds of their track.
+public final class PaletteTracks
+{
+	public static final int TRANSLATION = 0;
+	public static final int ROTATION = 1;
+	public static final int SCALE = 2;
+
+	// key frames are stored on 16 bits
+	public static final int MAX_FRAMES = 0x10000;
+
+	private static final int CHANNELS = 3;
+	private static final int[] COMPONENTS = { 3, 4, 3 };
+	private static final float[] DEFAULTS = { 0, 0, 0, 0, 0, 0, 1, 1, 1, 1 };
+	private static final int[] DEFAULT_OFFSETS = { 0, 3, 7 };
+
+	// quaternion components for rotations, relative to the track's largest value for the others
+	private static final float[] TOLERANCES = { 0.0001f, 0.0001f, 0.0001f };
+
+	// cosine of the angle between two quaternions above which they are nlerped
+	private static final float SLERP_THRESHOLD = 0.9995f;
+
+	// longest run between two keys, bounds the cost of the key reduction
+	private static final int MAX_KEY_GAP = 64;
+
+	// error budget of quantize(), same units as the key reduction tolerances
+	public static final float QUANTIZE_ERROR = 0.0001f;
+
+	// smallest three components of a unit quaternion are within +-1/sqrt(2)
+	private static final float SQRT_HALF = 0.70710678f;
+
+	private final int frameCount;
+	private final int[] parents;
+	private final int[] slots;
+	private final float[] bindPoses;
+	private final int paletteLength;
+
+	// per track (node * 3 + channel) : first key, key count (0 = default value), first value
+	private final int[] keyStart;
+	private final int[] keyCount;
+	private final int[] valueStart;
+
+	private short[] keyFrames = new short[64];
+	private float[] keyValues = new float[256];
+	private int keyLength;
+	private int valueLength;
+
+	// quantised keys, 3 per key, replacing keyValues, and per track minimum and extent of the 3 components
+	private short[] packedValues;
+	private float[] ranges;
+
+	// evaluation scratch
+	private final float[] world;
+	private final float[] local = new float[16];
+	private final float[] sample = new float[4];
+	private final float[] keyA = new float[4];
+	private final float[] keyB = new float[4];
+	private final float[] trs = new float[10];
+	private final float[] singleFrame = new float[1];
+	private static final float[] SINGLE_WEIGHT = { 1 };
+	private final float[] palette;
+	private float paletteFrame = -1;
+
+	private final Quaternion from = new Quaternion();
+	private final Quaternion to = new Quaternion();
+	private final Quaternion slerp = new Quaternion();
+
+	// bindPoses holds 16 floats per palette slot, frames are counted from 0
+	public PaletteTracks(int frameCount, int[] parents, int[] slots, float[] bindPoses)
+	{
+		if(frameCount > MAX_FRAMES)
+		{
+			throw new IllegalArgumentException("Too many frames : " + frameCount);
+		}
+
+		this.frameCount = frameCount;
+		this.parents = parents;
+		this.slots = slots;
+		this.bindPoses = bindPoses;
+		this.paletteLength = bindPoses.length;
+
+		int trackCount = parents.length * CHANNELS;
+		keyStart = new int[trackCount];
+		keyCount = new int[trackCount];
+		valueStart = new int[trackCount];
+
+		world = new float[parents.length * 16];
+		palette = new float[paletteLength];
+	}
+
+	// Raw tracks, as returned by the getters below
+	public PaletteTracks(int frameCount, int[] parents, int[] slots, float[] bindPoses, int[] keyStart, int[] keyCount, int[] valueStart, short[] keyFrames, float[] keyValues)
+	{
+		this(frameCount, parents, slots, bindPoses);
+
+		System.arraycopy(keyStart, 0, this.keyStart, 0, keyStart.length);
+		System.arraycopy(keyCount, 0, this.keyCount, 0, keyCount.length);
+		System.arraycopy(valueStart, 0, this.valueStart, 0, valueStart.length);
+
+		this.keyFrames = keyFrames;
+		this.keyValues = keyValues;
+		this.keyLength = keyFrames.length;
+		this.valueLength = keyValues.length;
+	}
+
+	// Raw quantised tracks
+	public PaletteTracks(int frameCount, int[] parents, int[] slots, float[] bindPoses, int[] keyStart, int[] keyCount, int[] valueStart, short[] keyFrames, short[] packedValues, float[] ranges)
+	{
+		this(frameCount, parents, slots, bindPoses, keyStart, keyCount, valueStart, keyFrames, new float[0]);
+
+		this.keyValues = null;
+		this.packedValues = packedValues;
+		this.ranges = ranges;
+	}
+
+	//
+	// Build
+	//
+
+	// samples holds frameCount values of the channel (x, y, z or quaternion x, y, z, w)
+	public void setTrack(int node, int channel, float[] samples)
+	{
+		if(packedValues != null)
+		{
+			throw new IllegalStateException("Tracks are quantised");
+		}
+
+		int components = COMPONENTS[channel];
+		int track = node * CHANNELS + channel;
+
+		if(channel == ROTATION)
+		{
+			// q and -q are the same rotation, keep neighbours in the same hemisphere so they interpolate
+			for (int f = 1; f < frameCount; f++)
+			{
+				int o = f * 4;
+				if(samples[o] * samples[o-4] + samples[o+1] * samples[o-3] + samples[o+2] * samples[o-2] + samples[o+3] * samples[o-1] < 0)
+				{
+					samples[o] = -samples[o];
+					samples[o+1] = -samples[o+1];
+					samples[o+2] = -samples[o+2];
+					samples[o+3] = -samples[o+3];
+				}
+			}
+		}
+
+		float tolerance = TOLERANCES[channel];
+		if(channel != ROTATION)
+		{
+			float magnitude = 1;
+			for (int i = 0; i < frameCount * components; i++)
+			{
+				magnitude = Math.max(magnitude, Math.abs(samples[i]));
+			}
+			tolerance *= magnitude;
+		}
+
+		keyStart[track] = keyLength;
+		valueStart[track] = valueLength;
+
+		if(isConstant(samples, components, DEFAULTS, DEFAULT_OFFSETS[channel], tolerance))
+		{
+			keyCount[track] = 0;
+			return;
+		}
+
+		if(isConstant(samples, components, samples, 0, tolerance))
+		{
+			addKey(0, samples, 0, components);
+			keyCount[track] = 1;
+			return;
+		}
+
+		int count = 1;
+		int anchor = 0;
+		addKey(0, samples, 0, components);
+
+		while(anchor < frameCount - 1)
+		{
+			// furthest frame the anchor can reach with every frame in between inside the tolerance
+			int end = anchor + 1;
+			while(end + 1 < frameCount && end + 1 - anchor <= MAX_KEY_GAP && canInterpolate(samples, components, anchor, end + 1, tolerance))
+			{
+				end++;
+			}
+
+			addKey(end, samples, end * components, components);
+			count++;
+			anchor = end;
+		}
+
+		keyCount[track] = count;
+	}
+
+	private boolean isConstant(float[] samples, int components, float[] value, int offset, float tolerance)
+	{
+		for (int f = 0; f < frameCount; f++)
+		{
+			for (int c = 0; c < components; c++)
+			{
+				if(Math.abs(samples[f * components + c] - value[offset + c]) > tolerance)
+				{
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	private boolean canInterpolate(float[] samples, int components, int from, int to, float tolerance)
+	{
+		float[] value = sample;
+
+		for (int f = from + 1; f < to; f++)
+		{
+			interpolate(samples, from * components, samples, to * components, components, (f - from) / (float) (to - from), value);
+
+			for (int c = 0; c < components; c++)
+			{
+				if(Math.abs(samples[f * components + c] - value[c]) > tolerance)
+				{
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	private void addKey(int frame, float[] samples, int offset, int components)
+	{
+		if(keyLength == keyFrames.length)
+		{
+			keyFrames = Arrays.copyOf(keyFrames, keyLength * 2);
+		}
+		if(valueLength + components > keyValues.length)
+		{
+			keyValues = Arrays.copyOf(keyValues, Math.max(keyValues.length * 2, valueLength + components));
+		}
+
+		keyFrames[keyLength++] = (short) frame;
+		System.arraycopy(samples, offset, keyValues, valueLength, components);
+		valueLength += components;
+	}
+
+	// Drops the spare room left by the build
+	public void trimToSize()
+	{
+		keyFrames = Arrays.copyOf(keyFrames, keyLength);
+
+		if(keyValues != null)
+		{
+			keyValues = Arrays.copyOf(keyValues, valueLength);
+		}
+	}
+
+	// Replaces the float keys by 16 bit ones, once every track is set. Keeps the float keys and returns false
+	// when a key would move by more than errorBudget (relative to the track's largest value for translations and scales).
+	public boolean quantize(float errorBudget)
+	{
+		if(packedValues != null)
+		{
+			return true;
+		}
+
+		int trackCount = keyCount.length;
+
+		short[] packed = new short[keyLength * 3];
+		float[] bounds = new float[trackCount * 6];
+		int[] packedStart = new int[trackCount];
+		int length = 0;
+
+		float[] decoded = keyA;
+
+		for (int track = 0; track < trackCount; track++)
+		{
+			int channel = track % CHANNELS;
+			int components = COMPONENTS[channel];
+			int count = keyCount[track];
+			int offset = valueStart[track];
+			int r = track * 6;
+
+			packedStart[track] = length;
+
+			float tolerance = errorBudget;
+
+			if(channel != ROTATION && count > 0)
+			{
+				float magnitude = 1;
+
+				for (int c = 0; c < 3; c++)
+				{
+					float min = Float.MAX_VALUE;
+					float max = -Float.MAX_VALUE;
+
+					for (int k = 0; k < count; k++)
+					{
+						float value = keyValues[offset + k * 3 + c];
+						min = Math.min(min, value);
+						max = Math.max(max, value);
+					}
+
+					bounds[r + c] = min;
+					bounds[r + 3 + c] = max - min;
+					magnitude = Math.max(magnitude, Math.max(Math.abs(min), Math.abs(max)));
+				}
+
+				tolerance *= magnitude;
+			}
+
+			for (int k = 0; k < count; k++)
+			{
+				int o = offset + k * components;
+				int p = length + k * 3;
+
+				if(channel == ROTATION)
+				{
+					packRotation(keyValues, o, packed, p);
+					unpackRotation(packed, p, decoded);
+
+					// the sign of the quaternion is not kept
+					if(decoded[0] * keyValues[o] + decoded[1] * keyValues[o+1] + decoded[2] * keyValues[o+2] + decoded[3] * keyValues[o+3] < 0)
+					{
+						decoded[0] = -decoded[0];
+						decoded[1] = -decoded[1];
+						decoded[2] = -decoded[2];
+						decoded[3] = -decoded[3];
+					}
+				}
+				else
+				{
+					packVector(keyValues, o, bounds, r, packed, p);
+					unpackVector(packed, p, bounds, r, decoded);
+				}
+
+				for (int c = 0; c < components; c++)
+				{
+					if(Math.abs(decoded[c] - keyValues[o + c]) > tolerance)
+					{
+						return false;
+					}
+				}
+			}
+
+			length += count * 3;
+		}
+
+		System.arraycopy(packedStart, 0, valueStart, 0, trackCount);
+		packedValues = packed;
+		ranges = bounds;
+		keyValues = null;
+		valueLength = length;
+
+		return true;
+	}
+
+	private static void packRotation(float[] q, int o, short[] packed, int p)
+	{
+		int largest = 0;
+		for (int i = 1; i < 4; i++)
+		{
+			if(Math.abs(q[o + i]) > Math.abs(q[o + largest]))
+			{
+				largest = i;
+			}
+		}
+
+		// q and -q are the same rotation, the dropped component is made positive
+		float sign = (q[o + largest] < 0) ? -1 : 1;
+
+		int n = 0;
+		for (int i = 0; i < 4; i++)
+		{
+			if(i == largest)
+			{
+				continue;
+			}
+
+			float value = q[o + i] * sign;
+
+			if(n < 2)
+			{
+				packed[p + n] = (short) ((quantize(value, 15) << 1) | ((largest >> n) & 1));
+			}
+			else
+			{
+				packed[p + n] = (short) quantize(value, 16);
+			}
+
+			n++;
+		}
+	}
+
+	private static void unpackRotation(short[] packed, int p, float[] q)
+	{
+		int s0 = packed[p] & 0xFFFF;
+		int s1 = packed[p+1] & 0xFFFF;
+		int s2 = packed[p+2] & 0xFFFF;
+
+		int largest = (s0 & 1) | ((s1 & 1) << 1);
+
+		float a = dequantize(s0 >>> 1, 15);
+		float b = dequantize(s1 >>> 1, 15);
+		float c = dequantize(s2, 16);
+
+		int n = 0;
+		for (int i = 0; i < 4; i++)
+		{
+			if(i == largest)
+			{
+				q[i] = (float) Math.sqrt(Math.max(0, 1 - a*a - b*b - c*c));
+			}
+			else
+			{
+				q[i] = (n == 0) ? a : ((n == 1) ? b : c);
+				n++;
+			}
+		}
+	}
+
+	private static int quantize(float value, int bits)
+	{
+		int max = (1 << bits) - 1;
+		int q = Math.round((value + SQRT_HALF) / (2 * SQRT_HALF) * max);
+
+		return Math.max(0, Math.min(max, q));
+	}
+
+	private static float dequantize(int q, int bits)
+	{
+		return q / (float) ((1 << bits) - 1) * (2 * SQRT_HALF) - SQRT_HALF;
+	}
+
+	private static void packVector(float[] v, int o, float[] bounds, int r, short[] packed, int p)
+	{
+		for (int c = 0; c < 3; c++)
+		{
+			float extent = bounds[r + 3 + c];
+			packed[p + c] = (short) ((extent > 0) ? Math.round((v[o + c] - bounds[r + c]) / extent * 0xFFFF) : 0);
+		}
+	}
+
+	private static void unpackVector(short[] packed, int p, float[] bounds, int r, float[] v)
+	{
+		for (int c = 0; c < 3; c++)
+		{
+			v[c] = bounds[r + c] + (packed[p + c] & 0xFFFF) * (bounds[r + 3 + c] / 0xFFFF);
+		}
+	}
+
+	//
+	// Evaluate
+	//
+
+	// Palette of the frame (clamped to the tracks), the array is reused by the next call
+	public float[] getPalette(int frame)
+	{
+		return getPalette((float) frame);
+	}
+
+	// Palette at any time between two frames
+	public float[] getPalette(float frame)
+	{
+		frame = clamp(frame);
+
+		if(frame != paletteFrame)
+		{
+			getPalette(frame, palette);
+			paletteFrame = frame;
+		}
+
+		return palette;
+	}
+
+	public void getPalette(float frame, float[] result)
+	{
+		singleFrame[0] = frame;
+		getPalette(singleFrame, SINGLE_WEIGHT, 1, result);
+	}
+
+	// Blend of the palettes of several frames (one per playing clip), weights adding up to 1.
+	// The clips are mixed per node before the hierarchy : translations and scales as weighted means,
+	// rotations as the normalized weighted sum of the quaternions, all in the same hemisphere.
+	public float[] getPalette(float[] frames, float[] weights, int count)
+	{
+		getPalette(frames, weights, count, palette);
+		paletteFrame = -1;
+
+		return palette;
+	}
+
+	public void getPalette(float[] frames, float[] weights, int count, float[] result)
+	{
+		float[] m = local;
+		float[] v = sample;
+		float[] b = trs;
+
+		for (int node = 0; node < parents.length; node++)
+		{
+			int track = node * CHANNELS;
+
+			if(count == 1)
+			{
+				float frame = clamp(frames[0]);
+
+				getValue(track + TRANSLATION, frame, v);
+				System.arraycopy(v, 0, b, 0, 3);
+				getValue(track + ROTATION, frame, v);
+				System.arraycopy(v, 0, b, 3, 4);
+				getValue(track + SCALE, frame, v);
+				System.arraycopy(v, 0, b, 7, 3);
+			}
+			else
+			{
+				Arrays.fill(b, 0);
+
+				for (int i = 0; i < count; i++)
+				{
+					float frame = clamp(frames[i]);
+					float weight = weights[i];
+
+					getValue(track + TRANSLATION, frame, v);
+					b[0] += v[0] * weight;
+					b[1] += v[1] * weight;
+					b[2] += v[2] * weight;
+
+					getValue(track + ROTATION, frame, v);
+					float rotationWeight = (b[3] * v[0] + b[4] * v[1] + b[5] * v[2] + b[6] * v[3] < 0) ? -weight : weight;
+					b[3] += v[0] * rotationWeight;
+					b[4] += v[1] * rotationWeight;
+					b[5] += v[2] * rotationWeight;
+					b[6] += v[3] * rotationWeight;
+
+					getValue(track + SCALE, frame, v);
+					b[7] += v[0] * weight;
+					b[8] += v[1] * weight;
+					b[9] += v[2] * weight;
+				}
+
+				float length = (float) Math.sqrt(b[3] * b[3] + b[4] * b[4] + b[5] * b[5] + b[6] * b[6]);
+				if(length > 0)
+				{
+					b[3] /= length;
+					b[4] /= length;
+					b[5] /= length;
+					b[6] /= length;
+				}
+				else
+				{
+					b[6] = 1;
+				}
+			}
+
+			// local = T * R * S
+			float x = b[3], y = b[4], z = b[5], w = b[6];
+			float sx = b[7], sy = b[8], sz = b[9];
+
+			float xx = 2*x*x, yy = 2*y*y, zz = 2*z*z;
+			float xy = 2*x*y, xz = 2*x*z, yz = 2*y*z;
+			float xw = 2*x*w, yw = 2*y*w, zw = 2*z*w;
+
+			m[0] = (1 - yy - zz) * sx;
+			m[1] = (xy + zw) * sx;
+			m[2] = (xz - yw) * sx;
+			m[3] = 0;
+
+			m[4] = (xy - zw) * sy;
+			m[5] = (1 - xx - zz) * sy;
+			m[6] = (yz + xw) * sy;
+			m[7] = 0;
+
+			m[8] = (xz + yw) * sz;
+			m[9] = (yz - xw) * sz;
+			m[10] = (1 - xx - yy) * sz;
+			m[11] = 0;
+
+			m[12] = b[0];
+			m[13] = b[1];
+			m[14] = b[2];
+			m[15] = 1;
+
+			int parent = parents[node];
+			if(parent < 0)
+			{
+				System.arraycopy(m, 0, world, node * 16, 16);
+			}
+			else
+			{
+				multiply(world, node * 16, world, parent * 16, m, 0);
+			}
+
+			int slot = slots[node];
+			if(slot >= 0)
+			{
+				multiply(result, slot * 16, world, node * 16, bindPoses, slot * 16);
+			}
+		}
+	}
+
+	private float clamp(float frame)
+	{
+		if(frame < 0)
+		{
+			return 0;
+		}
+		else if(frame >= frameCount)
+		{
+			return frameCount - 1;
+		}
+
+		return frame;
+	}
+
+	private void getValue(int track, float frame, float[] value)
+	{
+		int channel = track % CHANNELS;
+		int components = COMPONENTS[channel];
+		int count = keyCount[track];
+
+		if(count == 0)
+		{
+			System.arraycopy(DEFAULTS, DEFAULT_OFFSETS[channel], value, 0, components);
+			return;
+		}
+
+		int start = keyStart[track];
+
+		// last key at or before the frame
+		int low = 0;
+		int high = count - 1;
+		while(low < high)
+		{
+			int mid = (low + high + 1) >>> 1;
+			if((keyFrames[start + mid] & 0xFFFF) <= frame)
+			{
+				low = mid;
+			}
+			else
+			{
+				high = mid - 1;
+			}
+		}
+
+		int keyFrame = keyFrames[start + low] & 0xFFFF;
+		boolean exact = low == count - 1 || keyFrame >= frame;
+
+		if(packedValues == null)
+		{
+			int offset = valueStart[track] + low * components;
+
+			if(exact)
+			{
+				System.arraycopy(keyValues, offset, value, 0, components);
+				return;
+			}
+
+			int nextFrame = keyFrames[start + low + 1] & 0xFFFF;
+			interpolate(keyValues, offset, keyValues, offset + components, components, (frame - keyFrame) / (float) (nextFrame - keyFrame), value);
+			return;
+		}
+
+		int offset = valueStart[track] + low * 3;
+
+		if(exact)
+		{
+			unpack(track, channel, offset, value);
+			return;
+		}
+
+		float[] a = keyA;
+		float[] b = keyB;
+		unpack(track, channel, offset, a);
+		unpack(track, channel, offset + 3, b);
+
+		// quantised rotations lost their hemisphere
+		if(channel == ROTATION && a[0] * b[0] + a[1] * b[1] + a[2] * b[2] + a[3] * b[3] < 0)
+		{
+			b[0] = -b[0];
+			b[1] = -b[1];
+			b[2] = -b[2];
+			b[3] = -b[3];
+		}
+
+		int nextFrame = keyFrames[start + low + 1] & 0xFFFF;
+		interpolate(a, 0, b, 0, components, (frame - keyFrame) / (float) (nextFrame - keyFrame), value);
+	}
+
+	private void unpack(int track, int channel, int offset, float[] value)
+	{
+		if(channel == ROTATION)
+		{
+			unpackRotation(packedValues, offset, value);
+		}
+		else
+		{
+			unpackVector(packedValues, offset, ranges, track * 6, value);
+		}
+	}
+
+	private void interpolate(float[] a, int aOffset, float[] b, int bOffset, int components, float t, float[] result)
+	{
+		if(components == 4 && a[aOffset] * b[bOffset] + a[aOffset+1] * b[bOffset+1] + a[aOffset+2] * b[bOffset+2] + a[aOffset+3] * b[bOffset+3] < SLERP_THRESHOLD)
+		{
+			from.set(a[aOffset], a[aOffset+1], a[aOffset+2], a[aOffset+3]);
+			to.set(b[bOffset], b[bOffset+1], b[bOffset+2], b[bOffset+3]);
+			Quaternion.slerp(slerp, from, to, t);
+
+			result[0] = slerp.x;
+			result[1] = slerp.y;
+			result[2] = slerp.z;
+			result[3] = slerp.w;
+			return;
+		}
+
+		for (int c = 0; c < components; c++)
+		{
+			result[c] = a[aOffset + c] + (b[bOffset + c] - a[aOffset + c]) * t;
+		}
+
+		// nearly the same rotation, nlerp is as good and slerp's sin(angle) gets too small
+		if(components == 4)
+		{
+			float length = (float) Math.sqrt(result[0] * result[0] + result[1] * result[1] + result[2] * result[2] + result[3] * result[3]);
+			if(length > 0)
+			{
+				float inv = 1 / length;
+				result[0] *= inv;
+				result[1] *= inv;
+				result[2] *= inv;
+				result[3] *= inv;
+			}
+		}
+	}
+
+	// result = a * b, column major 4x4
+	private static void multiply(float[] result, int r, float[] a, int ao, float[] b, int bo)
+	{
+		for (int c = 0; c < 4; c++)
+		{
+			float b0 = b[bo + c*4], b1 = b[bo + c*4 + 1], b2 = b[bo + c*4 + 2], b3 = b[bo + c*4 + 3];
+
+			result[r + c*4]     = a[ao]     * b0 + a[ao + 4] * b1 + a[ao + 8]  * b2 + a[ao + 12] * b3;
+			result[r + c*4 + 1] = a[ao + 1] * b0 + a[ao + 5] * b1 + a[ao + 9]  * b2 + a[ao + 13] * b3;
+			result[r + c*4 + 2] = a[ao + 2] * b0 + a[ao + 6] * b1 + a[ao + 10] * b2 + a[ao + 14] * b3;
+			result[r + c*4 + 3] = a[ao + 3] * b0 + a[ao + 7] * b1 + a[ao + 11] * b2 + a[ao + 15] * b3;
+		}
+	}
+
+	//
+	// Properties
+	//
+
+	public int getFrameCount()
+	{
+		return frameCount;
+	}
+
+	public int getNodeCount()
+	{
+		return parents.length;
+	}
+
+	// floats in a palette, 16 per bone
+	public int getPaletteLength()
+	{
+		return paletteLength;
+	}
+
+	public int getKeyCount()
+	{
+		return keyLength;
+	}
+
+	// heap held by the tracks, scratch included
+	public int getByteCount()
+	{
+		int valueBytes = (packedValues != null) ? packedValues.length * 2 + ranges.length * 4 : keyValues.length * 4;
+
+		return (parents.length * (2 + CHANNELS * 3)) * 4 + bindPoses.length * 4 + keyFrames.length * 2 + valueBytes
+				+ (world.length + palette.length + local.length + sample.length + keyA.length + keyB.length) * 4;
+	}
+
+	public int[] getParents()
+	{
+		return parents;
+	}
+
+	public int[] getSlots()
+	{
+		return slots;
+	}
+
+	public float[] getBindPoses()
+	{
+		return bindPoses;
+	}
+
+	public int[] getKeyStarts()
+	{
+		return keyStart;
+	}
+
+	public int[] getKeyCounts()
+	{
+		return keyCount;
+	}
+
+	public int[] getValueStarts()
+	{
+		return valueStart;
+	}
+
+	public short[] getKeyFrames()
+	{
+		return keyFrames;
+	}
+
+	// null once quantised
+	public float[] getKeyValues()
+	{
+		return keyValues;
+	}
+
+	public boolean isQuantized()
+	{
+		return packedValues != null;
+	}
+
+	// 3 shorts per key, null before quantize()
+	public short[] getPackedValues()
+	{
+		return packedValues;
+	}
+
+	// per track minimum and extent of the translation and scale components
+	public float[] getRanges()
+	{
+		return ranges;
+	}
+}
@@ -1,25 +1,70 @@
 package plia.core.scene.geometry;
 
 import static android.opengl.GLES20.GL_ARRAY_BUFFER;
+import static android.opengl.GLES20.GL_BYTE;
 import static android.opengl.GLES20.GL_ELEMENT_ARRAY_BUFFER;
+import static android.opengl.GLES20.GL_EXTENSIONS;
+import static android.opengl.GLES20.GL_FLOAT;
 import static android.opengl.GLES20.GL_STATIC_DRAW;
-import static android.opengl.GLES20.glBindBuffer;
+import static android.opengl.GLES20.GL_UNSIGNED_INT;
+import static android.opengl.GLES20.GL_UNSIGNED_SHORT;
 import static android.opengl.GLES20.glBufferData;
 import static android.opengl.GLES20.glGenBuffers;
+import static android.opengl.GLES20.glGetString;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
 
+import plia.core.RenderState;
+import plia.core.scene.animation.Animation;
+import plia.core.scene.animation.PaletteTracks;
 import android.util.Log;
 
 public class Mesh extends Geometry
 {
+	// Vertex layouts, read by resume()
+	public static final int PLANAR			= 0;	// vertices | normals | uv, bone weights and indices in two more buffers
+	public static final int INTERLEAVED		= 1;	// position, normal, uv, bone weights, bone indices per vertex in one buffer
+	public static final int PACKED_NORMALS	= 2;	// interleaved only, normals as 3 normalized bytes
+	public static final int HALF_FLOAT_UV	= 4;	// interleaved only, needs GL_OES_vertex_half_float
+	
+	public static final int GL_HALF_FLOAT_OES = 0x8D61;
+	
+	private static int defaultVertexLayout = INTERLEAVED;
+	private static int halfFloatSupport = -1;
+	
+	private int vertexLayout = defaultVertexLayout;
+	
+	// Attributes of the uploaded vertex buffer
+	private boolean isInterleaved = false;
+	private int stride = 0;
+	private int normalOffset = 0;
+	private int normalType = GL_FLOAT;
+	private int uvOffset = 0;
+	private int uvType = GL_FLOAT;
+	private int boneWeightOffset = 0;
+	private int boneIndexOffset = 0;
+	
+	// Layout buffer 0 was built with, the instance copies reuse it
+	private int bufferLayout = defaultVertexLayout;
+	
+	// Copies of the vertices in the instance buffers, 0 until createInstanceBuffers()
+	private int instanceCopies = 0;
+	
 	private float[][] matrixPalette;
+	private PaletteTracks paletteTracks;
 	private int matrixPaletteIndexOffset;
+	private float[] interpolatedPalette;
+	private float[] blendedPalette;
+	private final float[] layerFrames = new float[Animation.MAX_LAYERS];
+	private final float[] layerWeights = new float[Animation.MAX_LAYERS];
 	
 	public final int INDICES_COUNT;
+	public final int INDICES_TYPE;
 	public final int NORMALS_OFFSET;
 	public final int UV_OFFSET;
 	
@@ -35,6 +80,7 @@ public class Mesh extends Geometry
 	{
 		super(Geometry.MESH);
 		INDICES_COUNT = indices.length;
+		INDICES_TYPE = getIndicesType(indices);
 		NORMALS_OFFSET = 0;
 		UV_OFFSET = 0;
 		
@@ -45,6 +91,7 @@ public class Mesh extends Geometry
 	{
 		super(Geometry.MESH);
 		INDICES_COUNT = indices.length;
+		INDICES_TYPE = getIndicesType(indices);
 		NORMALS_OFFSET = 0;
 		UV_OFFSET = vertices.length * 4;
 		
@@ -55,6 +102,7 @@ public class Mesh extends Geometry
 	{
 		super(Geometry.MESH);
 		INDICES_COUNT = indices.length;
+		INDICES_TYPE = getIndicesType(indices);
 		NORMALS_OFFSET = vertices.length * 4;
 		UV_OFFSET = (vertices.length + normals.length) * 4;
 		
@@ -65,12 +113,58 @@ public class Mesh extends Geometry
 	{
 		super(type);
 		INDICES_COUNT = indices.length;
+		INDICES_TYPE = getIndicesType(indices);
 		NORMALS_OFFSET = vertices.length * 4;
 		UV_OFFSET = (vertices.length + normals.length) * 4;
 		
 		init(vertices, normals, uv, indices);
 	}
 	
+	// Vertex data already laid out as vertices | normals | uv, e.g. straight from a compiled prefab
+	public Mesh(FloatBuffer vertexBuffer, int normalsOffset, int uvOffset, IntBuffer indexBuffer)
+	{
+		this(Geometry.MESH, vertexBuffer, normalsOffset, uvOffset, indexBuffer);
+	}
+	
+	protected Mesh(int type, FloatBuffer vertexBuffer, int normalsOffset, int uvOffset, IntBuffer indexBuffer)
+	{
+		super(type);
+		INDICES_COUNT = indexBuffer.capacity();
+		INDICES_TYPE = getIndicesType(indexBuffer);
+		NORMALS_OFFSET = normalsOffset;
+		UV_OFFSET = uvOffset;
+		
+		fb = vertexBuffer;
+		ib = indexBuffer;
+	}
+	
+	// Half the index bandwidth when every index fits, GL_UNSIGNED_INT also needs OES_element_index_uint
+	private static int getIndicesType(int[] indices)
+	{
+		for (int i = 0; i < indices.length; i++)
+		{
+			if(indices[i] > 0xFFFF)
+			{
+				return GL_UNSIGNED_INT;
+			}
+		}
+		
+		return GL_UNSIGNED_SHORT;
+	}
+	
+	private static int getIndicesType(IntBuffer indexBuffer)
+	{
+		for (int i = 0; i < indexBuffer.capacity(); i++)
+		{
+			if(indexBuffer.get(i) > 0xFFFF)
+			{
+				return GL_UNSIGNED_INT;
+			}
+		}
+		
+		return GL_UNSIGNED_SHORT;
+	}
+	
 	private void init(float[] vertices, int[] indices)
 	{
 		this.vertices = vertices;
@@ -92,9 +186,13 @@ public class Mesh extends Geometry
 		this.indices = indices;
 	}
 	
-	public void resume()
+	private void createBuffers()
 	{
-		Log.e("Mesh : "+hashCode(), "On Resume");
+		if(fb != null)
+		{
+			return;
+		}
+		
 		if(normals != null && uv != null)
 		{
 			int capacity = (vertices.length + normals.length + uv.length) * 4;
@@ -126,27 +224,385 @@ public class Mesh extends Geometry
 		
 		ib = ByteBuffer.allocateDirect(indices.length * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
 		ib.put(indices).position(0);
+	}
+	
+	public void resume()
+	{
+		resume(null, null);
+	}
+	
+	// Bone data, when given, is interleaved with the rest of the vertex
+	protected void resume(FloatBuffer boneWeightBuffer, ShortBuffer boneIndexBuffer)
+	{
+		Log.e("Mesh : "+hashCode(), "On Resume");
+		createBuffers();
 		
 		int[] buffers = new int[2];
 
 		glGenBuffers(buffers.length, buffers, 0);
 		
-		glBindBuffer(GL_ARRAY_BUFFER, buffers[0]);
-		glBufferData(GL_ARRAY_BUFFER, fb.capacity() * 4, fb, GL_STATIC_DRAW);
-		glBindBuffer(GL_ARRAY_BUFFER, 0);
+		// a new context : the instance buffers are created again on their next draw
+		instanceCopies = 0;
+		bufferLayout = vertexLayout;
 		
-		glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, buffers[1]);
-		glBufferData(GL_ELEMENT_ARRAY_BUFFER, ib.capacity() * 4, ib, GL_STATIC_DRAW);
-		glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, 0);
+		RenderState.getInstance().bindBuffer(GL_ARRAY_BUFFER, buffers[0]);
+		if((vertexLayout & INTERLEAVED) != 0)
+		{
+			ByteBuffer data = interleave(vertexLayout, boneWeightBuffer, boneIndexBuffer);
+			glBufferData(GL_ARRAY_BUFFER, data.capacity(), data, GL_STATIC_DRAW);
+		}
+		else
+		{
+			setPlanarLayout();
+			glBufferData(GL_ARRAY_BUFFER, fb.capacity() * 4, fb, GL_STATIC_DRAW);
+		}
+		RenderState.getInstance().bindBuffer(GL_ARRAY_BUFFER, 0);
+		
+		RenderState.getInstance().bindBuffer(GL_ELEMENT_ARRAY_BUFFER, buffers[1]);
+		if(INDICES_TYPE == GL_UNSIGNED_SHORT)
+		{
+			ShortBuffer sb = ByteBuffer.allocateDirect(ib.capacity() * 2).order(ByteOrder.nativeOrder()).asShortBuffer();
+			for (int i = 0; i < ib.capacity(); i++)
+			{
+				sb.put(i, (short) ib.get(i));
+			}
+			glBufferData(GL_ELEMENT_ARRAY_BUFFER, sb.capacity() * 2, sb, GL_STATIC_DRAW);
+		}
+		else
+		{
+			glBufferData(GL_ELEMENT_ARRAY_BUFFER, ib.capacity() * 4, ib, GL_STATIC_DRAW);
+		}
+		RenderState.getInstance().bindBuffer(GL_ELEMENT_ARRAY_BUFFER, 0);
 		
 		setBuffer(0, buffers[0]);
 		setBuffer(1, buffers[1]);
 	}
 	
+	private void setPlanarLayout()
+	{
+		isInterleaved = false;
+		stride = 0;
+		normalOffset = NORMALS_OFFSET;
+		normalType = GL_FLOAT;
+		uvOffset = UV_OFFSET;
+		uvType = GL_FLOAT;
+		boneWeightOffset = 0;
+		boneIndexOffset = 0;
+	}
+	
+	private ByteBuffer interleave(int layout, FloatBuffer boneWeightBuffer, ShortBuffer boneIndexBuffer)
+	{
+		boolean hasNormals = NORMALS_OFFSET > 0;
+		boolean hasUV = UV_OFFSET > 0;
+		boolean hasBones = boneWeightBuffer != null && boneIndexBuffer != null;
+		
+		boolean packNormals = (layout & PACKED_NORMALS) != 0;
+		boolean halfFloatUV = (layout & HALF_FLOAT_UV) != 0 && isHalfFloatSupported();
+		
+		int vertexCount = getVertexCount();
+		
+		stride = 12;
+		
+		normalOffset = stride;
+		normalType = packNormals ? GL_BYTE : GL_FLOAT;
+		if(hasNormals)
+		{
+			stride += packNormals ? 4 : 12;
+		}
+		
+		uvOffset = stride;
+		uvType = halfFloatUV ? GL_HALF_FLOAT_OES : GL_FLOAT;
+		if(hasUV)
+		{
+			stride += halfFloatUV ? 4 : 8;
+		}
+		
+		boneWeightOffset = stride;
+		boneIndexOffset = stride + 16;
+		if(hasBones)
+		{
+			stride += 16 + 8;
+		}
+		
+		isInterleaved = true;
+		
+		ByteBuffer data = ByteBuffer.allocateDirect(vertexCount * stride).order(ByteOrder.nativeOrder());
+		
+		int n = NORMALS_OFFSET / 4;
+		int u = UV_OFFSET / 4;
+		
+		for (int v = 0; v < vertexCount; v++)
+		{
+			int p = v * stride;
+			
+			for (int k = 0; k < 3; k++)
+			{
+				data.putFloat(p + k * 4, fb.get(v * 3 + k));
+			}
+			
+			if(hasNormals)
+			{
+				for (int k = 0; k < 3; k++)
+				{
+					float normal = fb.get(n + v * 3 + k);
+					
+					if(packNormals)
+					{
+						data.put(p + normalOffset + k, packNormal(normal));
+					}
+					else
+					{
+						data.putFloat(p + normalOffset + k * 4, normal);
+					}
+				}
+			}
+			
+			if(hasUV)
+			{
+				for (int k = 0; k < 2; k++)
+				{
+					float coord = fb.get(u + v * 2 + k);
+					
+					if(halfFloatUV)
+					{
+						data.putShort(p + uvOffset + k * 2, toHalfFloat(coord));
+					}
+					else
+					{
+						data.putFloat(p + uvOffset + k * 4, coord);
+					}
+				}
+			}
+			
+			if(hasBones)
+			{
+				for (int k = 0; k < 4; k++)
+				{
+					data.putFloat(p + boneWeightOffset + k * 4, boneWeightBuffer.get(v * 4 + k));
+					data.putShort(p + boneIndexOffset + k * 2, boneIndexBuffer.get(v * 4 + k));
+				}
+			}
+		}
+		
+		return data;
+	}
+	
+	// Pseudo instancing : buffer 4 holds the interleaved vertices copied one after the other, buffer 5 their
+	// unsigned short indices (copy c offset by c * vertex count) and buffer 6 the copy of each vertex as a float,
+	// the instanceIndex attribute. Interleaved meshes without bones only, see getMaxInstanceCopies().
+	public void createInstanceBuffers(int copies)
+	{
+		int vertexCount = getVertexCount();
+		
+		// same layout as buffer 0, the draw reads both with getStride() and the offsets
+		ByteBuffer vertexData = interleave(bufferLayout, null, null);
+		int size = vertexData.capacity();
+		
+		ByteBuffer data = ByteBuffer.allocateDirect(size * copies).order(ByteOrder.nativeOrder());
+		ShortBuffer indexData = ByteBuffer.allocateDirect(INDICES_COUNT * copies * 2).order(ByteOrder.nativeOrder()).asShortBuffer();
+		FloatBuffer instanceData = ByteBuffer.allocateDirect(vertexCount * copies * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+		
+		for (int c = 0; c < copies; c++)
+		{
+			vertexData.position(0);
+			data.put(vertexData);
+			
+			int offset = c * vertexCount;
+			for (int i = 0; i < INDICES_COUNT; i++)
+			{
+				indexData.put((short) (ib.get(i) + offset));
+			}
+			
+			for (int v = 0; v < vertexCount; v++)
+			{
+				instanceData.put(c);
+			}
+		}
+		
+		data.position(0);
+		indexData.position(0);
+		instanceData.position(0);
+		
+		if(instanceCopies > 0)
+		{
+			RenderState.getInstance().deleteBuffers(3, buffers, 4);
+		}
+		
+		int[] instanceBuffers = new int[3];
+		glGenBuffers(instanceBuffers.length, instanceBuffers, 0);
+		
+		RenderState renderState = RenderState.getInstance();
+		
+		renderState.bindBuffer(GL_ARRAY_BUFFER, instanceBuffers[0]);
+		glBufferData(GL_ARRAY_BUFFER, data.capacity(), data, GL_STATIC_DRAW);
+		
+		renderState.bindBuffer(GL_ELEMENT_ARRAY_BUFFER, instanceBuffers[1]);
+		glBufferData(GL_ELEMENT_ARRAY_BUFFER, indexData.capacity() * 2, indexData, GL_STATIC_DRAW);
+		
+		renderState.bindBuffer(GL_ARRAY_BUFFER, instanceBuffers[2]);
+		glBufferData(GL_ARRAY_BUFFER, instanceData.capacity() * 4, instanceData, GL_STATIC_DRAW);
+		
+		setBuffer(4, instanceBuffers[0]);
+		setBuffer(5, instanceBuffers[1]);
+		setBuffer(6, instanceBuffers[2]);
+		
+		instanceCopies = copies;
+	}
+	
+	public int getInstanceCopies()
+	{
+		return instanceCopies;
+	}
+	
+	// Most copies createInstanceBuffers() can make, their indices have to fit in an unsigned short
+	public int getMaxInstanceCopies()
+	{
+		int vertexCount = getVertexCount();
+		
+		if(getType() != Geometry.MESH || !isInterleaved || vertexCount == 0)
+		{
+			return 0;
+		}
+		
+		return 0x10000 / vertexCount;
+	}
+	
+	public int getVertexCount()
+	{
+		if(NORMALS_OFFSET > 0)
+		{
+			return NORMALS_OFFSET / 12;
+		}
+		else if(UV_OFFSET > 0)
+		{
+			return UV_OFFSET / 12;
+		}
+		
+		return fb.capacity() / 3;
+	}
+	
+	private static byte packNormal(float value)
+	{
+		return (byte) Math.round(Math.max(-1, Math.min(1, value)) * 127);
+	}
+	
+	// IEEE 754 binary16, rounded to nearest
+	static short toHalfFloat(float value)
+	{
+		int bits = Float.floatToIntBits(value);
+		int sign = (bits >>> 16) & 0x8000;
+		int abs = bits & 0x7FFFFFFF;
+		int rounded = abs + 0x1000;
+		
+		if(rounded >= 0x47800000)
+		{
+			// too big for a half, or already inf / NaN
+			if(abs >= 0x7F800000)
+			{
+				return (short) (sign | 0x7C00 | ((abs & 0x007FFFFF) >>> 13));
+			}
+			
+			return (short) (sign | 0x7C00);
+		}
+		
+		if(rounded >= 0x38800000)
+		{
+			return (short) (sign | ((rounded - 0x38000000) >>> 13));
+		}
+		
+		if(rounded < 0x33000000)
+		{
+			return (short) sign;
+		}
+		
+		// subnormal
+		int exponent = abs >>> 23;
+		return (short) (sign | ((((abs & 0x007FFFFF) | 0x00800000) + (0x00800000 >>> (exponent - 102))) >>> (126 - exponent)));
+	}
+	
+	private static boolean isHalfFloatSupported()
+	{
+		if(halfFloatSupport < 0)
+		{
+			String extensions = glGetString(GL_EXTENSIONS);
+			halfFloatSupport = (extensions != null && extensions.contains("GL_OES_vertex_half_float")) ? 1 : 0;
+		}
+		
+		return halfFloatSupport == 1;
+	}
+	
+	// Layout of the meshes created from now on, e.g. INTERLEAVED | PACKED_NORMALS
+	public static void setDefaultVertexLayout(int vertexLayout)
+	{
+		defaultVertexLayout = vertexLayout;
+	}
+	
+	public static int getDefaultVertexLayout()
+	{
+		return defaultVertexLayout;
+	}
+	
+	// Applied on the next resume()
+	public void setVertexLayout(int vertexLayout)
+	{
+		this.vertexLayout = vertexLayout;
+	}
+	
+	public int getVertexLayout()
+	{
+		return vertexLayout;
+	}
+	
+	public boolean isInterleaved()
+	{
+		return isInterleaved;
+	}
+	
+	// 0 for the planar layout
+	public int getStride()
+	{
+		return stride;
+	}
+	
+	public int getNormalOffset()
+	{
+		return normalOffset;
+	}
+	
+	// GL_FLOAT, or GL_BYTE to be read normalized
+	public int getNormalType()
+	{
+		return normalType;
+	}
+	
+	public int getUVOffset()
+	{
+		return uvOffset;
+	}
+	
+	// GL_FLOAT or GL_HALF_FLOAT_OES
+	public int getUVType()
+	{
+		return uvType;
+	}
+	
+	// In buffer 0 when interleaved, else at the start of buffer 2
+	public int getBoneWeightOffset()
+	{
+		return boneWeightOffset;
+	}
+	
+	// In buffer 0 when interleaved, else at the start of buffer 3
+	public int getBoneIndexOffset()
+	{
+		return boneIndexOffset;
+	}
+	
 	@Override
 	public void destroy()
 	{
 		matrixPalette = null;
+		paletteTracks = null;
 		fb.clear();
 		fb = null;
 		
@@ -160,6 +616,19 @@ public class Mesh extends Geometry
 		vertices = null;
 	}
 	
+	// vertices | normals | uv
+	public FloatBuffer getVertexBuffer()
+	{
+		createBuffers();
+		return fb;
+	}
+	
+	public IntBuffer getIndexBuffer()
+	{
+		createBuffers();
+		return ib;
+	}
+	
 	public void setMatrixPalette(float[][] matrixPalette)
 	{
 		this.matrixPalette = matrixPalette;
@@ -170,6 +639,148 @@ public class Mesh extends Geometry
 		return matrixPalette;
 	}
 	
+	public void setPaletteTracks(PaletteTracks paletteTracks)
+	{
+		this.paletteTracks = paletteTracks;
+	}
+	
+	// Sparse alternative to the baked matrix palette, null when baked
+	public PaletteTracks getPaletteTracks()
+	{
+		return paletteTracks;
+	}
+	
+	public boolean hasMatrixPalette()
+	{
+		return matrixPalette != null || paletteTracks != null;
+	}
+	
+	// Palette of an animation frame, clamped to the animated range, baked or evaluated from the tracks
+	public float[] getMatrixPalette(int frame)
+	{
+		frame -= matrixPaletteIndexOffset;
+		
+		if(paletteTracks != null)
+		{
+			return paletteTracks.getPalette(frame);
+		}
+		
+		if(frame >= matrixPalette.length)
+		{
+			frame = matrixPalette.length - 1;
+		}
+		else if(frame < 0)
+		{
+			frame = 0;
+		}
+		
+		return matrixPalette[frame];
+	}
+	
+	// Palette of the animation's current state : its frame, or the blend of all the clips it plays
+	public float[] getMatrixPalette(Animation animation)
+	{
+		if(animation.getLayerCount() == 1)
+		{
+			if(animation.isInterpolated())
+			{
+				return getMatrixPalette(animation.getCurrentFramePosition());
+			}
+			
+			return getMatrixPalette(animation.getCurrentFrame());
+		}
+		
+		int count = animation.getLayers(layerFrames, layerWeights);
+		
+		return getMatrixPalette(layerFrames, layerWeights, count);
+	}
+	
+	// Blend of the palettes of several animation frames, weights adding up to 1 (see Animation.getLayers)
+	public float[] getMatrixPalette(float[] frames, float[] weights, int count)
+	{
+		if(count == 1)
+		{
+			return getMatrixPalette(frames[0]);
+		}
+		
+		if(paletteTracks != null)
+		{
+			for (int i = 0; i < count; i++)
+			{
+				layerFrames[i] = frames[i] - matrixPaletteIndexOffset;
+			}
+			
+			return paletteTracks.getPalette(layerFrames, weights, count);
+		}
+		
+		// a baked palette has no TRS left, its matrices are mixed as they are
+		if(blendedPalette == null)
+		{
+			blendedPalette = new float[matrixPalette[0].length];
+		}
+		
+		Arrays.fill(blendedPalette, 0);
+		
+		for (int i = 0; i < count; i++)
+		{
+			float[] palette = getMatrixPalette(frames[i]);
+			float weight = weights[i];
+			
+			for (int j = 0; j < palette.length; j++)
+			{
+				blendedPalette[j] += palette[j] * weight;
+			}
+		}
+		
+		return blendedPalette;
+	}
+	
+	// Palette between two animation frames : the tracks slerp their rotations,
+	// a baked palette can only lerp the matrices of the frames around
+	public float[] getMatrixPalette(float frame)
+	{
+		frame -= matrixPaletteIndexOffset;
+		
+		if(paletteTracks != null)
+		{
+			return paletteTracks.getPalette(frame);
+		}
+		
+		int last = matrixPalette.length - 1;
+		
+		if(frame <= 0)
+		{
+			return matrixPalette[0];
+		}
+		else if(frame >= last)
+		{
+			return matrixPalette[last];
+		}
+		
+		int index = (int) frame;
+		float t = frame - index;
+		
+		if(t == 0)
+		{
+			return matrixPalette[index];
+		}
+		
+		float[] a = matrixPalette[index];
+		float[] b = matrixPalette[index + 1];
+		
+		if(interpolatedPalette == null)
+		{
+			interpolatedPalette = new float[a.length];
+		}
+		
+		for (int i = 0; i < a.length; i++)
+		{
+			interpolatedPalette[i] = a[i] + (b[i] - a[i]) * t;
+		}
+		
+		return interpolatedPalette;
+	}
+	
 	public int getMatrixPaletteIndexOffset()
 	{
 		return matrixPaletteIndexOffset;
@@ -2,15 +2,17 @@ package plia.core.scene.geometry;
 
 import static android.opengl.GLES20.GL_ARRAY_BUFFER;
 import static android.opengl.GLES20.GL_STATIC_DRAW;
-import static android.opengl.GLES20.glBindBuffer;
 import static android.opengl.GLES20.glBufferData;
 import static android.opengl.GLES20.glGenBuffers;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
 import java.nio.ShortBuffer;
 
+import plia.core.RenderState;
+
 public class SkinnedMesh extends Mesh
 {
 	private FloatBuffer bwb;
@@ -27,34 +29,70 @@ public class SkinnedMesh extends Mesh
 		this.boneIndices = boneIndices;
 	}
 	
-	@Override
-	public void resume()
+	public SkinnedMesh(FloatBuffer vertexBuffer, int normalsOffset, int uvOffset, IntBuffer indexBuffer, FloatBuffer boneWeightBuffer, ShortBuffer boneIndexBuffer)
 	{
-		// TODO Auto-generated method stub
-		super.resume();
+		super(Geometry.SKINNED_MESH, vertexBuffer, normalsOffset, uvOffset, indexBuffer);
+		
+		this.bwb = boneWeightBuffer;
+		this.bib = boneIndexBuffer;
+	}
+	
+	private void createBoneBuffers()
+	{
+		if(bwb != null)
+		{
+			return;
+		}
 		
 		bwb = ByteBuffer.allocateDirect(boneWeights.length * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
 		bwb.put(boneWeights).position(0);
 		
 		bib = ByteBuffer.allocateDirect(boneIndices.length * 2).order(ByteOrder.nativeOrder()).asShortBuffer();
 		bib.put(boneIndices).position(0);
+	}
+	
+	@Override
+	public void resume()
+	{
+		createBoneBuffers();
+		
+		super.resume(bwb, bib);
+		
+		if(isInterleaved())
+		{
+			return;
+		}
 		
 		int[] buffers = new int[2];
 		
 		glGenBuffers(buffers.length, buffers, 0);
 		
-		glBindBuffer(GL_ARRAY_BUFFER, buffers[0]);
+		RenderState.getInstance().bindBuffer(GL_ARRAY_BUFFER, buffers[0]);
 		glBufferData(GL_ARRAY_BUFFER, bwb.capacity() * 4, bwb, GL_STATIC_DRAW);
-		glBindBuffer(GL_ARRAY_BUFFER, 0);
+		RenderState.getInstance().bindBuffer(GL_ARRAY_BUFFER, 0);
 		
-		glBindBuffer(GL_ARRAY_BUFFER, buffers[1]);
+		RenderState.getInstance().bindBuffer(GL_ARRAY_BUFFER, buffers[1]);
 		glBufferData(GL_ARRAY_BUFFER, bib.capacity() * 2, bib, GL_STATIC_DRAW);
-		glBindBuffer(GL_ARRAY_BUFFER, 0);
+		RenderState.getInstance().bindBuffer(GL_ARRAY_BUFFER, 0);
 		
 		setBuffer(2, buffers[0]);
 		setBuffer(3, buffers[1]);
 	}
 	
+	// 4 weights per vertex
+	public FloatBuffer getBoneWeightBuffer()
+	{
+		createBoneBuffers();
+		return bwb;
+	}
+	
+	// 4 bone indices per vertex
+	public ShortBuffer getBoneIndexBuffer()
+	{
+		createBoneBuffers();
+		return bib;
+	}
+	
 	@Override
 	public void destroy()
 	{
@@ -0,0 +1,281 @@
+package plia.core.scene.geometry;
+
+import java.util.Arrays;
+
+// Triangle reordering for the post-transform vertex cache (Tom Forsyth, "Linear-Speed Vertex Cache Optimisation")
+// and a FIFO cache simulation to measure it, no GPU needed.
+public final class VertexCacheOptimizer
+{
+	// typical post-transform cache of a GLES2 gpu, used by getACMR
+	public static final int DEFAULT_CACHE_SIZE = 16;
+
+	// scoring model of the optimiser
+	private static final int CACHE_SIZE = 32;
+	private static final float CACHE_DECAY_POWER = 1.5f;
+	private static final float LAST_TRIANGLE_SCORE = 0.75f;
+	private static final float VALENCE_BOOST_SCALE = 2.0f;
+	private static final float VALENCE_BOOST_POWER = 0.5f;
+	private static final int MAX_VALENCE = 64;
+
+	private static final float[] cachePositionScore = new float[CACHE_SIZE];
+	private static final float[] valenceScore = new float[MAX_VALENCE];
+
+	static
+	{
+		for (int i = 0; i < CACHE_SIZE; i++)
+		{
+			if(i < 3)
+			{
+				// the triangle just drawn, same score whatever the order of its corners
+				cachePositionScore[i] = LAST_TRIANGLE_SCORE;
+			}
+			else
+			{
+				float scaler = 1.0f / (CACHE_SIZE - 3);
+				cachePositionScore[i] = (float) Math.pow(1.0f - (i - 3) * scaler, CACHE_DECAY_POWER);
+			}
+		}
+
+		for (int i = 1; i < MAX_VALENCE; i++)
+		{
+			valenceScore[i] = VALENCE_BOOST_SCALE * (float) Math.pow(i, -VALENCE_BOOST_POWER);
+		}
+	}
+
+	private VertexCacheOptimizer()
+	{
+
+	}
+
+	// Returns a new triangle list with the same triangles, in cache friendly order
+	public static int[] optimize(int[] indices, int vertexCount)
+	{
+		int triangleCount = indices.length / 3;
+
+		if(triangleCount < 2)
+		{
+			return indices.clone();
+		}
+
+		// vertex -> triangles
+		int[] valence = new int[vertexCount];
+		for (int i = 0; i < triangleCount * 3; i++)
+		{
+			valence[indices[i]]++;
+		}
+
+		int[] offset = new int[vertexCount + 1];
+		for (int v = 0; v < vertexCount; v++)
+		{
+			offset[v + 1] = offset[v] + valence[v];
+		}
+
+		int[] adjacency = new int[offset[vertexCount]];
+		int[] fill = new int[vertexCount];
+		for (int t = 0; t < triangleCount; t++)
+		{
+			for (int k = 0; k < 3; k++)
+			{
+				int v = indices[t * 3 + k];
+				adjacency[offset[v] + fill[v]++] = t;
+			}
+		}
+
+		// valence is the number of triangles not drawn yet from here on
+		int[] cachePosition = new int[vertexCount];
+		Arrays.fill(cachePosition, -1);
+
+		float[] vertexScore = new float[vertexCount];
+		for (int v = 0; v < vertexCount; v++)
+		{
+			vertexScore[v] = getVertexScore(-1, valence[v]);
+		}
+
+		boolean[] isAdded = new boolean[triangleCount];
+		float[] triangleScore = new float[triangleCount];
+		for (int t = 0; t < triangleCount; t++)
+		{
+			triangleScore[t] = vertexScore[indices[t * 3]] + vertexScore[indices[t * 3 + 1]] + vertexScore[indices[t * 3 + 2]];
+		}
+
+		int[] cache = new int[CACHE_SIZE + 3];
+		int[] nextCache = new int[CACHE_SIZE + 3];
+		int cacheCount = 0;
+
+		int[] result = new int[triangleCount * 3];
+		int scanCursor = 0;
+
+		int bestTriangle = -1;
+		float bestScore = -1;
+		for (int t = 0; t < triangleCount; t++)
+		{
+			if(triangleScore[t] > bestScore)
+			{
+				bestScore = triangleScore[t];
+				bestTriangle = t;
+			}
+		}
+
+		for (int drawn = 0; drawn < triangleCount; drawn++)
+		{
+			if(bestTriangle < 0)
+			{
+				// nothing left next to the cache, restart from the next triangle in file order,
+				// a best score scan here goes quadratic on meshes made of many small pieces
+				while(isAdded[scanCursor])
+				{
+					scanCursor++;
+				}
+				bestTriangle = scanCursor;
+			}
+
+			isAdded[bestTriangle] = true;
+
+			// draw it, its corners go to the front of the cache
+			int nextCount = 0;
+			for (int k = 0; k < 3; k++)
+			{
+				int v = indices[bestTriangle * 3 + k];
+				result[drawn * 3 + k] = v;
+
+				if(!contains(nextCache, nextCount, v))
+				{
+					nextCache[nextCount++] = v;
+				}
+
+				// remove the triangle from the vertex' list of remaining ones
+				int start = offset[v];
+				int end = start + valence[v];
+				for (int j = start; j < end; j++)
+				{
+					if(adjacency[j] == bestTriangle)
+					{
+						adjacency[j] = adjacency[end - 1];
+						break;
+					}
+				}
+				valence[v]--;
+			}
+
+			int cornerCount = nextCount;
+			for (int i = 0; i < cacheCount; i++)
+			{
+				int v = cache[i];
+				if(!contains(nextCache, cornerCount, v))
+				{
+					nextCache[nextCount++] = v;
+				}
+			}
+
+			int[] swap = cache;
+			cache = nextCache;
+			nextCache = swap;
+			cacheCount = nextCount;
+
+			// rescore everything that moved, vertices pushed out of the cache included
+			for (int i = 0; i < cacheCount; i++)
+			{
+				int v = cache[i];
+				cachePosition[v] = (i < CACHE_SIZE) ? i : -1;
+				vertexScore[v] = getVertexScore(cachePosition[v], valence[v]);
+			}
+
+			bestTriangle = -1;
+			bestScore = -1;
+
+			for (int i = 0; i < cacheCount; i++)
+			{
+				int v = cache[i];
+				int start = offset[v];
+				int end = start + valence[v];
+
+				for (int j = start; j < end; j++)
+				{
+					int t = adjacency[j];
+					float score = vertexScore[indices[t * 3]] + vertexScore[indices[t * 3 + 1]] + vertexScore[indices[t * 3 + 2]];
+					triangleScore[t] = score;
+
+					if(score > bestScore)
+					{
+						bestScore = score;
+						bestTriangle = t;
+					}
+				}
+			}
+
+			if(cacheCount > CACHE_SIZE)
+			{
+				cacheCount = CACHE_SIZE;
+			}
+		}
+
+		return result;
+	}
+
+	private static boolean contains(int[] array, int count, int value)
+	{
+		for (int i = 0; i < count; i++)
+		{
+			if(array[i] == value)
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private static float getVertexScore(int cachePosition, int remainingValence)
+	{
+		if(remainingValence <= 0)
+		{
+			// no triangle left to draw with it
+			return -1;
+		}
+
+		float score = (cachePosition < 0) ? 0 : cachePositionScore[cachePosition];
+
+		return score + valenceScore[Math.min(remainingValence, MAX_VALENCE - 1)];
+	}
+
+	// Average cache miss ratio : vertices transformed per triangle with a FIFO cache of cacheSize entries.
+	// 3 is no reuse at all, 0.5 - 0.7 is about the best a regular mesh can get.
+	public static float getACMR(int[] indices, int cacheSize)
+	{
+		int triangleCount = indices.length / 3;
+
+		if(triangleCount == 0)
+		{
+			return 0;
+		}
+
+		int maxIndex = 0;
+		for (int i = 0; i < indices.length; i++)
+		{
+			maxIndex = Math.max(maxIndex, indices[i]);
+		}
+
+		// time stamp of the vertex' last load, it is still cached while fewer than cacheSize loads followed
+		int[] loadedAt = new int[maxIndex + 1];
+		Arrays.fill(loadedAt, Integer.MIN_VALUE / 2);
+
+		int misses = 0;
+		for (int i = 0; i < triangleCount * 3; i++)
+		{
+			int v = indices[i];
+
+			if(misses - loadedAt[v] >= cacheSize)
+			{
+				loadedAt[v] = misses;
+				misses++;
+			}
+		}
+
+		return misses / (float) triangleCount;
+	}
+
+	public static float getACMR(int[] indices)
+	{
+		return getACMR(indices, DEFAULT_CACHE_SIZE);
+	}
+}
@@ -25,6 +25,8 @@ final class AmbientShader extends Shader
 		instance.programs[10] = new ShaderProgram(getAmbientSrc11());
 		instance.programs[11] = new ShaderProgram(getAmbientSrc12());
 		instance.programs[12] = new ShaderProgram(getAmbientSrc13());
+		instance.programs[INSTANCED_MESH] = new ShaderProgram(getAmbientSrc15());
+		instance.programs[INSTANCED_MESH_WITH_TEXTURE] = new ShaderProgram(getAmbientSrc16());
 	}
 	
 	private static AmbientShader instance = new AmbientShader();
@@ -56,6 +58,11 @@ final class AmbientShader extends Shader
 			"		}" +
 			"	}";
 	
+	private static final String instanceAttributeAndMatrixUniform = 
+			"const int MAX_INSTANCES = " + MAX_INSTANCES + ";" +
+			"uniform mat4 instanceMatrix[MAX_INSTANCES];" +
+			"attribute float instanceIndex;";
+	
 	private static String fsWithTexture = 
 			"precision mediump float;" +
 			"" +
@@ -546,6 +553,44 @@ final class AmbientShader extends Shader
 		return new String[] { vs, fsWithTexture3 };
 	}
 	
+	private static String[] getAmbientSrc15()
+	{
+		// Instanced Mesh without Texture
+		String vs = 
+				"uniform mat4 modelViewProjectionMatrix;" +
+				"" +
+				"attribute vec4 vertex;" +
+				instanceAttributeAndMatrixUniform +
+				"" +
+				"void main()" +
+				"{" +
+				"	gl_Position = modelViewProjectionMatrix * (instanceMatrix[int(instanceIndex)] * vertex);" +
+				"}";
+		
+		return new String[] { vs, fsWithOutTexture };
+	}
+	
+	private static String[] getAmbientSrc16()
+	{
+		// Instanced Mesh with Texture
+		String vs = 
+				"uniform mat4 modelViewProjectionMatrix;" +
+				"" +
+				"attribute vec4 vertex;" +
+				"attribute vec2 uv;" +
+				instanceAttributeAndMatrixUniform +
+				"" +
+				"varying vec2 uvCoord;" +
+				"" +
+				"void main()" +
+				"{" +
+				"	uvCoord = uv;" +
+				"	gl_Position = modelViewProjectionMatrix * (instanceMatrix[int(instanceIndex)] * vertex);" +
+				"}";
+
+		return new String[] { vs, fsWithTexture };
+	}
+	
 //	private static String[] getAmbientSrc14()
 //	{
 //		// Gen Terrain NormalMap Static
@@ -17,6 +17,8 @@ final class DiffuseShader extends Shader
 		instance.programs[3] = new ShaderProgram(getDiffuseSrc04());
 		instance.programs[5] = new ShaderProgram(getDiffuseSrc06());
 		instance.programs[6] = new ShaderProgram(getDiffuseSrc07());
+		instance.programs[INSTANCED_MESH] = new ShaderProgram(getDiffuseSrc14());
+		instance.programs[INSTANCED_MESH_WITH_TEXTURE] = new ShaderProgram(getDiffuseSrc15());
 	}
 	
 	private static DiffuseShader instance = new DiffuseShader();
@@ -58,6 +60,11 @@ final class DiffuseShader extends Shader
 			"attribute vec4 boneWeights;" +
 			"attribute float boneCount;";
 
+	private static final String instanceAttributeAndMatrixUniform = 
+			"const int MAX_INSTANCES = " + MAX_INSTANCES + ";" +
+			"uniform mat4 instanceMatrix[MAX_INSTANCES];" +
+			"attribute float instanceIndex;";
+	
 	private static final String iDifVarying = 
 			"varying lowp vec4 Idif;";
 	
@@ -92,6 +99,12 @@ final class DiffuseShader extends Shader
 			"vec4 V = worldMatrix * skinnedPosition;" +
 			"vec3 N = normalMatrix * skinnedNormal;";
 	
+	// no normal matrix per instance, the world matrix is exact as long as the scale is uniform
+	private static String initialVN_Instanced = 
+			"mat4 instance = instanceMatrix[int(instanceIndex)];" +
+			"vec4 V = instance * vertex;" +
+			"vec3 N = normalize(mat3(instance) * normal);";
+	
 	private static String initalVN_Terrain = 
 			"vec4 V = worldMatrix * position;" +
 			"vec3 N = normal;";
@@ -325,4 +338,49 @@ final class DiffuseShader extends Shader
 		
 		return new String[] { vs, fsWithTexture };
 	}
+	
+	private static String[] getDiffuseSrc14()
+	{
+		// Instanced Mesh Without Texture
+		String vs =
+				"uniform mat4 modelViewProjectionMatrix;" +
+				lightAttribute +
+				vertexAndNormalAttribute +
+				instanceAttributeAndMatrixUniform +
+				iDifVarying +
+				"" +
+				"void main()" +
+				"{" +
+					initialIDif +
+					initialVN_Instanced +
+					lightLoop +
+				"" +
+				"	gl_Position = modelViewProjectionMatrix * V;" +
+				"}";
+
+		return new String[] {vs, fsWithOutTexture};
+	}
+	
+	private static String[] getDiffuseSrc15()
+	{
+		// Instanced Mesh With Texture
+		String vs =
+				"uniform mat4 modelViewProjectionMatrix;" +
+				lightAttribute +
+				vertexNormalAndUVAttribute +
+				instanceAttributeAndMatrixUniform +
+				iDifVarying +
+				uvVarying +
+				"" +
+				"void main()" +
+				"{" +
+					initialIDif +
+					initialVN_Instanced +
+					lightLoop +
+					initialUVCoordVarying +
+				"	gl_Position = modelViewProjectionMatrix * V;" +
+				"}";
+
+		return new String[] {vs, fsWithTexture};
+	}
 }
@@ -2,6 +2,11 @@ package plia.core.scene.shading;
 
 public class Shader
 {
+	// Pseudo instanced meshes, instanceMatrix[MAX_INSTANCES] placing each copy
+	public static final int INSTANCED_MESH				= 13;
+	public static final int INSTANCED_MESH_WITH_TEXTURE	= 14;
+	public static final int MAX_INSTANCES				= 16;
+	
 	protected ShaderProgram[] programs = new ShaderProgram[15];
 	
 	public ShaderProgram getProgram(int index)
@@ -24,13 +24,13 @@ public final class ShaderProgram
 	public ShaderProgram(String[] src)
 	{
 		datas[0] = createProgram(src[0], src[1]);
-//		getLocation(datas[0]);
+		getLocation(datas[0]);
 	}
 	
 	public ShaderProgram(String vs, String fs)
 	{
 		datas[0] = createProgram(vs, fs);
-//		getLocation(datas[0]);
+		getLocation(datas[0]);
 	}
 
 //	public void use()
@@ -196,45 +196,61 @@ public final class ShaderProgram
 //		GLES20.glUniform1f(datas[LIGHT_INTENSITY_0 + index], intensity);
 //	}
 //	
-//	private void getLocation(int program)
-//	{
-//		GLES20.glUseProgram(program);
-//		
-//		for (int i = 0; i < datas.length; i++)
-//		{
-//			datas[i] = -2;
-//		}
-//		
-//		datas[VERTEX_ATTRIBUTE]		  = GLES20.glGetAttribLocation(program, "vertex");
-//		datas[NORMAL_ATTRIBUTE]		  = GLES20.glGetAttribLocation(program, "normal");
-//		datas[UV_ATTRIBUTE]			  = GLES20.glGetAttribLocation(program, "uv");
-//		
-//		datas[BONE_INDEXES_ATTRIBUTE] = GLES20.glGetAttribLocation(program, "boneIndices");
-//		datas[BONE_WEIGHTS_ATTRIBUTE] = GLES20.glGetAttribLocation(program, "boneWeights");
-//			
-//		datas[BONE_COUNT] 			  = GLES20.glGetAttribLocation(program, "boneCount");
-//		datas[MATRIX_PALETTE] 		  = GLES20.glGetUniformLocation(program, "matrixPalette");
-//		
-//		datas[MODELVIEW_PROJECTION_MATRIX] 	= GLES20.glGetUniformLocation(program, "modelViewProjectionMatrix");
-//		datas[MODELVIEW_MATRIX] 		  	= GLES20.glGetUniformLocation(program, "modelViewMatrix");
-//		datas[PROJECTION_MATRIX] 		  	= GLES20.glGetUniformLocation(program, "projectionMatrix");
-//		datas[NORMAL_MATRIX] 		 		= GLES20.glGetUniformLocation(program, "normalMatrix");
-//		
-//		datas[COLOR] 		= GLES20.glGetUniformLocation(program, "color");
-//		datas[DIFFUSE_MAP] 	= GLES20.glGetUniformLocation(program, "diffuseMap");
-//		datas[NORMAL_MAP]  	= GLES20.glGetUniformLocation(program, "normalMap");
-//		datas[HEIGHT_MAP] 	= GLES20.glGetUniformLocation(program, "heightMap");
-//		
-//		datas[LIGHT_COUNT] 			= GLES20.glGetUniformLocation(program, "lightCount");
-//		
-//		for (int i = 0; i < 8; i++)
-//		{
-//			datas[LIGHT_POSITION_0+i] 	= GLES20.glGetUniformLocation(program, "lightPosition["+i+"]");
-//			datas[LIGHT_COLOR_0+i] 		= GLES20.glGetUniformLocation(program, "lightColor["+i+"]");
-//			datas[LIGHT_INTENSITY_0+i] 	= GLES20.glGetUniformLocation(program, "lightIntensity["+i+"]");
-//			datas[LIGHT_RANGE_0+i] 	= GLES20.glGetUniformLocation(program, "lightRange["+i+"]");
-//		}
-//	}
+	// Locations are resolved once after the link, draws read them with get(), -1 when the program does not use it
+	private void getLocation(int program)
+	{
+		for (int i = 1; i < datas.length; i++)
+		{
+			datas[i] = -1;
+		}
+		
+		if(program == 0)
+		{
+			return;
+		}
+		
+		datas[VERTEX_ATTRIBUTE]		  = GLES20.glGetAttribLocation(program, "vertex");
+		datas[NORMAL_ATTRIBUTE]		  = GLES20.glGetAttribLocation(program, "normal");
+		datas[UV_ATTRIBUTE]			  = GLES20.glGetAttribLocation(program, "uv");
+		
+		datas[BONE_INDEXES_ATTRIBUTE] = GLES20.glGetAttribLocation(program, "boneIndices");
+		datas[BONE_WEIGHTS_ATTRIBUTE] = GLES20.glGetAttribLocation(program, "boneWeights");
+			
+		datas[BONE_COUNT] 			  = GLES20.glGetAttribLocation(program, "boneCount");
+		datas[MATRIX_PALETTE] 		  = GLES20.glGetUniformLocation(program, "matrixPalette");
+		
+		datas[INSTANCE_INDEX_ATTRIBUTE] = GLES20.glGetAttribLocation(program, "instanceIndex");
+		datas[INSTANCE_MATRIX] 		  = GLES20.glGetUniformLocation(program, "instanceMatrix");
+		
+		datas[MODELVIEW_PROJECTION_MATRIX] 	= GLES20.glGetUniformLocation(program, "modelViewProjectionMatrix");
+		datas[MODELVIEW_MATRIX] 		  	= GLES20.glGetUniformLocation(program, "modelViewMatrix");
+		datas[PROJECTION_MATRIX] 		  	= GLES20.glGetUniformLocation(program, "projectionMatrix");
+		datas[NORMAL_MATRIX] 		 		= GLES20.glGetUniformLocation(program, "normalMatrix");
+		datas[WORLD_MATRIX] 		 		= GLES20.glGetUniformLocation(program, "worldMatrix");
+		
+		datas[COLOR] 		= GLES20.glGetUniformLocation(program, "color");
+		datas[DIFFUSE_MAP] 	= GLES20.glGetUniformLocation(program, "diffuseMap");
+		datas[NORMAL_MAP]  	= GLES20.glGetUniformLocation(program, "normalMap");
+		datas[HEIGHT_MAP] 	= GLES20.glGetUniformLocation(program, "heightMap");
+		datas[BASE_TEXTURE] = GLES20.glGetUniformLocation(program, "baseTexture");
+		datas[TERRAIN_DATA] = GLES20.glGetUniformLocation(program, "terrainData");
+		
+		datas[LIGHT_COUNT] 			= GLES20.glGetUniformLocation(program, "lightCount");
+		
+		for (int i = 0; i < MAX_LIGHTS; i++)
+		{
+			datas[LIGHT_POSITION_0+i] 	= GLES20.glGetUniformLocation(program, "lightPosition["+i+"]");
+			datas[LIGHT_COLOR_0+i] 		= GLES20.glGetUniformLocation(program, "lightColor["+i+"]");
+			datas[LIGHT_INTENSITY_0+i] 	= GLES20.glGetUniformLocation(program, "lightIntensity["+i+"]");
+			datas[LIGHT_RANGE_0+i] 	= GLES20.glGetUniformLocation(program, "lightRange["+i+"]");
+		}
+		
+		datas[LIGHT_ABSORB_MULTIPLIER] = GLES20.glGetUniformLocation(program, "lightAbsorbMultiplier");
+		
+		datas[POSITION] 	= GLES20.glGetUniformLocation(program, "position");
+		datas[RADIUS] 		= GLES20.glGetUniformLocation(program, "radius");
+		datas[EYE] 			= GLES20.glGetUniformLocation(program, "eye");
+	}
 
 	private static int createProgram(String vs, String fs)
 	{
@@ -303,18 +319,28 @@ public final class ShaderProgram
 	public static final int BONE_COUNT					 = 6;
 	public static final int MATRIX_PALETTE				 = 7;
 	
+	// Pseudo instancing
+	public static final int INSTANCE_INDEX_ATTRIBUTE	 = 8;
+	public static final int INSTANCE_MATRIX				 = 9;
+	
 	public static final int MODELVIEW_PROJECTION_MATRIX  = 11;
 	public static final int MODELVIEW_MATRIX			 = 12;
 	public static final int PROJECTION_MATRIX			 = 13;
 	public static final int NORMAL_MATRIX				 = 14;
+	public static final int WORLD_MATRIX				 = 15;
 	
 	public static final int COLOR		 				 = 21;
 	public static final int DIFFUSE_MAP					 = 22;
 	public static final int NORMAL_MAP					 = 23;
 	public static final int HEIGHT_MAP					 = 24;
+	public static final int BASE_TEXTURE				 = 25;
+	public static final int TERRAIN_DATA				 = 26;
 	
 	public static final int LIGHT_COUNT					 = 31;
 	
+	// lights with a location in the table, LIGHT_*_0 + index
+	public static final int MAX_LIGHTS					 = 9;
+	
 	public static final int LIGHT_POSITION_0			 = 32;
 	public static final int LIGHT_POSITION_1			 = 33;
 	public static final int LIGHT_POSITION_2			 = 34;
@@ -354,4 +380,11 @@ public final class ShaderProgram
 	public static final int LIGHT_INTENSITY_6			 = 67;
 	public static final int LIGHT_INTENSITY_7			 = 68;
 	public static final int LIGHT_INTENSITY_8			 = 69;
+	
+	public static final int LIGHT_ABSORB_MULTIPLIER		 = 71;
+	
+	// Debug spheres
+	public static final int POSITION					 = 81;
+	public static final int RADIUS						 = 82;
+	public static final int EYE							 = 83;
 }
@@ -14,6 +14,10 @@ public class Texture2D extends GameObject
 	
 	private boolean enabledAlpha = false;
 	
+	// atlas page this image was packed in (GameObjectManager.packTextures), and its area there
+	private Texture2D atlas;
+	private float u0 = 0, v0 = 0, u1 = 1, v1 = 1;
+	
 	public Texture2D(String name, int texBuffer, int[] pixels, int width, int height)
 	{
 		super(name);
@@ -48,6 +52,11 @@ public class Texture2D extends GameObject
 		return height;
 	}
 	
+	public int[] getPixels()
+	{
+		return pixels;
+	}
+	
 	public Color4 getPixel(int x, int y)
 	{
 		int row = y * getHeight();
@@ -70,6 +79,41 @@ public class Texture2D extends GameObject
 	{
 		return enabledAlpha;
 	}
+	
+	public void setAtlas(Texture2D atlas, float u0, float v0, float u1, float v1)
+	{
+		this.atlas = atlas;
+		this.u0 = u0;
+		this.v0 = v0;
+		this.u1 = u1;
+		this.v1 = v1;
+	}
+	
+	// null when not packed, the image is then the whole (0,0)-(1,1) of its own texture
+	public Texture2D getAtlas()
+	{
+		return atlas;
+	}
+	
+	public float getU0()
+	{
+		return u0;
+	}
+	
+	public float getV0()
+	{
+		return v0;
+	}
+	
+	public float getU1()
+	{
+		return u1;
+	}
+	
+	public float getV1()
+	{
+		return v1;
+	}
 }
 
 
@@ -0,0 +1,237 @@
+package plia.core.scene.shading;
+
+import java.util.Arrays;
+
+// MaxRects packing of rectangles into a width x height page : every free area is kept as a maximal rectangle
+// (they overlap), a rectangle goes where it leaves the shortest side free, then the free areas it covers are split.
+public final class TextureAtlasPacker
+{
+	private final int width;
+	private final int height;
+
+	// free rectangles, (x, y, w, h)
+	private int[] free = new int[64 * 4];
+	private int freeCount;
+
+	// last placement
+	private int x;
+	private int y;
+
+	private int usedWidth;
+	private int usedHeight;
+	private long usedArea;
+
+	public TextureAtlasPacker(int width, int height)
+	{
+		this.width = width;
+		this.height = height;
+		reset();
+	}
+
+	public void reset()
+	{
+		free[0] = 0;
+		free[1] = 0;
+		free[2] = width;
+		free[3] = height;
+		freeCount = 1;
+
+		usedWidth = 0;
+		usedHeight = 0;
+		usedArea = 0;
+	}
+
+	// Places a w x h rectangle, its corner is then getX(), getY(). False when it fits nowhere.
+	public boolean insert(int w, int h)
+	{
+		int best = -1;
+		int bestShort = Integer.MAX_VALUE;
+		int bestLong = Integer.MAX_VALUE;
+
+		// best short side fit
+		for (int i = 0; i < freeCount; i++)
+		{
+			int o = i * 4;
+			int leftW = free[o + 2] - w;
+			int leftH = free[o + 3] - h;
+
+			if(leftW >= 0 && leftH >= 0)
+			{
+				int shortSide = Math.min(leftW, leftH);
+				int longSide = Math.max(leftW, leftH);
+
+				if(shortSide < bestShort || (shortSide == bestShort && longSide < bestLong))
+				{
+					best = i;
+					bestShort = shortSide;
+					bestLong = longSide;
+				}
+			}
+		}
+
+		if(best < 0)
+		{
+			return false;
+		}
+
+		x = free[best * 4];
+		y = free[best * 4 + 1];
+
+		// every free rectangle under the placed one is replaced by what is left of it around it,
+		// the new ones are added after count and are left alone
+		int count = freeCount;
+		for (int i = 0; i < count; i++)
+		{
+			if(split(i, x, y, w, h))
+			{
+				free[i * 4 + 2] = -1;
+			}
+		}
+
+		int kept = 0;
+		for (int i = 0; i < freeCount; i++)
+		{
+			if(free[i * 4 + 2] >= 0)
+			{
+				System.arraycopy(free, i * 4, free, kept * 4, 4);
+				kept++;
+			}
+		}
+		freeCount = kept;
+
+		prune();
+
+		usedWidth = Math.max(usedWidth, x + w);
+		usedHeight = Math.max(usedHeight, y + h);
+		usedArea += (long) w * h;
+
+		return true;
+	}
+
+	// Adds the parts of free rectangle i outside the placed one, true when they overlapped
+	private boolean split(int i, int px, int py, int pw, int ph)
+	{
+		int o = i * 4;
+		int fx = free[o];
+		int fy = free[o + 1];
+		int fw = free[o + 2];
+		int fh = free[o + 3];
+
+		if(px >= fx + fw || px + pw <= fx || py >= fy + fh || py + ph <= fy)
+		{
+			return false;
+		}
+
+		// left, right, top, bottom
+		if(px > fx)
+		{
+			add(fx, fy, px - fx, fh);
+		}
+
+		if(px + pw < fx + fw)
+		{
+			add(px + pw, fy, fx + fw - (px + pw), fh);
+		}
+
+		if(py > fy)
+		{
+			add(fx, fy, fw, py - fy);
+		}
+
+		if(py + ph < fy + fh)
+		{
+			add(fx, py + ph, fw, fy + fh - (py + ph));
+		}
+
+		return true;
+	}
+
+	private void add(int fx, int fy, int fw, int fh)
+	{
+		if(freeCount * 4 == free.length)
+		{
+			free = Arrays.copyOf(free, free.length * 2);
+		}
+
+		int o = freeCount * 4;
+		free[o] = fx;
+		free[o + 1] = fy;
+		free[o + 2] = fw;
+		free[o + 3] = fh;
+		freeCount++;
+	}
+
+	// Drops the free rectangles inside another one
+	private void prune()
+	{
+		for (int i = 0; i < freeCount; i++)
+		{
+			for (int j = i + 1; j < freeCount; j++)
+			{
+				if(contains(j, i))
+				{
+					remove(i--);
+					break;
+				}
+
+				if(contains(i, j))
+				{
+					remove(j--);
+				}
+			}
+		}
+	}
+
+	private boolean contains(int outer, int inner)
+	{
+		int a = outer * 4;
+		int b = inner * 4;
+
+		return free[b] >= free[a] && free[b + 1] >= free[a + 1] &&
+				free[b] + free[b + 2] <= free[a] + free[a + 2] &&
+				free[b + 1] + free[b + 3] <= free[a + 1] + free[a + 3];
+	}
+
+	private void remove(int i)
+	{
+		freeCount--;
+		System.arraycopy(free, (i + 1) * 4, free, i * 4, (freeCount - i) * 4);
+	}
+
+	public int getX()
+	{
+		return x;
+	}
+
+	public int getY()
+	{
+		return y;
+	}
+
+	public int getWidth()
+	{
+		return width;
+	}
+
+	public int getHeight()
+	{
+		return height;
+	}
+
+	// right and bottom edges of the placed rectangles
+	public int getUsedWidth()
+	{
+		return usedWidth;
+	}
+
+	public int getUsedHeight()
+	{
+		return usedHeight;
+	}
+
+	// placed area over the page area
+	public float getOccupancy()
+	{
+		return usedArea / (float) ((long) width * height);
+	}
+}
@@ -1038,36 +1038,59 @@ public final class Matrix4
 	
 	public static Matrix4 createLookAt(Matrix4 result, float eyeX, float eyeY, float eyeZ, float cenX, float cenY, float cenZ, float upX, float upY, float upZ)
 	{
-		return createLookAt(result, new Vector3(eyeX, eyeY, eyeZ), new Vector3(cenX, cenY, cenZ), new Vector3(upX, upY, upZ));
-	}
-
-	public static Matrix4 createLookAt(Matrix4 result, Vector3 eye, Vector3 center, Vector3 up)
-	{
-		Vector3 forward = Vector3.subtract(eye, center).getNormalized();
-		Vector3 left = Vector3.cross(up, forward).getNormalized();
-		up = Vector3.cross(forward, left).getNormalized();
+		// forward = normalize(eye - center)
+		float fx = eyeX - cenX;
+		float fy = eyeY - cenY;
+		float fz = eyeZ - cenZ;
+		float length = (float) Math.sqrt((fx * fx) + (fy * fy) + (fz * fz));
+		fx /= length;
+		fy /= length;
+		fz /= length;
+		
+		// left = normalize(up x forward)
+		float lx = (upY * fz) - (upZ * fy);
+		float ly = (upZ * fx) - (upX * fz);
+		float lz = (upX * fy) - (upY * fx);
+		length = (float) Math.sqrt((lx * lx) + (ly * ly) + (lz * lz));
+		lx /= length;
+		ly /= length;
+		lz /= length;
+		
+		// up = normalize(forward x left)
+		float ux = (fy * lz) - (fz * ly);
+		float uy = (fz * lx) - (fx * lz);
+		float uz = (fx * ly) - (fy * lx);
+		length = (float) Math.sqrt((ux * ux) + (uy * uy) + (uz * uz));
+		ux /= length;
+		uy /= length;
+		uz /= length;
 
 		result.setIdentity();
 		
-		result.m11 = left.x;
-		result.m12 = up.x;
-		result.m13 = forward.x;
+		result.m11 = lx;
+		result.m12 = ux;
+		result.m13 = fx;
 		
-		result.m21 = left.y;
-		result.m22 = up.y;
-		result.m23 = forward.y;
+		result.m21 = ly;
+		result.m22 = uy;
+		result.m23 = fy;
 
-		result.m31 = left.z;
-		result.m32 = up.z;
-		result.m33 = forward.z;
+		result.m31 = lz;
+		result.m32 = uz;
+		result.m33 = fz;
 
-		result.m41 = -Vector3.dot(eye, left);
-		result.m42 = -Vector3.dot(eye, up);
-		result.m43 = -Vector3.dot(eye, forward);
+		result.m41 = -((eyeX * lx) + (eyeY * ly) + (eyeZ * lz));
+		result.m42 = -((eyeX * ux) + (eyeY * uy) + (eyeZ * uz));
+		result.m43 = -((eyeX * fx) + (eyeY * fy) + (eyeZ * fz));
 		result.m44 = 1;
 		
 		return result;
 	}
+
+	public static Matrix4 createLookAt(Matrix4 result, Vector3 eye, Vector3 center, Vector3 up)
+	{
+		return createLookAt(result, eye.x, eye.y, eye.z, center.x, center.y, center.z, up.x, up.y, up.z);
+	}
 	
 	public static Matrix4 createOrtho(Matrix4 result, float left, float right, float bottom, float top, float near, float far)
 	{
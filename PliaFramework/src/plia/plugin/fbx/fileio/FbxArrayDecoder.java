@@ -0,0 +1,436 @@
+package plia.plugin.fbx.fileio;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+// Decodes the "a: 1,2,3,..." blocks of the ascii importer, backwards from the end of the block.
+// Big blocks are cut just after a comma into one chunk per core, every chunk fills its own
+// slice of the preallocated array on a shared pool.
+final class FbxArrayDecoder
+{
+	// below this the block is decoded on the calling thread, the hand off costs more than it saves
+	private static final int PARALLEL_LENGTH = 64 * 1024;
+	private static final int CHUNK_LENGTH = 32 * 1024;
+
+	private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+	private static boolean parallel = THREADS > 1;
+	private static ExecutorService pool;
+
+	static void setParallel(boolean enabled)
+	{
+		parallel = enabled;
+	}
+
+	static boolean isParallel()
+	{
+		return parallel;
+	}
+
+	static float[] decodeFloats(CharSequence sb, int count) throws IOException
+	{
+		float[] items = new float[count];
+		decode(sb, items, count);
+		return items;
+	}
+
+	static int[] decodeInts(CharSequence sb, int count) throws IOException
+	{
+		int[] items = new int[count];
+		decode(sb, items, count);
+		return items;
+	}
+
+	static long[] decodeLongs(CharSequence sb, int count) throws IOException
+	{
+		long[] items = new long[count];
+		decode(sb, items, count);
+		return items;
+	}
+
+	private static void decode(CharSequence sb, Object items, int count) throws IOException
+	{
+		if(count == 0)
+		{
+			return;
+		}
+
+		if(!parallel || sb.length() < PARALLEL_LENGTH || !decodeParallel(sb, items, count))
+		{
+			decodeChunk(sb, items, 0, sb.length(), 0, count-1);
+		}
+	}
+
+	// false when the block does not hold exactly count numbers, the caller then decodes it serially
+	private static boolean decodeParallel(CharSequence sb, Object items, int count) throws IOException
+	{
+		int length = sb.length();
+		int chunkCount = Math.min(THREADS, length / CHUNK_LENGTH);
+
+		if(chunkCount < 2)
+		{
+			return false;
+		}
+
+		Chunk[] chunks = new Chunk[chunkCount];
+
+		int from = 0;
+		for (int k = 0; k < chunkCount; k++)
+		{
+			int to = length;
+
+			if(k < chunkCount-1)
+			{
+				to = Math.max(from, (int) ((long) length * (k+1) / chunkCount));
+				while(to < length && sb.charAt(to-1) != ',')
+				{
+					to++;
+				}
+			}
+
+			chunks[k] = new Chunk(sb, items, from, to);
+			from = to;
+		}
+
+		// pass 1 : commas per chunk gives the first item index of every chunk
+		run(chunks);
+
+		int index = 0;
+		for (int k = 0; k < chunkCount; k++)
+		{
+			Chunk chunk = chunks[k];
+			chunk.first = index;
+			index += chunk.commas;
+
+			if(k < chunkCount-1)
+			{
+				// the trailing comma closes the chunk's last number
+				chunk.to--;
+				chunk.last = index-1;
+			}
+			else
+			{
+				index++;
+				chunk.last = index-1;
+			}
+		}
+
+		if(index != count)
+		{
+			return false;
+		}
+
+		// pass 2 : decode
+		run(chunks);
+
+		return true;
+	}
+
+	private static void run(Chunk[] chunks) throws IOException
+	{
+		ExecutorService executor = getPool();
+
+		Future<?>[] futures = new Future<?>[chunks.length];
+		for (int k = 1; k < chunks.length; k++)
+		{
+			futures[k] = executor.submit(chunks[k]);
+		}
+
+		chunks[0].run();
+
+		try
+		{
+			for (int k = 1; k < chunks.length; k++)
+			{
+				futures[k].get();
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("array decoding interrupted");
+		}
+		catch (ExecutionException e)
+		{
+			throw new IOException("array decoding failed : " + e.getCause());
+		}
+	}
+
+	private static synchronized ExecutorService getPool()
+	{
+		if(pool == null)
+		{
+			pool = Executors.newFixedThreadPool(THREADS, new ThreadFactory()
+			{
+				private int id = 0;
+
+				public synchronized Thread newThread(Runnable r)
+				{
+					Thread thread = new Thread(r, "FbxArrayDecoder-" + (id++));
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+
+		return pool;
+	}
+
+	private static final class Chunk implements Runnable
+	{
+		private final CharSequence sb;
+		private final Object items;
+		private final int from;
+		private int to;
+
+		private int commas = -1;
+		private int first;
+		private int last;
+
+		Chunk(CharSequence sb, Object items, int from, int to)
+		{
+			this.sb = sb;
+			this.items = items;
+			this.from = from;
+			this.to = to;
+		}
+
+		public void run()
+		{
+			if(commas < 0)
+			{
+				int count = 0;
+				for (int i = from; i < to; i++)
+				{
+					if(sb.charAt(i) == ',')
+					{
+						count++;
+					}
+				}
+				commas = count;
+			}
+			else
+			{
+				decodeChunk(sb, items, from, to, first, last);
+			}
+		}
+	}
+
+	// Fills items[first..last] from sb[from..to), the number that starts at from is flushed at the end
+	private static void decodeChunk(CharSequence sb, Object items, int from, int to, int first, int last)
+	{
+		if(items instanceof float[])
+		{
+			decodeFloats(sb, (float[]) items, from, to, first, last);
+		}
+		else if(items instanceof int[])
+		{
+			decodeInts(sb, (int[]) items, from, to, first, last);
+		}
+		else
+		{
+			decodeLongs(sb, (long[]) items, from, to, first, last);
+		}
+	}
+
+	private static void decodeFloats(CharSequence sb, float[] items, int from, int to, int first, int last)
+	{
+		double result = 0;
+		double p = 1;
+		byte sign = 1;
+		boolean pending = false;
+
+		int index = last;
+
+		for (int i = to-1; i >= from; i--)
+		{
+			char c = sb.charAt(i);
+
+			if(c >= '0' && c <= '9')
+			{
+				result += (c - 48) * p;
+				p *= 10;
+				pending = true;
+			}
+			else if(c == '.')
+			{
+				result /= p;
+				p = 1;
+			}
+			else if(c == 'e' || c == 'E')
+			{
+				i = convertToFloatWithE(sb, items, index--, (i-1), from, result, sign);
+				result = 0;
+				p = 1;
+				sign = 1;
+				pending = false;
+
+				if(index < first)
+				{
+					return;
+				}
+			}
+			else if(c == '-')
+			{
+				sign = -1;
+			}
+			else
+			{
+				items[index--] = (float) (result * sign);
+				result = 0;
+				p = 1;
+				sign = 1;
+				pending = false;
+
+				if(index < first)
+				{
+					return;
+				}
+			}
+		}
+
+		if(pending)
+		{
+			items[index] = (float) (result * sign);
+		}
+	}
+
+	// Mantissa of a number whose exponent is already read, returns the index of the separator
+	private static int convertToFloatWithE(CharSequence sb, float[] items, int index, int start, int from, double eValue, byte eSign)
+	{
+		// double, the mantissa keeps its fraction (-8.148e-005 is not -8e-005)
+		double result = 0;
+		double p = 1;
+		double lastPow = 1;
+		byte sign = 1;
+
+		if(eSign == 1)
+		{
+			lastPow = FbxImporter.getMaxPow10(eValue);
+		}
+		else
+		{
+			lastPow = FbxImporter.getMinPow10(-eValue);
+		}
+
+		for (int i = start; i >= from; i--)
+		{
+			char c = sb.charAt(i);
+
+			if(c >= '0' && c <= '9')
+			{
+				result += (c - 48) * p;
+				p *= 10;
+			}
+			else if(c == '.')
+			{
+				result /= p;
+				p = 1;
+			}
+			else if(c == '-')
+			{
+				sign = -1;
+			}
+			else
+			{
+				items[index] = (float) (result * lastPow * sign);
+				return i;
+			}
+		}
+
+		items[index] = (float) (result * lastPow * sign);
+		return from;
+	}
+
+	private static void decodeInts(CharSequence sb, int[] items, int from, int to, int first, int last)
+	{
+		int result = 0;
+		int p = 1;
+		byte sign = 1;
+		boolean pending = false;
+
+		int index = last;
+
+		for (int i = to-1; i >= from; i--)
+		{
+			char c = sb.charAt(i);
+
+			if(c >= '0' && c <= '9')
+			{
+				result += (c - 48) * p;
+				p *= 10;
+				pending = true;
+			}
+			else if(c == '-')
+			{
+				sign = -1;
+			}
+			else
+			{
+				items[index--] = result * sign;
+				result = 0;
+				p = 1;
+				sign = 1;
+				pending = false;
+
+				if(index < first)
+				{
+					return;
+				}
+			}
+		}
+
+		if(pending)
+		{
+			items[index] = result * sign;
+		}
+	}
+
+	private static void decodeLongs(CharSequence sb, long[] items, int from, int to, int first, int last)
+	{
+		long result = 0;
+		long p = 1;
+		byte sign = 1;
+		boolean pending = false;
+
+		int index = last;
+
+		for (int i = to-1; i >= from; i--)
+		{
+			char c = sb.charAt(i);
+
+			if(c >= '0' && c <= '9')
+			{
+				result += (c - 48) * p;
+				p *= 10;
+				pending = true;
+			}
+			else if(c == '-')
+			{
+				sign = -1;
+			}
+			else
+			{
+				items[index--] = result * sign;
+				result = 0;
+				p = 1;
+				sign = 1;
+				pending = false;
+
+				if(index < first)
+				{
+					return;
+				}
+			}
+		}
+
+		if(pending)
+		{
+			items[index] = result * sign;
+		}
+	}
+}
@@ -0,0 +1,875 @@
+package plia.plugin.fbx.fileio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import plia.math.Vector3;
+import plia.plugin.fbx.core.FbxObject;
+import plia.plugin.fbx.core.base.FbxTimeMode;
+import plia.plugin.fbx.core.base.FbxTimeSpan;
+import plia.plugin.fbx.scene.FbxScene;
+import plia.plugin.fbx.scene.animation.FbxAnimCurve;
+import plia.plugin.fbx.scene.animation.FbxAnimCurveNode;
+import plia.plugin.fbx.scene.geometry.FbxCluster;
+import plia.plugin.fbx.scene.geometry.FbxGeometry;
+import plia.plugin.fbx.scene.geometry.FbxMesh;
+import plia.plugin.fbx.scene.geometry.FbxNode;
+import plia.plugin.fbx.scene.geometry.FbxNodeAttribute;
+import plia.plugin.fbx.scene.geometry.FbxSkeleton;
+import plia.plugin.fbx.scene.geometry.FbxSkin;
+import plia.plugin.fbx.scene.shading.FbxFileTexture;
+import plia.plugin.fbx.scene.shading.FbxSurfaceMaterial;
+import plia.plugin.fbx.scene.shading.FbxSurfacePhong;
+import plia.plugin.fbx.scene.shading.FbxTexture;
+
+import android.util.Log;
+
+// Binary fbx (7.x), builds the same FbxScene graph as FbxImporter does for ascii files
+public class FbxBinaryImporter
+{
+	public static FbxScene importScene(InputStream inputStream)
+	{
+		return importScene(new FbxBinaryReader(inputStream));
+	}
+
+	public static FbxScene importScene(ByteBuffer buffer)
+	{
+		return importScene(new FbxBinaryReader(buffer));
+	}
+
+	private static FbxScene importScene(FbxBinaryReader reader)
+	{
+		try
+		{
+			return new FbxBinaryImporter().readScene(reader);
+		}
+		catch (IOException e)
+		{
+			Log.e("Error", e.getMessage());
+		}
+		finally
+		{
+			reader.close();
+		}
+
+		return null;
+	}
+
+	// Count
+	private int model_count = 0;
+	private int geometry_count = 0;
+	private int node_attribute_count = 0;
+	private int anim_curve_count = 0;
+	private int anim_curve_node_count = 0;
+	private int deformer_count = 0;
+
+	private int startFrame = 0, endFrame = 0;
+	private int keyframeLength = 0;
+
+	private FbxTimeSpan timeSpan = new FbxTimeSpan();
+	private FbxTimeMode timeMode = null;
+	private int upAxis = 1;
+	private int upAxisSign = 1;
+	private int frontAxis = 1;
+	private int frontAxisSign = 1;
+
+	private HashMap<Long, FbxObject> maps = new HashMap<Long, FbxObject>();
+	private ArrayList<FbxNode> rootnodes = new ArrayList<FbxNode>();
+
+	private FbxBinaryImporter()
+	{
+
+	}
+
+	private FbxScene readScene(FbxBinaryReader reader) throws IOException
+	{
+		reader.readHeader();
+
+		String name;
+		while((name = reader.beginNode()) != null)
+		{
+			long end = reader.getNodeEnd();
+
+			if(name.equals("GlobalSettings"))
+			{
+				readGlobalSettings(reader, end);
+			}
+			else if(name.equals("Definitions"))
+			{
+				readDefinitions(reader, end);
+			}
+			else if(name.equals("Objects"))
+			{
+				readObjects(reader, end);
+			}
+			else if(name.equals("Connections"))
+			{
+				readConnections(reader, end);
+			}
+
+			reader.skipTo(end);
+		}
+
+		FbxScene scene = new FbxScene();
+
+		for (FbxObject fbxObject : maps.values())
+		{
+			if(fbxObject instanceof FbxGeometry)
+			{
+				scene.addGeometry((FbxGeometry) fbxObject);
+			}
+			else if(fbxObject instanceof FbxNode)
+			{
+				scene.addNode((FbxNode) fbxObject);
+			}
+			else if(fbxObject instanceof FbxSurfaceMaterial)
+			{
+				scene.addMaterial((FbxSurfaceMaterial) fbxObject);
+			}
+		}
+
+		FbxNode sceneRootNode = scene.getRootnodes();
+
+		for (FbxNode rootnode : rootnodes)
+		{
+			sceneRootNode.addChild(rootnode);
+		}
+
+		FbxGlobalSetting globalSetting = scene.globalSetting();
+		globalSetting.setTimeMode(timeMode);
+		globalSetting.setTimeSpan(timeSpan);
+		globalSetting.setFrontAxis(frontAxis);
+		globalSetting.setFrontAxisSign(frontAxisSign);
+		globalSetting.setUpAxis(upAxis);
+		globalSetting.setUpAxisSign(upAxisSign);
+
+		scene.setObjectDefinitions(model_count, geometry_count, node_attribute_count, anim_curve_count, anim_curve_node_count, deformer_count);
+		scene.setKeyframe(startFrame, endFrame, keyframeLength);
+
+		return scene;
+	}
+
+	// Moves to the first child of the current node
+	private static void enterChildren(FbxBinaryReader reader) throws IOException
+	{
+		reader.skipTo(reader.getPropertyEnd());
+	}
+
+	// "Name\0\1Class" -> "Name"
+	private static String objectName(String name)
+	{
+		int index = name.indexOf('\0');
+
+		if(index > -1)
+		{
+			return name.substring(0, index);
+		}
+
+		return name;
+	}
+
+	private void readGlobalSettings(FbxBinaryReader reader, long end) throws IOException
+	{
+		enterChildren(reader);
+
+		String name;
+		while(reader.position() < end && (name = reader.beginNode()) != null)
+		{
+			long nodeEnd = reader.getNodeEnd();
+
+			if(name.equals("Properties70"))
+			{
+				enterChildren(reader);
+
+				while(reader.position() < nodeEnd && (name = reader.beginNode()) != null)
+				{
+					long propertyEnd = reader.getNodeEnd();
+					String property = beginProperty(reader);
+
+					if(property.startsWith("TimeMode"))
+					{
+						timeMode = new FbxTimeMode( (int) reader.readInteger() );
+					}
+					else if(property.startsWith("TimeSpanStart"))
+					{
+						timeSpan.setStart( reader.readInteger() );
+					}
+					else if(property.startsWith("TimeSpanStop"))
+					{
+						timeSpan.setStop( reader.readInteger() );
+					}
+					else if(property.equals("UpAxis"))
+					{
+						upAxis = (int) reader.readInteger();
+					}
+					else if(property.startsWith("UpAxisSign"))
+					{
+						upAxisSign = (int) reader.readInteger();
+					}
+					else if(property.equals("FrontAxis"))
+					{
+						frontAxis = (int) reader.readInteger();
+					}
+					else if(property.startsWith("FrontAxisSign"))
+					{
+						frontAxisSign = (int) reader.readInteger();
+					}
+
+					reader.skipTo(propertyEnd);
+				}
+			}
+
+			reader.skipTo(nodeEnd);
+		}
+	}
+
+	// P: "Name", "Type", "Label", "Flags", values...
+	private static String beginProperty(FbxBinaryReader reader) throws IOException
+	{
+		String property = reader.readString();
+		reader.skipProperty();
+		reader.skipProperty();
+		reader.skipProperty();
+
+		return property;
+	}
+
+	private static Vector3 readVector3(FbxBinaryReader reader) throws IOException
+	{
+		float x = (float) reader.readNumber();
+		float y = (float) reader.readNumber();
+		float z = (float) reader.readNumber();
+
+		return new Vector3(x, y, z);
+	}
+
+	private void readDefinitions(FbxBinaryReader reader, long end) throws IOException
+	{
+		enterChildren(reader);
+
+		String name;
+		while(reader.position() < end && (name = reader.beginNode()) != null)
+		{
+			long nodeEnd = reader.getNodeEnd();
+
+			if(name.equals("ObjectType"))
+			{
+				String type = reader.readString();
+				int count = 0;
+
+				enterChildren(reader);
+				while(reader.position() < nodeEnd && (name = reader.beginNode()) != null)
+				{
+					long countEnd = reader.getNodeEnd();
+					if(name.equals("Count"))
+					{
+						count = (int) reader.readInteger();
+					}
+					reader.skipTo(countEnd);
+				}
+
+				if(type.equals("Model"))
+				{
+					model_count = count;
+				}
+				else if(type.equals("Geometry"))
+				{
+					geometry_count = count;
+				}
+				else if(type.equals("NodeAttribute"))
+				{
+					node_attribute_count = count;
+				}
+				else if(type.equals("AnimationCurve"))
+				{
+					anim_curve_count = count;
+				}
+				else if(type.equals("AnimationCurveNode"))
+				{
+					anim_curve_node_count = count;
+				}
+				else if(type.equals("Deformer"))
+				{
+					deformer_count = count;
+				}
+			}
+
+			reader.skipTo(nodeEnd);
+		}
+	}
+
+	private void readObjects(FbxBinaryReader reader, long end) throws IOException
+	{
+		enterChildren(reader);
+
+		String name;
+		while(reader.position() < end && (name = reader.beginNode()) != null)
+		{
+			long nodeEnd = reader.getNodeEnd();
+
+			if(name.equals("Geometry"))
+			{
+				readGeometry(reader, nodeEnd);
+			}
+			else if(name.equals("NodeAttribute"))
+			{
+				readNodeAttribute(reader);
+			}
+			else if(name.equals("Model"))
+			{
+				readModel(reader, nodeEnd);
+			}
+			else if(name.equals("Deformer"))
+			{
+				readDeformer(reader, nodeEnd);
+			}
+			else if(name.equals("Material"))
+			{
+				readMaterial(reader, nodeEnd);
+			}
+			else if(name.equals("Texture"))
+			{
+				readTexture(reader, nodeEnd);
+			}
+			else if(name.equals("AnimationCurveNode"))
+			{
+				long anim_curve_node_id = reader.readInteger();
+				maps.put(anim_curve_node_id, new FbxAnimCurveNode(anim_curve_node_id));
+			}
+			else if(name.equals("AnimationCurve"))
+			{
+				readAnimationCurve(reader, nodeEnd);
+			}
+
+			reader.skipTo(nodeEnd);
+		}
+	}
+
+	private void readGeometry(FbxBinaryReader reader, long end) throws IOException
+	{
+		long geometry_id = reader.readInteger();
+		FbxMesh mesh = new FbxMesh(geometry_id);
+
+		enterChildren(reader);
+
+		String name;
+		while(reader.position() < end && (name = reader.beginNode()) != null)
+		{
+			long nodeEnd = reader.getNodeEnd();
+
+			if(name.equals("Vertices"))
+			{
+				mesh.setVertices(reader.readFloatArray());
+			}
+			else if(name.equals("PolygonVertexIndex"))
+			{
+				mesh.setIndices(reader.readIntArray());
+			}
+			else if(name.equals("LayerElementNormal") && mesh.getNormals() == null)
+			{
+				enterChildren(reader);
+				while(reader.position() < nodeEnd && (name = reader.beginNode()) != null)
+				{
+					long layerEnd = reader.getNodeEnd();
+					if(name.equals("Normals"))
+					{
+						mesh.setNormals(reader.readFloatArray());
+					}
+					reader.skipTo(layerEnd);
+				}
+			}
+			else if(name.equals("LayerElementUV") && mesh.getUV() == null)
+			{
+				enterChildren(reader);
+				while(reader.position() < nodeEnd && (name = reader.beginNode()) != null)
+				{
+					long layerEnd = reader.getNodeEnd();
+					if(name.equals("UV"))
+					{
+						mesh.setUV(reader.readFloatArray());
+					}
+					else if(name.equals("UVIndex"))
+					{
+						mesh.setUVIndices(reader.readIntArray());
+					}
+					reader.skipTo(layerEnd);
+				}
+			}
+
+			reader.skipTo(nodeEnd);
+		}
+
+		maps.put(geometry_id, mesh);
+	}
+
+	private void readNodeAttribute(FbxBinaryReader reader) throws IOException
+	{
+		long node_attribute_id = reader.readInteger();
+		String name = reader.readString();
+		String type = reader.readString();
+
+		FbxNodeAttribute nodeAttribute = null;
+
+		if(type.equals("Null"))
+		{
+			nodeAttribute = new FbxNodeAttribute(node_attribute_id, FbxNodeAttribute.Null);
+		}
+		else if(type.equals("Mesh"))
+		{
+			nodeAttribute = new FbxNodeAttribute(node_attribute_id, FbxNodeAttribute.Mesh);
+		}
+		else
+		{
+			int skeletonType = 0;
+
+			if(type.contains("Limb") || name.contains("Limb")) // Limb  or LimbNode
+			{
+				skeletonType = FbxSkeleton.LimbNode;
+			}
+			else if(type.contains("Root") || type.contains("Effector") || name.contains("Root") || name.contains("Effector"))
+			{
+				skeletonType = FbxSkeleton.Root;
+			}
+
+			nodeAttribute = new FbxSkeleton(node_attribute_id, skeletonType);
+		}
+
+		maps.put(node_attribute_id, nodeAttribute);
+	}
+
+	private void readModel(FbxBinaryReader reader, long end) throws IOException
+	{
+		long nodeID = reader.readInteger();
+		String nodeName = objectName(reader.readString());
+
+		FbxNode node = new FbxNode(nodeID);
+		node.setName(nodeName);
+
+		Vector3 lclT = new Vector3();
+		Vector3 lclR = new Vector3();
+		Vector3 lclS = new Vector3(1,1,1);
+
+		enterChildren(reader);
+
+		String name;
+		while(reader.position() < end && (name = reader.beginNode()) != null)
+		{
+			long nodeEnd = reader.getNodeEnd();
+
+			if(name.equals("Properties70"))
+			{
+				enterChildren(reader);
+				while(reader.position() < nodeEnd && (name = reader.beginNode()) != null)
+				{
+					long propertyEnd = reader.getNodeEnd();
+					String property = beginProperty(reader);
+
+					if (property.equals("Lcl Translation"))
+					{
+						lclT = readVector3(reader);
+					} else if (property.equals("Lcl Rotation"))
+					{
+						lclR = readVector3(reader);
+					} else if (property.equals("Lcl Scaling"))
+					{
+						lclS = readVector3(reader);
+					}
+
+					reader.skipTo(propertyEnd);
+				}
+			}
+
+			reader.skipTo(nodeEnd);
+		}
+
+		node.setLclTranslation(lclT);
+		node.setLclRotation(lclR);
+		node.setLclScaling(lclS);
+
+		maps.put(nodeID, node);
+	}
+
+	private void readDeformer(FbxBinaryReader reader, long end) throws IOException
+	{
+		long deformer_id = reader.readInteger();
+		reader.skipProperty();
+		String type = reader.readString();
+
+		if (type.equals("Skin"))
+		{
+			maps.put(deformer_id, new FbxSkin(deformer_id));
+			return;
+		}
+
+		FbxCluster cluster = new FbxCluster(deformer_id);
+
+		enterChildren(reader);
+
+		String name;
+		while(reader.position() < end && (name = reader.beginNode()) != null)
+		{
+			long nodeEnd = reader.getNodeEnd();
+
+			if (name.equals("Indexes"))
+			{
+				cluster.setIndices(reader.readIntArray());
+			}
+			else if (name.equals("Weights"))
+			{
+				cluster.setWeights(reader.readFloatArray());
+			}
+			else if (name.equals("Transform"))
+			{
+				cluster.setTransform(reader.readFloatArray());
+			}
+			else if (name.equals("TransformLink"))
+			{
+				cluster.setTransformLink(reader.readFloatArray());
+			}
+
+			reader.skipTo(nodeEnd);
+		}
+
+		maps.put(deformer_id, cluster);
+	}
+
+	private void readMaterial(FbxBinaryReader reader, long end) throws IOException
+	{
+		long material_id = reader.readInteger();
+		String material_name = objectName(reader.readString());
+
+		FbxSurfacePhong material = new FbxSurfacePhong(material_id);
+		material.setName(material_name);
+
+		enterChildren(reader);
+
+		String name;
+		while(reader.position() < end && (name = reader.beginNode()) != null)
+		{
+			long nodeEnd = reader.getNodeEnd();
+
+			if(name.equals("Properties70"))
+			{
+				enterChildren(reader);
+				while(reader.position() < nodeEnd && (name = reader.beginNode()) != null)
+				{
+					long propertyEnd = reader.getNodeEnd();
+					String property = beginProperty(reader);
+
+					if(property.equals("Emissive"))
+					{
+						material.getEmissive().set(readVector3(reader));
+					}
+					else if(property.equals("Ambient"))
+					{
+						material.getAmbient().set(readVector3(reader));
+					}
+					else if(property.equals("Diffuse"))
+					{
+						material.getDiffuse().set(readVector3(reader));
+					}
+					else if(property.equals("NormalMap"))
+					{
+						material.getNormalMap().set(readVector3(reader));
+					}
+					else if(property.equals("Bump"))
+					{
+						material.getBump().set(readVector3(reader));
+					}
+					else if(property.equals("TransparentColor"))
+					{
+						material.getTransparentColor().set(readVector3(reader));
+					}
+					else if(property.equals("DisplacementColor"))
+					{
+						material.getDisplacementColor().set(readVector3(reader));
+					}
+					else if(property.equals("VectorDisplacementColor"))
+					{
+						material.getVectorDisplacementColor().set(readVector3(reader));
+					}
+					else if(property.equals("Specular"))
+					{
+						material.getSpecular().set(readVector3(reader));
+					}
+					else if(property.equals("Reflection"))
+					{
+						material.getReflection().set(readVector3(reader));
+					}
+					else if(property.equals("Shinniness"))
+					{
+						material.setShinniness( (float) reader.readNumber() );
+					}
+					else if(property.startsWith("EmissiveFactor"))
+					{
+						material.setEmissiveFactor( (float) reader.readNumber() );
+					}
+					else if(property.startsWith("AmbientFactor"))
+					{
+						material.setAmbientFactor( (float) reader.readNumber() );
+					}
+					else if(property.startsWith("DiffuseFactor"))
+					{
+						material.setDiffuseFactor( (float) reader.readNumber() );
+					}
+					else if(property.startsWith("BumpFactor"))
+					{
+						material.setBumpFactor( (float) reader.readNumber() );
+					}
+					else if(property.startsWith("TransparencyFactor"))
+					{
+						material.setTransparencyFactor( (float) reader.readNumber() );
+					}
+					else if(property.startsWith("DisplacementFactor"))
+					{
+						material.setDisplacementFactor( (float) reader.readNumber() );
+					}
+					else if(property.startsWith("VectorDisplacementFactor"))
+					{
+						material.setVectorDisplacementFactor( (float) reader.readNumber() );
+					}
+					else if(property.startsWith("SpecularFactor"))
+					{
+						material.setSpecularFactor( (float) reader.readNumber() );
+					}
+					else if(property.startsWith("ReflectionFactor"))
+					{
+						material.setReflectionFactor( (float) reader.readNumber() );
+					}
+
+					reader.skipTo(propertyEnd);
+				}
+			}
+
+			reader.skipTo(nodeEnd);
+		}
+
+		maps.put(material_id, material);
+	}
+
+	private void readTexture(FbxBinaryReader reader, long end) throws IOException
+	{
+		long texture_id = reader.readInteger();
+		String texture_name = objectName(reader.readString());
+
+		FbxFileTexture texture = new FbxFileTexture(texture_id);
+		texture.setName(texture_name);
+
+		enterChildren(reader);
+
+		String name;
+		while(reader.position() < end && (name = reader.beginNode()) != null)
+		{
+			long nodeEnd = reader.getNodeEnd();
+
+			if(name.equals("FileName"))
+			{
+				String tt = reader.readString();
+				String fileName = tt;
+
+				int indexOfSlash = tt.lastIndexOf("\\");
+
+				if(indexOfSlash > -1)
+				{
+					fileName = tt.substring(indexOfSlash+1);
+				}
+
+				texture.setFileName(fileName);
+			}
+			else if(name.equals("RelativeFilename"))
+			{
+				texture.setRelativeFileName(reader.readString());
+			}
+
+			reader.skipTo(nodeEnd);
+		}
+
+		maps.put(texture_id, texture);
+	}
+
+	private void readAnimationCurve(FbxBinaryReader reader, long end) throws IOException
+	{
+		long anim_curve_id = reader.readInteger();
+		FbxAnimCurve animCurve = new FbxAnimCurve(anim_curve_id);
+
+		long[] times = null;
+		float[] values = null;
+
+		enterChildren(reader);
+
+		String name;
+		while(reader.position() < end && (name = reader.beginNode()) != null)
+		{
+			long nodeEnd = reader.getNodeEnd();
+
+			if (name.equals("KeyTime"))
+			{
+				times = reader.readLongArray();
+				if(times.length > 0)
+				{
+					int length = (int) ( (times[times.length - 1] - times[0])  / 1539538600L) + 1;
+					if(length > keyframeLength)
+					{
+						keyframeLength = length;
+						startFrame = (int) (times[0] / 1539538600L);
+						endFrame = (int) (times[times.length - 1] / 1539538600L);
+					}
+				}
+			}
+			else if (name.equals("KeyValueFloat"))
+			{
+				values = reader.readFloatArray();
+			}
+
+			reader.skipTo(nodeEnd);
+		}
+
+		animCurve.set(times, values);
+		maps.put(anim_curve_id, animCurve);
+	}
+
+	private void readConnections(FbxBinaryReader reader, long end) throws IOException
+	{
+		// X, Y, Z curves of each curve node, linked once every connection is read
+		HashMap<Long, FbxAnimCurve[]> curves = new HashMap<Long, FbxAnimCurve[]>();
+		ArrayList<Long> curveNodes = new ArrayList<Long>();
+
+		enterChildren(reader);
+
+		String name;
+		while(reader.position() < end && (name = reader.beginNode()) != null)
+		{
+			long nodeEnd = reader.getNodeEnd();
+
+			if(name.equals("C"))
+			{
+				String type = reader.readString();
+				long child_id = reader.readInteger();
+				long parent_id = reader.readInteger();
+				String target = type.equals("OP") ? reader.readString() : "";
+
+				FbxObject child = maps.get(child_id);
+				FbxObject parent = maps.get(parent_id);
+
+				if(parent_id == 0)
+				{
+					if(child instanceof FbxNode)
+					{
+						rootnodes.add((FbxNode) child);
+					}
+				}
+				else if(child instanceof FbxNode)
+				{
+					if(parent instanceof FbxCluster)
+					{
+						((FbxCluster) parent).setAssociateModel((FbxNode) child);
+					}
+					else if(parent instanceof FbxNode)
+					{
+						FbxNode child_node = (FbxNode) child;
+						FbxNode parent_node = (FbxNode) parent;
+
+						parent_node.addChild(child_node);
+						child_node.setParent(parent_node);
+					}
+				}
+				else if(child instanceof FbxNodeAttribute)
+				{
+					// Geometry, Null, Skeleton
+					if(parent instanceof FbxNode)
+					{
+						((FbxNode) parent).setNodeAttribute((FbxNodeAttribute) child);
+					}
+				}
+				else if(child instanceof FbxAnimCurveNode)
+				{
+					if(parent instanceof FbxNode)
+					{
+						FbxNode node = (FbxNode) parent;
+						FbxAnimCurveNode animCurveNode = (FbxAnimCurveNode) child;
+
+						if(target.equals("Lcl Translation"))
+						{
+							node.setLclTranslation(animCurveNode);
+						}
+						else if(target.equals("Lcl Rotation"))
+						{
+							node.setLclRotation(animCurveNode);
+						}
+						else
+						{
+							node.setLclScaling(animCurveNode);
+						}
+					}
+				}
+				else if(child instanceof FbxSkin)
+				{
+					if(parent instanceof FbxGeometry)
+					{
+						((FbxGeometry) parent).addDeformer((FbxSkin) child);
+					}
+				}
+				else if(child instanceof FbxAnimCurve)
+				{
+					if(parent instanceof FbxAnimCurveNode)
+					{
+						FbxAnimCurve[] xyz = curves.get(parent_id);
+						if(xyz == null)
+						{
+							xyz = new FbxAnimCurve[3];
+							curves.put(parent_id, xyz);
+							curveNodes.add(parent_id);
+						}
+
+						if(target.endsWith("X"))
+						{
+							xyz[0] = (FbxAnimCurve) child;
+						}
+						else if(target.endsWith("Y"))
+						{
+							xyz[1] = (FbxAnimCurve) child;
+						}
+						else if(target.endsWith("Z"))
+						{
+							xyz[2] = (FbxAnimCurve) child;
+						}
+					}
+				}
+				else if(child instanceof FbxCluster)
+				{
+					if(parent instanceof FbxSkin)
+					{
+						((FbxSkin) parent).addCluster((FbxCluster) child);
+					}
+				}
+				else if(child instanceof FbxSurfaceMaterial)
+				{
+					if(parent instanceof FbxNode)
+					{
+						((FbxNode) parent).setMaterial((FbxSurfaceMaterial) child);
+					}
+				}
+				else if(child instanceof FbxTexture)
+				{
+					if(parent instanceof FbxSurfacePhong && target.equalsIgnoreCase("DiffuseColor"))
+					{
+						((FbxSurfacePhong) parent).setDiffuseTexture((FbxTexture) child);
+					}
+				}
+			}
+
+			reader.skipTo(nodeEnd);
+		}
+
+		for (Long anim_curve_node_id : curveNodes)
+		{
+			FbxAnimCurve[] xyz = curves.get(anim_curve_node_id);
+			FbxAnimCurveNode animCurveNode = (FbxAnimCurveNode) maps.get(anim_curve_node_id);
+
+			animCurveNode.set(xyz[0], xyz[1], xyz[2]);
+		}
+	}
+}
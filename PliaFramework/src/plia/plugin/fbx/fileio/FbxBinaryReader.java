@@ -0,0 +1,586 @@
+package plia.plugin.fbx.fileio;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+// Little-endian record reader for binary fbx (7.x), from an InputStream or a (memory-mapped) ByteBuffer.
+// Array properties are decoded straight into primitive arrays, zlib ones are inflated chunk by chunk.
+final class FbxBinaryReader
+{
+	static final int HEADER_LENGTH = 27;
+	private static final byte[] MAGIC = { 'K','a','y','d','a','r','a',' ','F','B','X',' ','B','i','n','a','r','y',' ',' ',0 };
+
+	private InputStream stream;
+	private ByteBuffer bytes;
+
+	private byte[] buffer = new byte[65536];
+	private int position = 0;
+	private int limit = 0;
+	private long offset = 0;
+
+	// 7500 and later use 64 bit offsets in the node records
+	private int version;
+	private boolean wide;
+
+	// Current node record
+	private long nodeEnd;
+	private long propertyEnd;
+
+	// Current array property
+	private boolean compressed;
+	private long compressedRemaining;
+	private Inflater inflater;
+	private byte[] inflated;
+	private int inflatedPosition;
+	private int inflatedLimit;
+
+	FbxBinaryReader(InputStream stream)
+	{
+		this.stream = stream;
+	}
+
+	FbxBinaryReader(ByteBuffer bytes)
+	{
+		this.bytes = bytes;
+	}
+
+	static boolean isBinary(byte[] head, int length)
+	{
+		if(length < MAGIC.length)
+		{
+			return false;
+		}
+
+		for (int i = 0; i < MAGIC.length; i++)
+		{
+			if(head[i] != MAGIC[i])
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	static boolean isBinary(ByteBuffer buffer)
+	{
+		if(buffer.remaining() < MAGIC.length)
+		{
+			return false;
+		}
+
+		int start = buffer.position();
+		for (int i = 0; i < MAGIC.length; i++)
+		{
+			if(buffer.get(start + i) != MAGIC[i])
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	int readHeader() throws IOException
+	{
+		ensure(HEADER_LENGTH);
+		for (int i = 0; i < MAGIC.length; i++)
+		{
+			if(buffer[position + i] != MAGIC[i])
+			{
+				throw new IOException("Not a binary fbx");
+			}
+		}
+		position += HEADER_LENGTH - 4;
+
+		version = readInt();
+		wide = version >= 7500;
+
+		return version;
+	}
+
+	int getVersion()
+	{
+		return version;
+	}
+
+	long position()
+	{
+		return offset + position;
+	}
+
+	// Keep 'count' bytes available from buffer[position]
+	private void ensure(int count) throws IOException
+	{
+		if(limit - position >= count)
+		{
+			return;
+		}
+
+		int remaining = limit - position;
+		System.arraycopy(buffer, position, buffer, 0, remaining);
+		offset += position;
+		position = 0;
+		limit = remaining;
+
+		while(limit < count)
+		{
+			int read = read(buffer, limit, buffer.length - limit);
+			if(read <= 0)
+			{
+				throw new EOFException("Unexpected end of fbx");
+			}
+			limit += read;
+		}
+	}
+
+	private int read(byte[] b, int off, int len) throws IOException
+	{
+		if(stream != null)
+		{
+			return stream.read(b, off, len);
+		}
+
+		int count = Math.min(bytes.remaining(), len);
+		if(count <= 0)
+		{
+			return -1;
+		}
+
+		bytes.get(b, off, count);
+		return count;
+	}
+
+	void skip(long count) throws IOException
+	{
+		while(count > 0)
+		{
+			if(position == limit)
+			{
+				ensure(1);
+			}
+
+			int step = (int) Math.min(count, limit - position);
+			position += step;
+			count -= step;
+		}
+	}
+
+	void skipTo(long target) throws IOException
+	{
+		skip(target - position());
+	}
+
+	int readByte() throws IOException
+	{
+		ensure(1);
+		return buffer[position++];
+	}
+
+	int readShort() throws IOException
+	{
+		ensure(2);
+		int value = getShort(buffer, position);
+		position += 2;
+		return value;
+	}
+
+	int readInt() throws IOException
+	{
+		ensure(4);
+		int value = getInt(buffer, position);
+		position += 4;
+		return value;
+	}
+
+	long readLong() throws IOException
+	{
+		ensure(8);
+		long value = getLong(buffer, position);
+		position += 8;
+		return value;
+	}
+
+	private String readString(int length) throws IOException
+	{
+		try
+		{
+			if(length <= buffer.length)
+			{
+				ensure(length);
+				String s = new String(buffer, position, length, "UTF-8");
+				position += length;
+				return s;
+			}
+
+			byte[] tmp = new byte[length];
+			for (int i = 0; i < length; i++)
+			{
+				tmp[i] = (byte) readByte();
+			}
+			return new String(tmp, "UTF-8");
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			throw new IOException(e.getMessage());
+		}
+	}
+
+	// Node record header, returns the node name or null on the null record closing a node list.
+	// Its bounds are then available from getNodeEnd() / getPropertyEnd().
+	String beginNode() throws IOException
+	{
+		long end;
+		long length;
+
+		if(wide)
+		{
+			end = readLong();
+			readLong();
+			length = readLong();
+		}
+		else
+		{
+			end = readInt() & 0xFFFFFFFFL;
+			readInt();
+			length = readInt() & 0xFFFFFFFFL;
+		}
+
+		int nameLength = readByte() & 0xFF;
+
+		if(end == 0)
+		{
+			return null;
+		}
+
+		String name = readString(nameLength);
+
+		nodeEnd = end;
+		propertyEnd = position() + length;
+
+		return name;
+	}
+
+	long getNodeEnd()
+	{
+		return nodeEnd;
+	}
+
+	long getPropertyEnd()
+	{
+		return propertyEnd;
+	}
+
+	//
+	// Properties
+	//
+
+	long readInteger() throws IOException
+	{
+		char type = (char) readByte();
+
+		switch (type)
+		{
+			case 'C' :	return readByte();
+			case 'Y' :	return readShort();
+			case 'I' :	return readInt();
+			case 'L' :	return readLong();
+			case 'F' :	return (long) Float.intBitsToFloat(readInt());
+			case 'D' :	return (long) Double.longBitsToDouble(readLong());
+		}
+
+		throw new IOException("Unexpected fbx property type " + type);
+	}
+
+	double readNumber() throws IOException
+	{
+		char type = (char) readByte();
+
+		switch (type)
+		{
+			case 'C' :	return readByte();
+			case 'Y' :	return readShort();
+			case 'I' :	return readInt();
+			case 'L' :	return readLong();
+			case 'F' :	return Float.intBitsToFloat(readInt());
+			case 'D' :	return Double.longBitsToDouble(readLong());
+		}
+
+		throw new IOException("Unexpected fbx property type " + type);
+	}
+
+	String readString() throws IOException
+	{
+		char type = (char) readByte();
+
+		if(type != 'S' && type != 'R')
+		{
+			throw new IOException("Unexpected fbx property type " + type);
+		}
+
+		return readString(readInt());
+	}
+
+	void skipProperty() throws IOException
+	{
+		char type = (char) readByte();
+
+		switch (type)
+		{
+			case 'C' :	skip(1); break;
+			case 'Y' :	skip(2); break;
+			case 'I' :
+			case 'F' :	skip(4); break;
+			case 'L' :
+			case 'D' :	skip(8); break;
+			case 'S' :
+			case 'R' :	skip(readInt() & 0xFFFFFFFFL); break;
+			case 'f' :
+			case 'd' :
+			case 'l' :
+			case 'i' :
+			case 'b' :
+				readInt();
+				readInt();
+				skip(readInt() & 0xFFFFFFFFL);
+				break;
+			default :
+				throw new IOException("Unexpected fbx property type " + type);
+		}
+	}
+
+	//
+	// Array properties
+	//
+
+	float[] readFloatArray() throws IOException
+	{
+		char type = (char) readByte();
+		int size = elementSize(type);
+		float[] items = new float[beginArray(size)];
+
+		for (int i = 0; i < items.length; i++)
+		{
+			int p = nextElement(size);
+			byte[] data = compressed ? inflated : buffer;
+
+			switch (type)
+			{
+				case 'f' :	items[i] = Float.intBitsToFloat(getInt(data, p)); break;
+				case 'd' :	items[i] = (float) Double.longBitsToDouble(getLong(data, p)); break;
+				case 'i' :	items[i] = getInt(data, p); break;
+				case 'l' :	items[i] = getLong(data, p); break;
+				default :	items[i] = data[p]; break;
+			}
+		}
+
+		endArray();
+		return items;
+	}
+
+	int[] readIntArray() throws IOException
+	{
+		char type = (char) readByte();
+		int size = elementSize(type);
+		int[] items = new int[beginArray(size)];
+
+		for (int i = 0; i < items.length; i++)
+		{
+			int p = nextElement(size);
+			byte[] data = compressed ? inflated : buffer;
+
+			switch (type)
+			{
+				case 'i' :	items[i] = getInt(data, p); break;
+				case 'l' :	items[i] = (int) getLong(data, p); break;
+				case 'f' :	items[i] = (int) Float.intBitsToFloat(getInt(data, p)); break;
+				case 'd' :	items[i] = (int) Double.longBitsToDouble(getLong(data, p)); break;
+				default :	items[i] = data[p]; break;
+			}
+		}
+
+		endArray();
+		return items;
+	}
+
+	long[] readLongArray() throws IOException
+	{
+		char type = (char) readByte();
+		int size = elementSize(type);
+		long[] items = new long[beginArray(size)];
+
+		for (int i = 0; i < items.length; i++)
+		{
+			int p = nextElement(size);
+			byte[] data = compressed ? inflated : buffer;
+
+			switch (type)
+			{
+				case 'l' :	items[i] = getLong(data, p); break;
+				case 'i' :	items[i] = getInt(data, p); break;
+				case 'f' :	items[i] = (long) Float.intBitsToFloat(getInt(data, p)); break;
+				case 'd' :	items[i] = (long) Double.longBitsToDouble(getLong(data, p)); break;
+				default :	items[i] = data[p]; break;
+			}
+		}
+
+		endArray();
+		return items;
+	}
+
+	private static int elementSize(char type) throws IOException
+	{
+		switch (type)
+		{
+			case 'f' :
+			case 'i' :	return 4;
+			case 'd' :
+			case 'l' :	return 8;
+			case 'b' :	return 1;
+		}
+
+		throw new IOException("Unexpected fbx array type " + type);
+	}
+
+	private int beginArray(int size) throws IOException
+	{
+		int count = readInt();
+		int encoding = readInt();
+		long length = readInt() & 0xFFFFFFFFL;
+
+		compressed = encoding == 1;
+		compressedRemaining = length;
+
+		if(compressed)
+		{
+			if(inflater == null)
+			{
+				inflater = new Inflater();
+				inflated = new byte[16384];
+			}
+
+			inflater.reset();
+			inflatedPosition = 0;
+			inflatedLimit = 0;
+		}
+
+		return count;
+	}
+
+	// Offset of the next 'size' bytes element, in buffer or in inflated
+	private int nextElement(int size) throws IOException
+	{
+		if(!compressed)
+		{
+			ensure(size);
+			int p = position;
+			position += size;
+			compressedRemaining -= size;
+			return p;
+		}
+
+		if(inflatedLimit - inflatedPosition < size)
+		{
+			inflate(size);
+		}
+
+		int p = inflatedPosition;
+		inflatedPosition += size;
+		return p;
+	}
+
+	private void inflate(int size) throws IOException
+	{
+		int remaining = inflatedLimit - inflatedPosition;
+		System.arraycopy(inflated, inflatedPosition, inflated, 0, remaining);
+		inflatedPosition = 0;
+		inflatedLimit = remaining;
+
+		try
+		{
+			while(inflatedLimit < size)
+			{
+				if(inflater.needsInput())
+				{
+					if(compressedRemaining <= 0)
+					{
+						throw new EOFException("Truncated fbx array");
+					}
+
+					if(position == limit)
+					{
+						ensure(1);
+					}
+
+					int count = (int) Math.min(compressedRemaining, limit - position);
+					inflater.setInput(buffer, position, count);
+					position += count;
+					compressedRemaining -= count;
+				}
+
+				int count = inflater.inflate(inflated, inflatedLimit, inflated.length - inflatedLimit);
+				if(count == 0 && (inflater.finished() || inflater.needsDictionary()))
+				{
+					throw new EOFException("Truncated fbx array");
+				}
+				inflatedLimit += count;
+			}
+		}
+		catch (DataFormatException e)
+		{
+			throw new IOException(e.getMessage());
+		}
+	}
+
+	private void endArray() throws IOException
+	{
+		skip(compressedRemaining);
+		compressedRemaining = 0;
+		compressed = false;
+	}
+
+	void close()
+	{
+		try
+		{
+			if(stream != null)
+			{
+				stream.close();
+			}
+		}
+		catch (IOException e)
+		{
+
+		}
+
+		if(inflater != null)
+		{
+			inflater.end();
+		}
+
+		stream = null;
+		bytes = null;
+		inflater = null;
+		inflated = null;
+	}
+
+	private static int getShort(byte[] b, int p)
+	{
+		return (short) ((b[p] & 0xFF) | (b[p+1] << 8));
+	}
+
+	private static int getInt(byte[] b, int p)
+	{
+		return (b[p] & 0xFF) | ((b[p+1] & 0xFF) << 8) | ((b[p+2] & 0xFF) << 16) | (b[p+3] << 24);
+	}
+
+	private static long getLong(byte[] b, int p)
+	{
+		return (getInt(b, p) & 0xFFFFFFFFL) | ((long) getInt(b, p+4) << 32);
+	}
+}
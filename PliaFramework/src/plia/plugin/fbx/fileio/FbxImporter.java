@@ -1,8 +1,11 @@
 package plia.plugin.fbx.fileio;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 
@@ -32,31 +35,90 @@ import android.util.Log;
 
 public class FbxImporter
 {
-	// Temp
-	private static int index;
-	private static StringBuilder sb = new StringBuilder();
+	// Big vertex / index / key arrays are decoded on all cores, on by default on multi-core devices
+	public static void setParallelDecoding(boolean enabled)
+	{
+		FbxArrayDecoder.setParallel(enabled);
+	}
+	
+	public static boolean isParallelDecoding()
+	{
+		return FbxArrayDecoder.isParallel();
+	}
 	
+	// Ascii or binary, picked from the file header
 	public static FbxScene importScene(InputStream inputStream)
 	{
-		String[] list = null;
+		if(!inputStream.markSupported())
+		{
+			inputStream = new BufferedInputStream(inputStream);
+		}
+		
 		try
 		{
-			InputStreamReader isr = new InputStreamReader(inputStream);
-			char[] buffer = new char[inputStream.available()];
-			isr.read(buffer);
-
-			list = new String(buffer).split("\n");
+			byte[] head = new byte[FbxBinaryReader.HEADER_LENGTH];
+			inputStream.mark(head.length);
 			
-			isr.close();
-			isr = null;
-		} 
+			int length = 0;
+			int count;
+			while(length < head.length && (count = inputStream.read(head, length, head.length - length)) > 0)
+			{
+				length += count;
+			}
+			
+			inputStream.reset();
+			
+			if(FbxBinaryReader.isBinary(head, length))
+			{
+				return FbxBinaryImporter.importScene(inputStream);
+			}
+		}
 		catch (IOException e)
 		{
 			Log.e("Error", e.getMessage());
+			return null;
 		}
-
+		
+		return importScene(new InputStreamReader(inputStream));
+	}
+	
+	public static FbxScene importScene(Reader reader)
+	{
+		return importScene(new FbxLineReader(reader));
+	}
+	
+	// e.g. a MappedByteBuffer from FileChannel.map, the file is never copied to the heap
+	public static FbxScene importScene(ByteBuffer buffer)
+	{
+		if(FbxBinaryReader.isBinary(buffer))
+		{
+			return FbxBinaryImporter.importScene(buffer);
+		}
+		
+		return importScene(new FbxLineReader(buffer));
+	}
+	
+	private static FbxScene importScene(FbxLineReader reader)
+	{
+		try
+		{
+			return readScene(reader);
+		}
+		catch (IOException e)
+		{
+			Log.e("Error", e.getMessage());
+		}
+		finally
+		{
+			reader.close();
+		}
+		
+		return null;
+	}
+	
+	private static FbxScene readScene(FbxLineReader reader) throws IOException
+	{
 		String line = "";
-		index = 0;
 		// Count
 		int model_count = 0;
 		int geometry_count = 0;
@@ -81,7 +143,7 @@ public class FbxImporter
 		// Global Setting
 		while(!line.startsWith("; Object definitions"))
 		{
-			line = list[index++].trim();
+			line = reader.readLine();
 			
 			if(line.startsWith("P: \"TimeMode"))
 			{
@@ -116,12 +178,12 @@ public class FbxImporter
 		// Object definitions
 		while(!line.startsWith("; Object properties"))
 		{
-			line = list[index++].trim();
+			line = reader.readLine();
 			
 			if(line.startsWith("ObjectType:"))
 			{
 				line = line.split("\"")[1];
-				String attribute = list[index++];
+				String attribute = reader.readLine();
 				int count = Convert.toInt(attribute.split(": ")[1].trim());
 				if(line.equals("Model"))
 				{
@@ -178,7 +240,7 @@ public class FbxImporter
 		
 		while(!line.startsWith("; Object connections"))
 		{
-			line = list[index++].trim();
+			line = reader.readLine();
 			
 			// Load Geometries
 			if(current_geometry_count < geometry_count)
@@ -194,33 +256,33 @@ public class FbxImporter
 					
 					while(true)
 					{
-						line = list[index++].trim();
+						line = reader.readLine();
 						
 						if (line.startsWith("Vert"))
 						{
 							int count = Convert.toInt(line.substring(11).split(" ")[0]);
-							mesh.setVertices(readFloatAttribute(list, count));
+							mesh.setVertices(readFloatAttribute(reader, count));
 						} 
 						else if (line.startsWith("Poly"))
 						{
 							int count = Convert.toInt(line.substring(21).split(" ")[0]);
-							mesh.setIndices(readIndicesAttribute(list, count));
+							mesh.setIndices(readIndicesAttribute(reader, count));
 						} 
 						else if (line.startsWith("Normals"))
 						{
 							int count = Convert.toInt(line.substring(10).split(" ")[0]);
 
-							mesh.setNormals(readFloatAttribute(list, count));
+							mesh.setNormals(readFloatAttribute(reader, count));
 						} 
 						else if (line.startsWith("UV:"))
 						{
 							int count = Convert.toInt(line.substring(5).split(" ")[0]);
-							mesh.setUV(readFloatAttribute(list, count));
+							mesh.setUV(readFloatAttribute(reader, count));
 						} 
 						else if (line.startsWith("UVIndex"))
 						{
 							int count = Convert.toInt(line.substring(10).split(" ")[0]);
-							mesh.setUVIndices(readUVIndicesAttribute(list, count));
+							mesh.setUVIndices(readUVIndicesAttribute(reader, count));
 							break;
 						}
 					}
@@ -333,7 +395,7 @@ public class FbxImporter
 					Vector3 lclR = new Vector3();
 					Vector3 lclS = new Vector3(1,1,1);
 					
-					while(!(line = list[index++]).contains("}"))
+					while(!(line = reader.readLine()).contains("}"))
 					{
 						if (line.contains("Lcl Translation"))
 						{
@@ -375,26 +437,26 @@ public class FbxImporter
 						
 						while(true)
 						{
-							line = list[index++].trim();
+							line = reader.readLine();
 							if (line.startsWith("Indexes"))
 							{
 								int count = Convert.toInt(line.substring(10).split(" ")[0]);
-								cluster.setIndices(readIntAttribute(list, count));
+								cluster.setIndices(readIntAttribute(reader, count));
 							} 
 							else if (line.startsWith("Weights"))
 							{
 								int count = Convert.toInt(line.substring(10).split(" ")[0]);
-								cluster.setWeights(readFloatAttribute(list, count));
+								cluster.setWeights(readFloatAttribute(reader, count));
 							} 
 							else if (line.startsWith("Transform:"))
 							{
 								int count = Convert.toInt(line.substring(12).split(" ")[0]);
-								cluster.setTransform(readFloatAttribute(list, count));
+								cluster.setTransform(readFloatAttribute(reader, count));
 							}
 							else if (line.startsWith("TransformLink"))
 							{
 								int count = Convert.toInt(line.substring(16).split(" ")[0]);
-								cluster.setTransformLink(readFloatAttribute(list, count));
+								cluster.setTransformLink(readFloatAttribute(reader, count));
 								break;
 							}
 						}
@@ -422,7 +484,7 @@ public class FbxImporter
 					// Read Properties
 					while(!line.contains("}"))
 					{
-						line = list[index++].trim();
+						line = reader.readLine();
 
 						if(line.startsWith("P: \"Emissive\""))
 						{
@@ -540,13 +602,13 @@ public class FbxImporter
 					
 					while(!line.contains("}"))
 					{
-						line = list[index++].trim();
+						line = reader.readLine();
 					}
-					line = list[index++].trim();
+					line = reader.readLine();
 					// Read Properties
 					while(!line.contains("}"))
 					{
-						line = list[index++].trim();
+						line = reader.readLine();
 						String[] tmp = line.split("\"");
 
 						if(line.startsWith("FileName:"))
@@ -616,11 +678,11 @@ public class FbxImporter
 					
 					while(true)
 					{
-						line = list[index++].trim();
+						line = reader.readLine();
 						if (line.startsWith("KeyTime:"))
 						{
 							int count = Convert.toInt(line.substring(10).split(" ")[0]);
-							times = readLongAttribute(list, count);
+							times = readLongAttribute(reader, count);
 							if(times.length > 0)
 							{
 								int length = (int) ( (times[times.length - 1] - times[0])  / 1539538600L) + 1;
@@ -635,7 +697,7 @@ public class FbxImporter
 						else if (line.startsWith("KeyValueFloat:"))
 						{
 							int count = Convert.toInt(line.substring(16).split(" ")[0]);
-							values = readFloatAttribute(list, count);
+							values = readFloatAttribute(reader, count);
 							break;
 						}
 					}
@@ -650,13 +712,12 @@ public class FbxImporter
 		ArrayList<FbxNode> rootnodes = new ArrayList<FbxNode>();
 		
 		// Object Connections
-		while(!line.startsWith(";Takes section") && index < list.length)
+		while(!line.startsWith(";Takes section") && (line = reader.readLine()) != null)
 		{
-			line = list[index++].trim();
 
 			if(line.endsWith("RootNode"))
 			{
-				line = list[index++].trim();
+				line = reader.readLine();
 				String attribute = line.substring(8);
 				
 				long root_node_id = Convert.toLong(attribute.substring(0, attribute.length()-2));
@@ -667,7 +728,7 @@ public class FbxImporter
 			}
 			else if (line.endsWith(", SubDeformer::"))
 			{
-				line = list[index++].trim();
+				line = reader.readLine();
 				String[] attribute = line.substring(8).split(",");
 				
 				long node_id = Convert.toLong(attribute[0]);
@@ -682,7 +743,7 @@ public class FbxImporter
 			{
 				if(line.split(",")[1].startsWith(" Model:"))
 				{
-					line = list[index++].trim();
+					line = reader.readLine();
 					String[] attribute = line.substring(8).split(",");
 					
 					long child_node_id = Convert.toLong(attribute[0]);
@@ -697,7 +758,7 @@ public class FbxImporter
 			}
 			else if (line.startsWith(";Geometry"))
 			{
-				line = list[index++].trim();
+				line = reader.readLine();
 				String[] attribute = line.substring(8).split(",");
 				
 				long geometry_id = Convert.toLong(attribute[0]);
@@ -712,7 +773,7 @@ public class FbxImporter
 				String[] tmp0 = line.split(",");
 				if(tmp0[1].startsWith(" Model:"))
 				{
-					line = list[index++].trim();
+					line = reader.readLine();
 					
 					String[] attribute = line.substring(8).split(",");
 					
@@ -739,7 +800,7 @@ public class FbxImporter
 			}
 			else if (line.startsWith(";NodeAtt"))
 			{
-				line = list[index++].trim();
+				line = reader.readLine();
 				String[] attribute = line.substring(8).split(",");
 				
 				long node_attribute_id = Convert.toLong(attribute[0]);
@@ -752,7 +813,7 @@ public class FbxImporter
 			}
 			else if (line.startsWith(";Deform"))
 			{
-				line = list[index++].trim();
+				line = reader.readLine();
 				String[] attribute = line.substring(8).split(",");
 				
 				long deformer_id = Convert.toLong(attribute[0]);
@@ -765,13 +826,13 @@ public class FbxImporter
 			}
 			else if (line.startsWith(";AnimCurve:"))
 			{
-				line = list[index++].trim();
+				line = reader.readLine();
 				String[] first_line = line.substring(8).split(",");
-				index += 2;
-				line = list[index++].trim();
+				reader.skipLines(2);
+				line = reader.readLine();
 				String[] second_line = line.substring(8).split(",");
-				index += 2;
-				line = list[index++].trim();
+				reader.skipLines(2);
+				line = reader.readLine();
 				String[] third_line = line.substring(8).split(",");
 
 				long anim_curve_node_id = Convert.toLong(first_line[1]);
@@ -788,7 +849,7 @@ public class FbxImporter
 			}
 			else if (line.startsWith(";SubDef"))
 			{
-				line = list[index++].trim();
+				line = reader.readLine();
 				String[] attribute = line.substring(8).split(",");
 				
 				long sub_deformer_id = Convert.toLong(attribute[0]);
@@ -801,7 +862,7 @@ public class FbxImporter
 			}
 			else if(line.startsWith(";Material"))
 			{
-				line = list[index++].trim();
+				line = reader.readLine();
 				String[] attribute = line.substring(8).split(",");
 				
 				long material_id = Convert.toLong(attribute[0]);
@@ -814,7 +875,7 @@ public class FbxImporter
 			}
 			else if(line.startsWith(";Texture"))
 			{
-				line = list[index++].trim();
+				line = reader.readLine();
 				String[] attribute = line.substring(8).split(",");
 				
 				long texture_id = Convert.toLong(attribute[0]);
@@ -871,337 +932,33 @@ public class FbxImporter
 		
 		scene.setObjectDefinitions(model_count, geometry_count, node_attribute_count, anim_curve_count, anim_curve_node_count, deformer_count);
 		scene.setKeyframe(startFrame, endFrame, keyframeLength);
-		
-		
-		list = null;
 
 		return scene;
 	}
 
-	private static float[] readFloatAttribute(String[] list, int count)
+	private static float[] readFloatAttribute(FbxLineReader reader, int count) throws IOException
 	{
-		while(true)
-		{
-			String line = list[index++].trim();
-			if(line.startsWith("}"))
-			{
-				break;
-			}
-			sb.append(line);
-		}
-
-		float[] items = new float[count];
-
-		double result = 0;
-		double p = 1;
-		byte sign = 1;
-		
-		int index = count-1;
-
-		for (int i = sb.length()-1; i >= 0; i--)
-		{
-			char c = sb.charAt(i);
-
-			if(c >= '0' && c <= '9')
-			{
-				result += (c - 48) * p;
-				p *= 10;
-			}
-			else if(c == '.')
-			{
-				result /= p;
-				p = 1;
-			}
-			else if(c == 'e' || c == 'E')
-			{
-				i = convertToFloatWithE(items, index--, (i-1), result, sign);
-				result = 0;
-				p = 1;
-				sign = 1;
-				
-				if(index < 0)
-				{
-					break;
-				}
-			}
-			else if(c == '-')
-			{
-				sign = -1;
-			}
-			else
-			{
-				items[index--] = (float) (result * sign);
-				result = 0;
-				p = 1;
-				sign = 1;
-
-				if(index < 0)
-				{
-					break;
-				}
-			}
-		}
-		
-		sb.delete(0, sb.length());
-
-		return items;
-	}
-	
-	private static int convertToFloatWithE(float[] items, int index, int start, double eValue, byte eSign)
-	{
-		long result = 0;
-		long p = 1;
-		double lastPow = 1;
-		byte sign = 1;
-		
-		if(eSign == 1)
-		{
-			lastPow = getMaxPow10(eValue);
-		}
-		else
-		{
-			lastPow = getMinPow10(-eValue);
-		}
-
-		for (int i = start; i >= 0; i--)
-		{
-			char c = sb.charAt(i);
-			
-			if(c >= '0' && c <= '9')
-			{
-				result += (c - 48) * p;
-				p *= 10;
-			}
-			else if(c == '.')
-			{
-				result /= p;
-				p = 1;
-			}
-			else if(c == '-')
-			{
-				sign = -1;
-			}
-			else
-			{
-				items[index] = (float) (result * lastPow * sign);
-				return i;
-			}
-		}
-		
-		return 0;
+		return FbxArrayDecoder.decodeFloats(reader.readBlock(), count);
 	}
 	
-	private static int[] readIndicesAttribute(String[] list, int count)
+	private static int[] readIndicesAttribute(FbxLineReader reader, int count) throws IOException
 	{
-		while(true)
-		{
-			String line = list[index++].trim();
-			if(line.startsWith("}"))
-			{
-				break;
-			}
-
-			sb.append(line);
-		}
-
-		int[] items = new int[count];
-
-		int result = 0;
-		int p = 1;
-		byte sign = 1;
-		
-		int index = count-1;
-		
-		for (int i = sb.length()-1; i >= 0; i--)
-		{
-			char c = sb.charAt(i);
-			
-			if(c >= '0' && c <= '9')
-			{
-				result += (c - 48) * p;
-				p *= 10;
-			}
-			else if(c == '-')
-			{
-				sign = -1;
-//				result = ((result * -1) - 1);
-			}
-			else
-			{
-				items[index--] = result * sign;
-				result = 0;
-				p = 1;
-				sign = 1;
-				
-				if(index < 0)
-				{
-					break;
-				}
-			}
-		}
-		
-		sb.delete(0, sb.length());
-
-		return items;
+		return FbxArrayDecoder.decodeInts(reader.readBlock(), count);
 	}
 	
-	private static int[] readUVIndicesAttribute(String[] list, int count)
+	private static int[] readUVIndicesAttribute(FbxLineReader reader, int count) throws IOException
 	{
-		while(true)
-		{
-			String line = list[index++].trim();
-			if(line.startsWith("}"))
-			{
-				break;
-			}
-
-			sb.append(line);
-		}
-
-		int[] items = new int[count];
-
-		int result = 0;
-		int p = 1;
-		byte sign = 1;
-		
-		int index = count-1;
-
-		for (int i = sb.length()-1; i >= 0; i--)
-		{
-			char c = sb.charAt(i);
-			
-			if(c >= '0' && c <= '9')
-			{
-				result += (c - 48) * p;
-				p *= 10;
-			}
-			else if(c == '-')
-			{
-				sign = -1;
-			}
-			else
-			{
-				items[index--] = result * sign;
-				result = 0;
-				p = 1;
-				sign = 1;
-				
-				if(index < 0)
-				{
-					break;
-				}
-			}
-		}
-		
-		sb.delete(0, sb.length());
-
-		return items;
+		return FbxArrayDecoder.decodeInts(reader.readBlock(), count);
 	}
 	
-	private static int[] readIntAttribute(String[] list, int count)
+	private static int[] readIntAttribute(FbxLineReader reader, int count) throws IOException
 	{
-		while(true)
-		{
-			String line = list[index++].trim();
-			if(line.startsWith("}"))
-			{
-				break;
-			}
-
-			sb.append(line);
-		}
-
-		int[] items = new int[count];
-
-		int result = 0;
-		int p = 1;
-		byte sign = 1;
-		
-		int index = count-1;
-
-		for (int i = sb.length()-1; i >= 0; i--)
-		{
-			char c = sb.charAt(i);
-			
-			if(c >= '0' && c <= '9')
-			{
-				result += (c - 48) * p;
-				p *= 10;
-			}
-			else if(c == '-')
-			{
-				sign = -1;
-			}
-			else
-			{
-				items[index--] = result * sign;
-				result = 0;
-				p = 1;
-				sign = 1;
-				
-				if(index < 0)
-				{
-					break;
-				}
-			}
-		}
-		
-		sb.delete(0, sb.length());
-
-		return items;
+		return FbxArrayDecoder.decodeInts(reader.readBlock(), count);
 	}
 	
-	private static long[] readLongAttribute(String[] list, int count)
+	private static long[] readLongAttribute(FbxLineReader reader, int count) throws IOException
 	{
-		while(true)
-		{
-			String line = list[index++].trim();
-			if(line.startsWith("}"))
-			{
-				break;
-			}
-
-			sb.append(line);
-		}
-
-		long[] items = new long[count];
-
-		long result = 0;
-		long p = 1;
-		byte sign = 1;
-		
-		int index = count-1;
-
-		for (int i = sb.length()-1; i >= 0; i--)
-		{
-			char c = sb.charAt(i);
-			
-			if(c >= '0' && c <= '9')
-			{
-				result += (c - 48) * p;
-				p *= 10;
-			}
-			else if(c == '-')
-			{
-				sign = -1;
-			}
-			else
-			{
-				items[index--] = result * sign;
-				result = 0;
-				p = 1;
-				sign = 1;
-				
-				if(index < 0)
-				{
-					break;
-				}
-			}
-		}
-		
-		sb.delete(0, sb.length());
-
-		return items;
+		return FbxArrayDecoder.decodeLongs(reader.readBlock(), count);
 	}
 
 	private static long getLastCommaAsLong(String line)
@@ -1405,7 +1162,7 @@ public class FbxImporter
 		return items;
 	}
 
-	private static double getMaxPow10(double positiveY)
+	static double getMaxPow10(double positiveY)
 	{
 		int cast = (int) positiveY;
 		double decimal = Math.exp((positiveY - cast) * 2.302585092994046);
@@ -1417,7 +1174,7 @@ public class FbxImporter
 		return maxPowD[cast] * decimal;
 	}
 	
-	private static double getMinPow10(double negativeY)
+	static double getMinPow10(double negativeY)
 	{
 		int cast = (int) -negativeY;
 		double decimal = Math.exp((negativeY + cast) * 2.302585092994046);
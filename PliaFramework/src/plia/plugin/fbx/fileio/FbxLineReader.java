@@ -0,0 +1,179 @@
+package plia.plugin.fbx.fileio;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+
+// Walks an ascii fbx once, line by line, from a Reader or a (memory-mapped) ByteBuffer
+final class FbxLineReader
+{
+	private Reader reader;
+	private ByteBuffer bytes;
+	private byte[] raw;
+
+	private char[] buffer = new char[8192];
+	private int position = 0;
+	private int limit = 0;
+
+	private StringBuilder line = new StringBuilder(256);
+	private StringBuilder block = new StringBuilder(4096);
+
+	FbxLineReader(Reader reader)
+	{
+		this.reader = reader;
+	}
+
+	// Bytes are read as ascii / latin-1 straight out of the buffer
+	FbxLineReader(ByteBuffer bytes)
+	{
+		this.bytes = bytes;
+		this.raw = new byte[buffer.length];
+	}
+
+	private boolean fill() throws IOException
+	{
+		position = 0;
+		limit = 0;
+
+		if(reader != null)
+		{
+			int count = reader.read(buffer, 0, buffer.length);
+			if(count > 0)
+			{
+				limit = count;
+			}
+		}
+		else if(bytes != null)
+		{
+			int count = Math.min(bytes.remaining(), buffer.length);
+			bytes.get(raw, 0, count);
+			for (int i = 0; i < count; i++)
+			{
+				buffer[i] = (char) (raw[i] & 0xFF);
+			}
+			limit = count;
+		}
+
+		return limit > 0;
+	}
+
+	// Next line without leading / trailing white space, null at the end of file
+	String readLine() throws IOException
+	{
+		line.setLength(0);
+
+		boolean hasLine = false;
+		boolean begin = false;
+		int end = 0;
+
+		while(position < limit || fill())
+		{
+			hasLine = true;
+			char c = buffer[position++];
+
+			if(c == '\n')
+			{
+				break;
+			}
+
+			if(c > ' ')
+			{
+				begin = true;
+				line.append(c);
+				end = line.length();
+			}
+			else if(begin)
+			{
+				line.append(c);
+			}
+		}
+
+		if(!hasLine)
+		{
+			return null;
+		}
+
+		line.setLength(end);
+		return line.toString();
+	}
+
+	// Trimmed lines concatenated until the closing '}' of an array property.
+	// The returned builder is reused by the next call.
+	StringBuilder readBlock() throws IOException
+	{
+		block.setLength(0);
+
+		boolean begin = false;
+		boolean closed = false;
+		int end = 0;
+
+		while(position < limit || fill())
+		{
+			char c = buffer[position++];
+
+			if(c == '\n')
+			{
+				if(closed)
+				{
+					break;
+				}
+
+				block.setLength(end);
+				begin = false;
+			}
+			else if(closed)
+			{
+				continue;
+			}
+			else if(c > ' ')
+			{
+				if(!begin && c == '}')
+				{
+					closed = true;
+					continue;
+				}
+
+				begin = true;
+				block.append(c);
+				end = block.length();
+			}
+			else if(begin)
+			{
+				block.append(c);
+			}
+		}
+
+		block.setLength(end);
+		return block;
+	}
+
+	void skipLines(int count) throws IOException
+	{
+		while(count > 0 && (position < limit || fill()))
+		{
+			if(buffer[position++] == '\n')
+			{
+				count--;
+			}
+		}
+	}
+
+	void close()
+	{
+		try
+		{
+			if(reader != null)
+			{
+				reader.close();
+			}
+		}
+		catch (IOException e)
+		{
+
+		}
+
+		reader = null;
+		bytes = null;
+		raw = null;
+	}
+}
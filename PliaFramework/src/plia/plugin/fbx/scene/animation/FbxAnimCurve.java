@@ -7,6 +7,9 @@ public class FbxAnimCurve extends FbxObject
 	private long[] keyTime;
 	private float[] keyValue;
 	private float[] tangent;
+	
+	// key found by the last lookup
+	private int cursor;
 
 	public FbxAnimCurve(long uniqueID)
 	{
@@ -17,6 +20,7 @@ public class FbxAnimCurve extends FbxObject
 	{
 		keyTime = times;
 		keyValue = values;
+		cursor = 0;
 		
 		int size = values.length;
 		
@@ -45,106 +49,141 @@ public class FbxAnimCurve extends FbxObject
 	
 	public float getValue(long frame)
 	{
-		float v = 0;
-		int size = keyTime.length;
+		if(keyTime == null || keyTime.length == 0)
+		{
+			return 0;
+		}
+		
+		long time = (long) (1539538600L * frame);
 		
-		if(size == 0)
+		return getValueAt(time, findKey(time));
+	}
+	
+	// Samples frameCount frames from startFrame into result[offset], result[offset+stride], ...
+	public void getValues(int startFrame, int frameCount, float[] result, int offset, int stride)
+	{
+		if(keyTime == null || keyTime.length == 0)
 		{
-			v = 0;
+			for (int i = 0; i < frameCount; i++)
+			{
+				result[offset + i*stride] = 0;
+			}
+			
+			return;
 		}
-		else
+		
+		for (int i = 0; i < frameCount; i++)
 		{
-			long time = (long) (1539538600L * frame);
+			long time = 1539538600L * (startFrame + i);
+			result[offset + i*stride] = getValueAt(time, findKey(time));
+		}
+	}
 	
-			
-			
-			int test = -1;
-			
-			for (int i = 0; i < size; i++)
+	// Index of the last key at or before time, -1 before the first key. Tries the key found last and the one
+	// after it, which is where monotonic sampling lands, before the binary search. The cursor is only a hint
+	// and is checked before use, so concurrent callers stay correct.
+	private int findKey(long time)
+	{
+		long[] keyTime = this.keyTime;
+		int size = keyTime.length;
+		
+		if(time < keyTime[0])
+		{
+			return -1;
+		}
+		
+		if(time >= keyTime[size-1])
+		{
+			return size-1;
+		}
+		
+		int c = cursor;
+		
+		if(c < size-1 && keyTime[c] <= time)
+		{
+			if(time < keyTime[c+1])
 			{
-				if(keyTime[i] == time)
-				{
-					test = i;
-					break;
-				}
+				return c;
 			}
 			
-			if(test == -1 && time < keyTime[0])
+			if(c < size-2 && time < keyTime[c+2])
 			{
-				v = keyValue[0];
+				cursor = c+1;
+				return c+1;
 			}
-			else if(test > -1)
+		}
+		
+		// first key after time, keyTime[0] <= time < keyTime[size-1]
+		int low = 1;
+		int high = size-1;
+		
+		while(low < high)
+		{
+			int mid = (low + high) >>> 1;
+			
+			if(keyTime[mid] > time)
 			{
-				v = keyValue[test];
+				high = mid;
 			}
 			else
 			{
-				int ids = -1;
-				int	idt = -1;
-		
-				for (int i = 0; i < size; i++)
-				{
-					if(time < keyTime[i])
-					{
-						ids = i-1;
-						idt = i;
-//						Log.e(frame+" : "+time, ids+", "+idt);
-						break;
-					}
-				}
-				
-				if(ids+idt == -2)
-				{
-					v = keyValue[size-1];
-					
-				}
-				else
-				{
-					
-					long start = keyTime[ids];
-					long end = keyTime[idt];
-					
-					long s1 = time - start;
-					long s2 = end - start;
-					
-					float t = (float)s1 / s2;
-					
-					float v1 = keyValue[ids];
-					float v2 = keyValue[idt];
-					
-					if(s2 == 1539538600L || size < 3)
-					{
-						// Linear Interpolate
-						v = v1 + (t * (v2 - v1));
-						
-					}
-					else
-					{
-						// Hermite Curve Interpolate
-						float t2 = t*t;
-						float t3 = t2*t;
-						
-						float _2t3 = 2.0f*t3;
-						float _3t2 = 3.0f*t2;
-						
-						float h1 = _2t3 - _3t2 + 1.0f;
-						float h2 = -_2t3 + _3t2;
-						float h3 = t3 - (2*t2) + t;
-						float h4 = t3 - t2;
-						
-						// Find Tangent
-						float tg1 = tangent[ids];
-						float tg2 = tangent[idt];
-						
-						v = (h1 * v1) + (h2 * v2) + (h3 * tg1) + (h4 * tg2);
-						
-					}
-				}
+				low = mid + 1;
 			}
 		}
 		
+		cursor = low-1;
+		return low-1;
+	}
+	
+	private float getValueAt(long time, int ids)
+	{
+		int size = keyTime.length;
+		
+		if(ids == -1)
+		{
+			return keyValue[0];
+		}
+		else if(ids == size-1 || keyTime[ids] == time)
+		{
+			return keyValue[ids];
+		}
+		
+		int idt = ids+1;
+		
+		long start = keyTime[ids];
+		long end = keyTime[idt];
+		
+		long s1 = time - start;
+		long s2 = end - start;
+		
+		float t = (float)s1 / s2;
+		
+		float v1 = keyValue[ids];
+		float v2 = keyValue[idt];
+		
+		if(s2 == 1539538600L || size < 3)
+		{
+			// Linear Interpolate
+			return v1 + (t * (v2 - v1));
+		}
+		
+		// Hermite Curve Interpolate
+		float t2 = t*t;
+		float t3 = t2*t;
+		
+		float _2t3 = 2.0f*t3;
+		float _3t2 = 3.0f*t2;
+		
+		float h1 = _2t3 - _3t2 + 1.0f;
+		float h2 = -_2t3 + _3t2;
+		float h3 = t3 - (2*t2) + t;
+		float h4 = t3 - t2;
+		
+		// Find Tangent
+		float tg1 = tangent[ids];
+		float tg2 = tangent[idt];
 		
-		return v;
+		return (h1 * v1) + (h2 * v2) + (h3 * tg1) + (h4 * tg2);
 	}
 	
 	public int getStartFrame()
@@ -75,6 +75,29 @@ public class FbxAnimCurveNode extends FbxObject
 		
 	}
 	
+	// Samples frameCount frames from startFrame as x, y, z triples into values, a missing curve gives 0
+	public void getValues(float[] values, int startFrame, int frameCount)
+	{
+		getValues(X, values, 0, startFrame, frameCount);
+		getValues(Y, values, 1, startFrame, frameCount);
+		getValues(Z, values, 2, startFrame, frameCount);
+	}
+	
+	private static void getValues(FbxAnimCurve curve, float[] values, int offset, int startFrame, int frameCount)
+	{
+		if(curve == null)
+		{
+			for (int i = 0; i < frameCount; i++)
+			{
+				values[offset + i*3] = 0;
+			}
+		}
+		else
+		{
+			curve.getValues(startFrame, frameCount, values, offset, 3);
+		}
+	}
+	
 	public int getStartFrame()
 	{
 		int x = X.getStartFrame();
@@ -0,0 +1,119 @@
+package plia.tools;
+
+import java.lang.management.ManagementFactory;
+import java.util.Vector;
+
+import plia.core.AnimationPlayer;
+import plia.core.scene.animation.Animation;
+import plia.core.scene.animation.PlaybackMode;
+
+// Desktop JVM benchmark of the per frame animation queue : the previous Vector + contains() queue against
+// AnimationPlayer, for 1k and 10k animations. Every animation is enqueued twice a frame, once by its group
+// and once by its model, like Group.onUpdateHierarchy does for a multi-mesh model.
+//
+// usage : java -cp <plia classes>:<android.util.Log stub>:. plia.tools.AnimationPlayerBenchmark
+public class AnimationPlayerBenchmark
+{
+	private static final int[] SIZES = { 1000, 10000 };
+	private static final int ENQUEUES_PER_FRAME = 2;
+
+	public static void main(String[] args)
+	{
+		System.out.printf("%-10s %-22s %12s %16s%n", "animations", "queue", "ms / frame", "bytes / frame");
+
+		for (int size : SIZES)
+		{
+			Animation[] animations = new Animation[size];
+			for (int i = 0; i < size; i++)
+			{
+				animations[i] = new Animation(0, 100);
+				animations[i].addAnimationClip("run", 0, 99, PlaybackMode.LOOP);
+				animations[i].play("run");
+			}
+
+			// the quadratic queue gets fewer frames at 10k
+			int frames = (size > 1000) ? 5 : 50;
+
+			VectorQueue vectorQueue = new VectorQueue();
+			run(size, "Vector.contains", frames, animations, vectorQueue, null);
+
+			run(size, "AnimationPlayer", 500, animations, null, AnimationPlayer.getInstance());
+		}
+	}
+
+	private static void run(int size, String name, int frames, Animation[] animations, VectorQueue vectorQueue, AnimationPlayer player)
+	{
+		// warm up
+		for (int frame = 0; frame < Math.max(frames / 5, 2); frame++)
+		{
+			frame(animations, vectorQueue, player);
+		}
+
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+
+		long allocated = threads.getThreadAllocatedBytes(thread);
+		long start = System.nanoTime();
+
+		for (int frame = 0; frame < frames; frame++)
+		{
+			frame(animations, vectorQueue, player);
+		}
+
+		long time = System.nanoTime() - start;
+		allocated = threads.getThreadAllocatedBytes(thread) - allocated;
+
+		System.out.printf("%-10d %-22s %12.3f %16d%n", size, name, time / 1e6 / frames, allocated / frames);
+	}
+
+	private static void frame(Animation[] animations, VectorQueue vectorQueue, AnimationPlayer player)
+	{
+		for (int k = 0; k < ENQUEUES_PER_FRAME; k++)
+		{
+			for (int i = 0; i < animations.length; i++)
+			{
+				if(player != null)
+				{
+					player.enqueue(animations[i]);
+				}
+				else
+				{
+					vectorQueue.enqueue(animations[i]);
+				}
+			}
+		}
+
+		if(player != null)
+		{
+			player.update();
+		}
+		else
+		{
+			vectorQueue.update();
+		}
+	}
+
+	// AnimationPlayer as it was
+	private static final class VectorQueue
+	{
+		private Vector<Animation> queues = new Vector<Animation>();
+
+		public void enqueue(Animation animation)
+		{
+			if(!queues.contains(animation))
+			{
+				queues.add(animation);
+			}
+		}
+
+		public void update()
+		{
+			for (int i = 0; i < queues.size(); i++)
+			{
+				queues.get(i).update();
+			}
+
+			queues.clear();
+		}
+	}
+}
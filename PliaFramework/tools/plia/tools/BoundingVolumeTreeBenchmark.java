@@ -0,0 +1,340 @@
+package plia.tools;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import plia.core.scene.BoundingVolumeTree;
+import plia.core.scene.Group;
+import plia.core.scene.Layer;
+import plia.core.scene.Model;
+import plia.core.scene.Scene;
+import plia.core.scene.geometry.Geometry;
+import plia.math.Matrix4;
+import plia.math.Vector3;
+
+// Desktop JVM benchmark of the scene BoundingVolumeTree with 10k boxes moving every frame : refit / rebuild cost,
+// then frustum, ray and nearest queries against a linear scan of the same boxes (results are checked equal).
+// The last line runs the same models through Scene.update, the way a game fills the tree.
+//
+// usage : java -cp <plia classes>:<android.util.Log stub>:. plia.tools.BoundingVolumeTreeBenchmark
+public class BoundingVolumeTreeBenchmark
+{
+	private static final int COUNT = 10000;
+	private static final int FRAMES = 200;
+	private static final int RAYS = 100;
+	private static final int POINTS = 100;
+
+	private static final float WORLD = 1000;
+	private static final float SPEED = 2;
+
+	private static final Random random = new Random(7);
+
+	private static final Group[] groups = new Group[COUNT];
+	private static final float[] boxes = new float[COUNT * 6];
+	private static final float[] velocities = new float[COUNT * 3];
+	private static final float[] box = new float[6];
+
+	private static final float[] planes = new float[24];
+	private static final float[] rays = new float[RAYS * 3];
+	private static final float[] points = new float[POINTS * 3];
+
+	private static final ArrayList<Group> result = new ArrayList<Group>();
+
+	// ns per phase : move, optimize, frustum, ray, nearest, full rebuild, for the tree and the linear scan
+	private static final long[] treeTimes = new long[6];
+	private static final long[] linearTimes = new long[6];
+
+	public static void main(String[] args)
+	{
+		for (int i = 0; i < COUNT; i++)
+		{
+			groups[i] = new Group();
+
+			float half = 1 + random.nextFloat() * 4;
+			for (int k = 0; k < 3; k++)
+			{
+				float c = (random.nextFloat() * 2 - 1) * WORLD;
+				boxes[i * 6 + k] = c - half;
+				boxes[i * 6 + k + 3] = c + half;
+				velocities[i * 3 + k] = (random.nextFloat() * 2 - 1) * SPEED;
+			}
+		}
+
+		for (int i = 0; i < RAYS * 3; i++)
+		{
+			rays[i] = random.nextFloat() * 2 - 1;
+		}
+
+		for (int i = 0; i < POINTS * 3; i++)
+		{
+			points[i] = (random.nextFloat() * 2 - 1) * WORLD;
+		}
+
+		// camera at the origin looking down +y, 90 degrees, far plane at WORLD
+		Matrix4 projection = new Matrix4();
+		Matrix4 view = new Matrix4();
+		Matrix4 mvp = new Matrix4();
+		Matrix4.createFrustum(projection, -1, 1, -1, 1, 1, WORLD);
+		Matrix4.createLookAt(view, new Vector3(0, 0, 0), new Vector3(0, 1, 0), new Vector3(0, 0, 1));
+		Matrix4.multiply(mvp, projection, view);
+		BoundingVolumeTree.extractPlanes(mvp, planes);
+
+		BoundingVolumeTree tree = new BoundingVolumeTree();
+		for (int i = 0; i < COUNT; i++)
+		{
+			System.arraycopy(boxes, i * 6, box, 0, 6);
+			tree.insert(groups[i], box);
+		}
+		tree.optimize();
+
+		// warm up, then measure
+		for (int frame = 0; frame < FRAMES / 4; frame++)
+		{
+			frame(tree, false);
+		}
+
+		Arrays.fill(treeTimes, 0);
+		Arrays.fill(linearTimes, 0);
+
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		long allocated = threads.getThreadAllocatedBytes(thread);
+
+		for (int frame = 0; frame < FRAMES; frame++)
+		{
+			frame(tree, true);
+		}
+
+		allocated = threads.getThreadAllocatedBytes(thread) - allocated;
+
+		// what refitting saves : a top-down build of the whole tree every frame
+		for (int frame = 0; frame < FRAMES; frame++)
+		{
+			long t0 = System.nanoTime();
+			tree.rebuild();
+			treeTimes[5] += System.nanoTime() - t0;
+		}
+
+		String[] names = { "move + refit", "optimize", "frustum", RAYS + " rays", POINTS + " nearest", "full rebuild" };
+
+		System.out.printf("%d boxes, %d frames, tree allocates %d bytes / frame%n", COUNT, FRAMES, allocated / FRAMES);
+		System.out.printf("%-14s %12s %14s%n", "", "tree ms", "linear ms");
+		for (int i = 0; i < names.length; i++)
+		{
+			System.out.printf("%-14s %12.3f %14s%n", names[i], treeTimes[i] / 1e6 / FRAMES, (linearTimes[i] == 0) ? "-" : String.format("%.3f", linearTimes[i] / 1e6 / FRAMES));
+		}
+
+		sceneUpdate();
+	}
+
+	private static void frame(BoundingVolumeTree tree, boolean measure)
+	{
+		long t0 = System.nanoTime();
+
+		for (int i = 0; i < COUNT; i++)
+		{
+			for (int k = 0; k < 3; k++)
+			{
+				int o = i * 6 + k;
+				float v = velocities[i * 3 + k];
+
+				if(boxes[o] + v < -WORLD || boxes[o + 3] + v > WORLD)
+				{
+					v = -v;
+					velocities[i * 3 + k] = v;
+				}
+
+				boxes[o] += v;
+				boxes[o + 3] += v;
+			}
+
+			System.arraycopy(boxes, i * 6, box, 0, 6);
+			tree.move(groups[i], box);
+		}
+
+		long t1 = System.nanoTime();
+		tree.optimize();
+		long t2 = System.nanoTime();
+
+		// frustum
+		int treeCount = tree.query(planes, result);
+		result.clear();
+		long t3 = System.nanoTime();
+
+		int linearCount = 0;
+		for (int i = 0; i < COUNT; i++)
+		{
+			if(BoundingVolumeTree.isVisible(planes, boxes, i * 6))
+			{
+				linearCount++;
+			}
+		}
+		long t4 = System.nanoTime();
+
+		check(treeCount == linearCount, "frustum");
+
+		// rays from the origin
+		long t5 = System.nanoTime();
+		Group firstHit = null;
+		for (int r = 0; r < RAYS; r++)
+		{
+			Group hit = tree.raycast(0, 0, 0, rays[r * 3], rays[r * 3 + 1], rays[r * 3 + 2], WORLD * 4);
+			if(r == 0)
+			{
+				firstHit = hit;
+			}
+		}
+		long t6 = System.nanoTime();
+
+		Group firstLinear = null;
+		for (int r = 0; r < RAYS; r++)
+		{
+			Group hit = linearRaycast(rays[r * 3], rays[r * 3 + 1], rays[r * 3 + 2], WORLD * 4);
+			if(r == 0)
+			{
+				firstLinear = hit;
+			}
+		}
+		long t7 = System.nanoTime();
+
+		check(firstHit == firstLinear, "raycast");
+
+		// nearest
+		float treeDistance = 0;
+		for (int p = 0; p < POINTS; p++)
+		{
+			Group near = tree.nearest(points[p * 3], points[p * 3 + 1], points[p * 3 + 2], WORLD * 4);
+			if(p == 0)
+			{
+				treeDistance = distanceSq(indexOf(near), points[0], points[1], points[2]);
+			}
+		}
+		long t8 = System.nanoTime();
+
+		float linearDistance = 0;
+		for (int p = 0; p < POINTS; p++)
+		{
+			float best = Float.MAX_VALUE;
+			for (int i = 0; i < COUNT; i++)
+			{
+				best = Math.min(best, distanceSq(i, points[p * 3], points[p * 3 + 1], points[p * 3 + 2]));
+			}
+			if(p == 0)
+			{
+				linearDistance = best;
+			}
+		}
+		long t9 = System.nanoTime();
+
+		check(treeDistance == linearDistance, "nearest");
+
+		if(measure)
+		{
+			treeTimes[0] += t1 - t0;
+			treeTimes[1] += t2 - t1;
+			treeTimes[2] += t3 - t2;
+			linearTimes[2] += t4 - t3;
+			treeTimes[3] += t6 - t5;
+			linearTimes[3] += t7 - t6;
+			treeTimes[4] += t8 - t7;
+			linearTimes[4] += t9 - t8;
+		}
+	}
+
+	// 10k models moved with setPosition, the tree filled by Scene.update
+	private static void sceneUpdate()
+	{
+		Layer<Group> layer = new Layer<Group>();
+		Geometry geometry = new Geometry(Geometry.MESH);
+		geometry.getMin().set(-1, -1, -1);
+		geometry.getMax().set(1, 1, 1);
+
+		Model[] models = new Model[COUNT];
+		for (int i = 0; i < COUNT; i++)
+		{
+			models[i] = new Model();
+			models[i].setGeometry(geometry);
+			models[i].setPosition(boxes[i * 6], boxes[i * 6 + 1], boxes[i * 6 + 2]);
+			layer.addChild(models[i]);
+		}
+
+		Scene scene = new Scene();
+		scene.addLayer(layer);
+		scene.initialize();
+
+		long time = 0;
+		for (int frame = 0; frame < FRAMES; frame++)
+		{
+			for (int i = 0; i < COUNT; i++)
+			{
+				int o = i * 3;
+				models[i].setPosition(boxes[i * 6] + velocities[o] * frame, boxes[i * 6 + 1] + velocities[o + 1] * frame, boxes[i * 6 + 2] + velocities[o + 2] * frame);
+			}
+
+			long t0 = System.nanoTime();
+			scene.update();
+			time += System.nanoTime() - t0;
+		}
+
+		System.out.printf("Scene.update with %d moving models : %.3f ms / frame, %d boxes in the tree%n", COUNT, time / 1e6 / FRAMES, scene.getBoundingVolumeTree().getBoxCount());
+	}
+
+	private static Group linearRaycast(float dx, float dy, float dz, float maxDistance)
+	{
+		float ix = 1f / dx, iy = 1f / dy, iz = 1f / dz;
+		float best = maxDistance;
+		Group hit = null;
+
+		for (int i = 0; i < COUNT; i++)
+		{
+			int o = i * 6;
+			float tx0 = boxes[o] * ix, tx1 = boxes[o + 3] * ix;
+			float ty0 = boxes[o + 1] * iy, ty1 = boxes[o + 4] * iy;
+			float tz0 = boxes[o + 2] * iz, tz1 = boxes[o + 5] * iz;
+
+			float tmin = Math.max(Math.max(Math.min(tx0, tx1), Math.min(ty0, ty1)), Math.max(Math.min(tz0, tz1), 0));
+			float tmax = Math.min(Math.min(Math.max(tx0, tx1), Math.max(ty0, ty1)), Math.max(tz0, tz1));
+
+			if(tmin <= tmax && tmin < best)
+			{
+				best = tmin;
+				hit = groups[i];
+			}
+		}
+
+		return hit;
+	}
+
+	private static float distanceSq(int i, float x, float y, float z)
+	{
+		int o = i * 6;
+		float dx = Math.max(Math.max(boxes[o] - x, x - boxes[o + 3]), 0);
+		float dy = Math.max(Math.max(boxes[o + 1] - y, y - boxes[o + 4]), 0);
+		float dz = Math.max(Math.max(boxes[o + 2] - z, z - boxes[o + 5]), 0);
+
+		return dx * dx + dy * dy + dz * dz;
+	}
+
+	private static int indexOf(Group group)
+	{
+		for (int i = 0; i < COUNT; i++)
+		{
+			if(groups[i] == group)
+			{
+				return i;
+			}
+		}
+
+		throw new IllegalStateException("nearest returned no group");
+	}
+
+	private static void check(boolean ok, String what)
+	{
+		if(!ok)
+		{
+			throw new IllegalStateException("tree and linear scan disagree : " + what);
+		}
+	}
+}
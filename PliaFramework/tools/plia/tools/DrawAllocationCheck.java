@@ -0,0 +1,213 @@
+package plia.tools;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.lang.management.ManagementFactory;
+
+import plia.core.AnimationPlayer;
+import plia.core.FbxDroid;
+import plia.core.NodePrefab;
+import plia.core.ScenePrefab;
+import plia.core.scene.Camera;
+import plia.core.scene.DisplacementTerrain;
+import plia.core.scene.Group;
+import plia.core.scene.Layer;
+import plia.core.scene.Light;
+import plia.core.scene.MeshTerrain;
+import plia.core.scene.Model;
+import plia.core.scene.Scene;
+import plia.core.scene.SkyDome;
+import plia.core.scene.Sprite;
+import plia.core.scene.StaticTerrain;
+import plia.core.scene.Terrain;
+import plia.core.scene.View;
+import plia.core.scene.animation.Animation;
+import plia.core.scene.animation.PlaybackMode;
+import plia.core.scene.shading.Shader;
+import plia.core.scene.shading.Texture2D;
+import plia.plugin.fbx.fileio.FbxImporter;
+import plia.plugin.fbx.scene.FbxScene;
+
+// Desktop JVM check that a frame allocates nothing : Scene.update + drawScene with stubbed GL over a scene of
+// skinned models, static (batched) models, instanced models, mesh / static / displacement terrains, lights,
+// a sky dome and a layer of sprites, the camera and the sprites moving every frame.
+// JIT compilation allocates on this thread now and then during the first frames : frames are run until
+// STABLE frames in a row allocate nothing, then the smallest of WINDOWS windows of FRAMES frames is reported.
+// Exits with 1 when that window allocated any byte, or when a draw path was not reached.
+//
+// usage : java -XX:-DoEscapeAnalysis -cp <plia classes>:<android stubs, GLES20 included>:. plia.tools.DrawAllocationCheck elementalist31.FBX scn01.FBX ...
+// (escape analysis off, ART would make the allocations C2 removes)
+public class DrawAllocationCheck
+{
+	private static final int COPIES = 20;
+	private static final int STABLE = 50;
+	private static final int MAX_WARM_UP = 5000;
+	private static final int WINDOWS = 5;
+	private static final int FRAMES = 100;
+	private static final int SPRITES = 40;
+
+	public static void main(String[] args) throws Exception
+	{
+		Shader.warmUpAllShader();
+
+		Layer<Group> layer = new Layer<Group>();
+
+		// static copies are batched, animated ones are skinned every frame
+		Group scenery = new Group();
+		scenery.setStatic(true);
+		layer.addChild(scenery);
+
+		// models of the mesh terrain, culled one by one
+		Group terrainModel = new Group();
+
+		int skinned = 0;
+		int still = 0;
+		int instanced = 0;
+
+		for (String path : args)
+		{
+			File file = new File(path);
+			FbxScene fbxScene = FbxImporter.importScene(new FileInputStream(file));
+			ScenePrefab prefab = FbxDroid.importScene(fbxScene, file.getName(), false);
+			prefab.resume();
+
+			for (int k = 0; k < COPIES; k++)
+			{
+				for (NodePrefab node : prefab.getNodePrefabs())
+				{
+					if(node.hasAnimation())
+					{
+						Model model = createModel(prefab, node, k * 10, 0);
+
+						Animation animation = prefab.getAnimation().clone();
+						animation.addAnimationClip("loop", animation.getStartFrame(), animation.getStartFrame() + 10, PlaybackMode.LOOP);
+						animation.play("loop");
+						model.setAnimation(animation);
+						layer.addChild(model);
+						skinned++;
+					}
+					else
+					{
+						scenery.addChild(createModel(prefab, node, k * 10, 0));
+						still++;
+
+						// same mesh and material, drawn together by the instance batcher
+						layer.addChild(createModel(prefab, node, k * 10, 20));
+						instanced++;
+
+						terrainModel.addChild(createModel(prefab, node, k * 10, 40));
+					}
+				}
+			}
+		}
+
+		// normal maps as the loader queue would set them
+		Texture2D heightmap = new Texture2D("heightmap", 2, new int[64 * 64], 64, 64);
+		Terrain[] terrains = { new MeshTerrain(terrainModel, heightmap, heightmap, 10, 100), new StaticTerrain(heightmap, 10, 100, 16), new DisplacementTerrain(heightmap, 10, 100) };
+		for (Terrain terrain : terrains)
+		{
+			Terrain.setNormalMapTo(terrain, heightmap);
+			layer.addChild(terrain);
+		}
+
+		Light light = new Light();
+		layer.addChild(light);
+
+		SkyDome sky = new SkyDome();
+		sky.setTexture(new Texture2D("sky", 1, new int[1], 1, 1));
+
+		Camera camera = new Camera();
+		camera.setSky(sky);
+		layer.addChild(camera);
+		Scene.setMainCamera(camera);
+
+		// two textures and an animated strip, so the sprite batcher flushes on texture changes
+		Layer<View> hud = new Layer<View>();
+		Texture2D[] images = { new Texture2D("a", 3, new int[16], 4, 4), new Texture2D("b", 4, new int[16], 4, 4) };
+		Sprite[] sprites = new Sprite[SPRITES];
+		for (int i = 0; i < SPRITES; i++)
+		{
+			Sprite sprite = new Sprite();
+			sprite.setImageSrc(images[(i / 10) % 2]);
+			sprite.setScale(0.05f, 0.05f);
+			hud.addChild(sprite);
+			sprites[i] = sprite;
+		}
+		Sprite strip = new Sprite();
+		strip.setImageSrc(images[0], 4);
+		hud.addChild(strip);
+
+		Scene scene = new Scene();
+		scene.addLayer(layer);
+		scene.addLayer(hud);
+		scene.initialize();
+
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+
+		int frame = 0;
+		int stable = 0;
+		while(stable < STABLE && frame < MAX_WARM_UP)
+		{
+			long before = threads.getThreadAllocatedBytes(thread);
+			frame(scene, camera, sprites, frame++);
+			stable = (threads.getThreadAllocatedBytes(thread) == before) ? stable + 1 : 0;
+		}
+
+		long smallest = Long.MAX_VALUE;
+		long largest = 0;
+		for (int w = 0; w < WINDOWS; w++)
+		{
+			long allocated = threads.getThreadAllocatedBytes(thread);
+
+			for (int i = 0; i < FRAMES; i++)
+			{
+				frame(scene, camera, sprites, frame++);
+			}
+
+			allocated = threads.getThreadAllocatedBytes(thread) - allocated;
+			smallest = Math.min(smallest, allocated);
+			largest = Math.max(largest, allocated);
+		}
+
+		System.out.printf("%d skinned, %d static in %d batches, %d instanced (%d drawn as instances), %d terrains, %d sprites in %d draws, sky dome%n",
+				skinned, still, scene.getStaticBatchCount(), instanced, scene.getInstancedCount(), terrains.length, SPRITES + 1, scene.getSpriteDrawCount());
+		System.out.printf("warm up %d frames, %d windows of %d frames : %d bytes (largest window %d)%n", frame - WINDOWS * FRAMES, WINDOWS, FRAMES, smallest, largest);
+
+		if(skinned == 0 || still == 0 || scene.getStaticBatchCount() == 0 || scene.getInstancedCount() == 0 || scene.getSpriteDrawCount() == 0)
+		{
+			System.out.println("FAILED : a draw path was not reached, give assets with animated and still meshes");
+			System.exit(1);
+		}
+
+		if(smallest != 0)
+		{
+			System.out.println("FAILED : drawing a frame allocates");
+			System.exit(1);
+		}
+	}
+
+	private static Model createModel(ScenePrefab prefab, NodePrefab node, float x, float y)
+	{
+		Model model = new Model(node.getName());
+		model.setGeometry(node.getMesh());
+		model.setMaterial(node.getMaterial());
+		model.setAxisRotation(prefab.getAxisRotation());
+		model.setPosition(x, y, 0);
+		return model;
+	}
+
+	private static void frame(Scene scene, Camera camera, Sprite[] sprites, int frame)
+	{
+		camera.setPosition(frame % 50, -100, 20);
+
+		for (int i = 0; i < sprites.length; i++)
+		{
+			sprites[i].setPosition(((i + frame) % 100) * 0.01f, (i % 10) * 0.1f);
+		}
+
+		AnimationPlayer.getInstance().update();
+		scene.update();
+		scene.drawScene();
+	}
+}
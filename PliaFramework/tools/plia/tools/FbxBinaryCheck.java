@@ -0,0 +1,436 @@
+package plia.tools;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import plia.plugin.fbx.fileio.FbxImporter;
+import plia.plugin.fbx.scene.FbxScene;
+
+// Desktop JVM check of the binary FBX reader : each binary file is imported through FbxImporter, from a stream
+// and from a buffer, and its FbxScene is compared field by field with the import of the ascii export of the
+// same asset. Floats are equal within 1e-6 relative.
+// Before that the file layout is walked here, apart from FbxBinaryReader : header, record offsets (64 bit from
+// 7500), property list lengths, array encodings and inflated sizes, null records and the footer magic.
+// Exits with 1 on the first difference.
+//
+// The fixtures in tools/fixtures are made by FbxBinaryConverter (7200 raw, 7200 zlib, 7500 zlib). A binary and
+// ascii pair exported by the FBX SDK or Blender is checked the same way, one ascii file then its binary files.
+//
+// usage : java -Xss8m -cp <plia classes>:<android.util.Log stub>:. plia.tools.FbxBinaryCheck ascii.FBX binary.FBX ...
+public class FbxBinaryCheck
+{
+	private static final double TOLERANCE = 1e-6;
+
+	private static final String MAGIC = "Kaydara FBX Binary  \0";
+	private static final int[] FOOTER_MAGIC = { 0xF8,0x5A,0x8C,0x6A,0xDE,0xF5,0xD9,0x7E,0xEC,0xE9,0x0C,0xE3,0x75,0x8F,0x29,0x0B };
+
+	private static int fields;
+
+	// layout walk
+	private static byte[] data;
+	private static boolean wide;
+	private static int records;
+	private static String error;
+
+	public static void main(String[] args) throws Exception
+	{
+		if(args.length < 2)
+		{
+			System.out.println("usage : FbxBinaryCheck ascii.FBX binary.FBX ...");
+			return;
+		}
+
+		FbxScene ascii = FbxImporter.importScene(new FileInputStream(args[0]));
+
+		for (int i = 1; i < args.length; i++)
+		{
+			File file = new File(args[i]);
+
+			ByteBuffer bytes = read(file);
+
+			String difference = validate(bytes.array());
+			if(difference != null)
+			{
+				System.out.printf("FAILED : %s layout, %s%n", file.getName(), difference);
+				System.exit(1);
+			}
+
+			fields = 0;
+			difference = compare(ascii, FbxImporter.importScene(new FileInputStream(file)), "scene", new IdentityHashMap<Object, Object>());
+			if(difference == null)
+			{
+				difference = compare(ascii, FbxImporter.importScene(bytes), "scene", new IdentityHashMap<Object, Object>());
+			}
+
+			if(difference != null)
+			{
+				System.out.printf("FAILED : %s differs from %s at %s%n", file.getName(), args[0], difference);
+				System.exit(1);
+			}
+
+			System.out.printf("%s : version %d, %d records, %d geometries, %d curves, %d deformers, %d values equal to the ascii scene%n",
+					file.getName(), getInt(23), records, ascii.getGeometryCount(), ascii.getAnimCurveCount(), ascii.getDeformerCount(), fields / 2);
+		}
+	}
+
+	private static ByteBuffer read(File file) throws Exception
+	{
+		byte[] bytes = new byte[(int) file.length()];
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try
+		{
+			in.readFully(bytes);
+		}
+		finally
+		{
+			in.close();
+		}
+
+		return ByteBuffer.wrap(bytes);
+	}
+
+	//
+	// Layout
+	//
+
+	// First layout error, null when the file is well formed
+	private static String validate(byte[] file) throws Exception
+	{
+		data = file;
+		records = 0;
+
+		for (int i = 0; i < MAGIC.length(); i++)
+		{
+			if(data[i] != MAGIC.charAt(i))
+			{
+				return "no binary magic";
+			}
+		}
+
+		if(data[21] != 0x1A || data[22] != 0)
+		{
+			return "header bytes 21-22 are not 1A 00";
+		}
+
+		int version = getInt(23);
+		if(version < 7000 || version >= 8000)
+		{
+			return "version " + version;
+		}
+		wide = version >= 7500;
+
+		// top level records, closed by a null record, then the footer
+		long end = validateList(27, data.length);
+		if(end < 0)
+		{
+			return error;
+		}
+
+		if(data.length - end < FOOTER_MAGIC.length)
+		{
+			return "no footer after the last null record";
+		}
+
+		for (int i = 0; i < FOOTER_MAGIC.length; i++)
+		{
+			if((data[data.length - FOOTER_MAGIC.length + i] & 0xFF) != FOOTER_MAGIC[i])
+			{
+				return "footer magic";
+			}
+		}
+
+		return null;
+	}
+
+	// Records from 'at' up to their null record, returns the offset after it or -1 with error set
+	private static long validateList(long at, long limit) throws Exception
+	{
+		int header = wide ? 25 : 13;
+
+		while(true)
+		{
+			if(at + header > limit)
+			{
+				error = "record at " + at + " runs past " + limit;
+				return -1;
+			}
+
+			long end = getOffset(at);
+			long count = getOffset(at + (wide ? 8 : 4));
+			long length = getOffset(at + (wide ? 16 : 8));
+			int nameLength = data[(int) at + header - 1] & 0xFF;
+
+			if(end == 0)
+			{
+				if(count != 0 || length != 0 || nameLength != 0)
+				{
+					error = "null record at " + at + " is not all zeros";
+					return -1;
+				}
+				return at + header;
+			}
+
+			records++;
+
+			long properties = at + header + nameLength;
+			if(end <= properties || end > limit)
+			{
+				error = "record at " + at + " ends at " + end + ", outside " + properties + ".." + limit;
+				return -1;
+			}
+
+			long position = properties;
+			for (long i = 0; i < count; i++)
+			{
+				position = validateProperty(position, properties + length);
+				if(position < 0)
+				{
+					error = "record at " + at + ", property " + i + " : " + error;
+					return -1;
+				}
+			}
+
+			if(position != properties + length)
+			{
+				error = "record at " + at + " property list is " + (position - properties) + " bytes, not " + length;
+				return -1;
+			}
+
+			// children, closed by a null record ending the record
+			if(position < end)
+			{
+				position = validateList(position, end);
+				if(position < 0)
+				{
+					return -1;
+				}
+
+				if(position != end)
+				{
+					error = "record at " + at + " null record ends at " + position + ", not " + end;
+					return -1;
+				}
+			}
+
+			at = end;
+		}
+	}
+
+	private static long validateProperty(long at, long limit) throws Exception
+	{
+		if(at >= limit)
+		{
+			error = "past the property list";
+			return -1;
+		}
+
+		char type = (char) data[(int) at];
+		long position = at + 1;
+
+		switch (type)
+		{
+			case 'C' :	return position + 1;
+			case 'Y' :	return position + 2;
+			case 'I' :
+			case 'F' :	return position + 4;
+			case 'L' :
+			case 'D' :	return position + 8;
+			case 'S' :
+			case 'R' :	return position + 4 + (getInt(position) & 0xFFFFFFFFL);
+		}
+
+		int size;
+		switch (type)
+		{
+			case 'b' :	size = 1; break;
+			case 'i' :
+			case 'f' :	size = 4; break;
+			case 'l' :
+			case 'd' :	size = 8; break;
+			default :
+				error = "type '" + type + "'";
+				return -1;
+		}
+
+		long count = getInt(position) & 0xFFFFFFFFL;
+		int encoding = getInt(position + 4);
+		long length = getInt(position + 8) & 0xFFFFFFFFL;
+		position += 12;
+
+		if(position + length > limit)
+		{
+			error = type + " array of " + length + " bytes past the property list";
+			return -1;
+		}
+
+		if(encoding == 0)
+		{
+			if(length != count * size)
+			{
+				error = type + " array of " + count + " stored in " + length + " bytes";
+				return -1;
+			}
+		}
+		else if(encoding == 1)
+		{
+			Inflater inflater = new Inflater();
+			inflater.setInput(data, (int) position, (int) length);
+
+			byte[] inflated = new byte[(int) (count * size) + 1];
+			int inflatedLength;
+			try
+			{
+				inflatedLength = inflater.inflate(inflated);
+			}
+			catch (DataFormatException e)
+			{
+				error = type + " array is not zlib : " + e.getMessage();
+				return -1;
+			}
+
+			boolean finished = inflater.finished();
+			inflater.end();
+
+			if(!finished || inflatedLength != count * size)
+			{
+				error = type + " array of " + count + " inflates to " + inflatedLength + " bytes";
+				return -1;
+			}
+		}
+		else
+		{
+			error = type + " array encoding " + encoding;
+			return -1;
+		}
+
+		return position + length;
+	}
+
+	private static int getInt(long at)
+	{
+		int i = (int) at;
+		return (data[i] & 0xFF) | (data[i + 1] & 0xFF) << 8 | (data[i + 2] & 0xFF) << 16 | (data[i + 3] & 0xFF) << 24;
+	}
+
+	private static long getOffset(long at)
+	{
+		long low = getInt(at) & 0xFFFFFFFFL;
+		return wide ? low | (long) getInt(at + 4) << 32 : low;
+	}
+
+	//
+	// Scenes
+	//
+
+	// Path of the first difference, null when the graphs are equal
+	private static String compare(Object a, Object b, String path, IdentityHashMap<Object, Object> seen) throws Exception
+	{
+		if(a == null || b == null)
+		{
+			return (a == b) ? null : path + " : " + a + " / " + b;
+		}
+
+		Class<?> type = a.getClass();
+		if(type != b.getClass())
+		{
+			return path + " : " + type.getSimpleName() + " / " + b.getClass().getSimpleName();
+		}
+
+		fields++;
+
+		if(a instanceof Float || a instanceof Double)
+		{
+			double x = ((Number) a).doubleValue();
+			double y = ((Number) b).doubleValue();
+			return (Math.abs(x - y) <= TOLERANCE * Math.max(1, Math.abs(x))) ? null : path + " : " + a + " / " + b;
+		}
+
+		if(a instanceof Number || a instanceof String || a instanceof Boolean || a instanceof Character || type.isEnum())
+		{
+			return a.equals(b) ? null : path + " : " + a + " / " + b;
+		}
+
+		// shared objects (parents, linked nodes) map one to one
+		if(seen.containsKey(a))
+		{
+			return (seen.get(a) == b) ? null : path + " : not the same shared object";
+		}
+		seen.put(a, b);
+
+		if(type.isArray())
+		{
+			int length = Array.getLength(a);
+			if(length != Array.getLength(b))
+			{
+				return path + ".length : " + length + " / " + Array.getLength(b);
+			}
+
+			for (int i = 0; i < length; i++)
+			{
+				String difference = compare(Array.get(a, i), Array.get(b, i), path + "[" + i + "]", seen);
+				if(difference != null)
+				{
+					return difference;
+				}
+			}
+
+			return null;
+		}
+
+		if(a instanceof List)
+		{
+			return compare(((List<?>) a).toArray(), ((List<?>) b).toArray(), path, seen);
+		}
+
+		if(a instanceof Map)
+		{
+			Map<?, ?> x = (Map<?, ?>) a;
+			Map<?, ?> y = (Map<?, ?>) b;
+			if(!x.keySet().equals(y.keySet()))
+			{
+				return path + ".keySet : " + x.keySet() + " / " + y.keySet();
+			}
+
+			for (Object key : x.keySet())
+			{
+				String difference = compare(x.get(key), y.get(key), path + "[" + key + "]", seen);
+				if(difference != null)
+				{
+					return difference;
+				}
+			}
+
+			return null;
+		}
+
+		for (Class<?> c = type; c != Object.class; c = c.getSuperclass())
+		{
+			for (Field field : c.getDeclaredFields())
+			{
+				if(Modifier.isStatic(field.getModifiers()))
+				{
+					continue;
+				}
+
+				field.setAccessible(true);
+				String difference = compare(field.get(a), field.get(b), path + "." + field.getName(), seen);
+				if(difference != null)
+				{
+					return difference;
+				}
+			}
+		}
+
+		return null;
+	}
+}
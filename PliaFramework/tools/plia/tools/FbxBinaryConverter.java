@@ -0,0 +1,586 @@
+package plia.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.zip.Deflater;
+
+// Desktop JVM converter : ascii FBX (7.x) -> binary FBX, the node tree copied as it is.
+// "Class::Name" object names become "Name\0\1Class" like the FBX SDK writes them, arrays are 'f' for the key
+// values and else 'i', 'l' or 'd' from their content, and with -z they are zlib compressed (encoding 1).
+// The version is the ascii FBXVersion unless -v gives one, 7500 and later write 64 bit record offsets.
+// The file ends with the null record and the footer of the SDK layout.
+// Used to make the binary fixtures FbxBinaryCheck compares against their ascii source.
+//
+// usage : java -cp <plia classes>:<android.util.Log stub>:. plia.tools.FbxBinaryConverter [-z] [-v 7500] in.FBX out.FBX
+public class FbxBinaryConverter
+{
+	private static final byte[] MAGIC = { 'K','a','y','d','a','r','a',' ','F','B','X',' ','B','i','n','a','r','y',' ',' ',0, 0x1A, 0 };
+
+	// footer : id, zero padding to 16, 0, version, 120 zeros, then the closing magic
+	private static final int[] FOOTER_ID = { 0xFA,0xBC,0xAB,0x09,0xD0,0xC8,0xD4,0x66,0xB1,0x76,0xFB,0x83,0x1C,0xF7,0x26,0x7E };
+	private static final int[] FOOTER_MAGIC = { 0xF8,0x5A,0x8C,0x6A,0xDE,0xF5,0xD9,0x7E,0xEC,0xE9,0x0C,0xE3,0x75,0x8F,0x29,0x0B };
+
+	// ascii source
+	private final byte[] text;
+	private int p;
+
+	private final boolean compress;
+	private int version;
+
+	private FbxBinaryConverter(byte[] text, boolean compress, int version)
+	{
+		this.text = text;
+		this.compress = compress;
+		this.version = version;
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+		boolean compress = false;
+		int version = 0;
+		int first = 0;
+
+		while(first < args.length && args[first].startsWith("-"))
+		{
+			if(args[first].equals("-z"))
+			{
+				compress = true;
+			}
+			else if(args[first].equals("-v") && first + 1 < args.length)
+			{
+				version = Integer.parseInt(args[++first]);
+			}
+			first++;
+		}
+
+		if(args.length - first != 2)
+		{
+			System.out.println("usage : FbxBinaryConverter [-z] [-v version] in.FBX out.FBX");
+			return;
+		}
+
+		File in = new File(args[first]);
+		byte[] text = new byte[(int) in.length()];
+		RandomAccessFile file = new RandomAccessFile(in, "r");
+		try
+		{
+			file.readFully(text);
+		}
+		finally
+		{
+			file.close();
+		}
+
+		FbxBinaryConverter converter = new FbxBinaryConverter(text, compress, version);
+		byte[] binary = converter.convert();
+
+		FileOutputStream out = new FileOutputStream(args[first + 1]);
+		try
+		{
+			out.write(binary);
+		}
+		finally
+		{
+			out.close();
+		}
+
+		System.out.printf("%s (%d KB) -> %s (%d KB), version %d%s%n", in.getName(), text.length / 1024, args[first + 1], binary.length / 1024,
+				converter.version, compress ? ", zlib arrays" : "");
+	}
+
+	//
+	// ascii node tree
+	//
+
+	private static final class Node
+	{
+		String name;
+		ArrayList<Object> properties = new ArrayList<Object>();
+		ArrayList<Node> children;
+	}
+
+	// array property, from "*N { a: ... }"
+	private static final class Array
+	{
+		char type;
+		ArrayList<String> values = new ArrayList<String>();
+	}
+
+	// a bare word (T, Y, W, ...), written as a 'C' property
+	private static final class Word
+	{
+		String value;
+	}
+
+	private byte[] convert() throws IOException
+	{
+		ArrayList<Node> nodes = new ArrayList<Node>();
+		Node node;
+		while((node = parseNode()) != null)
+		{
+			nodes.add(node);
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(MAGIC);
+
+		for (Node n : nodes)
+		{
+			if(version == 0 && n.name.equals("FBXHeaderExtension"))
+			{
+				for (Node child : n.children)
+				{
+					if(child.name.equals("FBXVersion"))
+					{
+						version = Integer.parseInt((String) child.properties.get(0));
+					}
+				}
+			}
+		}
+
+		writeInt(out, version);
+
+		Writer writer = new Writer(out.toByteArray());
+		for (Node n : nodes)
+		{
+			writer.writeNode(n);
+		}
+		writer.writeNullRecord();
+		writer.writeFooter();
+
+		return writer.toByteArray();
+	}
+
+	private void skipBlank(boolean newlines)
+	{
+		while(p < text.length)
+		{
+			byte c = text[p];
+
+			if(c == ';')
+			{
+				while(p < text.length && text[p] != '\n')
+				{
+					p++;
+				}
+			}
+			else if(c == ' ' || c == '\t' || c == '\r' || (newlines && c == '\n'))
+			{
+				p++;
+			}
+			else
+			{
+				return;
+			}
+		}
+	}
+
+	// Name: properties [{ children }], null at the end of the file or of a children list
+	private Node parseNode() throws IOException
+	{
+		skipBlank(true);
+
+		if(p >= text.length || text[p] == '}')
+		{
+			return null;
+		}
+
+		int start = p;
+		while(text[p] != ':')
+		{
+			p++;
+		}
+
+		Node node = new Node();
+		node.name = new String(text, start, p - start, "UTF-8").trim();
+		p++;
+
+		skipBlank(false);
+
+		// properties, a trailing ',' carries them over the line end
+		while(p < text.length && text[p] != '\n' && text[p] != '{')
+		{
+			node.properties.add(parseValue());
+			skipBlank(false);
+
+			if(p < text.length && text[p] == ',')
+			{
+				p++;
+				skipBlank(true);
+			}
+		}
+
+		if(p < text.length && text[p] == '{')
+		{
+			p++;
+			node.children = new ArrayList<Node>();
+
+			Node child;
+			while((child = parseNode()) != null)
+			{
+				node.children.add(child);
+			}
+
+			skipBlank(true);
+			p++;
+		}
+
+		// "Name: *N { a: ... }" is one array property
+		if(node.children != null && node.properties.size() == 1 && node.properties.get(0) instanceof Array)
+		{
+			Array array = (Array) node.properties.get(0);
+			for (Object value : node.children.get(0).properties)
+			{
+				array.values.add((String) value);
+			}
+			array.type = arrayType(node.name, array.values);
+			node.children = null;
+		}
+
+		return node;
+	}
+
+	private Object parseValue() throws IOException
+	{
+		byte c = text[p];
+
+		if(c == '"')
+		{
+			int start = ++p;
+			while(text[p] != '"')
+			{
+				p++;
+			}
+			String value = new String(text, start, p - start, "UTF-8");
+			p++;
+
+			// "Class::Name" -> "Name\0\1Class"
+			int index = value.indexOf("::");
+			if(index > 0 && value.substring(0, index).matches("[A-Za-z]+"))
+			{
+				value = value.substring(index + 2) + "\0\1" + value.substring(0, index);
+			}
+
+			return value.getBytes("UTF-8");
+		}
+
+		if(c == '*')
+		{
+			while(text[p] != '{' && text[p] != '\n')
+			{
+				p++;
+			}
+			return new Array();
+		}
+
+		int start = p;
+		while(p < text.length && text[p] != ',' && text[p] != '\n' && text[p] != '\r' && text[p] != '{' && text[p] != ' ' && text[p] != '\t')
+		{
+			p++;
+		}
+		String token = new String(text, start, p - start, "UTF-8");
+
+		if(token.matches("[-+]?[0-9].*"))
+		{
+			return token;
+		}
+
+		Word word = new Word();
+		word.value = token;
+		return word;
+	}
+
+	private static char arrayType(String name, ArrayList<String> values)
+	{
+		if(name.equals("KeyValueFloat") || name.equals("KeyAttrDataFloat"))
+		{
+			return 'f';
+		}
+
+		char type = 'i';
+		for (String value : values)
+		{
+			if(!isInteger(value))
+			{
+				return 'd';
+			}
+
+			long l = Long.parseLong(value);
+			if(l != (int) l)
+			{
+				type = 'l';
+			}
+		}
+
+		return type;
+	}
+
+	private static boolean isInteger(String value)
+	{
+		return value.matches("[-+]?[0-9]+");
+	}
+
+	//
+	// binary records
+	//
+
+	private final class Writer
+	{
+		private byte[] data;
+		private int length;
+
+		Writer(byte[] header)
+		{
+			data = new byte[1 << 20];
+			System.arraycopy(header, 0, data, 0, header.length);
+			length = header.length;
+		}
+
+		private boolean isWide()
+		{
+			return version >= 7500;
+		}
+
+		private void ensure(int count)
+		{
+			if(length + count > data.length)
+			{
+				byte[] grown = new byte[Math.max(data.length * 2, length + count)];
+				System.arraycopy(data, 0, grown, 0, length);
+				data = grown;
+			}
+		}
+
+		private void put(int b)
+		{
+			ensure(1);
+			data[length++] = (byte) b;
+		}
+
+		private void put(byte[] bytes)
+		{
+			ensure(bytes.length);
+			System.arraycopy(bytes, 0, data, length, bytes.length);
+			length += bytes.length;
+		}
+
+		private void putInt(int v)
+		{
+			for (int i = 0; i < 4; i++)
+			{
+				put(v >>> (i * 8));
+			}
+		}
+
+		private void putLong(long v)
+		{
+			for (int i = 0; i < 8; i++)
+			{
+				put((int) (v >>> (i * 8)));
+			}
+		}
+
+		private void putOffset(long v)
+		{
+			if(isWide())
+			{
+				putLong(v);
+			}
+			else
+			{
+				putInt((int) v);
+			}
+		}
+
+		private void setOffset(int at, long v)
+		{
+			int saved = length;
+			length = at;
+			putOffset(v);
+			length = saved;
+		}
+
+		void writeNullRecord()
+		{
+			int size = isWide() ? 25 : 13;
+			ensure(size);
+			length += size;
+		}
+
+		void writeNode(Node node) throws IOException
+		{
+			int header = length;
+			putOffset(0);
+			putOffset(node.properties.size());
+			putOffset(0);
+
+			byte[] name = node.name.getBytes("UTF-8");
+			put(name.length);
+			put(name);
+
+			int properties = length;
+			for (Object property : node.properties)
+			{
+				writeProperty(property);
+			}
+			int propertiesLength = length - properties;
+
+			if(node.children != null)
+			{
+				for (Node child : node.children)
+				{
+					writeNode(child);
+				}
+				writeNullRecord();
+			}
+			else if(node.properties.isEmpty())
+			{
+				writeNullRecord();
+			}
+
+			int size = isWide() ? 8 : 4;
+			setOffset(header, length);
+			setOffset(header + size * 2, propertiesLength);
+		}
+
+		private void writeProperty(Object property) throws IOException
+		{
+			if(property instanceof byte[])
+			{
+				byte[] bytes = (byte[]) property;
+				put('S');
+				putInt(bytes.length);
+				put(bytes);
+			}
+			else if(property instanceof Word)
+			{
+				put('C');
+				put(((Word) property).value.charAt(0));
+			}
+			else if(property instanceof Array)
+			{
+				writeArray((Array) property);
+			}
+			else
+			{
+				String value = (String) property;
+
+				if(isInteger(value))
+				{
+					long l = Long.parseLong(value);
+					if(l == (int) l)
+					{
+						put('I');
+						putInt((int) l);
+					}
+					else
+					{
+						put('L');
+						putLong(l);
+					}
+				}
+				else
+				{
+					put('D');
+					putLong(Double.doubleToLongBits(Double.parseDouble(value)));
+				}
+			}
+		}
+
+		private void writeArray(Array array)
+		{
+			int count = array.values.size();
+			int size = (array.type == 'l' || array.type == 'd') ? 8 : 4;
+
+			byte[] raw = new byte[count * size];
+			for (int i = 0; i < count; i++)
+			{
+				String value = array.values.get(i);
+				long bits;
+
+				switch (array.type)
+				{
+					case 'f' :	bits = Float.floatToIntBits(Float.parseFloat(value)); break;
+					case 'd' :	bits = Double.doubleToLongBits(Double.parseDouble(value)); break;
+					default :	bits = Long.parseLong(value); break;
+				}
+
+				for (int b = 0; b < size; b++)
+				{
+					raw[i * size + b] = (byte) (bits >>> (b * 8));
+				}
+			}
+
+			byte[] payload = raw;
+			if(compress)
+			{
+				Deflater deflater = new Deflater();
+				deflater.setInput(raw);
+				deflater.finish();
+
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				byte[] chunk = new byte[8192];
+				while(!deflater.finished())
+				{
+					out.write(chunk, 0, deflater.deflate(chunk));
+				}
+				deflater.end();
+
+				payload = out.toByteArray();
+			}
+
+			put(array.type);
+			putInt(count);
+			putInt(compress ? 1 : 0);
+			putInt(payload.length);
+			put(payload);
+		}
+
+		void writeFooter()
+		{
+			for (int b : FOOTER_ID)
+			{
+				put(b);
+			}
+
+			// 1 to 16 zeros, up to a 16 byte boundary
+			int padding = 16 - (length % 16);
+			for (int i = 0; i < padding; i++)
+			{
+				put(0);
+			}
+
+			putInt(0);
+			putInt(version);
+
+			for (int i = 0; i < 120; i++)
+			{
+				put(0);
+			}
+
+			for (int b : FOOTER_MAGIC)
+			{
+				put(b);
+			}
+		}
+
+		byte[] toByteArray()
+		{
+			byte[] result = new byte[length];
+			System.arraycopy(data, 0, result, 0, length);
+			return result;
+		}
+	}
+
+	private static void writeInt(ByteArrayOutputStream out, int v)
+	{
+		for (int i = 0; i < 4; i++)
+		{
+			out.write(v >>> (i * 8));
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package plia.tools;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import plia.plugin.fbx.fileio.FbxImporter;
+import plia.plugin.fbx.scene.FbxScene;
+
+// Desktop JVM benchmark of the fbx importer, not part of the android build.
+// Compare peak heap and wall time of the legacy whole-file import (LegacyFbxImporter, the baseline code)
+// against the streaming one, with array decoding on the calling thread only and on all cores.
+//
+// usage : java -cp <plia classes>:<android.util.Log stub>:. plia.tools.FbxImportBenchmark PliaFramework/assets/woodguard.FBX PliaFramework/assets/elementalist31.FBX
+public class FbxImportBenchmark
+{
+	private static final int WARM_UP = 3;
+	private static final int RUNS = 5;
+
+	private static final int LEGACY = 0;
+	private static final int SERIAL = 1;
+	private static final int STREAM = 2;
+	private static final int MAPPED = 3;
+
+	private static final String[] NAMES = { "legacy (read all + split)", "stream, serial decoding", "stream (InputStream)", "stream (mapped file)" };
+
+	public static void main(String[] args) throws Exception
+	{
+		if(args.length == 0)
+		{
+			System.out.println("usage : FbxImportBenchmark <file.FBX> ...");
+			return;
+		}
+
+		for (String path : args)
+		{
+			File file = new File(path);
+			System.out.println(file.getName() + " (" + (file.length() / 1024) + " KB)");
+
+			for (int mode = LEGACY; mode <= MAPPED; mode++)
+			{
+				for (int i = 0; i < WARM_UP; i++)
+				{
+					run(file, mode);
+				}
+
+				long time = 0;
+				long peak = 0;
+
+				for (int i = 0; i < RUNS; i++)
+				{
+					System.gc();
+					long baseline = resetPeak();
+
+					long start = System.nanoTime();
+					FbxScene scene = run(file, mode);
+					time += System.nanoTime() - start;
+
+					peak = Math.max(peak, peak() - baseline);
+
+					if(scene == null)
+					{
+						throw new IllegalStateException("import failed : " + path);
+					}
+				}
+
+				System.out.printf("  %-28s %8.2f ms %10.2f MB peak heap%n", NAMES[mode], time / (RUNS * 1e6), peak / (1024.0 * 1024.0));
+			}
+		}
+	}
+
+	private static FbxScene run(File file, int mode) throws IOException
+	{
+		switch (mode)
+		{
+			case LEGACY:
+				return LegacyFbxImporter.importScene(new FileInputStream(file));
+			case SERIAL:
+				FbxImporter.setParallelDecoding(false);
+				try
+				{
+					return FbxImporter.importScene(new FileInputStream(file));
+				}
+				finally
+				{
+					FbxImporter.setParallelDecoding(true);
+				}
+			case STREAM:
+				return FbxImporter.importScene(new FileInputStream(file));
+			default:
+				RandomAccessFile raf = new RandomAccessFile(file, "r");
+				try
+				{
+					MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+					return FbxImporter.importScene(buffer);
+				}
+				finally
+				{
+					raf.close();
+				}
+		}
+	}
+
+	private static long resetPeak()
+	{
+		long used = 0;
+		for (MemoryPoolMXBean pool : heapPools())
+		{
+			pool.resetPeakUsage();
+			used += pool.getUsage().getUsed();
+		}
+		return used;
+	}
+
+	private static long peak()
+	{
+		long used = 0;
+		for (MemoryPoolMXBean pool : heapPools())
+		{
+			used += pool.getPeakUsage().getUsed();
+		}
+		return used;
+	}
+
+	private static List<MemoryPoolMXBean> heapPools()
+	{
+		List<MemoryPoolMXBean> pools = new ArrayList<MemoryPoolMXBean>();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+		{
+			if(pool.getType() == MemoryType.HEAP)
+			{
+				pools.add(pool);
+			}
+		}
+		return pools;
+	}
+}
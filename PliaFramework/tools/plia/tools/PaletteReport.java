@@ -0,0 +1,117 @@
+package plia.tools;
+
+import java.io.File;
+import java.io.FileInputStream;
+
+import plia.core.FbxDroid;
+import plia.core.NodePrefab;
+import plia.core.ScenePrefab;
+import plia.core.scene.animation.PaletteTracks;
+import plia.core.scene.geometry.Mesh;
+import plia.plugin.fbx.fileio.FbxImporter;
+import plia.plugin.fbx.scene.FbxScene;
+
+// Desktop JVM report of the animation memory of every animated mesh : baked palette per frame, PaletteTracks
+// with float keys and with quantised keys, with the largest joint error of the tracks against the baked palette,
+// rotation / scale part and translation part of the matrices apart, sampled at every frame.
+//
+// usage : java -cp <plia classes>:<android.util.Log stub>:. plia.tools.PaletteReport a.FBX b.FBX ...
+public class PaletteReport
+{
+	public static void main(String[] args) throws Exception
+	{
+		System.out.printf("%-28s %6s %5s %6s %9s %9s %9s %6s %9s %9s %9s %9s%n", "mesh", "frames", "bones", "keys", "baked KB", "float KB", "quant KB", "ratio",
+				"float rot", "float pos", "quant rot", "quant pos");
+
+		for (String path : args)
+		{
+			File file = new File(path);
+
+			FbxDroid.setKeyframePalette(false);
+			ScenePrefab baked = importScene(file);
+
+			FbxDroid.setKeyframePalette(true);
+			FbxDroid.setQuantizePalette(false);
+			ScenePrefab sparse = importScene(file);
+
+			FbxDroid.setQuantizePalette(true);
+			ScenePrefab quantized = importScene(file);
+
+			if(baked == null)
+			{
+				continue;
+			}
+
+			NodePrefab[] bakedNodes = baked.getNodePrefabs();
+			NodePrefab[] sparseNodes = sparse.getNodePrefabs();
+			NodePrefab[] quantizedNodes = quantized.getNodePrefabs();
+
+			for (int i = 0; i < bakedNodes.length; i++)
+			{
+				report(file.getName() + ":" + bakedNodes[i].getName(), bakedNodes[i].getMesh(), sparseNodes[i].getMesh(), quantizedNodes[i].getMesh());
+			}
+		}
+	}
+
+	private static ScenePrefab importScene(File file) throws Exception
+	{
+		FbxScene scene = FbxImporter.importScene(new FileInputStream(file));
+		return FbxDroid.importScene(scene, file.getName(), false);
+	}
+
+	private static void report(String name, Mesh baked, Mesh sparse, Mesh quantized)
+	{
+		float[][] matrixPalette = baked.getMatrixPalette();
+		PaletteTracks sparseTracks = sparse.getPaletteTracks();
+		PaletteTracks quantizedTracks = quantized.getPaletteTracks();
+
+		if(matrixPalette == null || sparseTracks == null || quantizedTracks == null)
+		{
+			return;
+		}
+
+		float[] sparseError = getError(matrixPalette, sparse);
+		float[] quantizedError = getError(matrixPalette, quantized);
+
+		long bakedBytes = (long) matrixPalette.length * matrixPalette[0].length * 4;
+		long sparseBytes = sparseTracks.getByteCount();
+		long quantizedBytes = quantizedTracks.getByteCount();
+
+		if(name.length() > 28)
+		{
+			name = name.substring(0, 25) + "...";
+		}
+
+		System.out.printf("%-28s %6d %5d %6d %9.1f %9.1f %9.1f %5.1fx %9.2e %9.2e %9.2e %9.2e%s%n", name, matrixPalette.length, sparseTracks.getPaletteLength() / 16,
+				sparseTracks.getKeyCount(), bakedBytes / 1024f, sparseBytes / 1024f, quantizedBytes / 1024f, bakedBytes / (float) quantizedBytes,
+				sparseError[0], sparseError[1], quantizedError[0], quantizedError[1], quantizedTracks.isQuantized() ? "" : " (over budget, float keys)");
+	}
+
+	// largest difference to the baked palette of the rotation / scale part and of the translation part
+	private static float[] getError(float[][] matrixPalette, Mesh mesh)
+	{
+		float[] error = new float[2];
+
+		for (int frame = 0; frame < matrixPalette.length; frame++)
+		{
+			float[] palette = mesh.getMatrixPalette(frame + mesh.getMatrixPaletteIndexOffset());
+
+			for (int j = 0; j < palette.length; j++)
+			{
+				float difference = Math.abs(palette[j] - matrixPalette[frame][j]);
+				int element = j % 16;
+
+				if(element >= 12 && element < 15)
+				{
+					error[1] = Math.max(error[1], difference);
+				}
+				else
+				{
+					error[0] = Math.max(error[0], difference);
+				}
+			}
+		}
+
+		return error;
+	}
+}
@@ -0,0 +1,76 @@
+package plia.tools;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+
+import plia.core.CompiledPrefab;
+import plia.core.FbxDroid;
+import plia.core.ScenePrefab;
+import plia.plugin.fbx.fileio.FbxImporter;
+import plia.plugin.fbx.scene.FbxScene;
+
+// Desktop JVM converter : FBX -> compiled prefab, written next to the source (hero.FBX -> hero.prefab).
+// GameObjectManager.loadModel("hero.FBX") picks the .prefab up from the assets when it exists.
+//
+// usage : java -cp <plia classes>:<android.util.Log stub>:. plia.tools.PrefabCompiler [-o outdir] a.FBX b.FBX ...
+public class PrefabCompiler
+{
+	public static void main(String[] args) throws Exception
+	{
+		File outDir = null;
+
+		for (int i = 0; i < args.length; i++)
+		{
+			if(args[i].equals("-o") && i + 1 < args.length)
+			{
+				outDir = new File(args[++i]);
+				outDir.mkdirs();
+				continue;
+			}
+
+			compile(new File(args[i]), outDir);
+		}
+	}
+
+	private static void compile(File file, File outDir) throws Exception
+	{
+		String name = file.getName();
+		int indexOfDot = name.lastIndexOf('.');
+		String rootName = (indexOfDot > -1) ? name.substring(0, indexOfDot) : name;
+
+		File out = new File((outDir != null) ? outDir : file.getAbsoluteFile().getParentFile(), rootName + CompiledPrefab.EXTENSION);
+
+		long start = System.nanoTime();
+
+		FbxScene scene = FbxImporter.importScene(new FileInputStream(file));
+		ScenePrefab scenePrefab = FbxDroid.importScene(scene, rootName, false);
+
+		long fbxTime = System.nanoTime() - start;
+
+		if(scenePrefab == null)
+		{
+			System.out.println(name + " : no geometry, skipped");
+			return;
+		}
+
+		OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(out));
+		try
+		{
+			CompiledPrefab.write(scenePrefab, outputStream);
+		}
+		finally
+		{
+			outputStream.close();
+		}
+
+		start = System.nanoTime();
+		CompiledPrefab.read(new FileInputStream(out), false);
+		long prefabTime = System.nanoTime() - start;
+
+		System.out.printf("%s -> %s : %d KB -> %d KB, load %.1f ms -> %.1f ms%n", name, out.getName(),
+				file.length() / 1024, out.length() / 1024, fbxTime / 1e6, prefabTime / 1e6);
+	}
+}
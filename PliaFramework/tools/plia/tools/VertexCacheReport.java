@@ -0,0 +1,82 @@
+package plia.tools;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.IntBuffer;
+
+import plia.core.FbxDroid;
+import plia.core.NodePrefab;
+import plia.core.ScenePrefab;
+import plia.core.scene.geometry.Mesh;
+import plia.core.scene.geometry.VertexCacheOptimizer;
+import plia.plugin.fbx.fileio.FbxImporter;
+import plia.plugin.fbx.scene.FbxScene;
+
+// Desktop JVM report of the post-transform cache behaviour of every mesh, imported in file order
+// and after VertexCacheOptimizer, as ACMR (vertices transformed per triangle) for a few FIFO sizes.
+//
+// usage : java -cp <plia classes>:<android.util.Log stub>:. plia.tools.VertexCacheReport a.FBX b.FBX ...
+public class VertexCacheReport
+{
+	private static final int[] CACHE_SIZES = { 8, 16, 32 };
+
+	public static void main(String[] args) throws Exception
+	{
+		FbxDroid.setOptimizeVertexCache(false);
+
+		System.out.printf("%-32s %8s %8s %6s", "mesh", "vertices", "indices", "type");
+		for (int size : CACHE_SIZES)
+		{
+			System.out.printf("   acmr/%-2d before -> after", size);
+		}
+		System.out.println();
+
+		for (String path : args)
+		{
+			File file = new File(path);
+
+			FbxScene scene = FbxImporter.importScene(new FileInputStream(file));
+			ScenePrefab scenePrefab = FbxDroid.importScene(scene, file.getName(), false);
+
+			if(scenePrefab == null)
+			{
+				continue;
+			}
+
+			for (NodePrefab nodePrefab : scenePrefab.getNodePrefabs())
+			{
+				report(file.getName() + ":" + nodePrefab.getName(), nodePrefab.getMesh());
+			}
+		}
+	}
+
+	private static void report(String name, Mesh mesh)
+	{
+		IntBuffer indexBuffer = mesh.getIndexBuffer();
+		int[] indices = new int[indexBuffer.capacity()];
+		indexBuffer.get(indices);
+		indexBuffer.position(0);
+
+		int vertexCount = 0;
+		for (int i = 0; i < indices.length; i++)
+		{
+			vertexCount = Math.max(vertexCount, indices[i] + 1);
+		}
+
+		long start = System.nanoTime();
+		int[] optimized = VertexCacheOptimizer.optimize(indices, vertexCount);
+		long time = System.nanoTime() - start;
+
+		if(name.length() > 32)
+		{
+			name = name.substring(0, 29) + "...";
+		}
+
+		System.out.printf("%-32s %8d %8d %6s", name, vertexCount, indices.length, (vertexCount <= 0x10000) ? "short" : "int");
+		for (int size : CACHE_SIZES)
+		{
+			System.out.printf("   %13.3f -> %5.3f", VertexCacheOptimizer.getACMR(indices, size), VertexCacheOptimizer.getACMR(optimized, size));
+		}
+		System.out.printf("   (%.2f ms)%n", time / 1e6);
+	}
+}
@@ -118,7 +118,7 @@ public class Vehicle
 				
 				if(speed == 0 && !animation.isPlaying(idleClipName))
 				{
-					animation.play(idleClipName);
+					animation.crossFade(idleClipName, CLIP_FADE_TIME);
 				}
 			}
 		}
@@ -146,7 +146,7 @@ public class Vehicle
         	Animation animation = object.getAnimation();
         	if(!animation.isPlaying(runClipName))
         	{
-        		animation.play(runClipName);
+        		animation.crossFade(runClipName, CLIP_FADE_TIME);
         	}
         }
 	}
@@ -189,4 +189,7 @@ public class Vehicle
 	public static float MAX_FORWARD_VELOCITY = 1.6f;
 	public static float MAX_BACKWARD_VELOCITY = -0.6f;
 	public static float MAX_ANGULAR_VELOCITY = 1.f;
+	
+	// idle <-> run cross-fade, in milliseconds
+	public static int CLIP_FADE_TIME = 250;
 }